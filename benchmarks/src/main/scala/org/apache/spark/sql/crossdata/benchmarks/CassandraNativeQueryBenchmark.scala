@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import com.stratio.crossdata.connector.cassandra.CassandraQueryProcessor
+import org.apache.spark.sql.sources
+import org.apache.spark.sql.sources.{Filter => SourceFilter}
+import org.openjdk.jmh.annotations._
+
+/**
+  * CQL generation by [[CassandraQueryProcessor.buildNativeQuery]].
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class CassandraNativeQueryBenchmark {
+
+  @Param(Array("4", "16", "64"))
+  var width: Int = _
+
+  @Param(Array("1", "4", "16"))
+  var numberOfFilters: Int = _
+
+  private var columns: Seq[String] = _
+  private var filters: Array[SourceFilter] = _
+
+  @Setup
+  def setup(): Unit = {
+    columns = SyntheticData.schema(width).fieldNames
+    filters = Array.tabulate[SourceFilter](numberOfFilters) { i =>
+      val column = columns(i % columns.length)
+      i % 3 match {
+        case 0 => sources.EqualTo(column, s"value$i")
+        case 1 => sources.In(column, Array(i, i + 1, i + 2))
+        case _ => sources.GreaterThan(column, i)
+      }
+    }
+  }
+
+  @Benchmark
+  def buildNativeQuery(): String =
+    CassandraQueryProcessor.buildNativeQuery("keyspace.table", columns, filters, CassandraQueryProcessor.NoLimit)
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import org.apache.spark.sql.catalyst.TableIdentifier
+import org.apache.spark.sql.catalyst.plans.logical.LogicalPlan
+import org.apache.spark.sql.crossdata.catalog.CatalogChain
+import org.openjdk.jmh.annotations._
+
+/**
+  * Relation resolution through the [[CatalogChain]]: a hit in the temporary catalog and a miss going through every
+  * catalog of the chain.
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class CatalogChainBenchmark {
+
+  private val temporaryTable = TableIdentifier("benchmark_temporary")
+  private val missingTable = TableIdentifier("benchmark_missing")
+
+  @Setup
+  def setup(): Unit = {
+    val xdContext = BenchmarkContext.xdContext
+    val schema = SyntheticData.schema(16)
+    xdContext.baseRelationToDataFrame(SyntheticRelation(xdContext, schema)).registerTempTable(temporaryTable.table)
+  }
+
+  @Benchmark
+  def temporaryHit(): LogicalPlan = BenchmarkContext.xdContext.catalog.lookupRelation(temporaryTable)
+
+  @Benchmark
+  def miss(): Boolean = BenchmarkContext.xdContext.catalog.tableExists(missingTable)
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.benchmarks
+
+import java.util.UUID
+import java.util.concurrent.TimeUnit
+
+import akka.actor.{ActorSystem, ExtendedActorSystem}
+import akka.serialization.{JavaSerializer, Serializer}
+import com.stratio.crossdata.common.SQLReply
+import com.stratio.crossdata.common.result.SuccessfulSQLResult
+import com.stratio.crossdata.common.serializers.CompactMessageSerializer
+import com.typesafe.config.ConfigFactory
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.types._
+import org.openjdk.jmh.annotations._
+
+/**
+  * (De)serialization of results by [[CompactMessageSerializer]], with and without compression, compared to Java
+  * serialization. The sizes they encode results to are checked by `CompactMessageSerializerSpec`.
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+class CompactMessageSerializerBenchmark {
+
+  @Param(Array("java", "compact", "compact+lz4"))
+  var serializerName: String = _
+
+  @Param(Array("10000", "100000"))
+  var numberOfRows: Int = _
+
+  private var system: ExtendedActorSystem = _
+  private var serializer: Serializer = _
+  private var reply: SQLReply = _
+  private var bytes: Array[Byte] = _
+
+  @Setup
+  def setup(): Unit = {
+    val schema = StructType(List(
+      StructField("id", LongType, false),
+      StructField("name", StringType, true),
+      StructField("price", DoubleType, true),
+      StructField("active", BooleanType, true),
+      StructField("updated", TimestampType, true)
+    ))
+    val rows: Array[Row] = Array.tabulate(numberOfRows) { i =>
+      Row(i.toLong, s"product-${i % 1000}", i * 0.25, i % 3 == 0, new java.sql.Timestamp(1460000000000L + i))
+    }
+    reply = SQLReply(UUID.randomUUID(), SuccessfulSQLResult(rows, schema))
+
+    val compressionThreshold = if (serializerName == "compact+lz4") "64KiB" else "0"
+    system = ActorSystem(
+      "CompactMessageSerializerBenchmark",
+      ConfigFactory.parseString(s"${CompactMessageSerializer.CompressionThresholdKey} = $compressionThreshold")
+    ).asInstanceOf[ExtendedActorSystem]
+    serializer = if (serializerName == "java") new JavaSerializer(system) else new CompactMessageSerializer(system)
+    bytes = serializer.toBinary(reply)
+  }
+
+  @TearDown
+  def tearDown(): Unit = system.terminate()
+
+  @Benchmark
+  def serialize(): Array[Byte] = serializer.toBinary(reply)
+
+  @Benchmark
+  def deserialize(): AnyRef = serializer match {
+    case compact: CompactMessageSerializer => compact.fromBinary(bytes, compact.manifest(reply))
+    case other => other.fromBinary(bytes, None)
+  }
+
+}
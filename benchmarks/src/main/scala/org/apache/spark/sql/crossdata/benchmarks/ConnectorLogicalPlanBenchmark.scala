@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import org.apache.spark.sql.catalyst.expressions.{Expression, NamedExpression}
+import org.apache.spark.sql.catalyst.planning.PhysicalOperation
+import org.apache.spark.sql.catalyst.plans.logical.LogicalPlan
+import org.apache.spark.sql.functions._
+import org.apache.spark.sql.sources.CatalystToCrossdataAdapter
+import org.apache.spark.sql.sources.CatalystToCrossdataAdapter.CrossdataExecutionPlan
+import org.openjdk.jmh.annotations._
+
+/**
+  * Translation of an optimized Catalyst plan into the plan handed to native connectors by
+  * [[CatalystToCrossdataAdapter.getConnectorLogicalPlan]].
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class ConnectorLogicalPlanBenchmark {
+
+  @Param(Array("4", "16", "64"))
+  var width: Int = _
+
+  @Param(Array("1", "4"))
+  var numberOfFilters: Int = _
+
+  private var plan: LogicalPlan = _
+  private var projects: Seq[NamedExpression] = _
+  private var filters: Seq[Expression] = _
+
+  @Setup
+  def setup(): Unit = {
+    val xdContext = BenchmarkContext.xdContext
+    val schema = SyntheticData.schema(width)
+    val intColumns = schema.fieldNames.zipWithIndex.collect { case (name, i) if i % 5 == 0 => name }
+    val condition = (0 until numberOfFilters).map { i =>
+      col(intColumns(i % intColumns.length)) > i
+    } reduce (_ && _)
+
+    plan = xdContext.baseRelationToDataFrame(SyntheticRelation(xdContext, schema))
+      .where(condition)
+      .select(schema.fieldNames.map(col): _*)
+      .queryExecution.optimizedPlan
+
+    val PhysicalOperation(projectList, filterList, _) = plan
+    projects = projectList
+    filters = filterList
+  }
+
+  @Benchmark
+  def getConnectorLogicalPlan(): CrossdataExecutionPlan =
+    CatalystToCrossdataAdapter.getConnectorLogicalPlan(plan, projects, filters)
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.benchmarks
+
+import java.nio.ByteBuffer
+import java.util.concurrent.TimeUnit
+
+import com.stratio.crossdata.kryo.CrossdataRegistrator
+import org.apache.spark.SparkConf
+import org.apache.spark.serializer.{KryoSerializer, SerializerInstance}
+import org.apache.spark.sql.Row
+import org.openjdk.jmh.annotations._
+
+/**
+  * Kryo (de)serialization of result rows, as done when they are shuffled or collected, with and without
+  * [[CrossdataRegistrator]]. The classes it registers are checked by `CrossdataRegistratorSpec`.
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+class CrossdataRegistratorBenchmark {
+
+  @Param(Array("false", "true"))
+  var registrator: Boolean = _
+
+  @Param(Array("0", "2"))
+  var nesting: Int = _
+
+  @Param(Array("10000"))
+  var numberOfRows: Int = _
+
+  private var serializer: SerializerInstance = _
+  private var rows: Array[Row] = _
+  private var bytes: ByteBuffer = _
+
+  @Setup
+  def setup(): Unit = {
+    val conf = new SparkConf(false)
+    if (registrator) conf.set("spark.kryo.registrator", classOf[CrossdataRegistrator].getName)
+    serializer = new KryoSerializer(conf).newInstance()
+    rows = SyntheticData.rows(SyntheticData.schema(8, nesting), numberOfRows).toArray
+    bytes = serializer.serialize(rows)
+  }
+
+  @Benchmark
+  def serialize(): ByteBuffer = serializer.serialize(rows)
+
+  @Benchmark
+  def deserialize(): Array[Row] = serializer.deserialize[Array[Row]](bytes.duplicate())
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.crossdata.XDDataFrame
+import org.openjdk.jmh.annotations._
+
+/**
+  * Cost of [[XDDataFrame.flattenedCollect]] compared to a plain collect over a cached table.
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+class FlattenedCollectBenchmark {
+
+  @Param(Array("4", "16"))
+  var width: Int = _
+
+  @Param(Array("0", "1", "2"))
+  var nesting: Int = _
+
+  @Param(Array("1000"))
+  var numberOfRows: Int = _
+
+  private var dataFrame: XDDataFrame = _
+
+  @Setup
+  def setup(): Unit = {
+    val xdContext = BenchmarkContext.xdContext
+    val schema = SyntheticData.schema(width, nesting)
+    val tableName = s"flattened_${width}_${nesting}_$numberOfRows"
+    val rdd = xdContext.sparkContext.parallelize(SyntheticData.rows(schema, numberOfRows))
+    xdContext.createDataFrame(rdd, schema).registerTempTable(tableName)
+    xdContext.cacheTable(tableName)
+    dataFrame = xdContext.sql(s"SELECT * FROM $tableName").asInstanceOf[XDDataFrame]
+    dataFrame.collect()
+  }
+
+  @Benchmark
+  def flattenedCollect(): Array[Row] = dataFrame.flattenedCollect()
+
+  @Benchmark
+  def collect(): Array[Row] = dataFrame.collect()
+
+}
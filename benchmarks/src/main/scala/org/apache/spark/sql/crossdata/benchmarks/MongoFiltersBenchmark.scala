@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import com.mongodb.DBObject
+import com.stratio.crossdata.connector.mongodb.MongoQueryProcessor
+import com.stratio.datasource.mongodb.config.{MongodbConfig, MongodbConfigBuilder}
+import com.stratio.datasource.util.Config
+import org.apache.spark.sql.sources
+import org.apache.spark.sql.sources.{Filter => SourceFilter}
+import org.openjdk.jmh.annotations._
+
+/**
+  * Mongo query generation by [[MongoQueryProcessor.filtersToDBObject]].
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class MongoFiltersBenchmark {
+
+  @Param(Array("1", "4", "16"))
+  var numberOfFilters: Int = _
+
+  private implicit val config: Config = MongodbConfigBuilder()
+    .set(MongodbConfig.Host, List("host:port"))
+    .set(MongodbConfig.Database, "db")
+    .set(MongodbConfig.Collection, "collection")
+    .build()
+
+  private var filters: Array[SourceFilter] = _
+
+  @Setup
+  def setup(): Unit = {
+    val columns = SyntheticData.schema(16).fieldNames
+    filters = Array.tabulate[SourceFilter](numberOfFilters) { i =>
+      val column = columns(i % columns.length)
+      i % 4 match {
+        case 0 => sources.EqualTo(column, s"value$i")
+        case 1 => sources.In(column, Array(i, i + 1, i + 2))
+        case 2 => sources.Or(sources.GreaterThan(column, i), sources.IsNull(column))
+        case _ => sources.Not(sources.LessThan(column, i))
+      }
+    }
+  }
+
+  @Benchmark
+  def filtersToDBObject(): DBObject = MongoQueryProcessor.filtersToDBObject(filters, Map.empty)
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import com.stratio.crossdata.common.serializers.RowSerializer
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.crossdata.serializers.StructTypeSerializer
+import org.apache.spark.sql.types.StructType
+import org.json4s.{DefaultFormats, Extraction, Formats, JValue}
+import org.openjdk.jmh.annotations._
+
+/**
+  * JSON (de)serialization of rows by [[RowSerializer]], as done for every row of an HTTP result.
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class RowSerializerBenchmark {
+
+  @Param(Array("4", "16", "64"))
+  var width: Int = _
+
+  @Param(Array("0", "1", "2"))
+  var nesting: Int = _
+
+  private var row: Row = _
+  private var json: JValue = _
+  private implicit var formats: Formats = _
+
+  @Setup
+  def setup(): Unit = {
+    val schema: StructType = SyntheticData.schema(width, nesting)
+    formats = DefaultFormats + StructTypeSerializer + RowSerializer(schema)
+    row = SyntheticData.row(schema, 42L)
+    json = Extraction.decompose(row)
+  }
+
+  @Benchmark
+  def serialize(): JValue = Extraction.decompose(row)
+
+  @Benchmark
+  def deserialize(): Row = json.extract[Row]
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.benchmarks
+
+import org.apache.spark.rdd.RDD
+import org.apache.spark.sql.{Row, SQLContext}
+import org.apache.spark.sql.sources.{BaseRelation, TableScan}
+import org.apache.spark.sql.types._
+
+import scala.util.Random
+
+/**
+  * Synthetic schemas and rows used by the benchmarks: `width` top level columns cycling over the common primitive
+  * types plus, for every `nesting` level, a struct column and an array column wrapping the level below.
+  */
+object SyntheticData {
+
+  private val primitiveTypes: Seq[DataType] = Seq(IntegerType, StringType, DoubleType, LongType, BooleanType)
+
+  def schema(width: Int, nesting: Int = 0): StructType = {
+    val primitives = (0 until width) map { i =>
+      StructField(s"c$i", primitiveTypes(i % primitiveTypes.size), nullable = true)
+    }
+    val nested = if (nesting > 0) {
+      val child = schema(math.max(width / 4, 2), nesting - 1)
+      Seq(
+        StructField("nested", child, nullable = true),
+        StructField("tags", ArrayType(StringType, containsNull = true), nullable = true)
+      )
+    } else Seq.empty
+    StructType(primitives ++ nested)
+  }
+
+  def row(schema: StructType, seed: Long): Row = {
+    val random = new Random(seed)
+    def value(dataType: DataType): Any = dataType match {
+      case IntegerType => random.nextInt()
+      case StringType => random.alphanumeric.take(12).mkString
+      case DoubleType => random.nextDouble()
+      case LongType => random.nextLong()
+      case BooleanType => random.nextBoolean()
+      case ArrayType(elementType, _) => Seq.fill(3)(value(elementType))
+      case st: StructType => Row.fromSeq(st.fields.map(field => value(field.dataType)))
+    }
+    Row.fromSeq(schema.fields.map(field => value(field.dataType)))
+  }
+
+  def rows(schema: StructType, numberOfRows: Int): Seq[Row] =
+    (0 until numberOfRows).map(i => row(schema, i.toLong))
+
+}
+
+/**
+  * In-memory relation whose logical plan feeds the Crossdata planning code without any datasource behind it.
+  */
+case class SyntheticRelation(sqlContext: SQLContext, schema: StructType, data: Seq[Row] = Seq.empty)
+  extends BaseRelation with TableScan {
+
+  override def buildScan(): RDD[Row] = sqlContext.sparkContext.parallelize(data)
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.benchmarks.load
+
+import java.util.concurrent.TimeUnit
+
+import com.stratio.crossdata.connector.NativeScan
+import org.apache.spark.rdd.RDD
+import org.apache.spark.sql.catalyst.expressions.{Attribute, Literal}
+import org.apache.spark.sql.catalyst.plans.logical.{Limit, LogicalPlan, Project}
+import org.apache.spark.sql.crossdata.benchmarks.SyntheticData
+import org.apache.spark.sql.execution.datasources.LogicalRelation
+import org.apache.spark.sql.sources.{BaseRelation, DataSourceRegister, RelationProvider, TableScan}
+import org.apache.spark.sql.types.StructType
+import org.apache.spark.sql.{Row, SQLContext}
+
+import scala.concurrent.duration._
+import scala.util.Try
+
+/**
+  * Synthetic datasource used by the [[LoadHarness]]:
+  *
+  * {{{
+  *   CREATE TABLE synthetic USING org.apache.spark.sql.crossdata.benchmarks.load
+  *   OPTIONS (rows '1000', width '16', latency '5 ms')
+  * }}}
+  */
+class DefaultSource extends RelationProvider with DataSourceRegister {
+
+  import DefaultSource._
+
+  override def shortName(): String = "synthetic"
+
+  override def createRelation(sqlContext: SQLContext, parameters: Map[String, String]): BaseRelation = {
+    val rows = parameters.get(RowsOption).map(_.toInt).getOrElse(DefaultRows)
+    val width = parameters.get(WidthOption).map(_.toInt).getOrElse(DefaultWidth)
+    val latency = parameters.get(LatencyOption).map(Duration(_)).getOrElse(Duration.Zero)
+    SyntheticNativeRelation(sqlContext, SyntheticData.schema(width), rows, latency)
+  }
+
+}
+
+object DefaultSource {
+  val RowsOption = "rows"
+  val WidthOption = "width"
+  val LatencyOption = "latency"
+
+  val DefaultRows = 1000
+  val DefaultWidth = 16
+}
+
+/**
+  * Relation serving `numberOfRows` synthetic rows after waiting `latency`, which stands for the round trip to a real
+  * datastore. Projections and limits are executed natively; any other plan is left to Spark.
+  */
+case class SyntheticNativeRelation(sqlContext: SQLContext, schema: StructType, numberOfRows: Int, latency: Duration)
+  extends BaseRelation with NativeScan with TableScan {
+
+  private lazy val data: Array[Row] = SyntheticData.rows(schema, numberOfRows).toArray
+
+  override def isSupported(logicalStep: LogicalPlan, wholeLogicalPlan: LogicalPlan): Boolean = logicalStep match {
+    case _: LogicalRelation => true
+    case Project(projectList, _) => projectList.forall(_.isInstanceOf[Attribute])
+    case Limit(Literal(_: Int, _), _) => true
+    case _ => false
+  }
+
+  override def buildScan(optimizedLogicalPlan: LogicalPlan): Option[Array[Row]] = Try {
+    val limit = optimizedLogicalPlan.collectFirst { case Limit(Literal(num: Int, _), _) => num }
+    val indexes = optimizedLogicalPlan.output.map(attribute => schema.fieldIndex(attribute.name))
+    val rows = limit.fold(data)(data.take)
+    simulateLatency()
+    rows.map(row => Row.fromSeq(indexes.map(row.get)))
+  }.toOption
+
+  override def buildScan(): RDD[Row] = {
+    simulateLatency()
+    sqlContext.sparkContext.parallelize(data)
+  }
+
+  private def simulateLatency(): Unit =
+    if (latency > Duration.Zero) TimeUnit.NANOSECONDS.sleep(latency.toNanos)
+
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.benchmarks.load
+
+import java.io.{File, PrintWriter}
+import java.util.concurrent.{CountDownLatch, Executors, TimeUnit}
+
+import com.stratio.crossdata.common.result.ErrorSQLResult
+import com.stratio.crossdata.driver.Driver
+import com.stratio.crossdata.server.CrossdataServer
+import com.typesafe.config.ConfigFactory
+import org.apache.log4j.Logger
+import org.json4s.DefaultFormats
+import org.json4s.jackson.Serialization
+
+import scala.collection.mutable
+import scala.concurrent.duration.FiniteDuration
+import scala.util.{Random, Try}
+
+/**
+  * End-to-end load test: starts a [[CrossdataServer]] in-process backed by the synthetic datasource, drives
+  * concurrent [[com.stratio.crossdata.driver.ClusterClientDriver]] and [[com.stratio.crossdata.driver.HttpDriver]]
+  * sessions with a weighted query mix and reports the throughput and the latency percentiles of every query.
+  *
+  * Settings are read from `load-harness.conf`, e.g.:
+  * {{{
+  *   mvn -pl benchmarks -am -Pload verify -Dcrossdata-load.sessions=32 -Dcrossdata-load.duration=5m
+  * }}}
+  */
+object LoadHarness extends App {
+
+  private val logger = Logger.getLogger(getClass)
+
+  val settings = LoadSettings(ConfigFactory.load("load-harness").getConfig("crossdata-load"))
+
+  val server = new CrossdataServer(Some(settings.serverConfig))
+  server.start()
+
+  try {
+    createSyntheticTable()
+    val summaries = run()
+    println(LatencySummary.prettyReport(summaries))
+    settings.reportFile foreach { path =>
+      val writer = new PrintWriter(new File(path))
+      try writer.write(Serialization.writePretty(summaries)(DefaultFormats)) finally writer.close()
+      logger.info(s"Load report written to $path")
+    }
+  } finally {
+    Try(dropSyntheticTable())
+    Driver.shutdown()
+    server.stop()
+  }
+
+  private def withTcpSession[T](f: Driver => T): T = {
+    val driver = Driver.newSession()
+    try f(driver) finally driver.closeSession()
+  }
+
+  private def createSyntheticTable(): Unit = withTcpSession { driver =>
+    Try(driver.dropTable(settings.table).waitForResult())
+    driver.createTable(
+      settings.table, classOf[DefaultSource].getPackage.getName, None, settings.datasourceOptions
+    ).waitForResult() match {
+      case ErrorSQLResult(message, cause) => throw new RuntimeException(s"Cannot create the synthetic table: $message", cause.orNull)
+      case _ =>
+    }
+  }
+
+  private def dropSyntheticTable(): Unit = withTcpSession(_.dropTable(settings.table).waitForResult())
+
+  private def run(): Seq[LatencySummary] = {
+
+    val sessions: Seq[(String, Driver)] = for {
+      driverName <- settings.drivers
+      _ <- 1 to settings.sessions
+    } yield driverName -> (if (driverName == LoadSettings.Http) Driver.http.newSession() else Driver.newSession())
+
+    val workers = sessions.zipWithIndex map { case ((driverName, driver), seed) =>
+      new LoadWorker(driverName, driver, settings.queries, new Random(seed))
+    }
+
+    val pool = Executors.newFixedThreadPool(workers.size)
+    val finished = new CountDownLatch(workers.size)
+    workers foreach { worker =>
+      pool.execute(new Runnable {
+        override def run(): Unit = try worker.run() finally finished.countDown()
+      })
+    }
+
+    logger.info(s"Warming up ${workers.size} sessions for ${settings.warmup}")
+    TimeUnit.MILLISECONDS.sleep(settings.warmup.toMillis)
+    workers.foreach(_.startMeasuring())
+    logger.info(s"Measuring for ${settings.duration}")
+    TimeUnit.MILLISECONDS.sleep(settings.duration.toMillis)
+    workers.foreach(_.stop())
+
+    finished.await()
+    pool.shutdown()
+    sessions.foreach { case (_, driver) => Try(driver.closeSession()) }
+
+    val byDriverAndQuery = workers.groupBy(_.driverName).toSeq.sortBy(_._1) flatMap { case (driverName, driverWorkers) =>
+      settings.queries map { query =>
+        LatencySummary(
+          driverName,
+          query.name,
+          driverWorkers.flatMap(_.latencies(query.name)),
+          driverWorkers.map(_.errors(query.name)).sum,
+          settings.duration
+        )
+      }
+    }
+    val total = LatencySummary("all", "all", workers.flatMap(_.allLatencies), workers.map(_.allErrors).sum, settings.duration)
+
+    byDriverAndQuery :+ total
+  }
+
+}
+
+/**
+  * Session loop: runs queries picked from the weighted mix, one at a time, until it is stopped. Latencies are only
+  * recorded once the warm-up is over.
+  */
+class LoadWorker(val driverName: String, driver: Driver, queries: Seq[WeightedQuery], random: Random) {
+
+  @volatile private var measuring = false
+  @volatile private var running = true
+
+  private val recorded = queries.map(_.name -> mutable.ArrayBuffer.empty[Long]).toMap
+  private val failed = mutable.Map(queries.map(_.name -> 0L): _*)
+
+  private val totalWeight = queries.map(_.weight).sum
+
+  private def nextQuery(): WeightedQuery = {
+    val target = random.nextInt(totalWeight)
+    val cumulative = queries.scanLeft(0)(_ + _.weight).tail
+    queries(cumulative.indexWhere(target < _))
+  }
+
+  def startMeasuring(): Unit = measuring = true
+
+  def stop(): Unit = running = false
+
+  def run(): Unit = while (running) {
+    val query = nextQuery()
+    val measured = measuring
+    val start = System.nanoTime()
+    val succeeded = Try(driver.sql(query.sql).waitForResult()).map(!_.hasError).getOrElse(false)
+    val elapsed = System.nanoTime() - start
+    if (measured && running) {
+      if (succeeded) recorded(query.name) += elapsed else failed(query.name) += 1
+    }
+  }
+
+  def latencies(queryName: String): Seq[Long] = recorded(queryName)
+
+  def errors(queryName: String): Long = failed(queryName)
+
+  def allLatencies: Seq[Long] = recorded.values.flatten.toSeq
+
+  def allErrors: Long = failed.values.sum
+
+}
+
+case class LatencySummary(
+                           driver: String,
+                           query: String,
+                           requests: Long,
+                           errors: Long,
+                           throughput: Double,
+                           p50Millis: Double,
+                           p99Millis: Double,
+                           p999Millis: Double,
+                           maxMillis: Double
+                         )
+
+object LatencySummary {
+
+  def apply(driver: String, query: String, latencies: Seq[Long], errors: Long, duration: FiniteDuration): LatencySummary = {
+    val sorted = latencies.toArray.sorted
+
+    def percentile(p: Double): Double =
+      if (sorted.isEmpty) 0D
+      else nanosToMillis(sorted(math.max(math.ceil(p * sorted.length).toInt - 1, 0)))
+
+    LatencySummary(
+      driver,
+      query,
+      sorted.length,
+      errors,
+      sorted.length / duration.toUnit(TimeUnit.SECONDS),
+      percentile(0.5),
+      percentile(0.99),
+      percentile(0.999),
+      sorted.lastOption.map(nanosToMillis).getOrElse(0D)
+    )
+  }
+
+  private def nanosToMillis(nanos: Long): Double = nanos / 1e6
+
+  def prettyReport(summaries: Seq[LatencySummary]): String = {
+    val header = f"${"driver"}%-8s ${"query"}%-24s ${"requests"}%10s ${"errors"}%8s ${"req/s"}%10s " +
+      f"${"p50 ms"}%10s ${"p99 ms"}%10s ${"p999 ms"}%10s ${"max ms"}%10s"
+    val lines = summaries map { s =>
+      f"${s.driver}%-8s ${s.query}%-24s ${s.requests}%10d ${s.errors}%8d ${s.throughput}%10.1f " +
+        f"${s.p50Millis}%10.2f ${s.p99Millis}%10.2f ${s.p999Millis}%10.2f ${s.maxMillis}%10.2f"
+    }
+    (header +: lines).mkString("\n")
+  }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.benchmarks.load
+
+import java.util.concurrent.TimeUnit
+
+import com.typesafe.config.Config
+
+import scala.collection.JavaConversions._
+import scala.concurrent.duration._
+import scala.util.Try
+
+case class WeightedQuery(name: String, sql: String, weight: Int)
+
+case class LoadSettings(
+                         sessions: Int,
+                         drivers: Seq[String],
+                         warmup: FiniteDuration,
+                         duration: FiniteDuration,
+                         reportFile: Option[String],
+                         table: String,
+                         datasourceOptions: Map[String, String],
+                         queries: Seq[WeightedQuery],
+                         serverConfig: Config
+                       )
+
+object LoadSettings {
+
+  val Tcp = "tcp"
+  val Http = "http"
+
+  def apply(config: Config): LoadSettings = {
+
+    def finiteDuration(key: String): FiniteDuration =
+      FiniteDuration(config.getDuration(key, TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS)
+
+    val queries = config.getConfigList("queries") map { query =>
+      WeightedQuery(query.getString("name"), query.getString("sql"), Try(query.getInt("weight")).getOrElse(1))
+    }
+
+    val drivers = config.getStringList("drivers").map(_.toLowerCase)
+    require(drivers.nonEmpty && drivers.forall(Set(Tcp, Http)), s"Drivers must be '$Tcp' and/or '$Http'")
+    require(queries.nonEmpty && queries.forall(_.weight > 0), "The query mix needs at least one query with a positive weight")
+
+    LoadSettings(
+      config.getInt("sessions"),
+      drivers,
+      finiteDuration("warmup"),
+      finiteDuration("duration"),
+      Option(config.getString("report-file")).filter(_.nonEmpty),
+      config.getString("datasource.table"),
+      Map(
+        DefaultSource.RowsOption -> config.getInt("datasource.rows").toString,
+        DefaultSource.WidthOption -> config.getInt("datasource.width").toString,
+        DefaultSource.LatencyOption -> s"${config.getDuration("datasource.latency", TimeUnit.MILLISECONDS)} ms"
+      ),
+      queries,
+      config.getConfig("server")
+    )
+  }
+
+}
@@ -16,11 +16,11 @@
 package com.stratio.crossdata.connector.cassandra
 
 
-import com.datastax.driver.core.ResultSet
+import com.datastax.driver.core.{ResultSet, ResultSetFuture, SimpleStatement}
 import com.datastax.spark.connector.CassandraRowMetadata
 import com.stratio.common.utils.components.logger.impl.SparkLoggerComponent
 import com.stratio.crossdata.connector.cassandra.CassandraAttributeRole.{CassandraAttributeRole, ClusteringKey, Function, Indexed, NonIndexed, PartitionKey, Unknown}
-import com.stratio.crossdata.connector.{SQLLikeQueryProcessorUtils, SQLLikeUDFQueryProcessorUtils}
+import com.stratio.crossdata.connector.{RowBatches, SQLLikeQueryProcessorUtils, SQLLikeUDFQueryProcessorUtils}
 import org.apache.spark.sql.cassandra.{CassandraSQLRow, CassandraXDSourceRelation}
 import org.apache.spark.sql.catalyst.expressions.aggregate.Count
 import org.apache.spark.sql.catalyst.expressions.{Alias, Attribute, Expression, Literal, NamedExpression}
@@ -31,9 +31,13 @@ import org.apache.spark.sql.sources.CatalystToCrossdataAdapter._
 import org.apache.spark.sql.sources.{CatalystToCrossdataAdapter, Filter => SourceFilter}
 import org.apache.spark.sql.{Row, sources}
 
+import scala.collection.JavaConversions._
+import scala.util.control.NonFatal
+
 object CassandraQueryProcessor extends SQLLikeQueryProcessorUtils with SQLLikeUDFQueryProcessorUtils {
 
-  val DefaultLimit = 10000
+  // Queries without limit return every row, as their Spark counterpart would
+  val NoLimit = Int.MaxValue
   type ColumnName = String
 
   case class CassandraQueryProcessorContext(udfs: Map[String, NativeUDF]) extends SQLLikeUDFQueryProcessorUtils.ContextWithUDFs
@@ -80,55 +84,99 @@ class CassandraQueryProcessor(cassandraRelation: CassandraXDSourceRelation, logi
 
   import CassandraQueryProcessor._
 
-  def execute(): Option[Array[Row]] = {
-    def annotateRepeatedNames(names: Seq[String]): Seq[String] = {
-      val indexedNames = names zipWithIndex
-      val name2pos = indexedNames.groupBy(_._1).values.flatMap(_.zipWithIndex.map(x => x._1._2 -> x._2)).toMap
-      indexedNames map { case (name, index) => val c = name2pos(index); if (c > 0) s"$name$c" else name }
-    }
+  def execute(): Option[Array[Row]] =
+    try {
+      validatedNativePlan.map { cassandraPlan =>
+        if (cassandraPlan.limit.exists(_ == 0)) {
+          Array.empty[Row]
+        } else {
+          val cqlQuery = buildCQLQuery(cassandraPlan, cassandraPlan.limit.getOrElse(NoLimit))
+          val resultSet = cassandraRelation.connector.withSessionDo { session =>
+            awaitResultSet(session.executeAsync(cqlQuery))
+          }
+          sparkResultFromCassandra(resultColumnNames(cassandraPlan), resultSet)
+        }
 
-    def buildAggregationExpression(names: Expression): String = {
-      names match {
-        case Alias(child, _) => buildAggregationExpression(child)
-        case Count(children) => s"count(${children.map(buildAggregationExpression).mkString(",")})"
-        case Literal(1, _) => "*"
       }
+    } catch {
+      case exc: Exception => log.warn(s"Exception executing the native query $logicalPlan", exc.getMessage); None
     }
 
+  /**
+    * Executes the query fetching `fetchSize` rows per page. As with [[execute]], only the limit of the query caps its
+    * result. The session is kept open until the batches are closed.
+    */
+  def executeInBatches(fetchSize: Int): Option[RowBatches] =
     try {
       validatedNativePlan.map { cassandraPlan =>
         if (cassandraPlan.limit.exists(_ == 0)) {
-          Array.empty[Row]
+          RowBatches(Iterator.empty)
         } else {
-          val projectsString: Seq[String] = cassandraPlan.basePlan match {
-            case SimpleLogicalPlan(projects, _, _, _) =>
-              projects.map(_.toString())
-
-            case AggregationLogicalPlan(projects, groupingExpression, _, _, _) =>
-              require(groupingExpression.isEmpty)
-              projects.map(buildAggregationExpression)
+          val statement = new SimpleStatement(buildCQLQuery(cassandraPlan, cassandraPlan.limit.getOrElse(NoLimit)))
+          statement.setFetchSize(fetchSize)
+          val session = cassandraRelation.connector.openSession()
+          try {
+            val resultSet = awaitResultSet(session.executeAsync(statement))
+            val cassandraRowMetadata = CassandraRowMetadata.fromColumnNames(resultColumnNames(cassandraPlan))
+            // Following pages are fetched by the driver as the rows of the current one are consumed
+            val batches = resultSet.iterator().grouped(fetchSize) map { rows =>
+              rows.map(CassandraSQLRow.fromJavaDriverRow(_, cassandraRowMetadata): Row)
+            }
+            RowBatches(batches, () => session.close())
+          } catch {
+            case NonFatal(exception) =>
+              session.close()
+              throw exception
           }
-
-          val cqlQuery = buildNativeQuery(
-            cassandraRelation.tableDef.name,
-            projectsString,
-            cassandraPlan.filters,
-            cassandraPlan.limit.getOrElse(CassandraQueryProcessor.DefaultLimit),
-            cassandraPlan.udfsMap map { case (k, v) => k.toString -> v }
-          )
-          val resultSet = cassandraRelation.connector.withSessionDo { session =>
-            session.execute(cqlQuery)
-          }
-          sparkResultFromCassandra(annotateRepeatedNames(cassandraPlan.projects.map(_.name)).toArray, resultSet)
         }
-
       }
     } catch {
       case exc: Exception => log.warn(s"Exception executing the native query $logicalPlan", exc.getMessage); None
     }
 
+  private[this] def buildCQLQuery(cassandraPlan: CassandraPlan, limit: Int): String = {
+    def buildAggregationExpression(names: Expression): String = {
+      names match {
+        case Alias(child, _) => buildAggregationExpression(child)
+        case Count(children) => s"count(${children.map(buildAggregationExpression).mkString(",")})"
+        case Literal(1, _) => "*"
+      }
+    }
+
+    val projectsString: Seq[String] = cassandraPlan.basePlan match {
+      case SimpleLogicalPlan(projects, _, _, _) =>
+        projects.map(_.toString())
+
+      case AggregationLogicalPlan(projects, groupingExpression, _, _, _) =>
+        require(groupingExpression.isEmpty)
+        projects.map(buildAggregationExpression)
+    }
+
+    buildNativeQuery(
+      cassandraRelation.tableDef.name,
+      projectsString,
+      cassandraPlan.filters,
+      limit,
+      cassandraPlan.udfsMap map { case (k, v) => k.toString -> v }
+    )
   }
 
+  private[this] def resultColumnNames(cassandraPlan: CassandraPlan): Array[ColumnName] = {
+    val names = cassandraPlan.projects.map(_.name)
+    val indexedNames = names zipWithIndex
+    val name2pos = indexedNames.groupBy(_._1).values.flatMap(_.zipWithIndex.map(x => x._1._2 -> x._2)).toMap
+    indexedNames.map { case (name, index) => val c = name2pos(index); if (c > 0) s"$name$c" else name }.toArray
+  }
+
+  // Unlike `Session.execute`, waiting for an async result can be interrupted (e.g: the query gets cancelled)
+  private[this] def awaitResultSet(futureResultSet: ResultSetFuture): ResultSet =
+    try futureResultSet.get() catch {
+      case interrupted: InterruptedException =>
+        futureResultSet.cancel(true)
+        Thread.currentThread().interrupt()
+        throw interrupted
+    }
+
 
   def validatedNativePlan: Option[CassandraPlan] = {
     lazy val limit: Option[Int] = logicalPlan.collectFirst { case Limit(Literal(num: Int, _), _) => num }
@@ -32,7 +32,7 @@ import com.datastax.spark.connector.writer.{SqlRowWriter, WriteConf}
 import com.datastax.spark.connector.{ColumnName, ColumnRef, FunctionCallRef, SomeColumns, _}
 import com.stratio.common.utils.components.logger.impl.SparkLoggerComponent
 import com.stratio.crossdata.connector.cassandra.CassandraQueryProcessor
-import com.stratio.crossdata.connector.{NativeFunctionExecutor, NativeScan}
+import com.stratio.crossdata.connector.{NativeBatchScan, NativeFunctionExecutor, RowBatches}
 import org.apache.spark.rdd.RDD
 import org.apache.spark.sql.cassandra.DataTypeConverter.toStructField
 import org.apache.spark.sql.catalyst.CatalystTypeConverters
@@ -63,10 +63,15 @@ class CassandraXDSourceRelation(tableRef: TableRef,
   with InsertableRelation
   with PrunedFilteredScan
   with NativeFunctionExecutor
-  with NativeScan with SparkLoggerComponent {
+  with NativeBatchScan with SparkLoggerComponent {
 
   // NativeScan implementation ~~
 
+  override def nativeIdentity: String = {
+    val hosts = connector.conf.hosts.map(_.getHostAddress).toSeq.sorted.mkString(",")
+    s"${getClass.getName}@$hosts/${tableRef.cluster.getOrElse("")}/${tableRef.keyspace}.${tableRef.table}"
+  }
+
   override def buildScan(optimizedLogicalPlan: LogicalPlan): Option[Array[Row]] = {
     logDebug(s"Processing ${optimizedLogicalPlan.toString()}")
     val queryExecutor = CassandraQueryProcessor(this, optimizedLogicalPlan)
@@ -83,6 +88,23 @@ class CassandraXDSourceRelation(tableRef: TableRef,
 
   }
 
+  override def buildBatchScan(optimizedLogicalPlan: LogicalPlan, fetchSize: Int): Option[RowBatches] = {
+    logDebug(s"Processing ${optimizedLogicalPlan.toString()} in batches of $fetchSize rows")
+    val queryExecutor = CassandraQueryProcessor(this, optimizedLogicalPlan)
+
+    val toCatalyst = CatalystTypeConverters.createToCatalystConverter(optimizedLogicalPlan.schema)
+    val toScala = CatalystTypeConverters.createToScalaConverter(optimizedLogicalPlan.schema)
+
+    queryExecutor.executeInBatches(fetchSize) map { batches =>
+      val converted = batches map { rows =>
+        rows map { row =>
+          toScala(toCatalyst(row)).asInstanceOf[Row]
+        }
+      }
+      RowBatches(converted, () => batches.close())
+    }
+  }
+
   override def isSupported(logicalStep: LogicalPlan, wholeLogicalPlan: LogicalPlan): Boolean = logicalStep match {
     case ln: LeafNode => true // TODO leafNode == LogicalRelation(xdSourceRelation)
     case un: UnaryNode => un match {
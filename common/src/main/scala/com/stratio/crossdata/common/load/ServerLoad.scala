@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.common.load
+
+/**
+  * Lightweight load signal periodically published by each Crossdata server.
+  *
+  * @param serverId Cluster address of the server.
+  * @param entryPath Path of the actor forwarding commands to that server alone, it is registered in the
+  *                  cluster client receptionist so drivers can choose which server runs their queries.
+  * @param runningJobs Queries being run by a job worker.
+  * @param queuedJobs Queries waiting for a job worker.
+  * @param heapUsed Bytes of heap in use.
+  * @param heapMax Maximum bytes of heap.
+  * @param activeStages Spark stages being run by the server's Spark context.
+  * @param timestamp Time, in milliseconds, when the load was sampled.
+  */
+case class ServerLoad(
+                       serverId: String,
+                       entryPath: String,
+                       runningJobs: Int,
+                       queuedJobs: Int,
+                       heapUsed: Long,
+                       heapMax: Long,
+                       activeStages: Int,
+                       timestamp: Long
+                     ) {
+
+  def heapUsage: Double = if (heapMax > 0) heapUsed.toDouble / heapMax else 0.0
+
+  /**
+    * Figure used to compare servers, the lower the better: Queued queries count twice as they are not even being
+    * run yet, active stages slightly break ties between servers running the same number of queries and heap usage
+    * only makes a difference once the heap is almost full.
+    */
+  def score: Double =
+    runningJobs + 2.0 * queuedJobs + 0.1 * activeStages + (if (heapUsage > 0.8) 10.0 * (heapUsage - 0.8) else 0.0)
+
+  def isStale(now: Long, maxAgeMillis: Long): Boolean = now - timestamp > maxAgeMillis
+
+}
+
+object ServerLoad {
+
+  def leastLoaded(loads: Iterable[ServerLoad]): Option[ServerLoad] =
+    if (loads.isEmpty) None else Some(loads.minBy(_.score))
+
+}
@@ -17,10 +17,13 @@ package com.stratio.crossdata.common
 
 import java.util.UUID
 
+import akka.actor.ActorRef
 import akka.cluster.ClusterEvent.CurrentClusterState
-import com.stratio.crossdata.common.result.SQLResult
+import com.stratio.crossdata.common.load.ServerLoad
+import com.stratio.crossdata.common.result.{QueryProfile, QueryStatus, ResultPage, RowBatch, SQLResult}
 import com.stratio.crossdata.common.security.Session
 import com.typesafe.config.Config
+import org.apache.spark.sql.types.StructType
 
 import scala.collection._
 import scala.concurrent.duration.FiniteDuration
@@ -33,9 +36,17 @@ trait Command {
 case class SQLCommand private(sql: String,
                                                  queryId: UUID = UUID.randomUUID(),
                                                  flattenResults: Boolean = false,
-                                                 timeout: Option[FiniteDuration] = None
+                                                 timeout: Option[FiniteDuration] = None,
+                                                 resultChunking: Option[ResultChunking] = None,
+                                                 columnarResults: Boolean = false,
+                                                 parameters: Option[Seq[Any]] = None,
+                                                 asynchronous: Boolean = false,
+                                                 maxRows: Option[Int] = None, // Limit applied by the server
+                                                 profile: Boolean = false // Whether the result carries a QueryProfile
                                                 ) extends Command {
 
+  require(maxRows.forall(_ > 0), "The maximum number of rows must be positive")
+
   def this(query: String,
            retrieveColNames: Boolean,
            timeoutDuration: FiniteDuration
@@ -47,9 +58,40 @@ case class SQLCommand private(sql: String,
 
 }
 
+/**
+  * Ordered SQL statements executed one after another, within the same session, by a single server.
+  *
+  * @param stopOnError Whether the statements following a failed one are skipped.
+  * @param streamResults Whether the result of each statement is sent as a [[SQLBatchStatementReply]] as soon as it
+  *                      completes. If so, the final [[SQLBatchReply]] doesn't carry them again.
+  * @param timeout Timeout of each statement.
+  */
+case class SQLBatchCommand(statements: Seq[String],
+                           stopOnError: Boolean = true,
+                           streamResults: Boolean = false,
+                           flattenResults: Boolean = false,
+                           timeout: Option[FiniteDuration] = None
+                          ) extends Command {
+  require(statements.nonEmpty, "A batch requires at least one statement")
+}
 
+/**
+  * Asks the server to send the result set as a sequence of [[SQLResultChunk]] followed by a [[SQLResultEnd]]
+  * instead of a single [[SQLReply]].
+  *
+  * @param chunkSize Maximum number of rows per chunk.
+  * @param initialCredits Number of chunks the server is allowed to send before receiving any [[SQLResultChunkAck]].
+  */
+case class ResultChunking(chunkSize: Int, initialCredits: Int) {
+  require(chunkSize > 0 && initialCredits > 0, "Both the chunk size and the initial credits must be positive")
+}
+
+/**
+  * @param digest SHA-256 of the jar contents, servers which have already added a jar with the same digest skip it.
+  */
 case class AddJARCommand(path: String, hdfsConfig: Option[Config] = None,
-                         timeout: Option[FiniteDuration] = None, toClassPath:Option[Boolean]= None
+                         timeout: Option[FiniteDuration] = None, toClassPath:Option[Boolean]= None,
+                         digest: Option[String] = None
                         ) extends Command {
   def this(
             jarpath: String,
@@ -93,12 +135,26 @@ case class OpenSessionCommand() extends Command
 
 case class CloseSessionCommand() extends Command
 
+// Asks for the latest load reported by each server, it doesn't need a session.
+private[crossdata] case class ServerLoadsCommand() extends Command
+
 trait ControlCommand extends Command
 
 private[crossdata] case class GetJobStatus() extends ControlCommand
 
 private[crossdata] case class CancelQueryExecution(queryId: UUID) extends ControlCommand
 
+// Asks for the status of a query submitted with `SQLCommand.asynchronous`.
+private[crossdata] case class GetQueryStatus(queryId: UUID) extends ControlCommand
+
+// Asks for up to `maxRows` rows, starting at `offset`, of the result of a query submitted with `SQLCommand.asynchronous`.
+private[crossdata] case class FetchQueryResult(queryId: UUID, offset: Long, maxRows: Int) extends ControlCommand {
+  require(offset >= 0 && maxRows > 0, "The offset cannot be negative and at least one row must be fetched")
+}
+
+// Grants the producer of a chunked result (see [[SQLResultChunk]]) permission to send `credits` more chunks.
+private[crossdata] case class SQLResultChunkAck(requestId: UUID, credits: Int)
+
 /*
   Note that this message implies that the server trust the client in regard to the relation between the session id
    and the user. This assumption will be taken for granted until the model of session management changes from
@@ -116,6 +172,46 @@ private[crossdata] case class QueryCancelledReply(requestId: UUID) extends Serve
 
 private[crossdata] case class SQLReply(requestId: UUID, sqlResult: SQLResult) extends ServerReply
 
+// Acknowledges a query submitted with `SQLCommand.asynchronous`, its result is kept by the server.
+private[crossdata] case class QuerySubmittedReply(requestId: UUID, queryId: UUID) extends ServerReply
+
+private[crossdata] case class QueryStatusReply(requestId: UUID, queryId: UUID, status: QueryStatus) extends ServerReply
+
+private[crossdata] case class QueryResultPageReply(requestId: UUID, queryId: UUID, page: ResultPage) extends ServerReply
+
+/**
+  * Partial result of a query executed with [[ResultChunking]].
+  *
+  * @param requestId Identifier of the request whose result is being sent.
+  * @param chunkIndex Position of this chunk within the result, starting at 0.
+  * @param schema Schema of the whole result set, it is only sent with the first chunk (and with [[SQLResultEnd]]).
+  * @param batch Rows within this chunk, they are columnar encoded when requested by [[SQLCommand.columnarResults]].
+  * @param producer Actor waiting for [[SQLResultChunkAck]]s in order to keep on sending chunks.
+  */
+private[crossdata] case class SQLResultChunk(
+                                              requestId: UUID,
+                                              chunkIndex: Int,
+                                              schema: Option[StructType],
+                                              batch: RowBatch,
+                                              producer: ActorRef) extends ServerReply
+
+// Last message of a chunked result: no more [[SQLResultChunk]]s will be sent for `requestId`.
+private[crossdata] case class SQLResultEnd(requestId: UUID,
+                                           schema: StructType,
+                                           numberOfRows: Long,
+                                           profile: Option[QueryProfile] = None) extends ServerReply
+
+// Result of the statement at position `index` of a [[SQLBatchCommand]] with `streamResults`.
+private[crossdata] case class SQLBatchStatementReply(requestId: UUID, index: Int, result: SQLResult) extends ServerReply
+
+/**
+  * Last reply to a [[SQLBatchCommand]].
+  *
+  * @param results Result of each executed statement, in order. Empty when they have already been streamed.
+  * @param executed Number of executed statements, the rest were skipped after an error or a cancellation.
+  */
+private[crossdata] case class SQLBatchReply(requestId: UUID, results: Seq[SQLResult], executed: Int) extends ServerReply
+
 /**
   * This class encapsulates the information about the state of the Crossdata cluster.
   *
@@ -128,6 +224,8 @@ private[crossdata] case class ClusterStateReply(
                                                  clusterState: CurrentClusterState,
                                                  sessionCluster: Set[String] = Set.empty[String]) extends ServerReply
 
+private[crossdata] case class ServerLoadsReply(requestId: UUID, loads: Seq[ServerLoad]) extends ServerReply
+
 private[crossdata] case class OpenSessionReply(requestId: UUID, isOpen: Boolean) extends ServerReply
 
 private[crossdata] case class AddHdfsFileReply(requestId: UUID, hdfsRoute: String) extends ServerReply
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.common.metrics
+
+import com.codahale.metrics.MetricRegistry.name
+import com.codahale.metrics.RatioGauge.Ratio
+import com.codahale.metrics._
+
+/**
+  * Metrics gathered by Crossdata within this JVM.
+  *
+  * Spark instantiates its metric sources by reflection, so the instrumented code records its metrics here and
+  * `XDMetricsSource` exposes them through the sinks configured in `xdmetrics.properties`. Every metric is created
+  * along with this object because sources copy the metrics of a registry when they are registered.
+  */
+object XDMetrics {
+
+  val registry: MetricRegistry = new MetricRegistry()
+
+  // Queries run by the server, from their submission to the delivery of their results
+  val queryLatency: Timer = registry.timer(name("query", "latency"))
+  val failedQueries: Counter = registry.counter(name("query", "failed"))
+  val cancelledQueries: Counter = registry.counter(name("query", "cancelled"))
+
+  // Execution engine resolving each query
+  val nativeExecutions: Counter = registry.counter(name("execution", "native"))
+  val sparkExecutions: Counter = registry.counter(name("execution", "spark"))
+  val nativeFallbacks: Counter = registry.counter(name("execution", "nativeFallback"))
+  // Executions resolving natively only some subtrees of the plan, Spark resolves the rest
+  val hybridExecutions: Counter = registry.counter(name("execution", "hybrid"))
+
+  // Native executions failing or lasting too long, and the ones skipped while the circuit breaker of a relation is open
+  val nativeFailures: Counter = registry.counter(name("execution", "nativeFailures"))
+  val nativeSlowExecutions: Counter = registry.counter(name("execution", "nativeSlow"))
+  val nativeSkipped: Counter = registry.counter(name("execution", "nativeSkipped"))
+
+  registry.register(name("execution", "nativeHitRatio"), ratio(nativeExecutions, sparkExecutions))
+
+  // Relation lookups through the catalog chain. Temporary catalogs cache the relations of the persistent ones
+  val temporaryCatalogLookup: Timer = registry.timer(name("catalog", "lookup", "temporary"))
+  val persistentCatalogLookup: Timer = registry.timer(name("catalog", "lookup", "persistent"))
+  val streamingCatalogLookup: Timer = registry.timer(name("catalog", "lookup", "streaming"))
+  val catalogCacheHits: Counter = registry.counter(name("catalog", "cache", "hits"))
+  val catalogCacheMisses: Counter = registry.counter(name("catalog", "cache", "misses"))
+
+  registry.register(name("catalog", "cache", "hitRatio"), ratio(catalogCacheHits, catalogCacheMisses))
+
+  // Server activity
+  val activeSessions: Counter = registry.counter(name("server", "sessions", "active"))
+  val activeJobs: Counter = registry.counter(name("server", "jobs", "active"))
+
+  // Messages serialized to be sent through Akka remoting
+  val serializationTime: Timer = registry.timer(name("serialization", "time"))
+  val serializedBytes: Histogram = registry.histogram(name("serialization", "bytes"))
+
+  def time[T](timer: Timer)(f: => T): T = {
+    val context = timer.time()
+    try f finally context.stop()
+  }
+
+  private def ratio(hits: Counter, misses: Counter): RatioGauge = new RatioGauge {
+    override def getRatio: Ratio = {
+      val hitCount = hits.getCount
+      Ratio.of(hitCount, hitCount + misses.getCount)
+    }
+  }
+
+}
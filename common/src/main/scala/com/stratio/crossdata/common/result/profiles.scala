@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.common.result
+
+/**
+  * Time spent by a query in one of its phases, see [[QueryProfile.Phases]].
+  */
+case class PhaseTiming(phase: String, millis: Double)
+
+/**
+  * Where the time of a query went and what it produced. It is only returned when requested by the query command.
+  *
+  * @param phases Time spent in each phase, in the order the phases were started. Phases may be nested: analysis
+  *               includes authorization and optimization includes the global index phase, which runs a query itself.
+  * @param rows Rows of the result.
+  * @param bytes Size of the result once encoded by the server.
+  * @param execution Engine which produced the result, see [[QueryProfile.Executions]].
+  * @param connector Relation which the query was executed, or tried to be executed, natively by.
+  * @param fallbackReason Why a query over a native relation was executed by Spark.
+  */
+case class QueryProfile(
+                         phases: Seq[PhaseTiming],
+                         rows: Long,
+                         bytes: Long,
+                         execution: Option[String] = None,
+                         connector: Option[String] = None,
+                         fallbackReason: Option[String] = None
+                       ) {
+
+  def totalMillis(phase: String): Double = phases.filter(_.phase == phase).map(_.millis).sum
+
+  def prettyProfile: Array[String] = {
+    val summary = Seq(
+      Some(s"Execution: ${execution.getOrElse("unknown")}"),
+      connector.map(c => s"Connector: $c"),
+      fallbackReason.map(r => s"Fallback reason: $r"),
+      Some(s"Rows: $rows, bytes: $bytes")
+    ).flatten
+    summary ++ phases.map(timing => f"  ${timing.phase}%-15s ${timing.millis}%10.2f ms") toArray
+  }
+}
+
+object QueryProfile {
+
+  object Phases {
+    val Parsing = "parsing"
+    val Authorization = "authorization"
+    val Analysis = "analysis"
+    val Optimization = "optimization"
+    val GlobalIndex = "globalIndex"
+    val Native = "native"
+    val Spark = "spark"
+    val Flattening = "flattening"
+    val Serialization = "serialization"
+  }
+
+  object Executions {
+    val Native = "native"
+    val Spark = "spark"
+    val Hybrid = "hybrid"
+    val Cache = "cache"
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.common.result
+
+/**
+  * Lifecycle of a query submitted asynchronously.
+  */
+object QueryState extends Enumeration {
+
+  type State = Value
+  val Pending, Running, Completed, Cancelled, Failed = Value
+}
+
+/**
+  * Snapshot of a query submitted asynchronously.
+  *
+  * @param state Current state of the query.
+  * @param completedStages Spark stages the query has already finished.
+  * @param totalStages Spark stages submitted so far by the query, they might increase while it is running.
+  * @param producedRows Rows of the result kept by the server, there are none until the query is completed.
+  * @param error Cause of the failure of the query, if any.
+  * @param completedTasks Tasks of the submitted stages which have already finished.
+  * @param totalTasks Tasks of the submitted stages.
+  */
+case class QueryStatus(
+                        state: QueryState.State,
+                        completedStages: Int,
+                        totalStages: Int,
+                        producedRows: Long,
+                        error: Option[String] = None,
+                        completedTasks: Int = 0,
+                        totalTasks: Int = 0
+                      ) {
+  def isFinished: Boolean = state != QueryState.Pending && state != QueryState.Running
+
+  /**
+    * Fraction, between 0 and 1, of the work done by the query so far. Stages submitted later on might make it decrease.
+    */
+  def progress: Double =
+    if (state == QueryState.Completed) 1.0
+    else if (totalTasks > 0) completedTasks.toDouble / totalTasks
+    else 0.0
+}
+
+/**
+  * Slice of the result of a query submitted asynchronously.
+  *
+  * @param result Rows of the page or the reason why it couldn't be fetched.
+  * @param offset Position of the first row of the page within the whole result.
+  * @param totalRows Number of rows of the whole result.
+  */
+case class ResultPage(result: SQLResult, offset: Long, totalRows: Long) {
+  def isLast: Boolean = result.hasError || offset + result.resultSet.length >= totalRows
+}
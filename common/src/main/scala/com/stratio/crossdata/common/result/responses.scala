@@ -41,6 +41,12 @@ case class SQLResponse(id: UUID, sqlResult: Future[SQLResult]) extends Response
 
   def cancelCommand(): Future[QueryCancelledReply] =
     throw new RuntimeException("The query cannot be cancelled. Use sql(query).cancelCommand")
+
+  /**
+    * Status, including the progress, of the query while it is running.
+    */
+  def status(): Future[QueryStatus] =
+    throw new RuntimeException("The query status is not available. Use sql(query).status")
 }
 
 object SQLResponse {
@@ -15,6 +15,7 @@
  */
 package com.stratio.crossdata.common.result
 
+import com.stratio.crossdata.common.serializers.ColumnarRowsCodec
 import org.apache.commons.lang3.StringUtils
 import org.apache.spark.sql.Row
 import org.apache.spark.sql.types.StructType
@@ -83,7 +84,12 @@ sealed trait SQLResult extends Result {
   }
 }
 
-case class SuccessfulSQLResult(resultSet: Array[Row], schema: StructType) extends SQLResult {
+/**
+  * @param profile Profile of the query, it is only present when requested by the query command.
+  */
+case class SuccessfulSQLResult(resultSet: Array[Row],
+                               schema: StructType,
+                               profile: Option[QueryProfile] = None) extends SQLResult {
   val hasError = false
 }
 
@@ -96,9 +102,51 @@ case class ErrorSQLResult(message: String, cause: Option[Throwable] = None) exte
     cause.map(throwable => new RuntimeException(message, throwable)).getOrElse(new RuntimeException(message))
 }
 
+/**
+  * Error of a query the server refused to run because of its admission limits, clients may retry it later.
+  */
+class RejectedSQLResult(message: String) extends ErrorSQLResult(message) {
+  override def toString: String = s"RejectedSQLResult($message)"
+}
+
+object RejectedSQLResult {
+  def apply(message: String): RejectedSQLResult = new RejectedSQLResult(message)
+  def unapply(result: RejectedSQLResult): Option[String] = Some(result.message)
+}
+
+
+
 
 
 
 
 
+/**
+  * Set of rows belonging to a result whose schema is sent apart.
+  */
+sealed trait RowBatch extends Serializable {
+  def numberOfRows: Int
+  def rows(schema: StructType): Array[Row]
+}
+
+object RowBatch {
+  def apply(schema: StructType, rows: Array[Row], columnar: Boolean): RowBatch =
+    if (columnar) ColumnarRowBatch(rows.length, ColumnarRowsCodec.encode(schema, rows))
+    else PlainRowBatch(rows)(schema)
+}
 
+/**
+  * @param schema Schema of the rows, it is only used to encode them when the batch is sent apart from its schema and
+  *               it is not serialized along with them.
+  */
+case class PlainRowBatch(resultSet: Array[Row])(@transient private[crossdata] val schema: StructType) extends RowBatch {
+  override def numberOfRows: Int = resultSet.length
+  override def rows(schema: StructType): Array[Row] = resultSet
+}
+
+/**
+  * Rows encoded by [[ColumnarRowsCodec]] which are just decoded when requested.
+  */
+case class ColumnarRowBatch(numberOfRows: Int, encoded: Array[Byte]) extends RowBatch {
+  override def rows(schema: StructType): Array[Row] = ColumnarRowsCodec.decode(schema, encoded)
+}
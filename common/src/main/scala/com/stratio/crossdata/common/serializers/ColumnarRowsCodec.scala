@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.common.serializers
+
+import java.io._
+import java.nio.charset.StandardCharsets
+
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.catalyst.expressions.GenericRowWithSchema
+import org.apache.spark.sql.catalyst.util.{ArrayData, DateTimeUtils, MapData}
+import org.apache.spark.sql.types._
+
+import scala.collection.mutable
+
+/**
+  * Binary columnar encoding of a set of rows sharing a known schema. The schema itself is not encoded.
+  *
+  * Layout: number of rows (int) followed by, for each column, a null bitmap (one bit per row) and
+  * the non-null values of the column written one after the other. Primitive columns are thus written as
+  * plain arrays of their fixed-size values whereas nested values (arrays, maps and structs) are
+  * recursively encoded cell by cell.
+  */
+object ColumnarRowsCodec {
+
+  private type ValueWriter = (DataOutputStream, Any) => Unit
+  private type ColumnWriter = (DataOutputStream, Row, Int) => Unit
+  private type ValueReader = DataInputStream => Any
+  private type ValueSize = Any => Long
+
+  def encode(schema: StructType, rows: Array[Row]): Array[Byte] = {
+
+    val bytes = new ByteArrayOutputStream()
+    val out = new DataOutputStream(bytes)
+
+    out.writeInt(rows.length)
+
+    for ((field, idx) <- schema.fields.zipWithIndex) {
+      out.write(nullBitmap(rows, idx))
+      val writeCell = columnWriter(field.dataType)
+      var i = 0
+      while (i < rows.length) {
+        val row = rows(i)
+        if (!row.isNullAt(idx)) writeCell(out, row, idx)
+        i += 1
+      }
+    }
+
+    out.flush()
+    bytes.toByteArray
+  }
+
+  /**
+    * Size in bytes of the encoding of the given rows, computed without encoding them. It is exact for every type
+    * except user defined types, whose size is approximated by their default size.
+    */
+  def encodedSize(schema: StructType, rows: Array[Row]): Long = {
+    var size = 4L + schema.length.toLong * bitmapSize(rows.length)
+    for ((field, idx) <- schema.fields.zipWithIndex) {
+      val cellSize = valueSize(field.dataType)
+      var i = 0
+      while (i < rows.length) {
+        val row = rows(i)
+        if (!row.isNullAt(idx)) size += cellSize(row.get(idx))
+        i += 1
+      }
+    }
+    size
+  }
+
+  def decode(schema: StructType, encoded: Array[Byte]): Array[Row] = {
+
+    val in = new DataInputStream(new ByteArrayInputStream(encoded))
+
+    val numberOfRows = in.readInt()
+    val values = Array.fill(numberOfRows)(new Array[Any](schema.length))
+
+    for ((field, idx) <- schema.fields.zipWithIndex) {
+      val nulls = new Array[Byte](bitmapSize(numberOfRows))
+      in.readFully(nulls)
+      val readCell = valueReader(field.dataType)
+      var i = 0
+      while (i < numberOfRows) {
+        if (!isNull(nulls, i)) values(i)(idx) = readCell(in)
+        i += 1
+      }
+    }
+
+    values.map(new GenericRowWithSchema(_, schema))
+  }
+
+  private def bitmapSize(numberOfRows: Int): Int = (numberOfRows + 7) / 8
+
+  private def isNull(bitmap: Array[Byte], pos: Int): Boolean = (bitmap(pos >> 3) & (1 << (pos & 7))) != 0
+
+  private def nullBitmap(rows: Array[Row], idx: Int): Array[Byte] = {
+    val bitmap = new Array[Byte](bitmapSize(rows.length))
+    var i = 0
+    while (i < rows.length) {
+      if (rows(i).isNullAt(idx)) bitmap(i >> 3) = (bitmap(i >> 3) | (1 << (i & 7))).toByte
+      i += 1
+    }
+    bitmap
+  }
+
+  // Primitive columns avoid the generic (boxed) path
+  private def columnWriter(dataType: DataType): ColumnWriter = dataType match {
+    case BooleanType => (out, row, idx) => out.writeBoolean(row.getBoolean(idx))
+    case ByteType => (out, row, idx) => out.writeByte(row.getByte(idx))
+    case ShortType => (out, row, idx) => out.writeShort(row.getShort(idx))
+    case IntegerType => (out, row, idx) => out.writeInt(row.getInt(idx))
+    case LongType => (out, row, idx) => out.writeLong(row.getLong(idx))
+    case FloatType => (out, row, idx) => out.writeFloat(row.getFloat(idx))
+    case DoubleType => (out, row, idx) => out.writeDouble(row.getDouble(idx))
+    case other =>
+      val writeValue = valueWriter(other)
+      (out, row, idx) => writeValue(out, row.get(idx))
+  }
+
+  private def valueWriter(dataType: DataType): ValueWriter = dataType match {
+    case BooleanType => (out, v) => out.writeBoolean(v.asInstanceOf[Boolean])
+    case ByteType => (out, v) => out.writeByte(v.asInstanceOf[Byte])
+    case ShortType => (out, v) => out.writeShort(v.asInstanceOf[Short])
+    case IntegerType => (out, v) => out.writeInt(v.asInstanceOf[Int])
+    case LongType => (out, v) => out.writeLong(v.asInstanceOf[Long])
+    case FloatType => (out, v) => out.writeFloat(v.asInstanceOf[Float])
+    case DoubleType => (out, v) => out.writeDouble(v.asInstanceOf[Double])
+    case StringType => (out, v) => writeBytes(out, v.toString.getBytes(StandardCharsets.UTF_8))
+    case BinaryType => (out, v) => writeBytes(out, v.asInstanceOf[Array[Byte]])
+    case _: DecimalType => (out, v) =>
+      val decimal = v match {
+        case d: Decimal => d.toJavaBigDecimal
+        case d: BigDecimal => d.bigDecimal
+        case d: java.math.BigDecimal => d
+      }
+      writeBytes(out, decimal.toString.getBytes(StandardCharsets.UTF_8))
+    case DateType => (out, v) =>
+      out.writeInt(v match {
+        case d: java.sql.Date => DateTimeUtils.fromJavaDate(d)
+        case days: Int => days
+      })
+    case TimestampType => (out, v) =>
+      out.writeLong(v match {
+        case ts: java.sql.Timestamp => DateTimeUtils.fromJavaTimestamp(ts)
+        case micros: Long => micros
+      })
+    case ArrayType(elementType, _) =>
+      val writeElement = nullableValueWriter(elementType)
+      (out, v) => {
+        val elements: Seq[Any] = v match {
+          case arrayData: ArrayData => arrayData.array
+          case seq: Seq[_] => seq
+          case array: Array[_] => array
+        }
+        out.writeInt(elements.length)
+        elements.foreach(writeElement(out, _))
+      }
+    case MapType(keyType, valueType, _) =>
+      val writeKey = valueWriter(keyType)
+      val writeMapValue = nullableValueWriter(valueType)
+      (out, v) => {
+        val entries: Seq[(Any, Any)] = v match {
+          case mapData: MapData => mapData.keyArray.array zip mapData.valueArray.array
+          case map: scala.collection.Map[_, _] => map.toSeq
+        }
+        out.writeInt(entries.length)
+        entries foreach { case (key, value) =>
+          writeKey(out, key)
+          writeMapValue(out, value)
+        }
+      }
+    case StructType(fields) =>
+      val writeFields = fields.map(field => nullableValueWriter(field.dataType))
+      (out, v) => {
+        val row = v.asInstanceOf[Row]
+        for (idx <- writeFields.indices) writeFields(idx)(out, row.get(idx))
+      }
+    case _ => // e.g: User defined types
+      (out, v) => {
+        val bytes = new ByteArrayOutputStream()
+        val objOut = new ObjectOutputStream(bytes)
+        objOut.writeObject(v)
+        objOut.close()
+        writeBytes(out, bytes.toByteArray)
+      }
+  }
+
+  private def nullableValueWriter(dataType: DataType): ValueWriter = {
+    val writeValue = valueWriter(dataType)
+    (out, v) => {
+      out.writeBoolean(v == null)
+      if (v != null) writeValue(out, v)
+    }
+  }
+
+  private def valueSize(dataType: DataType): ValueSize = dataType match {
+    case BooleanType | ByteType => _ => 1L
+    case ShortType => _ => 2L
+    case IntegerType | FloatType | DateType => _ => 4L
+    case LongType | DoubleType | TimestampType => _ => 8L
+    case StringType => v => 4L + utf8Length(v.toString)
+    case BinaryType => v => 4L + v.asInstanceOf[Array[Byte]].length
+    case _: DecimalType => v =>
+      val decimal = v match {
+        case d: Decimal => d.toJavaBigDecimal
+        case d: BigDecimal => d.bigDecimal
+        case d: java.math.BigDecimal => d
+      }
+      4L + decimal.toString.length
+    case ArrayType(elementType, _) =>
+      val elementSize = nullableValueSize(elementType)
+      v => {
+        val elements: Seq[Any] = v match {
+          case arrayData: ArrayData => arrayData.array
+          case seq: Seq[_] => seq
+          case array: Array[_] => array
+        }
+        elements.foldLeft(4L)(_ + elementSize(_))
+      }
+    case MapType(keyType, valueType, _) =>
+      val keySize = valueSize(keyType)
+      val mapValueSize = nullableValueSize(valueType)
+      v => {
+        val entries: Seq[(Any, Any)] = v match {
+          case mapData: MapData => mapData.keyArray.array zip mapData.valueArray.array
+          case map: scala.collection.Map[_, _] => map.toSeq
+        }
+        entries.foldLeft(4L) { case (size, (key, value)) => size + keySize(key) + mapValueSize(value) }
+      }
+    case StructType(fields) =>
+      val fieldSizes = fields.map(field => nullableValueSize(field.dataType))
+      v => {
+        val row = v.asInstanceOf[Row]
+        fieldSizes.indices.foldLeft(0L)((size, idx) => size + fieldSizes(idx)(row.get(idx)))
+      }
+    case other => _ => 4L + other.defaultSize
+  }
+
+  private def nullableValueSize(dataType: DataType): ValueSize = {
+    val sizeOfValue = valueSize(dataType)
+    v => if (v == null) 1L else 1L + sizeOfValue(v)
+  }
+
+  // Number of bytes of the UTF-8 encoding of a string, as written by `String.getBytes`
+  private def utf8Length(str: String): Long = {
+    var length = 0L
+    var i = 0
+    while (i < str.length) {
+      val c = str.charAt(i)
+      if (c < 0x80) length += 1
+      else if (c < 0x800) length += 2
+      else if (Character.isHighSurrogate(c) && i + 1 < str.length && Character.isLowSurrogate(str.charAt(i + 1))) {
+        length += 4
+        i += 1
+      } else if (Character.isSurrogate(c)) length += 1 // Unpaired surrogates are replaced by '?'
+      else length += 3
+      i += 1
+    }
+    length
+  }
+
+  private def valueReader(dataType: DataType): ValueReader = dataType match {
+    case BooleanType => _.readBoolean()
+    case ByteType => _.readByte()
+    case ShortType => _.readShort()
+    case IntegerType => _.readInt()
+    case LongType => _.readLong()
+    case FloatType => _.readFloat()
+    case DoubleType => _.readDouble()
+    case StringType => in => new String(readBytes(in), StandardCharsets.UTF_8)
+    case BinaryType => readBytes
+    case _: DecimalType => in => new java.math.BigDecimal(new String(readBytes(in), StandardCharsets.UTF_8))
+    case DateType => in => DateTimeUtils.toJavaDate(in.readInt())
+    case TimestampType => in => DateTimeUtils.toJavaTimestamp(in.readLong())
+    case ArrayType(elementType, _) =>
+      val readElement = nullableValueReader(elementType)
+      in => mutable.WrappedArray make Array.fill[Any](in.readInt())(readElement(in))
+    case MapType(keyType, valueType, _) =>
+      val readKey = valueReader(keyType)
+      val readMapValue = nullableValueReader(valueType)
+      in => Seq.fill(in.readInt())(readKey(in) -> readMapValue(in)).toMap
+    case st @ StructType(fields) =>
+      val readFields = fields.map(field => nullableValueReader(field.dataType))
+      in => new GenericRowWithSchema(readFields.map(_(in)), st)
+    case _ =>
+      in => new ObjectInputStream(new ByteArrayInputStream(readBytes(in))).readObject()
+  }
+
+  private def nullableValueReader(dataType: DataType): ValueReader = {
+    val readValue = valueReader(dataType)
+    in => if (in.readBoolean()) null else readValue(in)
+  }
+
+  private def writeBytes(out: DataOutputStream, bytes: Array[Byte]): Unit = {
+    out.writeInt(bytes.length)
+    out.write(bytes)
+  }
+
+  private def readBytes(in: DataInputStream): Array[Byte] = {
+    val bytes = new Array[Byte](in.readInt())
+    in.readFully(bytes)
+    bytes
+  }
+
+}
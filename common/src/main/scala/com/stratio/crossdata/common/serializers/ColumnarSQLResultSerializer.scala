@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.common.serializers
+
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+
+import com.stratio.crossdata.common.result.QueryProfile
+import com.stratio.crossdata.common.serializers.StreamedSQLResultSerializer._
+import org.apache.spark.sql.crossdata.serializers.StructTypeSerializer
+import org.apache.spark.sql.types.StructType
+import org.json4s._
+import org.json4s.jackson.JsonMethods._
+
+/**
+  * Binary alternative to [[StreamedSQLResultSerializer]]. A streamed result is composed of frames having
+  * a one byte type, the length of its payload (4 bytes, big endian) and the payload itself:
+  *  - Schema frame: JSON representation of the result schema.
+  *  - Batch frame: Rows encoded by [[ColumnarRowsCodec]].
+  *  - End frame: Number of rows of the whole result (8 bytes), followed by the JSON representation of the query
+  *    profile when requested.
+  *  - Error frame: UTF-8 error message.
+  */
+object ColumnarSQLResultSerializer {
+
+  val MediaSubType = "x-crossdata-columnar"
+
+  val FrameHeaderLength = 5
+  val LengthFieldOffset = 1
+  val LengthFieldLength = 4
+
+  object FrameTypes {
+    val SCHEMA: Byte = 'S'
+    val BATCH: Byte  = 'B'
+    val END: Byte    = 'E'
+    val ERROR: Byte  = 'X'
+  }
+
+  import FrameTypes._
+
+  def schemaFrame(schema: StructType): Array[Byte] = {
+    implicit val formats = DefaultFormats + StructTypeSerializer
+    frame(SCHEMA, compact(render(Extraction.decompose(schema))).getBytes(StandardCharsets.UTF_8))
+  }
+
+  def batchFrame(encodedRows: Array[Byte]): Array[Byte] = frame(BATCH, encodedRows)
+
+  def endFrame(numberOfRows: Long, profile: Option[QueryProfile] = None): Array[Byte] = {
+    implicit val formats = DefaultFormats
+    val jsonProfile = profile.map(p => compact(render(Extraction.decompose(p))).getBytes(StandardCharsets.UTF_8))
+    val payload = ByteBuffer.allocate(8 + jsonProfile.fold(0)(_.length)).putLong(numberOfRows)
+    jsonProfile.foreach(bytes => payload.put(bytes))
+    frame(END, payload.array())
+  }
+
+  def errorFrame(message: String): Array[Byte] = frame(ERROR, message.getBytes(StandardCharsets.UTF_8))
+
+  /**
+    * @param frame Complete frame, header included.
+    * @param schema Schema received in a previous frame of the same stream, it is required to decode batches.
+    */
+  def parseFrame(frame: Array[Byte], schema: Option[StructType]): Seq[StreamedResultLine] = {
+    val buffer = ByteBuffer.wrap(frame)
+    val frameType = buffer.get()
+    val payload = new Array[Byte](buffer.getInt())
+    buffer.get(payload)
+    frameType match {
+      case SCHEMA =>
+        implicit val formats = DefaultFormats + StructTypeSerializer
+        StreamedSchema(parse(new String(payload, StandardCharsets.UTF_8), false).extract[StructType]) :: Nil
+      case BATCH =>
+        val batchSchema = schema getOrElse {
+          throw new MappingException("A batch of rows has been received before the result schema")
+        }
+        ColumnarRowsCodec.decode(batchSchema, payload).map(StreamedRow)
+      case END =>
+        implicit val formats = DefaultFormats
+        val profile = if (payload.length > 8) {
+          Some(parse(new String(payload, 8, payload.length - 8, StandardCharsets.UTF_8), false).extract[QueryProfile])
+        } else None
+        StreamedEnd(ByteBuffer.wrap(payload).getLong, profile) :: Nil
+      case ERROR =>
+        StreamedError(new String(payload, StandardCharsets.UTF_8)) :: Nil
+      case unknown =>
+        throw new MappingException(s"Unexpected streamed result frame type: $unknown")
+    }
+  }
+
+  private def frame(frameType: Byte, payload: Array[Byte]): Array[Byte] =
+    ByteBuffer.allocate(FrameHeaderLength + payload.length).put(frameType).putInt(payload.length).put(payload).array()
+
+}
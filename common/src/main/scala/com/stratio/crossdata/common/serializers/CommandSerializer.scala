@@ -37,8 +37,18 @@ private [serializers] object CommandSerializerHelper {
   implicit val _ = DefaultFormats + UUIDSerializer + FiniteDurationSerializer
 
   val commandExtractor = Map[String, JValue => Command](
-    "SQLCommand" -> { jSQLCommand => (jSQLCommand \ "details").extract[SQLCommand] },
+    "SQLCommand" -> { jSQLCommand =>
+      val details = jSQLCommand \ "details"
+      val parameters = details \ "parameters" match {
+        case JArray(values) => Some(values map parameterFromJson)
+        case _ => None
+      }
+      details.removeField(_._1 == "parameters").extract[SQLCommand].copy(parameters = parameters)
+    },
+    "SQLBatchCommand" -> { jSQLCommand => (jSQLCommand \ "details").extract[SQLBatchCommand] },
     "CancelQueryExecution" -> { jSQLCommand => (jSQLCommand \ "details").extract[CancelQueryExecution] },
+    "GetQueryStatus" -> { jSQLCommand => (jSQLCommand \ "details").extract[GetQueryStatus] },
+    "FetchQueryResult" -> { jSQLCommand => (jSQLCommand \ "details").extract[FetchQueryResult] },
     "OpenSessionCommand" -> { _.extract[OpenSessionCommand] },
     "CloseSessionCommand" -> { _.extract[CloseSessionCommand] },
     "ClusterStateCommand" -> { _.extract[ClusterStateCommand] }
@@ -46,7 +56,15 @@ private [serializers] object CommandSerializerHelper {
 
   val commandSerializer: PartialFunction[Any, JValue] = {
     case command: SQLCommand =>
-      Extraction.decompose(CommandWithName(command))
+      val jCommand = Extraction.decompose(CommandWithName(command.copy(parameters = None)))
+      command.parameters.fold(jCommand) { parameters =>
+        jCommand transformField {
+          case JField("details", JObject(fields)) =>
+            JField("details", JObject(fields :+ JField("parameters", JArray(parameters.map(parameterToJson).toList))))
+        }
+      }
+    case batch: SQLBatchCommand =>
+      Extraction.decompose(CommandWithName(batch))
     case _: OpenSessionCommand =>
       Extraction.decompose(CommandWithName[OpenSessionCommand])
     case _: CloseSessionCommand =>
@@ -55,6 +73,35 @@ private [serializers] object CommandSerializerHelper {
       Extraction.decompose(CommandWithName[ClusterStateCommand])
     case cancellation: CancelQueryExecution =>
       Extraction.decompose(CommandWithName(cancellation))
+    case statusRequest: GetQueryStatus =>
+      Extraction.decompose(CommandWithName(statusRequest))
+    case fetchRequest: FetchQueryResult =>
+      Extraction.decompose(CommandWithName(fetchRequest))
+  }
+
+
+  // Prepared statement parameters: Dates, timestamps and decimals are sent as strings and converted by the server
+  private def parameterToJson(parameter: Any): JValue = parameter match {
+    case null => JNull
+    case value: String => JString(value)
+    case value: Boolean => JBool(value)
+    case value: Int => JInt(value)
+    case value: Long => JInt(value)
+    case value: Short => JInt(value.toInt)
+    case value: Byte => JInt(value.toInt)
+    case value: Double => JDouble(value)
+    case value: Float => JDouble(value.toDouble)
+    case value => JString(value.toString)
+  }
+
+  private def parameterFromJson(jValue: JValue): Any = jValue match {
+    case JString(value) => value
+    case JBool(value) => value
+    case JInt(value) if value.isValidLong => value.toLong
+    case JInt(value) => value
+    case JDouble(value) => value
+    case JDecimal(value) => value
+    case _ => null
   }
 
 }
@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.common.serializers
+
+import java.io._
+import java.nio.charset.StandardCharsets
+import java.util.UUID
+
+import akka.actor.{ActorRef, ExtendedActorSystem}
+import akka.serialization.{Serialization, SerializationExtension, SerializerWithStringManifest}
+import com.stratio.crossdata.common._
+import com.stratio.crossdata.common.metrics.XDMetrics
+import com.stratio.crossdata.common.result._
+import com.stratio.crossdata.common.security.Session
+import net.jpountz.lz4.LZ4Factory
+import org.apache.spark.sql.types.{DataType, StructType}
+
+import scala.util.Try
+
+/**
+  * Akka serializer for the messages exchanged by drivers and servers through Akka remoting.
+  *
+  * Results are written as their schema followed by their rows encoded by [[ColumnarRowsCodec]], so no class
+  * descriptor is written per row as Java serialization does. Chunked results only carry their schema in the first
+  * chunk. Any payload larger than
+  * `config.serialization.compression-threshold` bytes (64 KiB by default, 0 disables compression) is LZ4-compressed.
+  *
+  * Frame layout: compression flag (byte), uncompressed length (int) if compressed, message fields.
+  *
+  * The serialization time and size of every message are recorded in [[XDMetrics]].
+  */
+class CompactMessageSerializer(system: ExtendedActorSystem) extends SerializerWithStringManifest {
+
+  import CompactMessageSerializer._
+
+  override def identifier: Int = Identifier
+
+  private lazy val compressionThreshold: Long =
+    Try(system.settings.config.getBytes(CompressionThresholdKey).longValue).getOrElse(DefaultCompressionThreshold)
+
+  private lazy val lz4 = LZ4Factory.fastestInstance()
+
+  override def manifest(message: AnyRef): String = message match {
+    case _: CommandEnvelope => CommandEnvelopeManifest
+    case _: SQLReply => SQLReplyManifest
+    case _: SQLResultChunk => SQLResultChunkManifest
+    case _: SQLResultEnd => SQLResultEndManifest
+    case _: QueryResultPageReply => QueryResultPageReplyManifest
+    case other => throw new IllegalArgumentException(s"Cannot serialize ${other.getClass.getName}")
+  }
+
+  override def toBinary(message: AnyRef): Array[Byte] = {
+    val framed = XDMetrics.time(XDMetrics.serializationTime)(serialize(message))
+    XDMetrics.serializedBytes.update(framed.length)
+    framed
+  }
+
+  private def serialize(message: AnyRef): Array[Byte] = {
+    val bytes = new ByteArrayOutputStream()
+    val out = new DataOutputStream(bytes)
+
+    message match {
+      case CommandEnvelope(command, Session(sessionId, clientRef), user) =>
+        writeUUID(out, sessionId)
+        writeOption(out, clientRef)(writeActorRef)
+        writeString(out, user)
+        writeNested(out, command)
+
+      case SQLReply(requestId, result) =>
+        writeUUID(out, requestId)
+        writeResult(out, result)
+
+      case SQLResultChunk(requestId, chunkIndex, schema, batch, producer) =>
+        writeUUID(out, requestId)
+        out.writeInt(chunkIndex)
+        writeOption(out, schema)(writeSchema)
+        // Batches are always sent encoded, their receiver decodes them with the schema of the first chunk
+        out.writeInt(batch.numberOfRows)
+        batch match {
+          case ColumnarRowBatch(_, encoded) => writeBytes(out, encoded)
+          case plain: PlainRowBatch => writeBytes(out, ColumnarRowsCodec.encode(plain.schema, plain.resultSet))
+        }
+        writeActorRef(out, producer)
+
+      case SQLResultEnd(requestId, schema, numberOfRows, profile) =>
+        writeUUID(out, requestId)
+        writeSchema(out, schema)
+        out.writeLong(numberOfRows)
+        writeOption(out, profile)(writeProfile)
+
+      case QueryResultPageReply(requestId, queryId, ResultPage(result, offset, totalRows)) =>
+        writeUUID(out, requestId)
+        writeUUID(out, queryId)
+        writeResult(out, result)
+        out.writeLong(offset)
+        out.writeLong(totalRows)
+
+      case other =>
+        throw new IllegalArgumentException(s"Cannot serialize ${other.getClass.getName}")
+    }
+
+    out.flush()
+    frame(bytes.toByteArray)
+  }
+
+  override def fromBinary(bytes: Array[Byte], manifest: String): AnyRef = {
+    val in = new DataInputStream(new ByteArrayInputStream(unframe(bytes)))
+
+    manifest match {
+      case CommandEnvelopeManifest =>
+        val sessionId = readUUID(in)
+        val clientRef = readOption(in)(readActorRef)
+        val user = readString(in)
+        CommandEnvelope(readNested(in).asInstanceOf[Command], Session(sessionId, clientRef), user)
+
+      case SQLReplyManifest =>
+        SQLReply(readUUID(in), readResult(in))
+
+      case SQLResultChunkManifest =>
+        val requestId = readUUID(in)
+        val chunkIndex = in.readInt()
+        val schema = readOption(in)(readSchema)
+        val batch = ColumnarRowBatch(in.readInt(), readBytes(in))
+        SQLResultChunk(requestId, chunkIndex, schema, batch, readActorRef(in))
+
+      case SQLResultEndManifest =>
+        SQLResultEnd(readUUID(in), readSchema(in), in.readLong(), readOption(in)(readProfile))
+
+      case QueryResultPageReplyManifest =>
+        val requestId = readUUID(in)
+        val queryId = readUUID(in)
+        val result = readResult(in)
+        QueryResultPageReply(requestId, queryId, ResultPage(result, in.readLong(), in.readLong()))
+
+      case other =>
+        throw new NotSerializableException(s"Unknown manifest: $other")
+    }
+  }
+
+  private def frame(payload: Array[Byte]): Array[Byte] =
+    if (compressionThreshold > 0 && payload.length > compressionThreshold) {
+      val compressor = lz4.fastCompressor()
+      val compressed = new Array[Byte](HeaderSize + compressor.maxCompressedLength(payload.length))
+      val compressedLength = compressor.compress(payload, 0, payload.length, compressed, HeaderSize)
+      compressed(0) = Compressed
+      writeInt(compressed, 1, payload.length)
+      java.util.Arrays.copyOf(compressed, HeaderSize + compressedLength)
+    } else {
+      val framed = new Array[Byte](payload.length + 1)
+      framed(0) = Uncompressed
+      System.arraycopy(payload, 0, framed, 1, payload.length)
+      framed
+    }
+
+  private def unframe(bytes: Array[Byte]): Array[Byte] = bytes(0) match {
+    case Compressed =>
+      val payload = new Array[Byte](readInt(bytes, 1))
+      lz4.fastDecompressor().decompress(bytes, HeaderSize, payload, 0, payload.length)
+      payload
+    case _ =>
+      java.util.Arrays.copyOfRange(bytes, 1, bytes.length)
+  }
+
+  private def writeResult(out: DataOutputStream, result: SQLResult): Unit = result match {
+    case SuccessfulSQLResult(rows, schema, profile) =>
+      out.writeByte(SuccessfulResult)
+      writeSchema(out, schema)
+      writeBytes(out, ColumnarRowsCodec.encode(schema, rows))
+      writeOption(out, profile)(writeProfile)
+    case RejectedSQLResult(message) =>
+      out.writeByte(RejectedResult)
+      writeString(out, message)
+    case ErrorSQLResult(message, cause) =>
+      out.writeByte(ErrorResult)
+      writeString(out, message)
+      writeOption(out, cause)(writeNested)
+  }
+
+  private def readResult(in: DataInputStream): SQLResult = in.readByte() match {
+    case SuccessfulResult =>
+      val schema = readSchema(in)
+      SuccessfulSQLResult(ColumnarRowsCodec.decode(schema, readBytes(in)), schema, readOption(in)(readProfile))
+    case RejectedResult =>
+      RejectedSQLResult(readString(in))
+    case ErrorResult =>
+      val message = readString(in)
+      ErrorSQLResult(message, readOption(in)(readNested(_).asInstanceOf[Throwable]))
+  }
+
+  private def writeProfile(out: DataOutputStream, profile: QueryProfile): Unit = {
+    out.writeInt(profile.phases.length)
+    profile.phases foreach { case PhaseTiming(phase, millis) =>
+      writeString(out, phase)
+      out.writeDouble(millis)
+    }
+    out.writeLong(profile.rows)
+    out.writeLong(profile.bytes)
+    writeOption(out, profile.execution)(writeString)
+    writeOption(out, profile.connector)(writeString)
+    writeOption(out, profile.fallbackReason)(writeString)
+  }
+
+  private def readProfile(in: DataInputStream): QueryProfile = {
+    val phases = Seq.fill(in.readInt())(PhaseTiming(readString(in), in.readDouble()))
+    QueryProfile(
+      phases,
+      in.readLong(),
+      in.readLong(),
+      readOption(in)(readString),
+      readOption(in)(readString),
+      readOption(in)(readString)
+    )
+  }
+
+  private def writeSchema(out: DataOutputStream, schema: StructType): Unit = writeString(out, schema.json)
+
+  private def readSchema(in: DataInputStream): StructType = DataType.fromJson(readString(in)).asInstanceOf[StructType]
+
+  // Messages without a dedicated layout, e.g: commands, are serialized by the serializer Akka has bound to them
+  private def writeNested(out: DataOutputStream, message: AnyRef): Unit = {
+    val serializer = SerializationExtension(system).findSerializerFor(message)
+    val manifest = serializer match {
+      case withStringManifest: SerializerWithStringManifest => withStringManifest.manifest(message)
+      case _ if serializer.includeManifest => message.getClass.getName
+      case _ => ""
+    }
+    out.writeInt(serializer.identifier)
+    writeString(out, manifest)
+    writeBytes(out, serializer.toBinary(message))
+  }
+
+  private def readNested(in: DataInputStream): AnyRef = {
+    val serializerId = in.readInt()
+    val manifest = readString(in)
+    SerializationExtension(system).deserialize(readBytes(in), serializerId, manifest).get
+  }
+
+  private def writeActorRef(out: DataOutputStream, actorRef: ActorRef): Unit =
+    writeString(out, Serialization.serializedActorPath(actorRef))
+
+  private def readActorRef(in: DataInputStream): ActorRef = system.provider.resolveActorRef(readString(in))
+
+  private def writeOption[T](out: DataOutputStream, value: Option[T])(write: (DataOutputStream, T) => Unit): Unit = {
+    out.writeBoolean(value.isDefined)
+    value.foreach(write(out, _))
+  }
+
+  private def readOption[T](in: DataInputStream)(read: DataInputStream => T): Option[T] =
+    if (in.readBoolean()) Some(read(in)) else None
+
+  private def writeUUID(out: DataOutputStream, uuid: UUID): Unit = {
+    out.writeLong(uuid.getMostSignificantBits)
+    out.writeLong(uuid.getLeastSignificantBits)
+  }
+
+  private def readUUID(in: DataInputStream): UUID = new UUID(in.readLong(), in.readLong())
+
+  private def writeString(out: DataOutputStream, value: String): Unit =
+    writeBytes(out, value.getBytes(StandardCharsets.UTF_8))
+
+  private def readString(in: DataInputStream): String = new String(readBytes(in), StandardCharsets.UTF_8)
+
+  private def writeBytes(out: DataOutputStream, bytes: Array[Byte]): Unit = {
+    out.writeInt(bytes.length)
+    out.write(bytes)
+  }
+
+  private def readBytes(in: DataInputStream): Array[Byte] = {
+    val bytes = new Array[Byte](in.readInt())
+    in.readFully(bytes)
+    bytes
+  }
+
+  private def writeInt(bytes: Array[Byte], offset: Int, value: Int): Unit =
+    for (i <- 0 until 4) bytes(offset + i) = (value >>> (24 - 8 * i)).toByte
+
+  private def readInt(bytes: Array[Byte], offset: Int): Int =
+    (0 until 4).foldLeft(0)((value, i) => (value << 8) | (bytes(offset + i) & 0xff))
+
+}
+
+object CompactMessageSerializer {
+
+  val Identifier = 1301
+
+  val CompressionThresholdKey = "config.serialization.compression-threshold"
+  val DefaultCompressionThreshold: Long = 64 * 1024
+
+  private val CommandEnvelopeManifest = "CE"
+  private val SQLReplyManifest = "SR"
+  private val SQLResultChunkManifest = "SC"
+  private val SQLResultEndManifest = "SE"
+  private val QueryResultPageReplyManifest = "QP"
+
+  private val Uncompressed: Byte = 0
+  private val Compressed: Byte = 1
+  private val HeaderSize = 5
+
+  private val SuccessfulResult: Byte = 0
+  private val ErrorResult: Byte = 1
+  private val RejectedResult: Byte = 2
+
+}
@@ -18,16 +18,19 @@ package com.stratio.crossdata.common.serializers
 
 import _root_.akka.cluster.Member
 
+import com.stratio.crossdata.common.result.QueryState
 import com.stratio.crossdata.common.serializers.akka.{AkkaClusterMemberSerializer, AkkaMemberStatusSerializer}
 import org.apache.spark.sql.crossdata.serializers.StructTypeSerializer
 import org.json4s._
+import org.json4s.ext.EnumNameSerializer
 
 trait CrossdataCommonSerializer {
 
   implicit val json4sJacksonFormats: Formats =
     DefaultFormats + SQLResultSerializer + UUIDSerializer +
       StructTypeSerializer + FiniteDurationSerializer + CommandSerializer +
-        AkkaMemberStatusSerializer + AkkaClusterMemberSerializer + new SortedSetSerializer[Member]()
+        AkkaMemberStatusSerializer + AkkaClusterMemberSerializer + new SortedSetSerializer[Member]() +
+          new EnumNameSerializer(QueryState)
 
 }
 
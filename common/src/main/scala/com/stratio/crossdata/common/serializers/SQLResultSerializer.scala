@@ -15,7 +15,7 @@
  */
 package com.stratio.crossdata.common.serializers
 
-import com.stratio.crossdata.common.result.{ErrorSQLResult, SQLResult, SuccessfulSQLResult}
+import com.stratio.crossdata.common.result._
 import org.apache.spark.sql.Row
 import org.apache.spark.sql.crossdata.serializers.StructTypeSerializer
 import org.apache.spark.sql.types.StructType
@@ -28,6 +28,8 @@ object SQLResultSerializerHelper {
     val ERRORMSG = "error"
     val SCHEMA   = "schema"
     val ROWS     = "rows"
+    val REJECTED = "rejected"
+    val PROFILE  = "profile"
   }
 }
 
@@ -35,9 +37,11 @@ import SQLResultSerializerHelper.FieldLabels._
 
 object SQLResultSerializer extends CustomSerializer[SQLResult]( format => (
   {
+    case JObject(JField(SUCCESS, JBool(false))::JField(ERRORMSG, JString(message))::JField(REJECTED, JBool(true))::_) =>
+      RejectedSQLResult(message)
     case JObject(JField(SUCCESS, JBool(false))::JField(ERRORMSG, JString(message))::_) =>
       ErrorSQLResult(message)
-    case JObject(JField(SUCCESS, JBool(true))::JField(SCHEMA, json_schema)::JField(ROWS, JArray(json_rows)) ::_) =>
+    case JObject(JField(SUCCESS, JBool(true))::JField(SCHEMA, json_schema)::JField(ROWS, JArray(json_rows)) :: others) =>
 
       val schema = {
         implicit val formats = DefaultFormats + StructTypeSerializer
@@ -47,14 +51,18 @@ object SQLResultSerializer extends CustomSerializer[SQLResult]( format => (
       implicit val formats = DefaultFormats + StructTypeSerializer + RowSerializer(schema)
 
       val rows = json_rows.map(_.extract[Row]).toArray
-      SuccessfulSQLResult(rows, schema)
+      val profile = others collectFirst { case JField(PROFILE, json_profile) => json_profile.extract[QueryProfile] }
+      SuccessfulSQLResult(rows, schema, profile)
   },
   {
+    case RejectedSQLResult(message) =>
+      (SUCCESS -> false) ~ (ERRORMSG -> message) ~ (REJECTED -> true)
     case ErrorSQLResult(message, _) =>
       (SUCCESS -> false) ~ (ERRORMSG -> message)
-    case SuccessfulSQLResult(resultSet, schema) =>
+    case SuccessfulSQLResult(resultSet, schema, profile) =>
       implicit val formats = DefaultFormats + StructTypeSerializer + RowSerializer(schema)
-      (SUCCESS -> true) ~ (SCHEMA -> Extraction.decompose(schema)) ~ (ROWS -> Extraction.decompose(resultSet))
+      (SUCCESS -> true) ~ (SCHEMA -> Extraction.decompose(schema)) ~ (ROWS -> Extraction.decompose(resultSet)) ~
+        (PROFILE -> profile.map(Extraction.decompose(_)))
   }
   )
 )
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.common.serializers
+
+import com.stratio.crossdata.common.result.QueryProfile
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.catalyst.expressions.{GenericRow, GenericRowWithSchema}
+import org.apache.spark.sql.crossdata.serializers.StructTypeSerializer
+import org.apache.spark.sql.types.StructType
+import org.json4s.JsonDSL._
+import org.json4s._
+import org.json4s.jackson.JsonMethods._
+
+/**
+  * Newline-delimited JSON (NDJSON) representation of a streamed SQL result. A streamed result is composed of:
+  *  - A schema line: {"schema": ...}
+  *  - A line per row: {"values": [...]}
+  *  - Either an end line: {"end": numberOfRows}, or an error line: {"error": "message"}. The end line also carries
+  *    the profile of the query when requested: {"end": numberOfRows, "profile": {...}}
+  */
+object StreamedSQLResultSerializer {
+
+  object FieldLabels {
+    val SCHEMA = "schema"
+    val VALUES = "values"
+    val END    = "end"
+    val ERROR  = "error"
+    val PROFILE = "profile"
+  }
+
+  sealed trait StreamedResultLine
+  case class StreamedSchema(schema: StructType) extends StreamedResultLine
+  case class StreamedRow(row: Row) extends StreamedResultLine
+  case class StreamedEnd(numberOfRows: Long, profile: Option[QueryProfile] = None) extends StreamedResultLine
+  case class StreamedError(message: String) extends StreamedResultLine
+
+  import FieldLabels._
+
+  def schemaLine(schema: StructType): String = {
+    implicit val formats = DefaultFormats + StructTypeSerializer
+    compact(render(SCHEMA -> Extraction.decompose(schema)))
+  }
+
+  def rowLine(row: Row, schema: StructType): String = {
+    implicit val formats = DefaultFormats + StructTypeSerializer + RowSerializer(schema)
+    // A schema-less row avoids sending the schema once per row
+    compact(render(Extraction.decompose(new GenericRow(row.toSeq.toArray))))
+  }
+
+  def endLine(numberOfRows: Long, profile: Option[QueryProfile] = None): String = {
+    implicit val formats = DefaultFormats
+    compact(render((END -> numberOfRows) ~ (PROFILE -> profile.map(Extraction.decompose(_)))))
+  }
+
+  def errorLine(message: String): String = compact(render(ERROR -> message))
+
+  /**
+    * @param line NDJSON line to be parsed.
+    * @param schema Schema received in a previous line of the same stream, it is required to parse rows.
+    */
+  def parseLine(line: String, schema: Option[StructType]): StreamedResultLine =
+    parse(line, false) match {
+      case JObject(JField(SCHEMA, jschema) :: Nil) =>
+        implicit val formats = DefaultFormats + StructTypeSerializer
+        StreamedSchema(jschema.extract[StructType])
+      case jrow @ JObject(JField(VALUES, _) :: Nil) =>
+        val rowSchema = schema getOrElse {
+          throw new MappingException(s"A row has been received before the result schema: $line")
+        }
+        implicit val formats = DefaultFormats + StructTypeSerializer + RowSerializer(rowSchema)
+        StreamedRow(new GenericRowWithSchema(jrow.extract[Row].toSeq.toArray, rowSchema))
+      case JObject(JField(END, JInt(numberOfRows)) :: Nil) =>
+        StreamedEnd(numberOfRows.toLong)
+      case JObject(JField(END, JInt(numberOfRows)) :: JField(PROFILE, jprofile) :: Nil) =>
+        implicit val formats = DefaultFormats
+        StreamedEnd(numberOfRows.toLong, Some(jprofile.extract[QueryProfile]))
+      case JObject(JField(ERROR, JString(message)) :: Nil) =>
+        StreamedError(message)
+      case _ =>
+        throw new MappingException(s"Unexpected streamed result line: $line")
+    }
+
+}
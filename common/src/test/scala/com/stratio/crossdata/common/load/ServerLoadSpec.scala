@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.common.load
+
+import com.stratio.crossdata.test.BaseXDTest
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class ServerLoadSpec extends BaseXDTest {
+
+  def load(serverId: String, running: Int, queued: Int, heapUsed: Long = 0, timestamp: Long = 0): ServerLoad =
+    ServerLoad(serverId, s"/user/crossdata-server-$serverId", running, queued, heapUsed, 100, 0, timestamp)
+
+  "ServerLoad" should "choose the server with the fewest pending queries" in {
+    val loads = Seq(load("a", 4, 0), load("b", 1, 1), load("c", 2, 2))
+    ServerLoad.leastLoaded(loads).map(_.serverId) shouldBe Some("b")
+    ServerLoad.leastLoaded(Seq.empty) shouldBe None
+  }
+
+  it should "penalize servers whose heap is almost full" in {
+    load("a", 1, 0, heapUsed = 99).score should be > load("b", 1, 0, heapUsed = 50).score
+    load("a", 1, 0, heapUsed = 50).score shouldBe load("b", 1, 0, heapUsed = 10).score
+  }
+
+  it should "be stale once it is older than the given age" in {
+    load("a", 0, 0, timestamp = 1000).isStale(now = 1500, maxAgeMillis = 1000) shouldBe false
+    load("a", 0, 0, timestamp = 1000).isStale(now = 2500, maxAgeMillis = 1000) shouldBe true
+  }
+
+}
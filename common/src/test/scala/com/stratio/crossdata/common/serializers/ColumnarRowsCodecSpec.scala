@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.common.serializers
+
+import java.sql.{Date, Timestamp}
+
+import com.stratio.crossdata.common.serializers.ColumnarSQLResultSerializer._
+import com.stratio.crossdata.common.serializers.StreamedSQLResultSerializer._
+import com.stratio.crossdata.test.BaseXDTest
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.types._
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+import scala.collection.mutable
+
+@RunWith(classOf[JUnitRunner])
+class ColumnarRowsCodecSpec extends BaseXDTest {
+
+  val innerSchema = StructType(List(
+    StructField("street", StringType, true),
+    StructField("number", IntegerType, true)
+  ))
+
+  val schema = StructType(List(
+    StructField("id", IntegerType, true),
+    StructField("age", LongType, true),
+    StructField("score", DoubleType, true),
+    StructField("active", BooleanType, true),
+    StructField("name", StringType, true),
+    StructField("price", DecimalType(10, 2), true),
+    StructField("birth", DateType, true),
+    StructField("updated", TimestampType, true),
+    StructField("tags", ArrayType(StringType, true), true),
+    StructField("scores", MapType(StringType, IntegerType, true), true),
+    StructField("address", innerSchema, true)
+  ))
+
+  val rows: Array[Row] = Array(
+    Row(
+      1, 30L, 9.5, true, "crossdata", new java.math.BigDecimal("12.50"),
+      Date.valueOf("2016-01-01"), Timestamp.valueOf("2016-01-01 10:00:00"),
+      mutable.WrappedArray.make[String](Array("a", null)), Map("math" -> 10), Row("Main St", 5)
+    ),
+    Row(2, null, null, false, null, null, null, null, null, null, Row(null, 7)),
+    Row(null, 40L, 1.0, null, "", null, null, null, mutable.WrappedArray.make[String](Array()), Map.empty, null)
+  )
+
+  "A ColumnarRowsCodec" should "decode the rows it has encoded" in {
+    val decoded = ColumnarRowsCodec.decode(schema, ColumnarRowsCodec.encode(schema, rows))
+    decoded.map(_.toSeq) shouldBe rows.map(_.toSeq)
+    decoded.foreach(_.schema shouldBe schema)
+  }
+
+  it should "encode empty row sets" in {
+    ColumnarRowsCodec.decode(schema, ColumnarRowsCodec.encode(schema, Array.empty)) shouldBe empty
+  }
+
+  it should "compute the size of its encoding without encoding the rows" in {
+    val unicodeRows = rows :+ Row(3, null, null, null, "caf\u00e9 \ud83d\ude00", null, null, null, null, null, null)
+    ColumnarRowsCodec.encodedSize(schema, unicodeRows) shouldBe ColumnarRowsCodec.encode(schema, unicodeRows).length
+    ColumnarRowsCodec.encodedSize(schema, Array.empty) shouldBe ColumnarRowsCodec.encode(schema, Array.empty).length
+  }
+
+  it should "be more compact than its NDJSON counterpart for primitive columns" in {
+    val numericSchema = StructType(List(StructField("id", IntegerType, false), StructField("value", DoubleType, false)))
+    val numericRows: Array[Row] = Array.tabulate(1000)(i => Row(i, i * 1.5))
+    val ndJsonSize = numericRows.map(rowLine(_, numericSchema).length + 1).sum
+    ColumnarRowsCodec.encode(numericSchema, numericRows).length should be < ndJsonSize
+  }
+
+  "A ColumnarSQLResultSerializer" should "serialize and parse result frames" in {
+    parseFrame(schemaFrame(schema), None) shouldBe StreamedSchema(schema) :: Nil
+    parseFrame(endFrame(42), Some(schema)) shouldBe StreamedEnd(42) :: Nil
+    parseFrame(errorFrame("boom"), None) shouldBe StreamedError("boom") :: Nil
+  }
+
+  it should "parse a batch frame into a row per encoded row" in {
+    val parsed = parseFrame(batchFrame(ColumnarRowsCodec.encode(schema, rows)), Some(schema))
+    parsed.collect { case StreamedRow(row) => row.toSeq } shouldBe rows.map(_.toSeq).toSeq
+  }
+
+  it should "fail to parse a batch frame if the schema has not been received" in {
+    an [Exception] should be thrownBy parseFrame(batchFrame(ColumnarRowsCodec.encode(schema, rows)), None)
+  }
+
+}
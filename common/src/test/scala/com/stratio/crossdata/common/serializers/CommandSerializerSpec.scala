@@ -34,9 +34,28 @@ class CommandSerializerSpec extends XDSerializationTest[Command] with CrossdataC
     TestCase("marshall & unmarshall a SQLCommand 0", SQLCommand("select * from highschool")),
     TestCase("marshall & unmarshall a SQLCommand 1", SQLCommand("select * from highschool", flattenResults = true)),
     TestCase("marshall & unmarshall a SQLCommand 2", SQLCommand("select * from highschool", timeout = Some(5 seconds))),
+    TestCase(
+      "marshall & unmarshall a SQLCommand 3",
+      SQLCommand("select * from highschool", resultChunking = Some(ResultChunking(1000, 4)))
+    ),
     TestCase("marshall & unmarshall an OpenSessionCommand", OpenSessionCommand()),
     TestCase("marshall & unmarshall an CloseSessionCommand", CloseSessionCommand()),
-    TestCase("marshall & unmarshall an CancelQueryExecution", CancelQueryExecution(UUID.randomUUID()))
+    TestCase("marshall & unmarshall an CancelQueryExecution", CancelQueryExecution(UUID.randomUUID())),
+    TestCase(
+      "marshall & unmarshall an asynchronous SQLCommand",
+      SQLCommand("select * from highschool", asynchronous = true)
+    ),
+    TestCase("marshall & unmarshall a GetQueryStatus", GetQueryStatus(UUID.randomUUID())),
+    TestCase("marshall & unmarshall a FetchQueryResult", FetchQueryResult(UUID.randomUUID(), 1000, 500)),
+    TestCase(
+      "marshall & unmarshall a SQLBatchCommand",
+      SQLBatchCommand(
+        Seq("CREATE TEMPORARY VIEW v AS SELECT * FROM t", "SELECT * FROM v"),
+        stopOnError = false,
+        streamResults = true,
+        timeout = Some(5 seconds)
+      )
+    )
   )
 
 }
\ No newline at end of file
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.common.serializers
+
+import java.util.UUID
+
+import akka.actor.{ActorSystem, ExtendedActorSystem}
+import akka.serialization.JavaSerializer
+import com.stratio.crossdata.common._
+import com.stratio.crossdata.common.result._
+import com.stratio.crossdata.common.security.Session
+import com.stratio.crossdata.test.BaseXDTest
+import com.typesafe.config.ConfigFactory
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.types._
+import org.junit.runner.RunWith
+import org.scalatest.BeforeAndAfterAll
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class CompactMessageSerializerSpec extends BaseXDTest with BeforeAndAfterAll {
+
+  val system = ActorSystem(
+    "CompactMessageSerializerSpec",
+    ConfigFactory.parseString(s"${CompactMessageSerializer.CompressionThresholdKey} = 1KiB")
+  ).asInstanceOf[ExtendedActorSystem]
+
+  val serializer = new CompactMessageSerializer(system)
+
+  val schema = StructType(List(
+    StructField("id", IntegerType, true),
+    StructField("name", StringType, true),
+    StructField("score", DoubleType, true)
+  ))
+
+  def rows(n: Int): Array[Row] = Array.tabulate(n)(i => Row(i, s"name-$i", if (i % 2 == 0) null else i * 0.5))
+
+  def roundTrip[T <: AnyRef](message: T): T =
+    serializer.fromBinary(serializer.toBinary(message), serializer.manifest(message)).asInstanceOf[T]
+
+  override protected def afterAll(): Unit = system.terminate()
+
+  "A CompactMessageSerializer" should "serialize successful results" in {
+    val reply = SQLReply(UUID.randomUUID(), SuccessfulSQLResult(rows(10), schema))
+    val deserialized = roundTrip(reply)
+
+    deserialized.requestId shouldBe reply.requestId
+    deserialized.sqlResult.schema shouldBe schema
+    deserialized.sqlResult.resultSet.map(_.toSeq) shouldBe reply.sqlResult.resultSet.map(_.toSeq)
+  }
+
+  it should "keep the kind of failed results" in {
+    roundTrip(SQLReply(UUID.randomUUID(), ErrorSQLResult("boom"))).sqlResult should matchPattern {
+      case ErrorSQLResult("boom", None) =>
+    }
+    roundTrip(SQLReply(UUID.randomUUID(), RejectedSQLResult("busy"))).sqlResult shouldBe a [RejectedSQLResult]
+  }
+
+  it should "compress large messages" in {
+    val reply = SQLReply(UUID.randomUUID(), SuccessfulSQLResult(rows(10000), schema))
+    val uncompressedSystem = ActorSystem(
+      "uncompressed", ConfigFactory.parseString(s"${CompactMessageSerializer.CompressionThresholdKey} = 0")
+    ).asInstanceOf[ExtendedActorSystem]
+
+    try {
+      serializer.toBinary(reply).length should be < new CompactMessageSerializer(uncompressedSystem).toBinary(reply).length
+      roundTrip(reply).sqlResult.resultSet should have length 10000
+    } finally uncompressedSystem.terminate()
+  }
+
+  it should "be more compact than Java serialization" in {
+    val reply = SQLReply(UUID.randomUUID(), SuccessfulSQLResult(rows(100), schema))
+    serializer.toBinary(reply).length should be < new JavaSerializer(system).toBinary(reply).length
+  }
+
+  it should "keep the request id of enveloped commands" in {
+    val envelope = CommandEnvelope(SQLCommand("SELECT * FROM t"), Session(UUID.randomUUID(), None), "alice")
+    val deserialized = roundTrip(envelope)
+
+    deserialized.cmd.requestId shouldBe envelope.cmd.requestId
+    deserialized.cmd shouldBe envelope.cmd
+    deserialized.session shouldBe envelope.session
+    deserialized.user shouldBe "alice"
+  }
+
+  it should "serialize chunk ends and result pages" in {
+    val end = SQLResultEnd(UUID.randomUUID(), schema, 42)
+    roundTrip(end) shouldBe end
+
+    val page = QueryResultPageReply(UUID.randomUUID(), UUID.randomUUID(), ResultPage(SuccessfulSQLResult(rows(3), schema), 6, 9))
+    val deserialized = roundTrip(page)
+    deserialized.page.offset shouldBe 6
+    deserialized.page.totalRows shouldBe 9
+    deserialized.page.result.resultSet should have length 3
+  }
+
+  it should "keep the profile of results" in {
+    val profile = QueryProfile(
+      Seq(PhaseTiming(QueryProfile.Phases.Analysis, 1.5), PhaseTiming(QueryProfile.Phases.Spark, 20.25)),
+      rows = 10,
+      bytes = 512,
+      execution = Some(QueryProfile.Executions.Spark),
+      connector = Some("CassandraXDSourceRelation"),
+      fallbackReason = Some("The plan is not supported by the native relation")
+    )
+
+    roundTrip(SQLReply(UUID.randomUUID(), SuccessfulSQLResult(rows(10), schema, Some(profile)))).sqlResult should matchPattern {
+      case SuccessfulSQLResult(_, `schema`, Some(`profile`)) =>
+    }
+    val end = SQLResultEnd(UUID.randomUUID(), schema, 10, Some(profile))
+    roundTrip(end) shouldBe end
+  }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.common.serializers
+
+import com.stratio.crossdata.common.result.{PhaseTiming, QueryProfile}
+import com.stratio.crossdata.common.serializers.StreamedSQLResultSerializer._
+import com.stratio.crossdata.test.BaseXDTest
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.types._
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+import scala.collection.mutable
+
+@RunWith(classOf[JUnitRunner])
+class StreamedSQLResultSerializerSpec extends BaseXDTest {
+
+  val schema = StructType(List(
+    StructField("id", IntegerType, true),
+    StructField("name", StringType, true),
+    StructField("tags", ArrayType(StringType, true), true)
+  ))
+
+  "A StreamedSQLResultSerializer" should "serialize and parse the schema line" in {
+    parseLine(schemaLine(schema), None) shouldBe StreamedSchema(schema)
+  }
+
+  it should "serialize and parse row lines using a previously received schema" in {
+    val row = Row(1, "crossdata", mutable.WrappedArray.make[String](Array("a", "b")))
+    val StreamedRow(parsedRow) = parseLine(rowLine(row, schema), Some(schema))
+    parsedRow.getInt(0) shouldBe 1
+    parsedRow.getString(1) shouldBe "crossdata"
+    parsedRow.getSeq[String](2) shouldBe Seq("a", "b")
+    parsedRow.schema shouldBe schema
+  }
+
+  it should "not include the schema within row lines" in {
+    rowLine(Row(1, "crossdata", null), schema) should not include "schema"
+  }
+
+  it should "fail to parse a row line if the schema has not been received" in {
+    an [Exception] should be thrownBy parseLine(rowLine(Row(1, null, null), schema), None)
+  }
+
+  it should "serialize and parse end and error lines" in {
+    parseLine(endLine(42), Some(schema)) shouldBe StreamedEnd(42)
+    parseLine(errorLine("boom"), None) shouldBe StreamedError("boom")
+  }
+
+  it should "carry the query profile within the end line" in {
+    val profile = QueryProfile(Seq(PhaseTiming(QueryProfile.Phases.Native, 3.5)), 42, 1024, Some(QueryProfile.Executions.Native))
+    parseLine(endLine(42, Some(profile)), Some(schema)) shouldBe StreamedEnd(42, Some(profile))
+  }
+
+}
@@ -15,6 +15,8 @@
  */
 package com.stratio.crossdata.connector
 
+import java.io.Closeable
+
 import org.apache.spark.annotation.DeveloperApi
 import org.apache.spark.rdd.RDD
 import org.apache.spark.sql.{Row, SQLContext}
@@ -34,6 +36,102 @@ import scala.util.Try
 @DeveloperApi
 trait NativeScan extends PushDownable {
   def buildScan(optimizedLogicalPlan: LogicalPlan): Option[Array[Row]]
+
+  /**
+   * Identifies the data read by the relation, e.g: its datasource along with the table and the cluster, so every
+   * instance reading the same data (one per session catalog) shares the statistics of its native executions.
+   * Defaults to the identity of the instance.
+   */
+  def nativeIdentity: String = s"${getClass.getName}@${hashCode.toHexString}"
+}
+
+object NativeScan {
+
+  val DefaultFetchSize = 1000
+
+  /**
+   * Batches of the native result of any [[NativeScan]]. The materialized result of relations which are not
+   * [[NativeBatchScan]]s is split into batches of `fetchSize` rows.
+   */
+  def batches(relation: NativeScan, optimizedLogicalPlan: LogicalPlan, fetchSize: Int): Option[RowBatches] =
+    relation match {
+      case batchScan: NativeBatchScan => batchScan.buildBatchScan(optimizedLogicalPlan, fetchSize)
+      case _ => relation.buildScan(optimizedLogicalPlan) map (RowBatches.fromRows(_, fetchSize))
+    }
+
+}
+
+/**
+ * A [[NativeScan]] fetching its result in batches as they are consumed, so it is never held completely in memory.
+ * Batches are fetched once the previous ones have been consumed and the resources are released as soon as the last
+ * batch is read or the batches are closed.
+ */
+@DeveloperApi
+trait NativeBatchScan extends NativeScan {
+
+  /**
+   * @param fetchSize number of rows per batch the caller expects, datasources may use a different one.
+   * @return the batches of the result or None if the plan cannot be resolved by the datasource.
+   */
+  def buildBatchScan(optimizedLogicalPlan: LogicalPlan, fetchSize: Int): Option[RowBatches]
+
+  override def buildScan(optimizedLogicalPlan: LogicalPlan): Option[Array[Row]] =
+    buildBatchScan(optimizedLogicalPlan, NativeScan.DefaultFetchSize) map { batches =>
+      try batches.flatten.toArray finally batches.close()
+    }
+
+}
+
+/**
+ * Closeable iterator over batches of [[Row]]s.
+ */
+@DeveloperApi
+abstract class RowBatches extends Iterator[Seq[Row]] with Closeable {
+
+  /**
+   * Iterator over the rows of the batches, the batches get closed once its last row is read or it is closed.
+   */
+  def rows: Iterator[Row] with Closeable = new Iterator[Row] with Closeable {
+    private var current: Iterator[Row] = Iterator.empty
+    private var closed = false
+
+    override def hasNext: Boolean = {
+      while (!closed && !current.hasNext && RowBatches.this.hasNext) current = RowBatches.this.next().iterator
+      val more = !closed && current.hasNext
+      if (!more) close()
+      more
+    }
+
+    override def next(): Row =
+      if (hasNext) current.next() else throw new NoSuchElementException("No more native rows")
+
+    override def close(): Unit = if (!closed) {
+      closed = true
+      RowBatches.this.close()
+    }
+  }
+
+}
+
+object RowBatches {
+
+  /**
+   * @param onClose releases the resources used to fetch the batches, it is called once.
+   */
+  def apply(batches: Iterator[Seq[Row]], onClose: () => Unit = () => ()): RowBatches = new RowBatches {
+    private var closed = false
+    override def hasNext: Boolean = !closed && batches.hasNext
+    override def next(): Seq[Row] = batches.next()
+    override def close(): Unit = synchronized {
+      if (!closed) {
+        closed = true
+        onClose()
+      }
+    }
+  }
+
+  def fromRows(rows: Array[Row], fetchSize: Int): RowBatches = apply(rows.grouped(math.max(fetchSize, 1)).map(_.toSeq))
+
 }
 
 /**
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata
+
+import org.apache.spark.sql.catalyst.TableIdentifier
+import org.apache.spark.sql.catalyst.analysis.UnresolvedRelation
+import org.apache.spark.sql.catalyst.expressions.{CurrentDate, CurrentTimestamp, Expression}
+import org.apache.spark.sql.catalyst.plans.logical
+import org.apache.spark.sql.catalyst.plans.logical.LogicalPlan
+import org.apache.spark.sql.crossdata.catalog.TableIdentifierNormalized
+import org.apache.spark.sql.crossdata.catalog.interfaces.XDCatalogCommon._
+import org.apache.spark.sql.crossdata.catalyst.execution.{InsertIntoTable => XDInsertIntoTable}
+import org.apache.spark.sql.execution.datasources.CreateTableUsingAsSelect
+
+import scala.util.Try
+
+/**
+  * Relations a read-only query depends on, views are expanded so the relations they are built on are included.
+  *
+  * @param relations Normalized identifiers of the referenced tables and views.
+  * @param temporary Whether any of them is registered in a temporary (session) catalog.
+  */
+case class QueryReferences(relations: Set[TableIdentifierNormalized], temporary: Boolean)
+
+object QueryReferences {
+
+  /**
+    * @return The relations referenced by `sql` or None if its result could change without any of them being
+    *         modified (commands, writes and non-deterministic queries) or if the statement cannot be analyzed.
+    */
+  def apply(xdContext: XDContext, sql: String): Option[QueryReferences] = Try {
+
+    val plan = xdContext.parseSql(sql)
+
+    if (isWrite(plan) || !isDeterministic(xdContext.executePlan(plan).analyzed)) None
+    else {
+      val identifiers = referencedRelations(xdContext, plan, Set.empty)
+      val catalog = xdContext.catalog
+      Some(QueryReferences(identifiers.map(_.normalize(xdContext.conf)), identifiers.exists(catalog.isTemporaryRelation)))
+    }
+
+  } getOrElse None
+
+  /**
+    * @return The relations `plan` reads, views are expanded, regardless of whether it is a read-only query.
+    */
+  def read(xdContext: XDContext, plan: LogicalPlan): Set[TableIdentifierNormalized] =
+    referencedRelations(xdContext, plan, Set.empty).map(_.normalize(xdContext.conf))
+
+  /**
+    * @return The relations whose data is modified by `sql` when it is an insert statement.
+    */
+  def written(xdContext: XDContext, sql: String): Set[TableIdentifierNormalized] = Try {
+    val writtenRelations = xdContext.parseSql(sql) collect {
+      case logical.InsertIntoTable(UnresolvedRelation(tableIdent, _), _, _, _, _) => tableIdent
+      case XDInsertIntoTable(tableIdent, _, _) => tableIdent
+    }
+    writtenRelations.map(_.normalize(xdContext.conf)).toSet
+  } getOrElse Set.empty
+
+  private def isWrite(plan: LogicalPlan): Boolean = plan.find {
+    case _: logical.Command | _: logical.InsertIntoTable | _: CreateTableUsingAsSelect => true
+    case _ => false
+  } isDefined
+
+  private def isDeterministic(plan: LogicalPlan): Boolean = plan.find { node =>
+    node.expressions.exists(_.find(isNonDeterministic).isDefined)
+  } isEmpty
+
+  private def isNonDeterministic(expression: Expression): Boolean = expression match {
+    case _: CurrentTimestamp | _: CurrentDate => true
+    case other => !other.deterministic
+  }
+
+  private def referencedRelations(
+                                   xdContext: XDContext,
+                                   plan: LogicalPlan,
+                                   visited: Set[TableIdentifier]
+                                 ): Set[TableIdentifier] = {
+
+    val relations = plan collect { case UnresolvedRelation(tableIdent, _) => tableIdent } filterNot visited
+
+    (visited /: relations) { (acc, tableIdent) =>
+      if (acc contains tableIdent) acc
+      else referencedRelations(xdContext, xdContext.catalog.lookupRelation(tableIdent), acc + tableIdent)
+    }
+  }
+
+}
@@ -22,9 +22,11 @@ import java.io.InputStream
 import java.lang.reflect.Method
 import java.net.{URL, URLClassLoader}
 import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
 import java.util.ServiceLoader
 import java.util.concurrent.atomic.AtomicReference
 
+import com.stratio.crossdata.common.result.QueryProfile
 import com.stratio.crossdata.connector.FunctionInventory
 import com.stratio.crossdata.security.CrossdataSecurityManager
 import com.stratio.crossdata.util.HdfsUtils
@@ -47,7 +49,7 @@ import org.apache.spark.sql.crossdata.catalyst.parser.{CrossdataParserDialect, X
 import org.apache.spark.sql.crossdata.catalyst.planning.{ExtendedDataSourceStrategy, XDStrategies}
 import org.apache.spark.sql.crossdata.catalyst.{ExtractNativeUDFs, NativeUDF, XDFunctionRegistry}
 import org.apache.spark.sql.crossdata.config.CoreConfig
-import org.apache.spark.sql.crossdata.execution.XDQueryExecution
+import org.apache.spark.sql.crossdata.execution.{NativeExecutionGuard, PartialNativeExecution, PreparedStatements, QueryProfiler, XDQueryExecution}
 import org.apache.spark.sql.crossdata.launcher.SparkJobLauncher
 import org.apache.spark.sql.crossdata.user.functions.GroupConcat
 import org.apache.spark.sql.execution.{ExtractPythonUDFs, SparkSQLParser}
@@ -235,9 +237,30 @@ class XDContext protected(@transient val sc: SparkContext,
   }
 
   override def sql(sqlText: String): DataFrame = {
-    XDDataFrame(this, parseSql(sqlText))
+    XDDataFrame(this, QueryProfiler.phase(QueryProfile.Phases.Parsing)(parseSql(sqlText)))
   }
 
+  @transient
+  private[crossdata] lazy val preparedStatements = new PreparedStatements(this, PreparedStatements.DefaultCapacity)
+
+  @transient
+  private[crossdata] lazy val nativeExecutionGuard = NativeExecutionGuard(NativeExecutionGuard.Settings(xdConfig))
+
+  @transient
+  private[crossdata] lazy val partialNativePushdown: Boolean = PartialNativeExecution.enabled(xdConfig)
+
+  private[crossdata] lazy val partialNativePushdownMaxRows: Int = PartialNativeExecution.maxRows(xdConfig)
+
+  /**
+    * Prepares a SQL statement whose parameters are given as '?', e.g: `SELECT * FROM t WHERE id = ?`.
+    * Statements are prepared once per context and SQL text so preparing the same one again is cheap.
+    *
+    * @param sqlText SQL text of the statement
+    * @return A statement which can be executed many times, with different parameters, without being analyzed
+    *         nor optimized again.
+    */
+  def prepare(sqlText: String): XDPreparedStatement = preparedStatements(sqlText)
+
   /**
     * Add JAR file from XD Driver to the context
     *
@@ -247,7 +270,7 @@ class XDContext protected(@transient val sc: SparkContext,
     super.addJar(path)
     if ((path.toLowerCase.startsWith("hdfs://")) && (toClasspath.getOrElse(true))) {
       val hdfsIS: InputStream = HdfsUtils(xdConfig.getConfig(CoreConfig.HdfsKey)).getFile(path)
-      val file: java.io.File = createFile(hdfsIS, s"${xdConfig.getConfig(CoreConfig.JarsRepo).getString("externalJars")}/${path.split("/").last}")
+      val file: java.io.File = createFile(hdfsIS, s"${xdConfig.getConfig(CoreConfig.JarsRepo).getString("externalJars")}/${localJarPath(path)}")
       addToClasspath(file)
     } else if (scala.reflect.io.File(path).exists) {
       val file = new java.io.File(path)
@@ -269,8 +292,22 @@ class XDContext protected(@transient val sc: SparkContext,
     }
   }
 
+  /**
+    * Path, relative to the local jars directory, a HDFS jar is copied to. Jars of the content addressed jar store,
+    * `<digest>/<name>`, keep their digest directory and the rest get a digest of their HDFS path, so different jars
+    * sharing a name never overwrite each other.
+    */
+  private def localJarPath(path: String): String = {
+    val segments = path.split("/")
+    val directory = segments.init.lastOption.filter(_.matches("[0-9a-f]{64}")) getOrElse {
+      MessageDigest.getInstance("SHA-256").digest(path.getBytes("UTF-8")).map("%02x".format(_)).mkString
+    }
+    s"$directory/${segments.last}"
+  }
+
   private def createFile(hdfsIS: InputStream, path: String): java.io.File = {
     val targetFile = new java.io.File(path)
+    targetFile.getParentFile.mkdirs()
     java.nio.file.Files.copy(hdfsIS, targetFile.toPath, StandardCopyOption.REPLACE_EXISTING)
     targetFile
   }
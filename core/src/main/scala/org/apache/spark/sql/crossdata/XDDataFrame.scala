@@ -15,9 +15,13 @@
  */
 package org.apache.spark.sql.crossdata
 
+import java.util.concurrent.CancellationException
+import java.util.concurrent.atomic.AtomicBoolean
 
 import com.stratio.common.utils.components.logger.impl.SparkLoggerComponent
-import com.stratio.crossdata.connector.NativeScan
+import com.stratio.crossdata.common.metrics.XDMetrics
+import com.stratio.crossdata.common.result.QueryProfile.{Executions, Phases}
+import com.stratio.crossdata.connector.{NativeScan, RowBatches}
 import org.apache.spark.annotation.DeveloperApi
 import org.apache.spark.sql.DataFrame
 import org.apache.spark.sql.Row
@@ -29,8 +33,10 @@ import org.apache.spark.sql.crossdata.ExecutionType.Default
 import org.apache.spark.sql.crossdata.ExecutionType.ExecutionType
 import org.apache.spark.sql.crossdata.ExecutionType.Native
 import org.apache.spark.sql.crossdata.ExecutionType.Spark
-import org.apache.spark.sql.crossdata.XDDataFrame.findNativeQueryExecutor
+import org.apache.spark.sql.crossdata.XDDataFrame.{NativeFallback, findNativeQueryExecutor}
+import org.apache.spark.sql.crossdata.catalog.TableIdentifierNormalized
 import org.apache.spark.sql.crossdata.exceptions.NativeExecutionException
+import org.apache.spark.sql.crossdata.execution.{NativeExecutionGuard, PartialNativeExecution, QueryProfiler}
 import org.apache.spark.sql.execution.QueryExecution
 import org.apache.spark.sql.execution.datasources.LogicalRelation
 import org.apache.spark.sql.types.ArrayType
@@ -40,9 +46,20 @@ import org.apache.spark.sql.types.StructType
 import scala.collection.mutable.BufferLike
 import scala.collection.{GenTraversableOnce, immutable, mutable}
 import scala.collection.generic.CanBuildFrom
+import scala.concurrent.duration._
+import scala.util.Try
+import scala.util.control.NonFatal
 
 private[sql] object XDDataFrame {
 
+  /**
+   * Reason why a native execution falls back to Spark.
+   *
+   * @param failed whether the relation failed to execute the plan, or its native executions are suspended, rather
+   *               than not supporting it.
+   */
+  private[crossdata] case class NativeFallback(reason: String, failed: Boolean)
+
   def apply(sqlContext: SQLContext, logicalPlan: LogicalPlan): DataFrame = {
     new XDDataFrame(sqlContext, logicalPlan)
   }
@@ -114,7 +131,7 @@ class XDDataFrame private[sql](@transient override val sqlContext: SQLContext,
   override def collect(): Array[Row] = {
     // If cache doesn't go through native
     if (sqlContext.cacheManager.lookupCachedData(this).nonEmpty) {
-      super.collect()
+      sparkCollect()
     } else {
       val nativeQueryExecutor: Option[NativeScan] = findNativeQueryExecutor(queryExecution.optimizedPlan)
       if (nativeQueryExecutor.isEmpty) {
@@ -122,7 +139,40 @@ class XDDataFrame private[sql](@transient override val sqlContext: SQLContext,
       } else {
         logInfo(s"Native query: ${queryExecution.simpleString}")
       }
-      nativeQueryExecutor.flatMap(executeNativeQuery).getOrElse(super.collect())
+      nativeExecution(nativeQueryExecutor)(nativeQuery) match {
+        case Right(rows) => rows
+        case Left(failedRelation) =>
+          partialNativeExecution(NativeScan.DefaultFetchSize, failedRelation) map { dataFrame =>
+            QueryProfiler.phase(Phases.Spark)(dataFrame.collect())
+          } getOrElse sparkCollect()
+      }
+    }
+  }
+
+  /**
+   * Returns an iterator over the [[Row]]s of this [[XDDataFrame]]. Native results are fetched in batches by
+   * [[com.stratio.crossdata.connector.NativeBatchScan]]s, and materialized by the rest of native relations, whereas
+   * Spark results are fetched one partition at a time, so the whole result set is never held by the driver.
+   * Native iterators are [[java.io.Closeable]] and release their resources once exhausted or closed.
+   *
+   * @param fetchSize number of rows per native batch
+   */
+  def localIterator(fetchSize: Int = NativeScan.DefaultFetchSize): Iterator[Row] = {
+    if (sqlContext.cacheManager.lookupCachedData(this).nonEmpty) {
+      sparkLocalIterator()
+    } else {
+      val nativeQueryExecutor: Option[NativeScan] = findNativeQueryExecutor(queryExecution.optimizedPlan)
+      nativeExecution(nativeQueryExecutor)(nativeBatches(_, fetchSize)) match {
+        case Right(batches) => batches.rows
+        case Left(failedRelation) =>
+          partialNativeExecution(fetchSize, failedRelation) map { dataFrame =>
+            val rows = dataFrame.rdd.toLocalIterator
+            QueryProfiler.active.fold(rows)(_.timedIterator(Phases.Spark, rows))
+          } getOrElse {
+            logInfo(s"Spark Query: ${queryExecution.simpleString}")
+            sparkLocalIterator()
+          }
+      }
     }
   }
 
@@ -228,16 +278,21 @@ class XDDataFrame private[sql](@transient override val sqlContext: SQLContext,
         case (row: Row, _) => Seq(row)
       }
 
+    def flattening(flatten: Seq[Row] => Seq[Row]): Array[Row] = {
+      val rows = collect()
+      QueryProfiler.phase(Phases.Flattening)(flatten(rows).toArray)
+    }
+
     def processProjection(plist: Seq[NamedExpression], child: LogicalPlan, limit: Int = Int.MaxValue): Array[Row] = {
       val fullyAnnotatedRequestedColumns = plist map (flattenProjectedColumns(_))
-      iterativeFlatten(collect(), fullyAnnotatedRequestedColumns)(limit) toArray
+      flattening(iterativeFlatten(_, fullyAnnotatedRequestedColumns)(limit))
     }
 
     queryExecution.optimizedPlan match {
       case Limit(lexp, Project(plist, child)) => processProjection(plist, child, lexp.toString().toInt)
       case Project(plist, child) => processProjection(plist, child)
-      case Limit(lexp, _) => iterativeFlatten(collect())(lexp.toString().toInt) toArray
-      case _ => iterativeFlatten(collect())() toArray
+      case Limit(lexp, _) => flattening(iterativeFlatten(_)(lexp.toString().toInt))
+      case _ => flattening(iterativeFlatten(_)())
     }
 
   }
@@ -253,9 +308,10 @@ class XDDataFrame private[sql](@transient override val sqlContext: SQLContext,
   @DeveloperApi
   def collect(executionType: ExecutionType): Array[Row] = executionType match {
     case Default => collect()
-    case Spark => super.collect()
+    case Spark => sparkCollect()
     case Native =>
       val result = findNativeQueryExecutor(queryExecution.optimizedPlan).flatMap(executeNativeQuery)
+      result.foreach(_ => XDMetrics.nativeExecutions.inc())
       result.getOrElse(throw new NativeExecutionException)
   }
 
@@ -279,6 +335,43 @@ class XDDataFrame private[sql](@transient override val sqlContext: SQLContext,
   }
 
 
+  private[this] def sparkCollect(): Array[Row] = {
+    XDMetrics.sparkExecutions.inc()
+    QueryProfiler.record(_.executedBy(Executions.Spark))
+    QueryProfiler.phase(Phases.Spark)(super.collect())
+  }
+
+  // Spark computes the rows of each partition as they are pulled, so that's the time profiled
+  private[this] def sparkLocalIterator(): Iterator[Row] = {
+    XDMetrics.sparkExecutions.inc()
+    QueryProfiler.record(_.executedBy(Executions.Spark))
+    QueryProfiler.active.fold(rdd.toLocalIterator)(_.timedIterator(Phases.Spark, rdd.toLocalIterator))
+  }
+
+  /**
+   * Tries to execute the logical plan natively, counting the executions falling back to Spark because the
+   * native relation couldn't resolve the whole plan.
+   *
+   * @return either the native result or, when falling back to Spark, the relation which failed to execute the plan
+   *         (or whose native executions are suspended), if any.
+   */
+  private[this] def nativeExecution[T](nativeQueryExecutor: Option[NativeScan])(
+    execute: NativeScan => Either[NativeFallback, T]): Either[Option[NativeScan], T] =
+    nativeQueryExecutor map { provider =>
+      val connector = provider.getClass.getSimpleName
+      execute(provider) match {
+        case Right(result) =>
+          XDMetrics.nativeExecutions.inc()
+          QueryProfiler.record(_.executedBy(Executions.Native, Some(connector)))
+          Right(result)
+        case Left(NativeFallback(fallbackReason, failed)) =>
+          logInfo(s"Native execution by $connector falling back to Spark: $fallbackReason")
+          XDMetrics.nativeFallbacks.inc()
+          QueryProfiler.record(_.fallback(connector, fallbackReason))
+          Left(Some(provider) filter (_ => failed))
+      }
+    } getOrElse Left(None)
+
   /**
    * Executes the logical plan.
    *
@@ -286,19 +379,172 @@ class XDDataFrame private[sql](@transient override val sqlContext: SQLContext,
    * @return an array that contains all of [[Row]]s in this [[XDDataFrame]]
    *         or None if the provider cannot resolve the entire [[XDDataFrame]] natively.
    */
-  private[this] def executeNativeQuery(provider: NativeScan): Option[Array[Row]] = {
+  private[this] def executeNativeQuery(provider: NativeScan): Option[Array[Row]] =
+    nativeQuery(provider).right.toOption
+
+  /**
+   * Executes the logical plan natively.
+   *
+   * @return either the reason why the provider cannot resolve the entire [[XDDataFrame]] natively or its rows.
+   */
+  private[this] def nativeQuery(provider: NativeScan): Either[NativeFallback, Array[Row]] =
+    guardedNativeExecution(provider, queryExecution.optimizedPlan)(provider.buildScan)
+
+  /**
+   * Executes the logical plan natively, fetching its rows in batches of about `fetchSize` rows as they are consumed.
+   *
+   * @return either the reason why the provider cannot resolve the entire [[XDDataFrame]] natively or its batches.
+   */
+  private[this] def nativeBatches(provider: NativeScan, fetchSize: Int): Either[NativeFallback, RowBatches] =
+    guardedNativeBatches(provider, queryExecution.optimizedPlan, fetchSize).right map { batches =>
+      QueryProfiler.active.fold(batches) { queryProfiler =>
+        RowBatches(queryProfiler.timedIterator(Phases.Native, batches), () => batches.close())
+      }
+    }
 
-    val containsSubfields = notSupportedProject(queryExecution.optimizedPlan)
-    val planSupported = !containsSubfields && queryExecution.optimizedPlan.map(lp => lp).forall(provider.isSupported(_, queryExecution.optimizedPlan))
-    if(planSupported) {
-      // TODO handle failed executions which are currently wrapped within the option, so these jobs will appear duplicated
+  /**
+   * Executes natively the largest subtrees of the plan supported by its native relations, so Spark only executes
+   * the rest of the plan on their results. Disabled by `crossdata-core.native.partialPushdown.enabled`. Subtrees
+   * whose native result exceeds `crossdata-core.native.partialPushdown.maxRows` rows are left to Spark.
+   *
+   * @param failedRelation relation which has just failed to execute the whole plan, so it isn't tried again
+   * @return the [[DataFrame]] resolving the rest of the plan, or None if no subtree could be executed natively.
+   */
+  private[this] def partialNativeExecution(fetchSize: Int, failedRelation: Option[NativeScan]): Option[DataFrame] =
+    if (!partialPushdownEnabled) None else {
+      PartialNativeExecution.splice(queryExecution.optimizedPlan) { (provider, subtree) =>
+        if (failedRelation contains provider) None
+        else guardedNativeBatches(provider, subtree, fetchSize).right.toOption flatMap { batches =>
+          val rows = QueryProfiler.phase(Phases.Native)(PartialNativeExecution.collect(batches, partialPushdownMaxRows))
+          if (rows.isEmpty) logInfo(s"Native result exceeding $partialPushdownMaxRows rows left to Spark: $subtree")
+          rows
+        }
+      } map { case (splicedPlan, providers) =>
+        val connectors = providers.map(_.getClass.getSimpleName).distinct.mkString(",")
+        logInfo(s"Partially native query by $connectors: ${queryExecution.simpleString}")
+        XDMetrics.hybridExecutions.inc()
+        QueryProfiler.record(_.executedBy(Executions.Hybrid, Some(connectors)))
+        new DataFrame(sqlContext, splicedPlan)
+      }
+    }
+
+  /**
+   * Runs a native execution unless the relation is known not to support the plan or its native executions are
+   * suspended by the [[NativeExecutionGuard]], which is told about the outcome of the execution.
+   */
+  private[this] def guardedNativeExecution[T](provider: NativeScan, optimizedPlan: LogicalPlan)(
+    execute: LogicalPlan => Option[T]): Either[NativeFallback, T] =
+    guarded(provider, optimizedPlan)(execute) { (result, elapsed) =>
+      nativeExecutionGuard.succeeded(provider, elapsed)
+      result
+    }
+
+  /**
+   * Like [[guardedNativeExecution]] but fetching the result in batches. The [[NativeExecutionGuard]] is told about
+   * the outcome of the execution once its batches are exhausted or closed, so slow executions are detected even if
+   * the query starts quickly. Only the time spent fetching batches counts, not the one spent by their consumer.
+   */
+  private[this] def guardedNativeBatches(
+    provider: NativeScan, optimizedPlan: LogicalPlan, fetchSize: Int): Either[NativeFallback, RowBatches] =
+    guarded(provider, optimizedPlan)(NativeScan.batches(provider, _, fetchSize)) { (batches, opening) =>
+      var fetching = opening.toNanos
+      val reported = new AtomicBoolean(false)
+
+      def fetch[R](f: => R): R = {
+        val start = System.nanoTime()
+        try reportingFailures(provider)(f) catch {
+          case NonFatal(exception) =>
+            reported.set(true) // The failure has already been reported
+            throw exception
+        } finally fetching += System.nanoTime() - start
+      }
+
+      def reportSuccess(): Unit =
+        if (reported.compareAndSet(false, true)) nativeExecutionGuard.succeeded(provider, fetching nanoseconds)
+
+      val fetched = new Iterator[Seq[Row]] {
+        override def hasNext: Boolean = {
+          val more = fetch(batches.hasNext)
+          if (!more) reportSuccess()
+          more
+        }
+        override def next(): Seq[Row] = fetch(batches.next())
+      }
+      RowBatches(fetched, () => try batches.close() finally reportSuccess())
+    }
+
+  /**
+   * @param succeeded reports the success of the native execution, given its result and the time it took
+   */
+  private[this] def guarded[T](provider: NativeScan, optimizedPlan: LogicalPlan)(
+    execute: LogicalPlan => Option[T])(succeeded: (T, Duration) => T): Either[NativeFallback, T] = {
+
+    val unsupportedReason = nativeExecutionGuard.unsupportedReason(provider, optimizedPlan, readRelations) {
+      if (notSupportedProject(optimizedPlan))
+        Some("Projections of map values or struct fields are not supported natively")
+      else if (!optimizedPlan.map(lp => lp).forall(provider.isSupported(_, optimizedPlan)))
+        Some("The plan is not supported by the native relation")
+      else
+        None
+    }
+
+    val skippedReason = unsupportedReason.map(NativeFallback(_, failed = false)) orElse {
+      nativeExecutionGuard.suspendedReason(provider).map(NativeFallback(_, failed = true))
+    }
+
+    skippedReason map (Left(_)) getOrElse {
       // TODO the plan should notice the native execution
-      withNewExecutionId{
-        provider.buildScan(queryExecution.optimizedPlan)
+      val start = System.nanoTime()
+      val result = reportingFailures(provider) {
+        QueryProfiler.phase(Phases.Native) {
+          withNewExecutionId {
+            execute(optimizedPlan)
+          }
+        }
       }
-    } else
-      None
+      // An interrupted native execution (e.g: a cancelled query) must not fall back to Spark
+      if (result.isEmpty && Thread.currentThread().isInterrupted) {
+        nativeExecutionGuard.cancelled(provider)
+        throw new CancellationException("Native query execution interrupted")
+      }
+      // Connectors return None when their native execution fails, so the query is executed again by Spark
+      result map { nativeResult =>
+        Right(succeeded(nativeResult, (System.nanoTime() - start) nanoseconds))
+      } getOrElse {
+        val reason = "The native execution didn't return any result"
+        nativeExecutionGuard.failed(provider, reason)
+        Left(NativeFallback(reason, failed = true))
+      }
+    }
+
+  }
+
+  private[this] def reportingFailures[T](provider: NativeScan)(f: => T): T =
+    try f catch {
+      case NonFatal(exception) =>
+        nativeExecutionGuard.failed(provider, s"The native execution failed: ${exception.getMessage}")
+        throw exception
+    }
+
+  private[this] def nativeExecutionGuard: NativeExecutionGuard = sqlContext match {
+    case xdContext: XDContext => xdContext.nativeExecutionGuard
+    case _ => NativeExecutionGuard(NativeExecutionGuard.Settings.Default)
+  }
+
+  private[this] def partialPushdownEnabled: Boolean = sqlContext match {
+    case xdContext: XDContext => xdContext.partialNativePushdown
+    case _ => true
+  }
+
+  // Relations read by the query, only their catalog changes invalidate the native capabilities cached for it
+  @transient private[this] lazy val readRelations: Set[TableIdentifierNormalized] = sqlContext match {
+    case xdContext: XDContext => Try(QueryReferences.read(xdContext, queryExecution.logical)) getOrElse Set.empty
+    case _ => Set.empty
+  }
 
+  private[this] def partialPushdownMaxRows: Int = sqlContext match {
+    case xdContext: XDContext => xdContext.partialNativePushdownMaxRows
+    case _ => PartialNativeExecution.DefaultMaxRows
   }
 
   private[this] def notSupportedProject(optimizedLogicalPlan: LogicalPlan): Boolean = {
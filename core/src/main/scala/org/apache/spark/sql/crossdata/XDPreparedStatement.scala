@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata
+
+import org.apache.spark.sql.DataFrame
+import org.apache.spark.sql.catalyst.expressions.{Cast, Literal}
+import org.apache.spark.sql.catalyst.plans.logical.LogicalPlan
+import org.apache.spark.sql.crossdata.catalyst.{ExtendedUnresolvedRelation, ParameterPlaceholder}
+import org.apache.spark.sql.crossdata.catalog.{CatalogChain, TableIdentifierNormalized}
+import org.apache.spark.sql.crossdata.execution.{PreparedQueryExecution, XDQueryExecution}
+import org.apache.spark.sql.types.{DataType, StructType}
+
+import scala.util.Try
+
+/**
+  * SQL statement, whose literals can be replaced by '?' parameters, which is parsed, analyzed and optimized
+  * just once. Each execution binds its parameters into the optimized plan so neither the analyzer nor the optimizer
+  * run again, native datasources receive the bound plan.
+  *
+  * Plans reading tables having a global index are the exception: The index is queried while optimizing the plan,
+  * so they are optimized on every execution. Authorization is checked on every execution, so revoked permissions
+  * apply to statements prepared before.
+  *
+  * @param sql SQL text of the statement.
+  */
+class XDPreparedStatement private[crossdata](xdContext: XDContext, val sql: String) {
+
+  private val parsed: LogicalPlan = xdContext.parseSql(sql)
+
+  // Relations read by the statement, its plans are outdated once any of them has changed
+  private val relations: Set[TableIdentifierNormalized] = Try(QueryReferences.read(xdContext, parsed)) getOrElse Set.empty
+
+  private val catalogVersion: Long = CatalogChain.changeCount(relations)
+
+  private val queryExecution = {
+    val qe = xdContext.executePlan(parsed)
+    qe.assertAnalyzed()
+    qe
+  }
+
+  private val analyzed: LogicalPlan = queryExecution.analyzed
+
+  private val optimized: Option[LogicalPlan] =
+    if (analyzed.collectFirst { case indexed: ExtendedUnresolvedRelation => indexed }.isDefined) None
+    else Some(queryExecution.optimizedPlan)
+
+  // Parameters are numbered after their position within the SQL text
+  private val parameterOffsets: Seq[Int] = parsed.flatMap { node =>
+    node.expressions.flatMap(_.collect { case ParameterPlaceholder(offset) => offset })
+  }.distinct.sorted
+
+  val numberOfParameters: Int = parameterOffsets.size
+
+  val schema: StructType = analyzed.schema
+
+  private[crossdata] def isOutdated: Boolean = CatalogChain.changeCount(relations) != catalogVersion
+
+  /**
+    * @param parameters Values of the parameters, in order of appearance.
+    * @return A [[DataFrame]] which doesn't need to be analyzed nor, in most cases, optimized.
+    */
+  def execute(parameters: Any*): DataFrame = {
+
+    require(
+      parameters.size == numberOfParameters,
+      s"The statement expects $numberOfParameters parameters but ${parameters.size} were given"
+    )
+
+    queryExecution match {
+      case xdQueryExecution: XDQueryExecution => xdQueryExecution.authorize()
+      case _ =>
+    }
+
+    val values: Map[Int, Literal] = (parameterOffsets zip parameters.map(XDPreparedStatement.toLiteral)).toMap
+
+    def bind(plan: LogicalPlan): LogicalPlan = plan transformAllExpressions {
+      case Cast(ParameterPlaceholder(offset), dataType) => XDPreparedStatement.convert(values(offset), dataType)
+      case ParameterPlaceholder(offset) => values(offset)
+    }
+
+    new XDDataFrame(xdContext, new PreparedQueryExecution(xdContext, bind(analyzed), optimized map bind))
+  }
+
+}
+
+object XDPreparedStatement {
+
+  private def toLiteral(value: Any): Literal = value match {
+    case literal: Literal => literal
+    case bigInt: BigInt => Literal(new java.math.BigDecimal(bigInt.bigInteger))
+    case other => Literal(other)
+  }
+
+  // Parameters are converted when binding them to the type the analyzer expects
+  private def convert(value: Literal, dataType: DataType): Literal =
+    if (value.dataType == dataType) value
+    else {
+      val converted = Cast(value, dataType).eval()
+      if (converted == null && value.value != null)
+        throw new IllegalArgumentException(s"Parameter $value cannot be converted to ${dataType.simpleString}")
+      Literal(converted, dataType)
+    }
+
+}
@@ -15,7 +15,11 @@
  */
 package org.apache.spark.sql.crossdata.catalog
 
+import java.util.concurrent.{ConcurrentHashMap, CopyOnWriteArrayList}
+import java.util.concurrent.atomic.AtomicLong
+
 import com.stratio.common.utils.components.logger.impl.SparkLoggerComponent
+import com.stratio.crossdata.common.metrics.XDMetrics
 import org.apache.spark.sql.catalyst.plans.logical.LogicalPlan
 import org.apache.spark.sql.catalyst.{CatalystConf, TableIdentifier}
 import org.apache.spark.sql.crossdata.XDContext
@@ -23,10 +27,48 @@ import org.apache.spark.sql.crossdata.catalog.XDCatalog.{CrossdataApp, Crossdata
 import org.apache.spark.sql.crossdata.catalog.interfaces.{XDCatalogCommon, XDPersistentCatalog, XDStreamingCatalog, XDTemporaryCatalog}
 import org.apache.spark.sql.crossdata.models.{EphemeralQueryModel, EphemeralStatusModel, EphemeralTableModel}
 
+import scala.collection.JavaConversions._
 import scala.util.Try
 
 
 object CatalogChain {
+
+  private val changeListeners = new CopyOnWriteArrayList[CatalogChangeListener]()
+  private val changes = new AtomicLong()
+  // Last change of each relation, by table name regardless of its database, and the last change of all of them
+  private val relationChanges = new ConcurrentHashMap[String, java.lang.Long]()
+  private val lastGlobalChange = new AtomicLong()
+
+  /**
+    * Registers a listener notified of the relation changes made through any [[CatalogChain]] within this JVM.
+    */
+  def addChangeListener(listener: CatalogChangeListener): Unit = changeListeners.addIfAbsent(listener)
+
+  def removeChangeListener(listener: CatalogChangeListener): Unit = changeListeners.remove(listener)
+
+  /**
+    * Number of relation changes made through any [[CatalogChain]] within this JVM.
+    */
+  private[crossdata] def changeCount: Long = changes.get()
+
+  /**
+    * Last change made through any [[CatalogChain]] within this JVM affecting any of `relations`, so it only differs
+    * from a previous value if some of them have been changed since.
+    */
+  private[crossdata] def changeCount(relations: Set[TableIdentifierNormalized]): Long =
+    (relations.map(relation => Option(relationChanges.get(relation.table)).fold(0L)(_.longValue)) +
+      lastGlobalChange.get).max
+
+  private def notifyChange(relation: TableIdentifierNormalized): Unit = {
+    relationChanges.put(relation.table, changes.incrementAndGet())
+    changeListeners.foreach(_.relationChanged(relation))
+  }
+
+  private def notifyGlobalChange(): Unit = {
+    lastGlobalChange.set(changes.incrementAndGet())
+    changeListeners.foreach(_.allRelationsChanged())
+  }
+
   def apply(catalogs: XDCatalogCommon*)(implicit xdContext: XDContext): CatalogChain = {
     val temporaryCatalogs = catalogs.collect { case a: XDTemporaryCatalog => a }
     val persistentCatalogs = catalogs.collect { case a: XDPersistentCatalog => a }
@@ -50,6 +92,7 @@ private[crossdata] class CatalogChain private(val temporaryCatalogs: Seq[XDTempo
                                                )(implicit val xdContext: XDContext) extends XDCatalog with SparkLoggerComponent {
 
   import XDCatalogCommon._
+  import CatalogChain.{notifyChange, notifyGlobalChange}
 
   override implicit val conf: CatalystConf = xdContext.conf
 
@@ -68,16 +111,27 @@ private[crossdata] class CatalogChain private(val temporaryCatalogs: Seq[XDTempo
   /**
     * Apply the lookup function to each underlying catalog until a [[LogicalPlan]] is found. If the table is found in a
     * temporary catalog, the relation is saved into the previous temporary catalogs.
+    *
+    * The time spent at each level of the chain is recorded in [[XDMetrics]], a relation found by the temporary
+    * catalogs counts as a cache hit.
     */
   private def chainedLookup(lookup: XDCatalogCommon => Option[LogicalPlan], tableIdentifier: TableIdentifier): Option[LogicalPlan] = {
-    val (relationOpt, previousCatalogs) = takeUntilRelationFound(lookup, temporaryCatalogs)
+    val (relationOpt, previousCatalogs) = XDMetrics.time(XDMetrics.temporaryCatalogLookup) {
+      takeUntilRelationFound(lookup, temporaryCatalogs)
+    }
 
     if (relationOpt.isDefined) {
+      XDMetrics.catalogCacheHits.inc()
       previousCatalogs.foreach(_.saveTable(normalize(tableIdentifier), relationOpt.get))
       relationOpt
     } else {
-      (persistentCatalogs ++: streamingCatalogs.toSeq).view map lookup collectFirst {
-        case Some(res) => res
+      XDMetrics.catalogCacheMisses.inc()
+      XDMetrics.time(XDMetrics.persistentCatalogLookup) {
+        persistentCatalogs.view map lookup collectFirst {
+          case Some(res) => res
+        }
+      } orElse XDMetrics.time(XDMetrics.streamingCatalogLookup) {
+        streamingCatalogs flatMap lookup
       }
     }
 
@@ -111,21 +165,31 @@ private[crossdata] class CatalogChain private(val temporaryCatalogs: Seq[XDTempo
   /**
    * TemporaryCatalog
    */
-  override def registerView(viewIdentifier: ViewIdentifier, logicalPlan: LogicalPlan, sql: Option[String]): Unit =
+  override def registerView(viewIdentifier: ViewIdentifier, logicalPlan: LogicalPlan, sql: Option[String]): Unit = {
     temporaryCatalogs.foreach(_.saveView(normalize(viewIdentifier), logicalPlan, sql))
+    notifyChange(normalize(viewIdentifier))
+  }
 
   // TODO throw an exception if there is no temp catalogs! Review CatalogChain
-  override def registerTable(tableIdent: TableIdentifier, plan: LogicalPlan, crossdataTable: Option[CrossdataTable]): Unit =
+  override def registerTable(tableIdent: TableIdentifier, plan: LogicalPlan, crossdataTable: Option[CrossdataTable]): Unit = {
     temporaryCatalogs.foreach(_.saveTable(normalize(tableIdent), plan, crossdataTable))
+    notifyChange(normalize(tableIdent))
+  }
 
-  override def unregisterView(viewIdentifier: ViewIdentifier): Unit =
+  override def unregisterView(viewIdentifier: ViewIdentifier): Unit = {
     temporaryCatalogs.foreach(_.dropView(normalize(viewIdentifier)))
+    notifyChange(normalize(viewIdentifier))
+  }
 
-  override def unregisterTable(tableIdent: TableIdentifier): Unit =
+  override def unregisterTable(tableIdent: TableIdentifier): Unit = {
     temporaryCatalogs.foreach(_.dropTable(normalize(tableIdent)))
+    notifyChange(normalize(tableIdent))
+  }
 
-  override def unregisterAllTables(): Unit =
+  override def unregisterAllTables(): Unit = {
     temporaryCatalogs.foreach(_.dropAllTables())
+    notifyGlobalChange()
+  }
 
 
   /**
@@ -144,6 +208,9 @@ private[crossdata] class CatalogChain private(val temporaryCatalogs: Seq[XDTempo
   override def tableExists(tableIdent: TableIdentifier): Boolean =
     lookupRelationOpt(tableIdent).isDefined
 
+  override def isTemporaryRelation(tableIdent: TableIdentifier): Boolean =
+    temporaryCatalogs.exists(_.relation(normalize(tableIdent)).isDefined)
+
   // TODO streaming tables
   override def getTables(databaseName: Option[String]): Seq[(String, Boolean)] = {
     def getRelations(catalogSeq: Seq[XDCatalogCommon]): Set[String] = catalogSeq.flatMap { cat =>
@@ -168,11 +235,15 @@ private[crossdata] class CatalogChain private(val temporaryCatalogs: Seq[XDTempo
    * ExternalCatalog
    */
 
-  override def persistTable(crossdataTable: CrossdataTable, table: LogicalPlan): Unit =
+  override def persistTable(crossdataTable: CrossdataTable, table: LogicalPlan): Unit = {
     persistentCatalogs.foreach(_.saveTable(crossdataTable, table))
+    notifyChange(crossdataTable.tableIdentifier)
+  }
 
-  override def persistView(viewIdentifier: ViewIdentifier, plan: LogicalPlan, sqlText: String): Unit =
+  override def persistView(viewIdentifier: ViewIdentifier, plan: LogicalPlan, sqlText: String): Unit = {
     persistentCatalogs.foreach(_.saveView(normalize(viewIdentifier), plan, sqlText))
+    notifyChange(normalize(viewIdentifier))
+  }
 
   override def persistIndex(crossdataIndex: CrossdataIndex): Unit =
     if (tableMetadata(crossdataIndex.tableIdentifier.toTableIdentifier).isEmpty) {
@@ -192,6 +263,7 @@ private[crossdata] class CatalogChain private(val temporaryCatalogs: Seq[XDTempo
 
     temporaryCatalogs foreach (_.dropTable(normalize(tableIdentifier)))
     persistentCatalogs foreach (_.dropTable(normalize(tableIdentifier)))
+    notifyChange(normalize(tableIdentifier))
   }
 
   override def dropAllTables(): Unit = {
@@ -199,6 +271,7 @@ private[crossdata] class CatalogChain private(val temporaryCatalogs: Seq[XDTempo
     dropAllIndexes()
     temporaryCatalogs foreach (_.dropAllTables())
     persistentCatalogs foreach (_.dropAllTables())
+    notifyGlobalChange()
   }
 
   override def dropView(viewIdentifier: ViewIdentifier): Unit = {
@@ -207,11 +280,13 @@ private[crossdata] class CatalogChain private(val temporaryCatalogs: Seq[XDTempo
     logInfo(s"Deleting view ${viewIdentifier.unquotedString} from catalog")
     temporaryCatalogs foreach (_.dropView(normalize(viewIdentifier)))
     persistentCatalogs foreach (_.dropView(normalize(viewIdentifier)))
+    notifyChange(normalize(viewIdentifier))
   }
 
   override def dropAllViews(): Unit = {
     temporaryCatalogs foreach (_.dropAllViews())
     persistentCatalogs foreach (_.dropAllViews())
+    notifyGlobalChange()
   }
 
 
@@ -243,8 +318,10 @@ private[crossdata] class CatalogChain private(val temporaryCatalogs: Seq[XDTempo
   override def tableMetadata(tableIdentifier: TableIdentifier): Option[CrossdataTable] =
     persistentChainedLookup(_.lookupTable(normalize(tableIdentifier)))
 
-  override def refreshTable(tableIdent: TableIdentifier): Unit =
+  override def refreshTable(tableIdent: TableIdentifier): Unit = {
     persistentCatalogs.foreach(_.refreshCache(normalize(tableIdent)))
+    notifyChange(normalize(tableIdent))
+  }
 
   /**
    * StreamingCatalog
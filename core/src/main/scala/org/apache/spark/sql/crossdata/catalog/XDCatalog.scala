@@ -86,6 +86,11 @@ with StreamingCatalogAPI {
 
   def unregisterView(viewIdentifier: ViewIdentifier): Unit
 
+  /**
+   * Whether the relation is registered in a temporary (i.e: session) catalog.
+   */
+  def isTemporaryRelation(tableIdent: TableIdentifier): Boolean
+
   /**
    * Check the connection to the set Catalog
    */
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.catalyst
+
+import org.apache.spark.sql.catalyst.expressions.{LeafExpression, Unevaluable}
+import org.apache.spark.sql.types.{DataType, NullType}
+
+/**
+  * Parameter ('?') of a prepared statement, it is replaced by its value right before each execution.
+  *
+  * Its type is unknown until then so the analyzer casts it to the type expected by the enclosing
+  * expression (e.g: `id = ?` becomes `id = CAST(? AS INT)`) and values are converted accordingly.
+  *
+  * @param offset Position of the placeholder within the SQL text, it gives the order of the parameters.
+  */
+case class ParameterPlaceholder(offset: Int) extends LeafExpression with Unevaluable {
+
+  override def dataType: DataType = NullType
+
+  override def nullable: Boolean = true
+
+  override def foldable: Boolean = false
+
+  override def toString: String = s"?@$offset"
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.catalyst.execution
+
+import org.apache.spark.sql.catalyst.expressions.{Attribute, Literal}
+import org.apache.spark.sql.catalyst.plans.logical.LogicalPlan
+import org.apache.spark.sql.crossdata.XDContext
+import org.apache.spark.sql.execution.RunnableCommand
+import org.apache.spark.sql.{Row, SQLContext}
+
+private[crossdata] case class PrepareStatement(name: String, sql: String) extends LogicalPlan with RunnableCommand {
+
+  override def run(sqlContext: SQLContext): Seq[Row] = {
+    sqlContext.asInstanceOf[XDContext].preparedStatements.register(name, sql)
+    Seq.empty
+  }
+
+}
+
+private[crossdata] case class ExecutePreparedStatement(name: String, parameters: Seq[Literal])
+                                                      (@transient xdContext: XDContext)
+  extends LogicalPlan with RunnableCommand {
+
+  override protected final def otherCopyArgs: Seq[AnyRef] = xdContext :: Nil
+
+  // The result has the schema of the prepared statement
+  override lazy val output: Seq[Attribute] = xdContext.preparedStatements.named(name).schema.toAttributes
+
+  override def run(sqlContext: SQLContext): Seq[Row] =
+    sqlContext.asInstanceOf[XDContext].preparedStatements.named(name).execute(parameters: _*).collect()
+
+}
+
+private[crossdata] case class DeallocatePreparedStatement(name: String) extends LogicalPlan with RunnableCommand {
+
+  override def run(sqlContext: SQLContext): Seq[Row] = {
+    sqlContext.asInstanceOf[XDContext].preparedStatements.deallocate(name)
+    Seq.empty
+  }
+
+}
@@ -15,6 +15,7 @@
  */
 package org.apache.spark.sql.crossdata.catalyst.optimizer
 
+import com.stratio.crossdata.common.result.QueryProfile
 import org.apache.spark.sql.Row
 import org.apache.spark.sql.catalyst.CatalystConf
 import org.apache.spark.sql.catalyst.analysis.UnresolvedAttribute
@@ -27,6 +28,7 @@ import org.apache.spark.sql.crossdata.catalog.XDCatalog.CrossdataIndex
 import org.apache.spark.sql.crossdata.catalyst.ExtendedUnresolvedRelation
 import org.apache.spark.sql.crossdata.catalyst.execution.DDLUtils
 import org.apache.spark.sql.crossdata.catalyst.globalindex.IndexUtils
+import org.apache.spark.sql.crossdata.execution.QueryProfiler
 import org.apache.spark.sql.crossdata.{XDContext, XDDataFrame}
 import org.apache.spark.sql.execution.datasources.LogicalRelation
 import org.apache.spark.sql.sources.BaseRelation
@@ -57,48 +59,49 @@ case class CheckGlobalIndexInFilters(xdContext: XDContext) extends Rule[LogicalP
   def apply(plan: LogicalPlan): LogicalPlan = plan transform {
 
     case FilterWithIndexLogicalPlan(filters, projects, ExtendedUnresolvedRelation(tableIdentifier, relation)) =>
+      QueryProfiler.phase(QueryProfile.Phases.GlobalIndex) {
+        val crossdataIndex = {
+          xdContext.catalog.indexMetadataByTableIdentifier(tableIdentifier)
+        } getOrElse {
+          sys.error("Unexpected error. Can't find index for enhance query with indexes")
+        }
 
-      val crossdataIndex = {
-        xdContext.catalog.indexMetadataByTableIdentifier(tableIdentifier)
-      } getOrElse {
-        sys.error("Unexpected error. Can't find index for enhance query with indexes")
-      }
-
-      //Change the filters that has indexed rows, with a Filter IN with ES results or LocalRelation if we don't have results
-      val newFilters: Seq[LogicalPlan] = filters map { filter =>
-        if (IndexUtils.areAllAttributeIndexedInExpr(filter.condition, crossdataIndex.indexedCols)) {
-          val indexLogicalPlan = buildIndexRequestLogicalPlan(filter.condition, crossdataIndex)
-          val indexedRows = XDDataFrame(xdContext, indexLogicalPlan).collect() //TODO: Warning memory issues
-          if (indexedRows.nonEmpty) {
-
-            //Convert to query with filter IN
-            val lr = relation.collectFirst { case lr: LogicalRelation => lr }.get
-            val pkSchema = DDLUtils.extractSchema(Seq(crossdataIndex.pk), lr.schema)
-            val pkAttribute = schemaToAttribute(pkSchema).head
-            analyzeAndOptimize(
-              logical.Filter(In(pkAttribute, resultPksToLiterals(indexedRows, pkSchema.fields.head.dataType)), relation)
-            )
-
+        //Change the filters that has indexed rows, with a Filter IN with ES results or LocalRelation if we don't have results
+        val newFilters: Seq[LogicalPlan] = filters map { filter =>
+          if (IndexUtils.areAllAttributeIndexedInExpr(filter.condition, crossdataIndex.indexedCols)) {
+            val indexLogicalPlan = buildIndexRequestLogicalPlan(filter.condition, crossdataIndex)
+            val indexedRows = XDDataFrame(xdContext, indexLogicalPlan).collect() //TODO: Warning memory issues
+            if (indexedRows.nonEmpty) {
+
+              //Convert to query with filter IN
+              val lr = relation.collectFirst { case lr: LogicalRelation => lr }.get
+              val pkSchema = DDLUtils.extractSchema(Seq(crossdataIndex.pk), lr.schema)
+              val pkAttribute = schemaToAttribute(pkSchema).head
+              analyzeAndOptimize(
+                logical.Filter(In(pkAttribute, resultPksToLiterals(indexedRows, pkSchema.fields.head.dataType)), relation)
+              )
+
+            } else {
+              LocalRelation(filter.output)
+            }
           } else {
-            LocalRelation(filter.output)
+            filter
           }
-        } else {
-          filter
         }
-      }
 
-      //If LocalRelation appear there are no results
-      val noResults: Option[LocalRelation] = newFilters collectFirst {
-        case localRelation: LocalRelation => localRelation
-      }
+        //If LocalRelation appear there are no results
+        val noResults: Option[LocalRelation] = newFilters collectFirst {
+          case localRelation: LocalRelation => localRelation
+        }
 
-      noResults getOrElse {
-        //If projects exists, just remain the first in the tree + Filters + Relation
-        val combined: LogicalPlan = combineFiltersAndRelation(newFilters, relation)
-        if (projects.nonEmpty) {
-          analyzeAndOptimize(projects.head.withNewChildren(Seq(combined)))
-        } else {
-          analyzeAndOptimize(combined)
+        noResults getOrElse {
+          //If projects exists, just remain the first in the tree + Filters + Relation
+          val combined: LogicalPlan = combineFiltersAndRelation(newFilters, relation)
+          if (projects.nonEmpty) {
+            analyzeAndOptimize(projects.head.withNewChildren(Seq(combined)))
+          } else {
+            analyzeAndOptimize(combined)
+          }
         }
       }
 
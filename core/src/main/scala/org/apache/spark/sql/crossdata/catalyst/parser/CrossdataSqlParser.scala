@@ -20,13 +20,14 @@ package org.apache.spark.sql.crossdata.catalyst.parser
 
 import scala.language.implicitConversions
 import org.apache.spark.sql.AnalysisException
-import org.apache.spark.sql.catalyst.{AbstractSparkSQLParser, ParserDialect, TableIdentifier}
+import org.apache.spark.sql.catalyst.{AbstractSparkSQLParser, ParserDialect, SqlLexical, TableIdentifier}
 import org.apache.spark.sql.catalyst.analysis._
 import org.apache.spark.sql.catalyst.expressions._
 import org.apache.spark.sql.catalyst.expressions.aggregate._
 import org.apache.spark.sql.catalyst.plans._
 import org.apache.spark.sql.catalyst.plans.logical._
 import org.apache.spark.sql.catalyst.util.DataTypeParser
+import org.apache.spark.sql.crossdata.catalyst.ParameterPlaceholder
 import org.apache.spark.sql.types._
 import org.apache.spark.unsafe.types.CalendarInterval
 
@@ -71,6 +72,11 @@ object CrossdataSqlParser extends AbstractSparkSQLParser with DataTypeParser {
     }
   }
 
+  // '?' stands for a parameter of a prepared statement
+  override val lexical: SqlLexical = new SqlLexical {
+    delimiters += "?"
+  }
+
   // Keyword is a convention with AbstractSparkSQLParser, which will scan all of the `Keyword`
   // properties via reflection the class in runtime for constructing the SqlLexical object
   protected val ALL = Keyword("ALL")
@@ -507,9 +513,15 @@ object CrossdataSqlParser extends AbstractSparkSQLParser with DataTypeParser {
       | dotExpressionHeader
       | signedPrimary
       | "~" ~> expression ^^ BitwiseNot
+      | parameter
       | attributeName ^^ UnresolvedAttribute.quoted
       )
 
+  protected lazy val parameter: Parser[Expression] = Parser { in =>
+    if (!in.atEnd && in.first == lexical.Keyword("?")) Success(ParameterPlaceholder(in.offset), in.rest)
+    else Failure("parameter expected", in)
+  }
+
   protected lazy val dotExpressionHeader: Parser[Expression] =
     (ident <~ ".") ~ ident ~ rep("." ~> ident) ^^ {
       case i1 ~ i2 ~ rest => UnresolvedAttribute(Seq(i1, i2) ++ rest)
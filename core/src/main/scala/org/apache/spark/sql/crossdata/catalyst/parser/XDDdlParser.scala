@@ -17,8 +17,9 @@ package org.apache.spark.sql.crossdata.catalyst.parser
 
 import java.util.UUID
 
-import org.apache.spark.sql.catalyst.analysis.UnresolvedRelation
-import org.apache.spark.sql.catalyst.plans.logical.LogicalPlan
+import org.apache.spark.sql.catalyst.analysis.{UnresolvedAlias, UnresolvedRelation}
+import org.apache.spark.sql.catalyst.expressions.{Alias, Expression, Literal}
+import org.apache.spark.sql.catalyst.plans.logical.{LogicalPlan, Project}
 import org.apache.spark.sql.crossdata.XDContext
 import org.apache.spark.sql.crossdata.catalyst.execution._
 import org.apache.spark.sql.crossdata.catalyst.streaming._
@@ -63,12 +64,15 @@ class XDDdlParser(parseQuery: String => LogicalPlan, xDContext: XDContext) exten
   protected val IN = Keyword("IN")
   protected val APP = Keyword("APP")
   protected val EXECUTE = Keyword("EXECUTE")
+  protected val PREPARE = Keyword("PREPARE")
+  protected val DEALLOCATE = Keyword("DEALLOCATE")
 
 
   override protected lazy val ddl: Parser[LogicalPlan] =
 
     createTable | describeTable | refreshTable | importStart | dropTable | dropExternalTable |
-      createView | createExternalTable | dropView | addJar | streamingSentences | insertIntoTable | addApp | executeApp | createGlobalIndex
+      createView | createExternalTable | dropView | addJar | streamingSentences | insertIntoTable | addApp | executeApp | createGlobalIndex |
+      prepareStatement | executePreparedStatement | deallocatePreparedStatement
 
   // TODO move to StreamingDdlParser
   protected lazy val streamingSentences: Parser[LogicalPlan] =
@@ -183,6 +187,42 @@ protected lazy val addApp: Parser[LogicalPlan] =
         val args=arguments map {arg=> arg.toString}
         ExecuteApp(appName, args, opts)
     }
+  /**
+   * Prepared statements
+   */
+
+  protected lazy val prepareStatement: Parser[LogicalPlan] =
+    (PREPARE ~> ident) ~ (AS ~> restInput) ^^ {
+      case name ~ query => PrepareStatement(name, query.trim)
+    }
+
+  // It must be tried after `executeApp`: EXECUTE name [USING value, ...]
+  protected lazy val executePreparedStatement: Parser[LogicalPlan] =
+    (EXECUTE ~> ident) ~ (USING ~> restInput).? ^^ {
+      case name ~ parameters =>
+        ExecutePreparedStatement(name, parameters.map(parseParameters).getOrElse(Seq.empty))(xDContext)
+    }
+
+  protected lazy val deallocatePreparedStatement: Parser[LogicalPlan] =
+    DEALLOCATE ~> PREPARE.? ~> ident ^^ {
+      case name => DeallocatePreparedStatement(name)
+    }
+
+  private def parseParameters(parameters: String): Seq[Literal] = {
+    def constant(value: Expression): Literal =
+      if (value.foldable) Literal(value.eval(), value.dataType)
+      else sys.error(s"Parameters must be constants, but found $value")
+
+    parseQuery(s"SELECT $parameters") match {
+      case Project(values, _) => values map {
+        case UnresolvedAlias(value) => constant(value)
+        case Alias(value, _) => constant(value)
+        case value => constant(value)
+      }
+      case _ => sys.error(s"Invalid parameters: $parameters")
+    }
+  }
+
   /**
    * Streaming
    */
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.execution
+
+import java.util.concurrent.{ConcurrentHashMap, TimeUnit}
+import java.util.{LinkedHashMap => JLinkedHashMap, Map => JMap}
+
+import com.stratio.crossdata.common.metrics.XDMetrics
+import com.stratio.crossdata.connector.NativeScan
+import com.typesafe.config.Config
+import org.apache.spark.sql.catalyst.expressions.Literal
+import org.apache.spark.sql.catalyst.plans.logical.LogicalPlan
+import org.apache.spark.sql.crossdata.catalog.{CatalogChain, TableIdentifierNormalized}
+
+import scala.collection.mutable
+import scala.concurrent.duration._
+import scala.util.Try
+
+/**
+  * Saves the work thrown away by native executions falling back to Spark:
+  *
+  *  - The decision about whether a relation supports a plan is cached by plan shape (the plan without literal values
+  *    nor expression ids) so `isSupported` isn't evaluated for every query. Catalog changes of the relations read by
+  *    the query invalidate its decisions.
+  *  - Every relation has a circuit breaker which is opened after `maxFailures` consecutive native executions failing
+  *    or lasting more than `slowThreshold`. Native executions are skipped while it's open and, once `coolDown` has
+  *    elapsed, a single execution is let through: the breaker is closed if it succeeds and opened again otherwise.
+  *
+  * Relations are told apart by their [[NativeScan.nativeIdentity]], so the instances held by different sessions for
+  * the same table share their breaker.
+  */
+private[crossdata] class NativeExecutionGuard(settings: NativeExecutionGuard.Settings, clock: () => Long = System.nanoTime) {
+
+  import NativeExecutionGuard._
+
+  private val capabilities = new JLinkedHashMap[(String, String, Long), Option[String]](16, 0.75f, true) {
+    override def removeEldestEntry(eldest: JMap.Entry[(String, String, Long), Option[String]]): Boolean =
+      size() > settings.capabilityCacheCapacity
+  }
+
+  private val breakers = new ConcurrentHashMap[String, Breaker]()
+
+  /**
+    * Reason why the relation cannot execute the plan natively, if any.
+    *
+    * @param relations relations read by the query the plan belongs to, only their changes invalidate the decision.
+    * @param decide evaluates the support of the plan, only when its shape hasn't been seen since the last change of
+    *               `relations`.
+    */
+  def unsupportedReason(relation: NativeScan, plan: LogicalPlan, relations: Set[TableIdentifierNormalized])(
+    decide: => Option[String]): Option[String] =
+    if (settings.capabilityCacheCapacity <= 0) decide
+    else {
+      val key = (relationKey(relation), planShape(plan), CatalogChain.changeCount(relations))
+      capabilities.synchronized(Option(capabilities.get(key))) getOrElse {
+        val decision = decide
+        capabilities.synchronized(capabilities.put(key, decision))
+        decision
+      }
+    }
+
+  /**
+    * Reason why native executions on the relation are suspended, if its breaker is open. Otherwise the caller is
+    * expected to report the outcome of its native execution through [[succeeded]], [[failed]] or [[cancelled]].
+    */
+  def suspendedReason(relation: NativeScan): Option[String] = withBreaker(relation) { breaker =>
+    if (breaker.failures < settings.maxFailures) None
+    else if (clock() < breaker.openUntil || breaker.probing) {
+      XDMetrics.nativeSkipped.inc()
+      Some(s"Native executions suspended after ${breaker.failures} consecutive failures, the last one: ${breaker.lastReason}")
+    } else {
+      breaker.probing = true
+      None
+    }
+  }
+
+  def succeeded(relation: NativeScan, elapsed: Duration): Unit =
+    if (elapsed > settings.slowThreshold) {
+      XDMetrics.nativeSlowExecutions.inc()
+      failed(relation, s"Native execution took ${elapsed.toMillis} ms")
+    } else withBreaker(relation) { breaker =>
+      breaker.failures = 0
+      breaker.probing = false
+    }
+
+  def failed(relation: NativeScan, reason: String): Unit = {
+    XDMetrics.nativeFailures.inc()
+    withBreaker(relation) { breaker =>
+      breaker.failures += 1
+      breaker.lastReason = reason
+      breaker.probing = false
+      if (breaker.failures >= settings.maxFailures)
+        breaker.openUntil = clock() + settings.coolDown.toNanos
+    }
+  }
+
+  def cancelled(relation: NativeScan): Unit = withBreaker(relation)(_.probing = false)
+
+  private def withBreaker[T](relation: NativeScan)(f: Breaker => T): T = {
+    val key = relationKey(relation)
+    val breaker = Option(breakers.get(key)) getOrElse {
+      Option(breakers.putIfAbsent(key, new Breaker)) getOrElse breakers.get(key)
+    }
+    breaker.synchronized(f(breaker))
+  }
+
+}
+
+private[crossdata] object NativeExecutionGuard {
+
+  case class Settings(capabilityCacheCapacity: Int, maxFailures: Int, slowThreshold: Duration, coolDown: FiniteDuration)
+
+  object Settings {
+
+    val CapabilityCacheCapacityKey = "native.capabilityCache.capacity"
+    val MaxFailuresKey = "native.circuitBreaker.maxFailures"
+    val SlowThresholdKey = "native.circuitBreaker.slowThreshold"
+    val CoolDownKey = "native.circuitBreaker.coolDown"
+
+    val Default = Settings(1024, 3, 30 seconds, 1 minute)
+
+    def apply(config: Config): Settings = {
+      def duration(key: String): Option[FiniteDuration] =
+        Try(config.getDuration(key, TimeUnit.MILLISECONDS)).toOption.map(Duration(_, TimeUnit.MILLISECONDS))
+
+      // Non-positive values disable the breaker or the detection of slow executions
+      val maxFailures = Try(config.getInt(MaxFailuresKey)).getOrElse(Default.maxFailures)
+      val slowThreshold = duration(SlowThresholdKey).getOrElse(Default.slowThreshold)
+
+      Settings(
+        Try(config.getInt(CapabilityCacheCapacityKey)).getOrElse(Default.capabilityCacheCapacity),
+        if (maxFailures > 0) maxFailures else Int.MaxValue,
+        if (slowThreshold > Duration.Zero) slowThreshold else Duration.Inf,
+        duration(CoolDownKey).getOrElse(Default.coolDown)
+      )
+    }
+  }
+
+  private class Breaker {
+    var failures: Int = 0
+    var lastReason: String = ""
+    var openUntil: Long = 0L
+    var probing: Boolean = false
+  }
+
+  private val guards = mutable.Map.empty[Settings, NativeExecutionGuard]
+
+  /**
+    * Guard shared by every context of this JVM with the same settings, so all the sessions benefit from the failures
+    * detected by any of them.
+    */
+  def apply(settings: Settings): NativeExecutionGuard =
+    guards.synchronized(guards.getOrElseUpdate(settings, new NativeExecutionGuard(settings)))
+
+  def relationKey(relation: NativeScan): String = relation.nativeIdentity
+
+  def planShape(plan: LogicalPlan): String =
+    plan.transformAllExpressions {
+      case Literal(_, dataType) => Literal.create(null, dataType)
+    }.treeString.replaceAll("#\\d+", "")
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.execution
+
+import com.stratio.crossdata.connector.{NativeBatchScan, NativeScan, RowBatches}
+import com.typesafe.config.Config
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.catalyst.plans.logical._
+import org.apache.spark.sql.execution.datasources.LogicalRelation
+
+import scala.collection.mutable
+import scala.util.Try
+
+/**
+  * Executes natively the parts of a plan supported by its native relations when the whole plan isn't, e.g: a filter
+  * on a relation whose result is sorted or joined. Their results are spliced into the plan as local relations, so
+  * Spark runs the rest of operators on them instead of scanning the whole relations.
+  */
+private[crossdata] object PartialNativeExecution {
+
+  val EnabledKey = "native.partialPushdown.enabled"
+  val MaxRowsKey = "native.partialPushdown.maxRows"
+
+  val DefaultMaxRows = 100000
+
+  def enabled(config: Config): Boolean = Try(config.getBoolean(EnabledKey)).getOrElse(true)
+
+  def maxRows(config: Config): Int = Try(config.getInt(MaxRowsKey)).getOrElse(DefaultMaxRows)
+
+  /**
+    * Rows of the native result of a subtree, as long as there are at most `maxRows`, since they are held by the driver.
+    * Otherwise the batches are closed as soon as the cap is exceeded and None is returned, so the subtree is left
+    * to Spark. The batches are always closed.
+    */
+  def collect(batches: RowBatches, maxRows: Int): Option[Seq[Row]] =
+    try {
+      val rows = Vector.newBuilder[Row]
+      var numberOfRows = 0L
+      var exceeded = false
+      while (!exceeded && batches.hasNext) {
+        val batch = batches.next()
+        numberOfRows += batch.size
+        exceeded = numberOfRows > maxRows
+        if (!exceeded) rows ++= batch
+      }
+      if (exceeded) None else Some(rows.result())
+    } finally batches.close()
+
+  /**
+    * Replaces the largest subtrees of the plan reading a single native relation and pruning its rows by
+    * [[LocalRelation]]s holding their native results. The subtrees `execute` doesn't resolve, i.e: it returns None,
+    * are left to Spark, although their own subtrees are still tried.
+    *
+    * @param plan optimized logical plan which couldn't be executed natively as a whole
+    * @param execute executes natively a subtree on its relation
+    * @return the spliced plan along with the relations which executed a subtree, or None if no subtree was executed
+    */
+  def splice(plan: LogicalPlan)(
+    execute: (NativeScan, LogicalPlan) => Option[Seq[Row]]): Option[(LogicalPlan, Seq[NativeScan])] = {
+
+    val executors = mutable.ArrayBuffer.empty[NativeScan]
+
+    val splicedPlan = plan transformDown {
+      case subtree@NativeSubtree(relation) if subtree ne plan =>
+        execute(relation, subtree) map { rows =>
+          executors += relation
+          // The attributes are kept so the operators on top still resolve them
+          LocalRelation.fromExternalRows(subtree.output, rows)
+        } getOrElse subtree
+    }
+
+    if (executors.isEmpty) None else Some((splicedPlan, executors))
+  }
+
+  private object NativeSubtree {
+    def unapply(subtree: LogicalPlan): Option[NativeScan] =
+      subtree.collect { case leaf: LeafNode => leaf } match {
+        case Seq(LogicalRelation(relation: NativeScan, _)) if prunesRows(subtree) && isBounded(relation, subtree) =>
+          Some(relation)
+        case _ => None
+      }
+  }
+
+  // Otherwise the whole relation would be scanned by the driver instead of by the cluster
+  private def prunesRows(subtree: LogicalPlan): Boolean =
+    subtree.find {
+      case _: Filter | _: Limit | _: Aggregate => true
+      case _ => false
+    }.isDefined
+
+  // Native scans which aren't fetched in batches may cap the rows of queries without limit (e.g: Elasticsearch searches
+  // return a page of hits), so their results would be partial
+  private def isBounded(relation: NativeScan, subtree: LogicalPlan): Boolean =
+    relation.isInstanceOf[NativeBatchScan] || subtree.find(_.isInstanceOf[Limit]).isDefined
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.execution
+
+import org.apache.spark.sql.SQLContext
+import org.apache.spark.sql.catalyst.plans.logical.LogicalPlan
+import org.apache.spark.sql.execution.QueryExecution
+
+/**
+  * Execution of a [[org.apache.spark.sql.crossdata.XDPreparedStatement]] whose plans are already analyzed and,
+  * if given, optimized. Authorization is checked by the statement before each execution.
+  */
+private[crossdata] class PreparedQueryExecution(
+                                                 sqlContext: SQLContext,
+                                                 analyzedPlan: LogicalPlan,
+                                                 optimizedPlanOpt: Option[LogicalPlan]
+                                               ) extends QueryExecution(sqlContext, analyzedPlan) {
+
+  override lazy val analyzed: LogicalPlan = analyzedPlan
+
+  override lazy val optimizedPlan: LogicalPlan = optimizedPlanOpt getOrElse sqlContext.optimizer.execute(withCachedData)
+
+}
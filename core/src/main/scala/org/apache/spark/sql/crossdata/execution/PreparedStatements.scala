@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.execution
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.{LinkedHashMap => JLinkedHashMap, Map => JMap}
+
+import org.apache.spark.sql.crossdata.{XDContext, XDPreparedStatement}
+
+/**
+  * Statements prepared within a context, by SQL text, and the names given to them by `PREPARE name AS ...`.
+  * Statements prepared before a change of the relations they read are prepared again.
+  *
+  * @param capacity Maximum number of prepared statements, the least recently used is discarded when exceeded.
+  */
+private[crossdata] class PreparedStatements(xdContext: XDContext, capacity: Int) {
+
+  private val statements = new JLinkedHashMap[String, XDPreparedStatement](16, 0.75f, true) {
+    override def removeEldestEntry(eldest: JMap.Entry[String, XDPreparedStatement]): Boolean = size() > capacity
+  }
+
+  private val names = new ConcurrentHashMap[String, String]()
+
+  def apply(sql: String): XDPreparedStatement = {
+    val cached = statements.synchronized(Option(statements.get(sql))) filterNot (_.isOutdated)
+    cached getOrElse {
+      val statement = new XDPreparedStatement(xdContext, sql)
+      statements.synchronized(statements.put(sql, statement))
+      statement
+    }
+  }
+
+  def register(name: String, sql: String): XDPreparedStatement = {
+    val statement = apply(sql)
+    names.put(name, sql)
+    statement
+  }
+
+  def named(name: String): XDPreparedStatement =
+    Option(names.get(name)) map apply getOrElse sys.error(s"Prepared statement $name not found")
+
+  def deallocate(name: String): Unit =
+    if (names.remove(name) == null) sys.error(s"Prepared statement $name not found")
+
+}
+
+private[crossdata] object PreparedStatements {
+  val DefaultCapacity = 128
+}
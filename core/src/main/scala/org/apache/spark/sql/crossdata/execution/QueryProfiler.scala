@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.execution
+
+import com.stratio.crossdata.common.result.{PhaseTiming, QueryProfile}
+
+import scala.collection.mutable
+
+/**
+  * Records the [[QueryProfile]] of a query. A profiler is bound to the thread running the query, see
+  * [[QueryProfiler.profiling]], so each phase records its time wherever it is run from.
+  */
+class QueryProfiler {
+
+  // Nanoseconds spent in each phase, in the order the phases were started
+  private val phases = mutable.LinkedHashMap.empty[String, Long]
+
+  private var rows = 0L
+  private var bytes = 0L
+  private var execution: Option[String] = None
+  private var connector: Option[String] = None
+  private var fallbackReason: Option[String] = None
+
+  // Native attempt of the collect being run, if any, it is settled by the execution which follows it
+  private var pendingFallback: Option[(String, String)] = None
+
+  def addPhase(phase: String, nanos: Long): Unit = synchronized {
+    phases(phase) = phases.getOrElse(phase, 0L) + nanos
+  }
+
+  def addRows(count: Long): Unit = synchronized(rows += count)
+
+  def addBytes(count: Long): Unit = synchronized(bytes += count)
+
+  /**
+    * A native relation couldn't resolve the query, so it is about to be executed by Spark.
+    */
+  def fallback(nativeConnector: String, reason: String): Unit = synchronized {
+    pendingFallback = Some(nativeConnector -> reason)
+  }
+
+  /**
+    * The last execution wins, so the queries run while optimizing, e.g: by the global index phase, don't hide the
+    * execution of the query being profiled.
+    */
+  def executedBy(engine: String, nativeConnector: Option[String] = None): Unit = synchronized {
+    execution = Some(engine)
+    connector = nativeConnector orElse pendingFallback.map(_._1)
+    fallbackReason = pendingFallback.map(_._2)
+    pendingFallback = None
+  }
+
+  def timed[T](phase: String)(f: => T): T = {
+    val start = System.nanoTime()
+    try f finally addPhase(phase, System.nanoTime() - start)
+  }
+
+  /**
+    * Adds to `phase` the time spent pulling the rows of `rows`, e.g: when they are lazily computed by Spark.
+    */
+  def timedIterator[T](phase: String, rows: Iterator[T]): Iterator[T] = new Iterator[T] {
+    override def hasNext: Boolean = timed(phase)(rows.hasNext)
+    override def next(): T = timed(phase)(rows.next())
+  }
+
+  def profile: QueryProfile = synchronized {
+    QueryProfile(
+      phases.toSeq map { case (phase, nanos) => PhaseTiming(phase, nanos / 1e6) },
+      rows,
+      bytes,
+      execution,
+      connector,
+      fallbackReason
+    )
+  }
+
+}
+
+object QueryProfiler {
+
+  private val current = new ThreadLocal[QueryProfiler]
+
+  /**
+    * Runs `f` recording the phases it runs from the current thread within `profiler`.
+    */
+  def profiling[T](profiler: QueryProfiler)(f: => T): T = {
+    val previous = current.get()
+    current.set(profiler)
+    try f finally current.set(previous)
+  }
+
+  def active: Option[QueryProfiler] = Option(current.get())
+
+  /**
+    * Runs `f` adding its time to `phase` of the query being profiled by the current thread, if any.
+    */
+  def phase[T](phase: String)(f: => T): T = active.fold(f)(_.timed(phase)(f))
+
+  def record(f: QueryProfiler => Unit): Unit = active.foreach(f)
+
+}
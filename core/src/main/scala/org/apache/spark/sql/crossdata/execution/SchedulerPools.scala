@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.execution
+
+import org.apache.spark.SparkContext
+import org.apache.spark.scheduler.{Pool, SchedulingMode, TaskSchedulerImpl}
+
+/**
+  * Spark FAIR scheduler pools created on demand, e.g: one per Crossdata user, so they don't need to be declared
+  * within the allocation file in order to be given a weight.
+  */
+object SchedulerPools {
+
+  val PoolProperty = "spark.scheduler.pool"
+
+  /**
+    * Runs `f` scheduling the Spark jobs it submits from the current thread within the pool `name`, which is created
+    * if it doesn't exist yet. Pools are ignored unless the FAIR scheduling mode is enabled.
+    */
+  def withPool[T](sparkContext: SparkContext, name: String, weight: Int, minShare: Int)(f: => T): T = {
+    val previousPool = sparkContext.getLocalProperty(PoolProperty)
+    if (ensurePool(sparkContext, name, weight, minShare)) sparkContext.setLocalProperty(PoolProperty, name)
+    try f finally sparkContext.setLocalProperty(PoolProperty, previousPool)
+  }
+
+  /**
+    * @return Whether the pool `name` is available.
+    */
+  def ensurePool(sparkContext: SparkContext, name: String, weight: Int, minShare: Int): Boolean =
+    sparkContext.getSchedulingMode == SchedulingMode.FAIR && {
+      sparkContext.taskScheduler match {
+        case scheduler: TaskSchedulerImpl => synchronized {
+          val rootPool = scheduler.rootPool
+          if (rootPool.getSchedulableByName(name) == null)
+            rootPool.addSchedulable(new Pool(name, SchedulingMode.FIFO, minShare, weight))
+          true
+        }
+        case _ => false
+      }
+    }
+
+  /**
+    * Removes the pool `name`, if it exists, so pools created for short-lived owners, e.g: sessions, don't pile up
+    * within the FAIR scheduler. The jobs still running within the pool should have been cancelled.
+    */
+  def removePool(sparkContext: SparkContext, name: String): Unit =
+    sparkContext.taskScheduler match {
+      case scheduler: TaskSchedulerImpl if sparkContext.getSchedulingMode == SchedulingMode.FAIR => synchronized {
+        val rootPool = scheduler.rootPool
+        Option(rootPool.getSchedulableByName(name)) foreach rootPool.removeSchedulable
+      }
+      case _ =>
+    }
+
+}
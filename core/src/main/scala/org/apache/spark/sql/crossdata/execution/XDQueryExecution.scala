@@ -15,6 +15,7 @@
  */
 package org.apache.spark.sql.crossdata.execution
 
+import com.stratio.crossdata.common.result.QueryProfile.Phases
 import com.stratio.crossdata.security._
 import org.apache.log4j.Logger
 import org.apache.spark.sql.SQLContext
@@ -32,6 +33,15 @@ class XDQueryExecution(sqlContext: SQLContext, parsedPlan: LogicalPlan, catalogI
 
   lazy val authorized: LogicalPlan = {
     // TODO assertAnalyzed() execute sqlContext.analyzer.execute(authorized) twice??
+    authorize()
+    parsedPlan
+  }
+
+  /**
+    * Checks the current user is allowed to access the resources of the plan, throwing an exception otherwise.
+    * Prepared statements check it on every execution as their plans are analyzed only once.
+    */
+  private[crossdata] def authorize(): Unit = QueryProfiler.phase(Phases.Authorization) {
     val xdContext = sqlContext.asInstanceOf[XDContext]
 
     xdContext.securityManager.foreach { securityManager =>
@@ -50,11 +60,15 @@ class XDQueryExecution(sqlContext: SQLContext, parsedPlan: LogicalPlan, catalogI
         throw new RuntimeException("Operation not authorized") // TODO specify the resource/action?
       }
     }
+  }
 
-    parsedPlan
+  override lazy val analyzed: LogicalPlan = QueryProfiler.phase(Phases.Analysis) {
+    sqlContext.analyzer.execute(authorized)
   }
 
-  override lazy val analyzed: LogicalPlan = sqlContext.analyzer.execute(authorized)
+  override lazy val optimizedPlan: LogicalPlan = QueryProfiler.phase(Phases.Optimization) {
+    sqlContext.optimizer.execute(withCachedData)
+  }
 
 
   // Extracts
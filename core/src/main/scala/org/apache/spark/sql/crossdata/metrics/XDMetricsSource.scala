@@ -16,17 +16,20 @@
 package org.apache.spark.sql.crossdata.metrics
 
 import com.codahale.metrics.{Gauge, MetricRegistry}
+import com.stratio.crossdata.common.metrics.XDMetrics
 import org.apache.spark.metrics.source.Source
 
+/**
+  * Spark metrics source exposing the metrics recorded in [[XDMetrics]]: query latency, native and Spark executions,
+  * catalog lookups, server activity and message serialization.
+  */
 class XDMetricsSource extends Source{
 
   override val sourceName = "XDMetricsSource"
   override val metricRegistry = new MetricRegistry()
 
-  // Simple metric registered
-  metricRegistry.register(MetricRegistry.name("executionType"), new Gauge[String] {
-    override def getValue: String = "valueOfExecutionType"
-  })
+  // The metric instances are shared, so their values are always the ones recorded within this JVM
+  metricRegistry.registerAll(XDMetrics.registry)
 
   def registerGauge(name: String): Unit = {
     metricRegistry.register(MetricRegistry.name("metricName", name), new Gauge[String] {
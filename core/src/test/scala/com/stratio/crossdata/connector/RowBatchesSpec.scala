@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.connector
+
+import com.stratio.crossdata.test.BaseXDTest
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.catalyst.plans.logical.LogicalPlan
+import org.apache.spark.sql.crossdata.MockBaseRelation
+import org.apache.spark.sql.execution.datasources.LogicalRelation
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class RowBatchesSpec extends BaseXDTest {
+
+  val rows: Array[Row] = (1 to 5).map(Row(_)).toArray
+
+  class ClosingBatches(batches: Seq[Row]*) {
+    var closed = 0
+    var fetched = 0
+    val rowBatches = RowBatches(batches.iterator.map { batch => fetched += 1; batch }, () => closed += 1)
+  }
+
+  "RowBatches" should "release their resources once the last row is read" in {
+    val batches = new ClosingBatches(rows.take(2), rows.drop(2))
+    val iterator = batches.rowBatches.rows
+
+    iterator.next() shouldBe Row(1)
+    batches.fetched shouldBe 1
+    batches.closed shouldBe 0
+
+    iterator.toList shouldBe rows.drop(1).toList
+    batches.closed shouldBe 1
+    iterator.hasNext shouldBe false
+    batches.closed shouldBe 1
+  }
+
+  it should "release their resources when closed before being exhausted" in {
+    val batches = new ClosingBatches(rows.take(2), rows.drop(2))
+    val iterator = batches.rowBatches.rows
+
+    iterator.next()
+    iterator.close()
+    iterator.close()
+
+    batches.closed shouldBe 1
+    iterator.hasNext shouldBe false
+  }
+
+  it should "split materialized results in batches of the fetch size" in {
+    RowBatches.fromRows(rows, 2).map(_.length).toList shouldBe List(2, 2, 1)
+  }
+
+  "A NativeScan" should "be read in batches even if it materializes its result" in {
+    val relation = new MockBaseRelation with NativeScan {
+      override def isSupported(logicalStep: LogicalPlan, fullyLogicalPlan: LogicalPlan) = true
+      override def buildScan(optimizedLogicalPlan: LogicalPlan): Option[Array[Row]] = Some(rows)
+    }
+
+    val batches = NativeScan.batches(relation, LogicalRelation(relation), 3)
+    batches.map(_.map(_.length).toList) shouldBe Some(List(3, 2))
+  }
+
+  "A NativeBatchScan" should "materialize its batches and release their resources when scanned at once" in {
+    val batches = new ClosingBatches(rows.take(3), rows.drop(3))
+    val relation = new MockBaseRelation with NativeBatchScan {
+      override def isSupported(logicalStep: LogicalPlan, fullyLogicalPlan: LogicalPlan) = true
+      override def buildBatchScan(optimizedLogicalPlan: LogicalPlan, fetchSize: Int): Option[RowBatches] =
+        Some(batches.rowBatches)
+    }
+
+    relation.buildScan(LogicalRelation(relation)).map(_.toList) shouldBe Some(rows.toList)
+    batches.closed shouldBe 1
+  }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata
+
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.crossdata.test.SharedXDContextTest
+import org.apache.spark.sql.types.{IntegerType, StringType, StructField, StructType}
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class XDPreparedStatementIT extends SharedXDContextTest {
+
+  override protected def beforeAll(): Unit = {
+    super.beforeAll()
+    val schema = StructType(Array(StructField("id", IntegerType), StructField("name", StringType)))
+    val rows = (1 to 5) map (i => Row(i, s"name_$i"))
+    xdContext.createDataFrame(xdContext.sparkContext.parallelize(rows), schema).registerTempTable("prepared")
+  }
+
+  "A XDPreparedStatement" should "bind its parameters in order of appearance" in {
+    val statement = xdContext.prepare("SELECT name FROM prepared WHERE id > ? AND name <> ?")
+    statement.numberOfParameters shouldBe 2
+    statement.execute(3, "name_5").collect() shouldBe Array(Row("name_4"))
+    statement.execute(0, "name_1").collect() should have length 4
+  }
+
+  it should "convert its parameters to the type expected by the query" in {
+    xdContext.prepare("SELECT name FROM prepared WHERE id = ?").execute("2").collect() shouldBe Array(Row("name_2"))
+  }
+
+  it should "be prepared just once per SQL text" in {
+    val sql = "SELECT id FROM prepared WHERE name = ?"
+    xdContext.prepare(sql) should be theSameInstanceAs xdContext.prepare(sql)
+  }
+
+  it should "be prepared again only when the relations it reads change" in {
+    val sql = "SELECT id FROM prepared WHERE id < ?"
+    val statement = xdContext.prepare(sql)
+
+    xdContext.emptyDataFrame.registerTempTable("unrelated")
+    xdContext.prepare(sql) should be theSameInstanceAs statement
+
+    xdContext.table("prepared").registerTempTable("prepared")
+    xdContext.prepare(sql) should not be theSameInstanceAs(statement)
+  }
+
+  it should "reject executions with a wrong number of parameters" in {
+    an [IllegalArgumentException] should be thrownBy xdContext.prepare("SELECT id FROM prepared WHERE id = ?").execute()
+  }
+
+  "A XDContext" should "prepare and execute named statements" in {
+    xdContext.sql("PREPARE byId AS SELECT name FROM prepared WHERE id = ?").collect()
+    xdContext.sql("EXECUTE byId USING 3").collect() shouldBe Array(Row("name_3"))
+    xdContext.sql("DEALLOCATE PREPARE byId").collect()
+    an [Exception] should be thrownBy xdContext.sql("EXECUTE byId USING 3").collect()
+  }
+
+}
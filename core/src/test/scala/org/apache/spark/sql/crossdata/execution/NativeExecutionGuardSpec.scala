@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.execution
+
+import com.stratio.crossdata.test.BaseXDTest
+import org.apache.spark.sql.catalyst.expressions.{GreaterThan, Literal}
+import org.apache.spark.sql.catalyst.plans.logical.{Filter, LogicalPlan}
+import org.apache.spark.sql.crossdata.MockNativeRelation
+import org.apache.spark.sql.execution.datasources.LogicalRelation
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+import scala.concurrent.duration._
+
+@RunWith(classOf[JUnitRunner])
+class NativeExecutionGuardSpec extends BaseXDTest {
+
+  val Settings = NativeExecutionGuard.Settings(16, 2, 1 second, 10 seconds)
+
+  class FakeClock {
+    var nanos = 0L
+    def advance(duration: Duration): Unit = nanos += duration.toNanos
+  }
+
+  def filterPlan(relation: MockNativeRelation, value: Int): LogicalPlan = {
+    val logicalRelation = LogicalRelation(relation)
+    Filter(GreaterThan(logicalRelation.output.head, Literal(value)), logicalRelation)
+  }
+
+  "A NativeExecutionGuard" should "decide the support of each plan shape once" in {
+    val guard = new NativeExecutionGuard(Settings)
+    val relation = new MockNativeRelation
+    var decisions = 0
+    def decide = { decisions += 1; Some("unsupported") }
+
+    guard.unsupportedReason(relation, filterPlan(relation, 1), Set.empty)(decide) shouldBe Some("unsupported")
+    guard.unsupportedReason(relation, filterPlan(relation, 2), Set.empty)(decide) shouldBe Some("unsupported")
+    decisions shouldBe 1
+
+    val anotherRelation = new MockNativeRelation
+    guard.unsupportedReason(anotherRelation, filterPlan(anotherRelation, 1), Set.empty)(decide)
+    decisions shouldBe 2
+  }
+
+  it should "suspend native executions after consecutive failures until the cool-down elapses" in {
+    val clock = new FakeClock
+    val guard = new NativeExecutionGuard(Settings, () => clock.nanos)
+    val relation = new MockNativeRelation
+
+    guard.suspendedReason(relation) shouldBe None
+    guard.failed(relation, "first failure")
+    guard.suspendedReason(relation) shouldBe None
+    guard.failed(relation, "second failure")
+
+    guard.suspendedReason(relation).get should include("second failure")
+
+    clock.advance(11 seconds)
+    guard.suspendedReason(relation) shouldBe None
+    // Only one execution is let through while the breaker is half-open
+    guard.suspendedReason(relation) shouldBe defined
+
+    guard.succeeded(relation, 10 milliseconds)
+    guard.suspendedReason(relation) shouldBe None
+  }
+
+  it should "open the breaker again when the execution let through after the cool-down fails" in {
+    val clock = new FakeClock
+    val guard = new NativeExecutionGuard(Settings, () => clock.nanos)
+    val relation = new MockNativeRelation
+
+    guard.failed(relation, "failure")
+    guard.failed(relation, "failure")
+    clock.advance(11 seconds)
+    guard.suspendedReason(relation) shouldBe None
+
+    guard.failed(relation, "failure after cool-down")
+    guard.suspendedReason(relation).get should include("failure after cool-down")
+  }
+
+  it should "count slow native executions as failures" in {
+    val guard = new NativeExecutionGuard(Settings)
+    val relation = new MockNativeRelation
+
+    guard.succeeded(relation, 2 seconds)
+    guard.succeeded(relation, 3 seconds)
+
+    guard.suspendedReason(relation).get should include("3000 ms")
+  }
+
+  it should "share the breaker of the relations reading the same data" in {
+    val guard = new NativeExecutionGuard(Settings)
+    def sessionRelation = new MockNativeRelation { override def nativeIdentity: String = "datasource/table" }
+
+    guard.failed(sessionRelation, "failure")
+    guard.failed(sessionRelation, "failure")
+
+    guard.suspendedReason(sessionRelation) shouldBe defined
+    guard.suspendedReason(new MockNativeRelation) shouldBe None
+  }
+
+  it should "keep native executions enabled when the breaker is disabled" in {
+    val guard = new NativeExecutionGuard(Settings.copy(maxFailures = Int.MaxValue))
+    val relation = new MockNativeRelation
+
+    (1 to 10) foreach (_ => guard.failed(relation, "failure"))
+    guard.suspendedReason(relation) shouldBe None
+  }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.execution
+
+import com.stratio.crossdata.connector.{NativeBatchScan, NativeScan, RowBatches}
+import com.stratio.crossdata.test.BaseXDTest
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.catalyst.expressions.{Ascending, GreaterThan, Literal, SortOrder}
+import org.apache.spark.sql.catalyst.plans.logical._
+import org.apache.spark.sql.crossdata.MockNativeRelation
+import org.apache.spark.sql.execution.datasources.LogicalRelation
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class PartialNativeExecutionSpec extends BaseXDTest {
+
+  class MockBatchRelation extends MockNativeRelation with NativeBatchScan {
+    override def buildBatchScan(optimizedLogicalPlan: LogicalPlan, fetchSize: Int): Option[RowBatches] = None
+  }
+
+  val Rows = Seq(Row(3), Row(2))
+
+  def filter(logicalRelation: LogicalRelation): LogicalPlan =
+    Filter(GreaterThan(logicalRelation.output.head, Literal(1)), logicalRelation)
+
+  def sorted(plan: LogicalPlan): LogicalPlan = Sort(Seq(SortOrder(plan.output.head, Ascending)), global = true, plan)
+
+  "PartialNativeExecution" should "replace the largest subtree pruning rows of a native relation by its native result" in {
+    val relation = new MockBatchRelation
+    val nativeSubtree = filter(LogicalRelation(relation))
+    var executed = Seq.empty[LogicalPlan]
+
+    val spliced = PartialNativeExecution.splice(sorted(nativeSubtree)) { (_, subtree) =>
+      executed :+= subtree
+      Some(Rows)
+    }
+
+    executed shouldBe Seq(nativeSubtree)
+    val (splicedPlan, executors) = spliced.get
+    executors shouldBe Seq(relation)
+    splicedPlan should matchPattern { case Sort(_, true, LocalRelation(_, data)) if data.size == 2 => }
+    splicedPlan.children.head.output shouldBe nativeSubtree.output
+  }
+
+  it should "try smaller subtrees when a relation doesn't execute the largest one" in {
+    val nativeSubtree = filter(LogicalRelation(new MockBatchRelation))
+    val plan = sorted(Limit(Literal(10), nativeSubtree))
+
+    val spliced = PartialNativeExecution.splice(plan) { (_, subtree) =>
+      if (subtree == nativeSubtree) Some(Rows) else None
+    }
+
+    spliced.get._1 should matchPattern { case Sort(_, _, Limit(_, _: LocalRelation)) => }
+  }
+
+  it should "leave to Spark the plans executed as a whole and the scans not pruning rows" in {
+    val logicalRelation = LogicalRelation(new MockBatchRelation)
+    def execute(relation: NativeScan, subtree: LogicalPlan): Option[Seq[Row]] = fail(s"Unexpected native execution of $subtree")
+
+    PartialNativeExecution.splice(filter(logicalRelation))(execute) shouldBe None
+    PartialNativeExecution.splice(sorted(logicalRelation))(execute) shouldBe None
+  }
+
+  it should "only execute the subtrees of non batch relations when their result is limited" in {
+    val logicalRelation = LogicalRelation(new MockNativeRelation)
+
+    PartialNativeExecution.splice(sorted(filter(logicalRelation)))((_, _) => Some(Rows)) shouldBe None
+    PartialNativeExecution.splice(sorted(Limit(Literal(10), filter(logicalRelation))))((_, _) => Some(Rows)) shouldBe defined
+  }
+
+  it should "collect the native result of a subtree only while it doesn't exceed the maximum number of rows" in {
+    def batches(): (RowBatches, () => Boolean) = {
+      var closed = false
+      (RowBatches(Iterator(Rows, Rows, Rows), () => closed = true), () => closed)
+    }
+
+    val (withinCap, withinCapClosed) = batches()
+    PartialNativeExecution.collect(withinCap, 6) shouldBe Some(Rows ++ Rows ++ Rows)
+    withinCapClosed() shouldBe true
+
+    val (exceedingCap, exceedingCapClosed) = batches()
+    PartialNativeExecution.collect(exceedingCap, 3) shouldBe None
+    exceedingCapClosed() shouldBe true
+    exceedingCap.hasNext shouldBe false
+  }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.execution
+
+import com.stratio.crossdata.common.result.QueryProfile.{Executions, Phases}
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.crossdata.test.SharedXDContextTest
+import org.apache.spark.sql.types.{IntegerType, StructField, StructType}
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class QueryProfilerIT extends SharedXDContextTest {
+
+  override protected def beforeAll(): Unit = {
+    super.beforeAll()
+    val rows = (1 to 10) map (Row(_))
+    xdContext.createDataFrame(xdContext.sparkContext.parallelize(rows), StructType(Seq(StructField("id", IntegerType))))
+      .registerTempTable("profiled")
+  }
+
+  "A QueryProfiler" should "record the phases run by the profiled thread" in {
+    val profiler = new QueryProfiler
+
+    QueryProfiler.profiling(profiler) {
+      xdContext.sql("SELECT id FROM profiled WHERE id > 5").collect()
+    } should have length 5
+
+    val profile = profiler.profile
+    profile.phases.map(_.phase) should contain allOf (Phases.Parsing, Phases.Analysis, Phases.Optimization, Phases.Spark)
+    profile.execution shouldBe Some(Executions.Spark)
+    profile.fallbackReason shouldBe None
+  }
+
+  it should "not record anything out of its profiling scope" in {
+    val profiler = new QueryProfiler
+
+    xdContext.sql("SELECT id FROM profiled").collect()
+
+    profiler.profile.phases shouldBe empty
+    QueryProfiler.active shouldBe None
+  }
+
+  it should "keep the reason of a native fallback along with the execution which follows it" in {
+    val profiler = new QueryProfiler
+
+    QueryProfiler.profiling(profiler) {
+      QueryProfiler.record(_.fallback("MockRelation", "unsupported"))
+      QueryProfiler.record(_.executedBy(Executions.Spark))
+    }
+
+    profiler.profile.connector shouldBe Some("MockRelation")
+    profiler.profile.fallbackReason shouldBe Some("unsupported")
+  }
+
+}
@@ -15,6 +15,7 @@
  */
 package org.apache.spark.sql.crossdata.metrics
 
+import com.stratio.crossdata.common.metrics.XDMetrics
 import com.stratio.crossdata.test.BaseXDTest
 import org.junit.runner.RunWith
 import org.scalatest.junit.JUnitRunner
@@ -34,5 +35,17 @@ class XDMetricsSourceSpec extends BaseXDTest {
     xdms.metricRegistry.getGauges.keySet() should contain ("metricName.testName")
   }
 
+  it should "expose the metrics recorded by Crossdata" in {
+
+    val xdms = new XDMetricsSource()
+    val nativeExecutions = XDMetrics.nativeExecutions.getCount
+
+    XDMetrics.nativeExecutions.inc()
+
+    xdms.metricRegistry.getTimers.keySet() should contain allOf ("query.latency", "catalog.lookup.persistent")
+    xdms.metricRegistry.getGauges.keySet() should contain ("execution.nativeHitRatio")
+    xdms.metricRegistry.getCounters.get("execution.native").getCount shouldBe nativeExecutions + 1
+  }
+
 
 }
@@ -26,6 +26,7 @@ import com.stratio.crossdata.common.security.Session
 import com.stratio.crossdata.driver.actor.{ProxyActor, ServerClusterClientParameters, ClusterClientSessionBeaconActor}
 import com.stratio.crossdata.driver.config.DriverConf
 import com.stratio.crossdata.driver.session.{Authentication, SessionManager}
+import org.apache.spark.sql.types.StructType
 import org.slf4j.{Logger, LoggerFactory}
 
 import scala.concurrent.ExecutionContext.Implicits.global
@@ -33,7 +34,7 @@ import scala.concurrent.duration._
 import scala.concurrent.{Await, Future, Promise}
 import scala.language.postfixOps
 import scala.reflect.io.File
-import scala.util.Try
+import scala.util.{Failure, Success, Try}
 
 
 
@@ -114,22 +115,133 @@ class ClusterClientDriver private[driver](driverConf: DriverConf,
         val hdfspath = res.resultSet(0).getString(0)
         addApp(hdfspath, clss, realPath)
       case _ =>
-        val sqlCommand = new SQLCommand(query, retrieveColNames = driverConf.getFlattenTables)
-        val futureReply = askCommand(securitizeCommand(sqlCommand)).map {
-          case SQLReply(_, sqlResult) => sqlResult
-          case other => throw new RuntimeException(s"SQLReply expected. Received: $other")
+        sqlCommand(query, None)
+    }
+  }
+
+  override def sql(query: String, maxRows: Int): SQLResponse = sqlCommand(query, None, Some(maxRows))
+
+  override protected[driver] def executePrepared(query: String, parameters: Seq[Any]): SQLResponse =
+    sqlCommand(query, Some(parameters))
+
+  private def sqlCommand(query: String, parameters: Option[Seq[Any]], maxRows: Option[Int] = None): SQLResponse = {
+    val sqlCommand = SQLCommand(
+      query,
+      flattenResults = driverConf.getFlattenTables,
+      resultChunking = driverConf.getResultChunking,
+      columnarResults = driverConf.getColumnarResults,
+      parameters = parameters,
+      maxRows = maxRows,
+      profile = driverConf.getQueryProfiling
+    )
+    val futureReply = askCommand(securitizeCommand(sqlCommand)).map {
+      case SQLReply(_, sqlResult) => sqlResult
+      case other => throw new RuntimeException(s"SQLReply expected. Received: $other")
+    }
+    new SQLResponse(sqlCommand.requestId, futureReply) {
+      // TODO cancel sync => 5 secs
+      override def cancelCommand(): Future[QueryCancelledReply] =
+        askCommand(securitizeCommand(CancelQueryExecution(sqlCommand.queryId))) map {
+          case reply: QueryCancelledReply => reply
+          case other => throw new RuntimeException(s"CancelQueryExecution expected. Received: $other")
         }
-        new SQLResponse(sqlCommand.requestId, futureReply) {
-          // TODO cancel sync => 5 secs
-          override def cancelCommand(): Future[QueryCancelledReply] =
-            askCommand(securitizeCommand(CancelQueryExecution(sqlCommand.queryId))) map {
-              case reply: QueryCancelledReply => reply
-              case other => throw new RuntimeException(s"CancelQueryExecution expected. Received: $other")
-            }
+
+      override def status(): Future[QueryStatus] = queryStatus(sqlCommand.queryId)
+    }
+  }
+
+  override def sqlIterator(query: String, timeout: Duration = Duration.Inf): RowIterator = {
+    val sqlCommand = SQLCommand(
+      query,
+      flattenResults = driverConf.getFlattenTables,
+      resultChunking = driverConf.getResultChunking orElse Some(RowIterator.DefaultChunking),
+      columnarResults = driverConf.getColumnarResults
+    )
+    val iterator = new RowIterator(() => cancelQuery(sqlCommand.queryId), timeout)
+
+    // Chunks are acknowledged once the iterator takes them, so the server doesn't send more than it can hold
+    var resultSchema: Option[StructType] = None // Only the first chunk carries the schema
+    val listener: ServerReply => Unit = {
+      case SQLResultChunk(requestId, _, schema, batch, producer) =>
+        resultSchema = resultSchema orElse schema
+        iterator.offer(batch.rows(resultSchema.get), () => producer ! SQLResultChunkAck(requestId, 1))
+      case _ =>
+    }
+    val promise = Promise[ServerReply]()
+    proxyActor ! (securitizeCommand(sqlCommand), promise, listener)
+
+    promise.future onComplete {
+      case Success(SQLReply(_, ErrorSQLResult(message, _))) => iterator.fail(new RuntimeException(message))
+      case Success(_: SQLReply) => iterator.end()
+      case Success(_: QueryCancelledReply) => iterator.fail(RowIterator.cancelled())
+      case Success(other) => iterator.fail(new RuntimeException(s"SQLReply expected. Received: $other"))
+      case Failure(cause) => iterator.fail(cause)
+    }
+    iterator
+  }
+
+  override def submit(query: String): Future[QueryHandle] = {
+    val sqlCommand = SQLCommand(query, flattenResults = driverConf.getFlattenTables, asynchronous = true)
+    askCommand(securitizeCommand(sqlCommand)) map {
+      case QuerySubmittedReply(_, queryId) => new QueryHandle(this, queryId)
+      case SQLReply(_, ErrorSQLResult(message, _)) => throw new RuntimeException(message)
+      case other => throw new RuntimeException(s"QuerySubmittedReply expected. Received: $other")
+    }
+  }
+
+  override def sqlBatch(
+                         statements: Seq[String],
+                         stopOnError: Boolean = true,
+                         onStatement: Option[(Int, SQLResult) => Unit] = None
+                       ): Future[Seq[SQLResult]] = {
+    val batch = SQLBatchCommand(
+      statements,
+      stopOnError,
+      streamResults = onStatement.isDefined,
+      flattenResults = driverConf.getFlattenTables
+    )
+    val promise = Promise[ServerReply]()
+
+    // Streamed results are received by the proxy actor before the final reply completes the promise
+    var streamedResults = Vector.empty[SQLResult]
+    onStatement match {
+      case Some(callback) =>
+        val listener: ServerReply => Unit = {
+          case SQLBatchStatementReply(_, index, result) =>
+            streamedResults :+= result
+            callback(index, result)
+          case _ =>
         }
+        proxyActor ! (securitizeCommand(batch), promise, listener)
+      case None =>
+        proxyActor ! (securitizeCommand(batch), promise)
+    }
+
+    promise.future map {
+      case SQLBatchReply(_, results, _) => if (batch.streamResults) streamedResults else results
+      case SQLReply(_, ErrorSQLResult(message, _)) => throw new RuntimeException(message)
+      case other => throw new RuntimeException(s"SQLBatchReply expected. Received: $other")
     }
   }
 
+  override protected[driver] def queryStatus(queryId: UUID): Future[QueryStatus] =
+    askCommand(securitizeCommand(GetQueryStatus(queryId))) map {
+      case QueryStatusReply(_, _, status) => status
+      case other => throw new RuntimeException(s"QueryStatusReply expected. Received: $other")
+    }
+
+  override protected[driver] def fetchResult(queryId: UUID, offset: Long, maxRows: Int): Future[ResultPage] =
+    askCommand(securitizeCommand(FetchQueryResult(queryId, offset, maxRows))) map {
+      case QueryResultPageReply(_, _, page) => page
+      case other => throw new RuntimeException(s"QueryResultPageReply expected. Received: $other")
+    }
+
+  override protected[driver] def cancelQuery(queryId: UUID): Future[QueryCancelledReply] =
+    askCommand(securitizeCommand(CancelQueryExecution(queryId))) map {
+      case reply: QueryCancelledReply => reply
+      case other => throw new RuntimeException(s"QueryCancelledReply expected. Received: $other")
+    }
+
   /**
     * @param path  The path of the JAR
     * @param clss  The main class
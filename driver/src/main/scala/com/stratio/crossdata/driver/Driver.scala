@@ -15,6 +15,8 @@
  */
 package com.stratio.crossdata.driver
 
+import java.util.UUID
+
 import akka.actor.{ActorSystem, Address}
 import akka.cluster.ClusterEvent.CurrentClusterState
 import akka.cluster.MemberStatus
@@ -161,6 +163,82 @@ abstract class Driver(protected[crossdata] val driverConf: DriverConf, protected
     */
   def sql(query: String): SQLResponse
 
+  /**
+    * Executes a SQL sentence whose result is limited by the server to its first `maxRows` rows, the rest of them
+    * are neither computed nor transferred. The returned response allows polling its progress while it is running:
+    * > val response = driver.sql("SELECT * FROM t", 1000)
+    * > val progress: Double = Await.result(response.status(), 5 seconds).progress
+    *
+    * @param query The SQL Command.
+    * @param maxRows Maximum number of rows of the result.
+    * @return A SQLResponse with the id and the result set.
+    */
+  def sql(query: String, maxRows: Int): SQLResponse
+
+  /**
+    * Prepares a SQL sentence whose parameters are given as '?'. Servers keep its analyzed and optimized plans
+    * so each execution only binds the new parameters:
+    * > val byId = driver.prepare("SELECT * FROM t WHERE id = ?")
+    * > val rows: Array[Row] = byId.execute(42).resultSet
+    *
+    * @param query The SQL Command.
+    * @return A statement which can be executed many times.
+    */
+  def prepare(query: String): PreparedStatement = new PreparedStatement(this, query)
+
+  /**
+    * Executes a SQL sentence prepared by [[prepare]].
+    */
+  protected[driver] def executePrepared(query: String, parameters: Seq[Any]): SQLResponse
+
+  /**
+    * Submits a SQL sentence which keeps on running at the server even if the client disconnects. The server replies
+    * right away so the returned handle can be used to poll its status and fetch its result by pages:
+    * > val handle = Await.result(driver.submit("SELECT * FROM t"), 10 seconds)
+    * > val status: QueryStatus = Await.result(handle.status(), 10 seconds)
+    * > val firstPage: ResultPage = Await.result(handle.fetch(0, 1000), 10 seconds)
+    *
+    * @param query The SQL Command.
+    * @return A handle of the query once the server has accepted it.
+    */
+  def submit(query: String): Future[QueryHandle]
+
+  /**
+    * Executes a SQL sentence whose rows are pulled from the server as they are consumed, so the client memory
+    * doesn't depend on the size of the result. Closing the iterator before its end cancels the query:
+    * > val rows = driver.sqlIterator("SELECT * FROM t")
+    * > try rows foreach export finally rows.close()
+    *
+    * @param query The SQL Command.
+    * @param timeout Maximum time to wait for each batch of rows.
+    * @return An iterator over the resulting rows, it fails if the query execution does.
+    */
+  def sqlIterator(query: String, timeout: Duration = Duration.Inf): RowIterator
+
+  /**
+    * Executes several SQL sentences one after another, within this session and at a single server, in just one
+    * round trip:
+    * > val results: Seq[SQLResult] =
+    * >   Await.result(driver.sqlBatch(Seq("CREATE TEMPORARY VIEW v AS SELECT * FROM t", "SELECT * FROM v")), 1 minute)
+    *
+    * @param statements The SQL Commands, in execution order.
+    * @param stopOnError Whether the statements following a failed one are skipped.
+    * @param onStatement Called with the position and the result of each statement as soon as it completes. If
+    *                    provided, the server streams the results instead of sending them all at the end.
+    * @return The results of the executed statements, in order.
+    */
+  def sqlBatch(
+                statements: Seq[String],
+                stopOnError: Boolean = true,
+                onStatement: Option[(Int, SQLResult) => Unit] = None
+              ): Future[Seq[SQLResult]]
+
+  protected[driver] def queryStatus(queryId: UUID): Future[QueryStatus]
+
+  protected[driver] def fetchResult(queryId: UUID, offset: Long, maxRows: Int): Future[ResultPage]
+
+  protected[driver] def cancelQuery(queryId: UUID): Future[QueryCancelledReply]
+
   /**
     * Add Jar to the XD Context
     *
@@ -229,7 +307,7 @@ abstract class Driver(protected[crossdata] val driverConf: DriverConf, protected
     import SQLResponse._
     val sqlResult: SQLResult = sql(s"SHOW TABLES ${databaseName.fold("")("IN " + _)}")
     sqlResult match {
-      case SuccessfulSQLResult(result, _) =>
+      case SuccessfulSQLResult(result, _, _) =>
         result.map(row => processTableName(row.getString(0)))
       case other => handleCommandError(other)
     }
@@ -250,7 +328,7 @@ abstract class Driver(protected[crossdata] val driverConf: DriverConf, protected
     val sqlResult: SQLResult = sql(s"DESCRIBE ${database.map(_ + ".").getOrElse("")}$tableName")
 
     sqlResult match {
-      case SuccessfulSQLResult(result, _) =>
+      case SuccessfulSQLResult(result, _, _) =>
         result.map(extractNameDataType) flatMap { case (name, dataType) =>
           if (!driverConf.getFlattenTables) {
             FieldMetadata(name, DataTypesUtils.toDataType(dataType)) :: Nil
@@ -16,16 +16,21 @@
 package com.stratio.crossdata.driver
 
 import java.io.{FileInputStream, InputStream}
+import java.nio.ByteOrder
 import java.security.{KeyStore, SecureRandom}
 import java.util.UUID
 import javax.net.ssl.{KeyManagerFactory, SSLContext, SSLException, TrustManagerFactory}
 
+import akka.NotUsed
 import akka.actor.ActorRef
 import akka.cluster.ClusterEvent.CurrentClusterState
 import akka.http.scaladsl.{Http, HttpExt, HttpsConnectionContext}
 import akka.http.scaladsl.marshalling.{Marshal, Marshaller}
-import akka.http.scaladsl.model.{HttpMethod, HttpRequest, RequestEntity, ResponseEntity}
+import akka.http.scaladsl.model.{HttpMethod, HttpRequest, MediaType, RequestEntity, ResponseEntity}
+import akka.http.scaladsl.model.headers.Accept
+import akka.stream.scaladsl.{Flow, Framing, Sink, Source}
 import akka.stream.{ActorMaterializer, StreamTcpException, TLSClientAuth}
+import akka.util.ByteString
 import com.stratio.crossdata.common.result._
 import com.stratio.crossdata.common.security.{KeyStoreUtils, Session}
 import com.stratio.crossdata.driver.config.DriverConf
@@ -34,13 +39,19 @@ import org.slf4j.{Logger, LoggerFactory}
 import akka.http.scaladsl.model.HttpMethods._
 import akka.http.scaladsl.unmarshalling.{Unmarshal, Unmarshaller}
 import com.stratio.crossdata.common._
-import com.stratio.crossdata.common.serializers.CrossdataCommonSerializer
+import com.stratio.crossdata.common.serializers.{ColumnarSQLResultSerializer, CrossdataCommonSerializer}
+import com.stratio.crossdata.common.serializers.StreamedSQLResultSerializer._
 import com.stratio.crossdata.driver.actor.HttpSessionBeaconActor
 import com.stratio.crossdata.driver.exceptions.TLSInvalidAuthException
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.types.StructType
+import org.json4s.JNothing
 import org.json4s.jackson
+import org.json4s.jackson.JsonMethods.parse
+import org.reactivestreams.{Subscriber, Subscription}
 
 import scala.concurrent.ExecutionContext.Implicits.global
-import scala.concurrent.{Await, Future}
+import scala.concurrent.{Await, Future, Promise}
 import scala.concurrent.duration._
 import scala.language.postfixOps
 import scala.util.{Failure, Success, Try}
@@ -64,6 +75,9 @@ class HttpDriver private[driver](driverConf: DriverConf,
   private val serverHttp: String = driverConf.getCrossdataServerHttp
   private def protocol = if(driverConf.httpTlsEnable) "https" else "http"
   private val requestTimeout: Duration = Duration.Inf //TODO
+  private val MaxStreamedLineLength = 16 * 1024 * 1024
+  private val ColumnarMediaType =
+    MediaType.applicationBinary(ColumnarSQLResultSerializer.MediaSubType, MediaType.NotCompressible)
 
   import de.heikoseeberger.akkahttpjson4s.Json4sSupport._
   implicit val serialization = jackson.Serialization
@@ -141,11 +155,26 @@ class HttpDriver private[driver](driverConf: DriverConf,
   }
 
 
-  override def sql(query: String): SQLResponse = {
+  override def sql(query: String): SQLResponse = sqlCommand(query, None)
 
-    val sqlCommand = new SQLCommand(query, retrieveColNames = driverConf.getFlattenTables)
+  override def sql(query: String, maxRows: Int): SQLResponse = sqlCommand(query, None, Some(maxRows))
 
-    val response = simpleRequest(
+  override protected[driver] def executePrepared(query: String, parameters: Seq[Any]): SQLResponse =
+    sqlCommand(query, Some(parameters))
+
+  private def sqlCommand(query: String, parameters: Option[Seq[Any]], maxRows: Option[Int] = None): SQLResponse = {
+
+    val sqlCommand = SQLCommand(
+      query,
+      flattenResults = driverConf.getFlattenTables,
+      resultChunking = driverConf.getResultChunking,
+      columnarResults = driverConf.getColumnarResults,
+      parameters = parameters,
+      maxRows = maxRows,
+      profile = driverConf.getQueryProfiling
+    )
+
+    val response = if (sqlCommand.resultChunking.isDefined) streamedResult(sqlCommand) else simpleRequest(
       securitizeCommand(sqlCommand),
       s"query/${sqlCommand.requestId}",
       {
@@ -163,10 +192,214 @@ class HttpDriver private[driver](driverConf: DriverConf,
           { case reply: QueryCancelledReply => reply }: PartialFunction[SQLReply, QueryCancelledReply]
         )
       }
+
+      override def status(): Future[QueryStatus] = queryStatus(sqlCommand.queryId)
     }
 
   }
 
+  override def submit(query: String): Future[QueryHandle] = {
+    val sqlCommand = SQLCommand(query, flattenResults = driverConf.getFlattenTables, asynchronous = true)
+    simpleRequest(
+      securitizeCommand(sqlCommand),
+      s"query/${sqlCommand.requestId}",
+      { reply: QuerySubmittedReply => new QueryHandle(this, reply.queryId) }
+    )
+  }
+
+  override def sqlBatch(
+                         statements: Seq[String],
+                         stopOnError: Boolean = true,
+                         onStatement: Option[(Int, SQLResult) => Unit] = None
+                       ): Future[Seq[SQLResult]] = {
+    val batch = SQLBatchCommand(
+      statements,
+      stopOnError,
+      streamResults = onStatement.isDefined,
+      flattenResults = driverConf.getFlattenTables
+    )
+    onStatement map (streamedBatch(batch, _)) getOrElse {
+      simpleRequest(
+        securitizeCommand(batch),
+        s"batch/${batch.requestId}",
+        {
+          case SQLBatchReply(_, results, _) => results
+        }: PartialFunction[SQLBatchReply, Seq[SQLResult]]
+      )
+    }
+  }
+
+  // The server sends a NDJSON line per statement result followed by the batch reply
+  private def streamedBatch(batch: SQLBatchCommand, onStatement: (Int, SQLResult) => Unit): Future[Seq[SQLResult]] = {
+
+    val response = Marshal(securitizeCommand(batch)).to[RequestEntity] flatMap { requestEntity =>
+      http.singleRequest(
+        HttpRequest(POST, s"$protocol://$serverHttp/batch/${batch.requestId}/stream", entity = requestEntity)
+      )
+    }
+
+    Source.fromFuture(response) flatMapConcat {
+      case httpResponse if httpResponse.status.isSuccess =>
+        httpResponse.entity.dataBytes via Framing.delimiter(ByteString("\n"), MaxStreamedLineLength, allowTruncation = true)
+      case httpResponse => Source.failed(new RuntimeException(s"Batch rejected: ${httpResponse.status}"))
+    } runFold Vector.empty[SQLResult] { (results, line) =>
+      val jReply = parse(line.utf8String, false)
+      if (jReply \ "index" != JNothing) {
+        val statementReply = jReply.extract[SQLBatchStatementReply]
+        onStatement(statementReply.index, statementReply.result)
+        results :+ statementReply.result
+      } else if (jReply \ "executed" != JNothing) {
+        results
+      } else jReply \ "sqlResult" match {
+        case JNothing => throw new RuntimeException(s"Batch ${batch.requestId} ended unexpectedly: ${line.utf8String}")
+        case jResult => throw new RuntimeException(jResult.extract[SQLResult] match {
+          case ErrorSQLResult(message, _) => message
+          case other => s"Unexpected batch result: $other"
+        })
+      }
+    }
+  }
+
+  override protected[driver] def queryStatus(queryId: UUID): Future[QueryStatus] = {
+    val command = GetQueryStatus(queryId)
+    simpleRequest(
+      securitizeCommand(command),
+      s"query/${command.requestId}",
+      { reply: QueryStatusReply => reply.status }
+    )
+  }
+
+  override protected[driver] def fetchResult(queryId: UUID, offset: Long, maxRows: Int): Future[ResultPage] = {
+    val command = FetchQueryResult(queryId, offset, maxRows)
+    simpleRequest(
+      securitizeCommand(command),
+      s"query/${command.requestId}",
+      { reply: QueryResultPageReply => reply.page }
+    )
+  }
+
+  override protected[driver] def cancelQuery(queryId: UUID): Future[QueryCancelledReply] = {
+    val command = CancelQueryExecution(queryId)
+    simpleRequest(
+      securitizeCommand(command),
+      s"query/${command.requestId}",
+      { reply: QueryCancelledReply => reply }
+    )
+  }
+
+  /**
+    * Executes a SQL sentence whose result is streamed by the server either as newline-delimited JSON or
+    * as binary columnar frames (see [[DriverConf.setColumnarResults]]).
+    * Rows are emitted as soon as they are received so there is no need to wait for the whole result.
+    * The stream fails if the query execution does.
+    *
+    * @param query The SQL Command.
+    * @return A stream of the resulting rows.
+    */
+  def sqlSource(query: String): Source[Row, NotUsed] = {
+    val sqlCommand = SQLCommand(
+      query,
+      flattenResults = driverConf.getFlattenTables,
+      resultChunking = driverConf.getResultChunking,
+      columnarResults = driverConf.getColumnarResults
+    )
+    streamedResultLines(sqlCommand) mapConcat {
+      case StreamedRow(row) => row :: Nil
+      case StreamedError(message) => throw new RuntimeException(message)
+      case _ => Nil
+    }
+  }
+
+  /**
+    * Rows are requested in batches as the iterator consumes them, the HTTP connection propagates
+    * the back-pressure to the server. Closing the iterator cancels the stream and, with it, the query.
+    */
+  override def sqlIterator(query: String, timeout: Duration = Duration.Inf): RowIterator = {
+    val chunking = driverConf.getResultChunking getOrElse RowIterator.DefaultChunking
+    val subscription = Promise[Subscription]()
+    val iterator = new RowIterator(() => subscription.future.foreach(_.cancel()), timeout)
+
+    sqlSource(query).grouped(chunking.chunkSize).runWith(Sink.asPublisher(fanout = false)) subscribe {
+      new Subscriber[Seq[Row]] {
+        override def onSubscribe(s: Subscription): Unit = {
+          subscription.success(s)
+          s.request(chunking.initialCredits)
+        }
+        override def onNext(rows: Seq[Row]): Unit = iterator.offer(rows, () => subscription.future.foreach(_.request(1)))
+        override def onError(cause: Throwable): Unit = iterator.fail(cause)
+        override def onComplete(): Unit = iterator.end()
+      }
+    }
+    iterator
+  }
+
+  private def streamedResult(sqlCommand: SQLCommand): Future[SQLResult] =
+    streamedResultLines(sqlCommand).runFold((Option.empty[StructType], Vector.empty[Row], Option.empty[SQLResult])) {
+      case ((_, rows, result), StreamedSchema(schema)) => (Some(schema), rows, result)
+      case ((schema, rows, result), StreamedRow(row)) => (schema, rows :+ row, result)
+      case ((schema, rows, _), StreamedEnd(_, profile)) =>
+        (schema, rows, schema.map(SuccessfulSQLResult(rows.toArray, _, profile)))
+      case ((schema, rows, _), StreamedError(message)) => (schema, rows, Some(ErrorSQLResult(message)))
+    } map { case (_, _, result) =>
+      result getOrElse ErrorSQLResult(s"The streamed result of ${sqlCommand.queryId} ended unexpectedly")
+    }
+
+  private def streamedResultLines(sqlCommand: SQLCommand): Source[StreamedResultLine, NotUsed] = {
+
+    val acceptHeaders = if (sqlCommand.columnarResults) Accept(ColumnarMediaType) :: Nil else Nil
+
+    val response = Marshal(securitizeCommand(sqlCommand)).to[RequestEntity] flatMap { requestEntity =>
+      http.singleRequest(
+        HttpRequest(
+          POST,
+          s"$protocol://$serverHttp/query/${sqlCommand.requestId}/stream",
+          acceptHeaders,
+          entity = requestEntity
+        )
+      )
+    }
+
+    // The server answers with NDJSON whenever it does not support (or has not been asked for) the columnar format
+    Source.fromFuture(response) flatMapConcat {
+      case httpResponse if httpResponse.status.isSuccess && httpResponse.entity.contentType.mediaType == ColumnarMediaType =>
+        httpResponse.entity.dataBytes via columnarFrames
+      case httpResponse if httpResponse.status.isSuccess =>
+        httpResponse.entity.dataBytes via ndJsonLines
+      case httpResponse => Source.failed(new RuntimeException(s"Streamed query rejected: ${httpResponse.status}"))
+    }
+  }
+
+  private def ndJsonLines: Flow[ByteString, StreamedResultLine, NotUsed] =
+    Framing.delimiter(ByteString("\n"), MaxStreamedLineLength, allowTruncation = true) statefulMapConcat { () =>
+      var schema: Option[StructType] = None
+      line => {
+        val parsedLine = parseLine(line.utf8String, schema)
+        parsedLine match {
+          case StreamedSchema(receivedSchema) => schema = Some(receivedSchema)
+          case _ =>
+        }
+        parsedLine :: Nil
+      }
+    }
+
+  private def columnarFrames: Flow[ByteString, StreamedResultLine, NotUsed] =
+    Framing.lengthField(
+      ColumnarSQLResultSerializer.LengthFieldLength,
+      ColumnarSQLResultSerializer.LengthFieldOffset,
+      MaxStreamedLineLength,
+      ByteOrder.BIG_ENDIAN
+    ) statefulMapConcat { () =>
+      var schema: Option[StructType] = None
+      frame => {
+        val parsedLines = ColumnarSQLResultSerializer.parseFrame(frame.toArray, schema)
+        parsedLines foreach {
+          case StreamedSchema(receivedSchema) => schema = Some(receivedSchema)
+          case _ =>
+        }
+        parsedLines.toList
+      }
+    }
+
   override def addJar(path: String, toClassPath: Option[Boolean] = None): SQLResponse =
     apiNotSupported("addJar")
 
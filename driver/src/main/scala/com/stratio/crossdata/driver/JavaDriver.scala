@@ -16,7 +16,7 @@
 package com.stratio.crossdata.driver
 
 import akka.actor.Address
-import com.stratio.crossdata.common.result.SQLResult
+import com.stratio.crossdata.common.result.{SQLResponse, SQLResult}
 import com.stratio.crossdata.driver.config.DriverConf
 import com.stratio.crossdata.driver.metadata.{FieldMetadata, JavaTableName}
 import com.stratio.crossdata.driver.session.Authentication
@@ -100,6 +100,38 @@ class JavaDriver private(driverConf: DriverConf,
   def sql(sqlText: String, timeoutDuration: Duration): SQLResult =
     scalaDriver.sql(sqlText).waitForResult(timeoutDuration)
 
+  /**
+   * Executes a SQL sentence whose result is limited by the server to `maxRows` rows without waiting for it,
+   * see [[Driver.sql]]. The response allows polling the query progress and cancelling it.
+   */
+  def sqlAsync(sqlText: String, maxRows: Int): SQLResponse =
+    scalaDriver.sql(sqlText, maxRows)
+
+  /**
+   * Prepares a SQL sentence whose parameters are given as '?', see [[Driver.prepare]].
+   */
+  def prepare(sqlText: String): PreparedStatement =
+    scalaDriver.prepare(sqlText)
+
+  /**
+   * Submits a SQL sentence without waiting for its result, see [[Driver.submit]].
+   */
+  def submit(sqlText: String): QueryHandle =
+    Await.result(scalaDriver.submit(sqlText), 10 seconds)
+
+  /**
+   * Executes a SQL sentence whose rows are pulled from the server as they are consumed, see [[Driver.sqlIterator]].
+   * The iterator should be closed if it isn't consumed till the end.
+   */
+  def sqlStream(sqlText: String): JavaRowIterator =
+    new JavaRowIterator(scalaDriver.sqlIterator(sqlText))
+
+  /**
+   * Executes several SQL sentences in a single round trip, see [[Driver.sqlBatch]].
+   */
+  def sqlBatch(statements: java.util.List[String], stopOnError: Boolean, timeoutDuration: Duration): java.util.List[SQLResult] =
+    Await.result(scalaDriver.sqlBatch(statements.asScala, stopOnError), timeoutDuration).asJava
+
 
   def importTables(dataSourceProvider: String, options: java.util.Map[String, String]): SQLResult =
     scalaDriver.importTables(dataSourceProvider, options.toMap)
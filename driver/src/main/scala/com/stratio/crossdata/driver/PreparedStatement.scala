@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.driver
+
+import com.stratio.crossdata.common.result.SQLResponse
+
+import scala.annotation.varargs
+
+/**
+  * SQL sentence whose parameters are given as '?', see [[Driver.prepare]].
+  *
+  * Parameters are numbered after their position within the SQL text and converted by the server to the types
+  * expected by the query, e.g: `id = ?` can be executed with `execute(42)` or `execute("42")`.
+  *
+  * @param sql The SQL Command.
+  */
+class PreparedStatement private[driver](driver: Driver, val sql: String) {
+
+  /**
+    * @param parameters Values of the parameters, in order of appearance.
+    * @return A SQLResponse with the id and the result set.
+    */
+  @varargs
+  def execute(parameters: Any*): SQLResponse = driver.executePrepared(sql, parameters)
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.driver
+
+import java.util.UUID
+
+import com.stratio.crossdata.common.QueryCancelledReply
+import com.stratio.crossdata.common.result.{QueryStatus, ResultPage}
+
+import scala.concurrent.Future
+
+/**
+  * Query submitted by [[Driver.submit]]. It runs at the server regardless of the client, which polls its status
+  * and fetches its result by pages. Servers keep the result until the completed job expires.
+  *
+  * @param queryId Identifier of the query at the server.
+  */
+class QueryHandle private[driver](driver: Driver, val queryId: UUID) {
+
+  def status(): Future[QueryStatus] = driver.queryStatus(queryId)
+
+  /**
+    * @param offset Position, within the whole result, of the first row to fetch.
+    * @param maxRows Maximum number of rows to fetch.
+    */
+  def fetch(offset: Long, maxRows: Int): Future[ResultPage] = driver.fetchResult(queryId, offset, maxRows)
+
+  def cancel(): Future[QueryCancelledReply] = driver.cancelQuery(queryId)
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.driver
+
+import java.io.Closeable
+import java.util.concurrent.{CancellationException, LinkedBlockingQueue, TimeUnit, TimeoutException}
+
+import com.stratio.crossdata.common.ResultChunking
+import com.stratio.crossdata.driver.config.DriverConf
+import org.apache.spark.sql.Row
+
+import scala.concurrent.duration.Duration
+
+/**
+  * Iterator over the rows of a query result which is pulled from the server as it is consumed. Rows are received in
+  * batches and the server is only allowed to send a new batch once a previous one has been taken, so the memory used
+  * by the client doesn't depend on the size of the result. Closing the iterator before reaching the end of the result
+  * cancels the query.
+  *
+  * It isn't thread safe: it is meant to be consumed by a single thread.
+  *
+  * @param cancel Cancels the rest of the query.
+  * @param timeout Maximum time to wait for each batch.
+  */
+class RowIterator private[driver](cancel: () => Unit, timeout: Duration) extends Iterator[Row] with Closeable {
+
+  import RowIterator._
+
+  private val events = new LinkedBlockingQueue[Event]()
+  private var current: Iterator[Row] = Iterator.empty
+  private var finished = false
+
+  /**
+    * @param taken Called once the batch has been taken by the consumer, it allows the server to send another one.
+    */
+  private[driver] def offer(rows: Seq[Row], taken: () => Unit): Unit = events.put(Batch(rows, taken))
+
+  private[driver] def end(): Unit = events.put(End)
+
+  private[driver] def fail(cause: Throwable): Unit = events.put(Failed(cause))
+
+  override def hasNext: Boolean = current.hasNext || (!finished && fetch())
+
+  override def next(): Row =
+    if (hasNext) current.next() else throw new NoSuchElementException("The result has no more rows")
+
+  /**
+    * Cancels the query unless its whole result has already been received.
+    */
+  override def close(): Unit = if (!finished) {
+    finished = true
+    current = Iterator.empty
+    events.clear()
+    cancel()
+  }
+
+  private def fetch(): Boolean = {
+    val event = if (timeout.isFinite) events.poll(timeout.toMillis, TimeUnit.MILLISECONDS) else events.take()
+    event match {
+      case Batch(rows, taken) =>
+        taken()
+        current = rows.iterator
+        hasNext
+      case End =>
+        finished = true
+        false
+      case Failed(cause) =>
+        finished = true
+        throw cause
+      case null =>
+        close()
+        throw new TimeoutException(s"No rows received within $timeout")
+    }
+  }
+
+}
+
+object RowIterator {
+
+  private sealed trait Event
+  private case class Batch(rows: Seq[Row], taken: () => Unit) extends Event
+  private case object End extends Event
+  private case class Failed(cause: Throwable) extends Event
+
+  // Used when the driver configuration doesn't enable chunked results
+  private[driver] val DefaultChunking = ResultChunking(1000, DriverConf.DefaultResultChunkCredits)
+
+  private[driver] def cancelled(): CancellationException = new CancellationException("The query has been cancelled")
+
+}
+
+/**
+  * [[RowIterator]] for Java users, see [[JavaDriver.sqlStream]].
+  */
+class JavaRowIterator private[driver](rows: RowIterator) extends java.util.Iterator[Row] with Closeable {
+
+  override def hasNext: Boolean = rows.hasNext
+
+  override def next(): Row = rows.next()
+
+  override def remove(): Unit = throw new UnsupportedOperationException("Rows cannot be removed from a result")
+
+  override def close(): Unit = rows.close()
+
+}
@@ -18,20 +18,23 @@ package com.stratio.crossdata.driver.actor
 
 import java.util.UUID
 
-import akka.actor.{Actor, ActorRef, Props}
+import akka.actor.{Actor, ActorRef, Cancellable, Props}
 import akka.cluster.client.ClusterClient
 import akka.pattern.pipe
 import com.stratio.crossdata.common._
-import com.stratio.crossdata.common.result.{ErrorSQLResult, SuccessfulSQLResult}
+import com.stratio.crossdata.common.load.ServerLoad
+import com.stratio.crossdata.common.result.{ErrorSQLResult, RowBatch, SuccessfulSQLResult}
 import com.stratio.crossdata.common.security.Session
 import com.stratio.crossdata.driver.ClusterClientDriver
-import com.stratio.crossdata.driver.actor.ProxyActor.PromisesByIds
+import com.stratio.crossdata.driver.actor.ProxyActor.{PromisesByIds, RefreshServerLoads}
 import com.stratio.crossdata.driver.util.HttpClient
 import org.apache.log4j.Logger
 import org.apache.spark.sql.Row
 import org.apache.spark.sql.types.{StringType, StructField, StructType}
 
+import scala.concurrent.duration.Duration
 import scala.concurrent.{Future, Promise}
+import scala.util.Try
 import scala.util.matching.Regex
 
 object ProxyActor {
@@ -40,7 +43,22 @@ object ProxyActor {
   def props(clusterClientActor: ActorRef, driver: ClusterClientDriver): Props =
     Props(new ProxyActor(clusterClientActor, driver))
 
-  case class PromisesByIds(promises: Map[UUID, Promise[ServerReply]])
+  /**
+    * @param promises Pending replies by request identifier.
+    * @param partialResults Chunks already received for those requests whose result is being sent in chunks.
+    * @param replyListeners Callbacks receiving the partial replies of a request (e.g: the statement results of a
+    *                       streamed batch or the chunks of a result which is consumed as it is received).
+    */
+  case class PromisesByIds(
+                            promises: Map[UUID, Promise[ServerReply]],
+                            partialResults: Map[UUID, Vector[RowBatch]] = Map.empty,
+                            replyListeners: Map[UUID, ServerReply => Unit] = Map.empty
+                          ) {
+    def -(requestId: UUID): PromisesByIds =
+      PromisesByIds(promises - requestId, partialResults - requestId, replyListeners - requestId)
+  }
+
+  private case object RefreshServerLoads
 
 }
 
@@ -52,6 +70,26 @@ class ProxyActor(clusterClientActor: ActorRef, driver: ClusterClientDriver) exte
 
   private val httpClient = HttpClient(driver.driverConf, context.system)
 
+  private val loadRefreshInterval = driver.driverConf.getLoadRefreshInterval
+  private var loadRefresh: Option[Cancellable] = None
+
+  // Latest loads reported by the servers and when they were received
+  private var serverLoads: Seq[ServerLoad] = Seq.empty
+  private var serverLoadsReceivedAt = 0L
+
+  override def preStart(): Unit = {
+    super.preStart()
+    import context.dispatcher
+    loadRefresh = loadRefreshInterval map { interval =>
+      context.system.scheduler.schedule(Duration.Zero, interval, self, RefreshServerLoads)
+    }
+  }
+
+  override def postStop(): Unit = {
+    loadRefresh.foreach(_.cancel())
+    super.postStop()
+  }
+
   override def receive: Receive = initial
 
   private val initial: Receive = {
@@ -68,6 +106,14 @@ class ProxyActor(clusterClientActor: ActorRef, driver: ClusterClientDriver) exte
       logger.debug("Sending message to the Crossdata cluster")
       context.become(start(promisesByIds.copy(promisesByIds.promises + (message.cmd.requestId -> promise))))
       self ! message
+
+    case (message: CommandEnvelope, promise: Promise[ServerReply @unchecked], listener: (ServerReply => Unit) @unchecked) =>
+      logger.debug("Sending message with a reply listener to the Crossdata cluster")
+      context.become(start(promisesByIds.copy(
+        promises = promisesByIds.promises + (message.cmd.requestId -> promise),
+        replyListeners = promisesByIds.replyListeners + (message.cmd.requestId -> listener)
+      )))
+      self ! message
   }
 
   // Process messages from the Crossdata Driver.
@@ -75,9 +121,13 @@ class ProxyActor(clusterClientActor: ActorRef, driver: ClusterClientDriver) exte
 
     case secureSQLCommand @ CommandEnvelope(sqlCommand: SQLCommand, _, _) =>
       logger.info(s"Sending query: ${sqlCommand.sql} with requestID=${sqlCommand.requestId} & queryID=${sqlCommand.queryId}")
-      clusterClientActor ! ClusterClient.Send(ServerClusterClientParameters.ServerPath, secureSQLCommand, localAffinity = false)
+      clusterClientActor ! ClusterClient.Send(serverPathForQuery, secureSQLCommand, localAffinity = false)
+
+    case secureSQLCommand @ CommandEnvelope(batch: SQLBatchCommand, _, _) =>
+      logger.info(s"Sending batch of ${batch.statements.size} statements with requestID=${batch.requestId}")
+      clusterClientActor ! ClusterClient.Send(serverPathForQuery, secureSQLCommand, localAffinity = false)
 
-    case secureSQLCommand @ CommandEnvelope(addJARCommand @ AddJARCommand(path, _, _, _), session, _) =>
+    case secureSQLCommand @ CommandEnvelope(addJARCommand @ AddJARCommand(path, _, _, _, _), session, _) =>
       import context.dispatcher
       val shipmentResponse: Future[SQLReply] = sendJarToServers(addJARCommand, path, session)
       shipmentResponse pipeTo sender
@@ -89,6 +139,10 @@ class ProxyActor(clusterClientActor: ActorRef, driver: ClusterClientDriver) exte
     case secureSQLCommand @ CommandEnvelope(aCmd @ AddAppCommand(path, alias, clss, _), _, _) =>
       clusterClientActor ! ClusterClient.Send(ServerClusterClientParameters.ServerPath,secureSQLCommand, localAffinity=false)
 
+    case secureSQLCommand @ CommandEnvelope(controlCommand: ControlCommand, _, _) =>
+      logger.debug(s"Sending control command $controlCommand with requestID=${controlCommand.requestId}")
+      clusterClientActor ! ClusterClient.Send(ServerClusterClientParameters.ServerPath, secureSQLCommand, localAffinity = false)
+
     case secureSQLCommand @ CommandEnvelope(_: OpenSessionCommand | _: CloseSessionCommand, _, _) =>
       clusterClientActor ! ClusterClient.Send(ServerClusterClientParameters.ServerPath, secureSQLCommand, localAffinity = true)
 
@@ -97,6 +151,37 @@ class ProxyActor(clusterClientActor: ActorRef, driver: ClusterClientDriver) exte
   }
 
 
+  // Servers' load reports, they are requested periodically so queries can be sent to the least loaded server
+  def loadBalancing: Receive = {
+    case RefreshServerLoads =>
+      clusterClientActor ! ClusterClient.Send(
+        ServerClusterClientParameters.LoadMonitorPath, ServerLoadsCommand(), localAffinity = false
+      )
+
+    case ServerLoadsReply(_, loads) =>
+      logger.debug(s"Server loads received: ${loads.map(load => s"${load.serverId}=${load.score}").mkString(", ")}")
+      serverLoads = loads
+      serverLoadsReceivedAt = System.currentTimeMillis()
+  }
+
+  /**
+    * Path of the least loaded server or the path shared by all the servers, so the cluster client picks a random one,
+    * when there are no recent load reports.
+    */
+  private def serverPathForQuery: String = {
+    val recentLoads = loadRefreshInterval filter { interval =>
+      System.currentTimeMillis() - serverLoadsReceivedAt <= 3 * interval.toMillis
+    } map (_ => serverLoads) getOrElse Seq.empty
+
+    ServerLoad.leastLoaded(recentLoads) map { target =>
+      // The query is accounted until the next report so a burst of queries is not sent to the same server
+      serverLoads = serverLoads map { load =>
+        if (load.serverId == target.serverId) load.copy(runningJobs = load.runningJobs + 1) else load
+      }
+      target.entryPath
+    } getOrElse ServerClusterClientParameters.ServerPath
+  }
+
   def sendJarToServers(command: Command, path: String, session:Session): Future[SQLReply] = {
     import scala.concurrent.ExecutionContext.Implicits.global
     httpClient.sendJarToHTTPServer(path, session) map { response =>
@@ -115,13 +200,46 @@ class ProxyActor(clusterClientActor: ActorRef, driver: ClusterClientDriver) exte
     }
   }
 
+  // Chunked results received from a Crossdata Server.
+  def receiveChunksFromServer(promisesByIds: PromisesByIds): Receive = {
+    case chunk @ SQLResultChunk(requestId, chunkIndex, _, _, _) if promisesByIds.replyListeners contains requestId =>
+      logger.debug(s"Chunk $chunkIndex received from Crossdata Server with ID=$requestId, its listener acknowledges it")
+      notifyListener(promisesByIds, chunk)
+
+    case SQLResultChunk(requestId, chunkIndex, _, batch, producer) if promisesByIds.promises contains requestId =>
+      logger.debug(s"Chunk $chunkIndex received from Crossdata Server with ID=$requestId")
+      // Batches are decoded once the whole result, and the schema sent along with its end, has been received
+      val received = promisesByIds.partialResults.getOrElse(requestId, Vector.empty) :+ batch
+      context.become(start(promisesByIds.copy(partialResults = promisesByIds.partialResults + (requestId -> received))))
+      producer ! SQLResultChunkAck(requestId, 1)
+
+    case SQLResultEnd(requestId, schema, numberOfRows, profile) if promisesByIds.promises contains requestId =>
+      logger.info(s"Chunked result with $numberOfRows rows received from Crossdata Server with ID=$requestId")
+      val rows = promisesByIds.partialResults.getOrElse(requestId, Vector.empty).flatMap(_.rows(schema)).toArray
+      context.become(start(promisesByIds - requestId))
+      promisesByIds.promises(requestId).success(SQLReply(requestId, SuccessfulSQLResult(rows, schema, profile)))
+  }
+
+  // Results of the statements of a batch, they are streamed before its final reply.
+  def receiveBatchStatementsFromServer(promisesByIds: PromisesByIds): Receive = {
+    case statementReply @ SQLBatchStatementReply(requestId, index, _)
+      if promisesByIds.replyListeners contains requestId =>
+      logger.debug(s"Result of statement $index received from Crossdata Server with ID=$requestId")
+      notifyListener(promisesByIds, statementReply)
+  }
+
+  private def notifyListener(promisesByIds: PromisesByIds, reply: ServerReply): Unit =
+    Try(promisesByIds.replyListeners(reply.requestId)(reply)) recover {
+      case failure => logger.warn(s"The listener of request ${reply.requestId} has failed", failure)
+    }
+
   // Message received from a Crossdata Server.
   def receiveFromServer(promisesByIds: PromisesByIds): Receive = {
     case reply: ServerReply =>
       logger.info(s"Sever reply received from Crossdata Server: $sender with ID=${reply.requestId}")
       promisesByIds.promises.get(reply.requestId) match {
         case Some(p) =>
-          context.become(start(promisesByIds.copy(promisesByIds.promises - reply.requestId)))
+          context.become(start(promisesByIds - reply.requestId))
           reply match {
             case reply @ SQLReply(_, result) =>
               logger.info(s"Successful SQL execution: $result")
@@ -136,6 +254,12 @@ class ProxyActor(clusterClientActor: ActorRef, driver: ClusterClientDriver) exte
             case reply @ OpenSessionReply(_, isOpen) =>
               logger.debug(s"Open session reply received: open=$isOpen")
               p.success(reply)
+            case reply @ SQLBatchReply(_, _, executed) =>
+              logger.info(s"SQL batch executed: $executed statements")
+              p.success(reply)
+            case reply @ (_: QuerySubmittedReply | _: QueryStatusReply | _: QueryResultPageReply) =>
+              logger.debug(s"Asynchronous query reply received: $reply")
+              p.success(reply)
             case _ =>
               p.failure(new RuntimeException(s"Unknown message: $reply"))
           }
@@ -145,7 +269,10 @@ class ProxyActor(clusterClientActor: ActorRef, driver: ClusterClientDriver) exte
 
   def start(promisesByIds: PromisesByIds): Receive = {
     storePromise(promisesByIds) orElse
+    loadBalancing orElse
     sendToServer(promisesByIds) orElse
+    receiveChunksFromServer(promisesByIds) orElse
+    receiveBatchStatementsFromServer(promisesByIds) orElse
     receiveFromServer(promisesByIds) orElse {
       case any =>
         logger.warn(s"Unknown message: $any. Message won't be sent to the Crossdata cluster")
@@ -25,4 +25,6 @@ object ServerClusterClientParameters {
 
   val RemoteClientName = "remote-client"
 
+  val LoadMonitorPath = "/user/load-monitor"
+
 }
@@ -16,13 +16,15 @@
 package com.stratio.crossdata.driver.config
 
 import java.io.File
-import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.{ConcurrentHashMap, TimeUnit}
 
+import com.stratio.crossdata.common.ResultChunking
 import com.typesafe.config.{Config, ConfigFactory, ConfigValue, ConfigValueFactory}
 import org.apache.log4j.Logger
 import org.apache.spark.Logging
 
 import scala.collection.JavaConversions._
+import scala.concurrent.duration._
 import scala.util.Try
 
 class DriverConf extends Logging {
@@ -79,6 +81,40 @@ class DriverConf extends Logging {
     this
   }
 
+  /**
+   * @param chunkSize Maximum number of rows per result chunk. Zero or negative values disable chunked results.
+   */
+  def setResultChunkSize(chunkSize: Int): DriverConf = {
+    userSettings.put(DriverResultChunkSize, ConfigValueFactory.fromAnyRef(chunkSize))
+    this
+  }
+
+  /**
+   * @param columnar Whether results should be transferred using the binary columnar encoding instead of serialized rows.
+   */
+  def setColumnarResults(columnar: Boolean): DriverConf = {
+    userSettings.put(DriverColumnarResults, ConfigValueFactory.fromAnyRef(columnar))
+    this
+  }
+
+  /**
+   * @param profile Whether results should carry the profile of their queries: time spent in each phase, rows, bytes
+   *                and the engine which executed them.
+   */
+  def setQueryProfiling(profile: Boolean): DriverConf = {
+    userSettings.put(DriverQueryProfiling, ConfigValueFactory.fromAnyRef(profile))
+    this
+  }
+
+  /**
+   * @param refreshInterval How often the load of the servers is refreshed in order to send each query to the least
+   *                        loaded one. Zero disables load-aware routing.
+   */
+  def setLoadBalancingRefreshInterval(refreshInterval: FiniteDuration): DriverConf = {
+    userSettings.put(DriverLoadRefreshInterval, ConfigValueFactory.fromAnyRef(s"${refreshInterval.toMillis}ms"))
+    this
+  }
+
   def setTunnelTimeout(seconds: Int): DriverConf = {
     userSettings.put(AkkaClusterRecepcionistTunnelTimeout, ConfigValueFactory.fromAnyRef(seconds * 1000))
     this
@@ -136,6 +172,22 @@ class DriverConf extends Logging {
   private[crossdata] def getFlattenTables: Boolean =
     finalSettings.getBoolean(DriverFlattenTables)
 
+  private[crossdata] def getResultChunking: Option[ResultChunking] = {
+    val chunkSize = Try(finalSettings.getInt(DriverResultChunkSize)).getOrElse(0)
+    val credits = Try(finalSettings.getInt(DriverResultChunkCredits)).getOrElse(DefaultResultChunkCredits)
+    if (chunkSize > 0) Some(ResultChunking(chunkSize, credits max 1)) else None
+  }
+
+  private[crossdata] def getColumnarResults: Boolean =
+    Try(finalSettings.getBoolean(DriverColumnarResults)).getOrElse(false)
+
+  private[crossdata] def getQueryProfiling: Boolean =
+    Try(finalSettings.getBoolean(DriverQueryProfiling)).getOrElse(false)
+
+  private[crossdata] def getLoadRefreshInterval: Option[FiniteDuration] = Try(
+    finalSettings.getDuration(DriverLoadRefreshInterval, TimeUnit.MILLISECONDS)
+  ).toOption filter (_ > 0) map (_.millis)
+
 
   private val typesafeConf: Config = {
 
@@ -242,6 +294,12 @@ object DriverConf {
   val DriverConfigFile = "external.config.filename"
   val DriverConfigHosts = "config.cluster.hosts"
   val DriverFlattenTables = "config.flatten-tables"
+  val DriverResultChunkSize = "config.results.chunk-size"
+  val DriverResultChunkCredits = "config.results.chunk-credits"
+  val DefaultResultChunkCredits = 4
+  val DriverColumnarResults = "config.results.columnar"
+  val DriverQueryProfiling = "config.results.profile"
+  val DriverLoadRefreshInterval = "config.load-balancing.refresh-interval"
   val DriverClusterName = "config.cluster.name"
   val SSLEnabled = "akka.remote.netty.ssl.enable-ssl"
   val AkkaClusterRecepcionistTunnelTimeout = "akka.contrib.cluster.receptionist.response-tunnel-receive-timeout"
@@ -18,8 +18,9 @@ package com.stratio.crossdata.driver.shell
 import java.io._
 
 import com.stratio.crossdata.common.crossdata
-import com.stratio.crossdata.common.result.ErrorSQLResult
+import com.stratio.crossdata.common.result.{ErrorSQLResult, SuccessfulSQLResult}
 import com.stratio.crossdata.driver.Driver
+import com.stratio.crossdata.driver.config.DriverConf
 import jline.console.history.FileHistory
 import jline.console.{ConsoleReader, UserInterruptException}
 import org.apache.log4j.Logger
@@ -36,7 +37,10 @@ object BasicShell extends App {
   val HistoryFile = "history.txt"
   val PersistentHistory = new File(HistoryPath.concat(HistoryFile))
 
-  require(args.length <= 6, "usage --user username --http true/false(default) --timeout-in-seconds 120")
+  require(
+    args.length <= 8,
+    "usage --user username --http true/false(default) --timeout-in-seconds 120 --profile true/false(default)"
+  )
 
   val arglist = args.toList
 
@@ -51,6 +55,8 @@ object BasicShell extends App {
         nextOption(map ++ Map("http" -> bool.toBoolean), tail)
       case "--timeout-in-seconds" :: timeout :: tail =>
         nextOption(map ++ Map("timeout" -> timeout.toInt), tail)
+      case "--profile" :: bool :: tail =>
+        nextOption(map ++ Map("profile" -> bool.toBoolean), tail)
     }
   }
 
@@ -65,8 +71,12 @@ object BasicShell extends App {
     case x: Int => x seconds
     case _ => Duration.Inf
   } getOrElse Duration.Inf
+  val profile = options.getOrElse("profile", false) match {
+    case x: Boolean => x
+    case _ => false
+  }
 
-  logger.info(s"user: $user http enabled ${http.toString} timeout(seconds): $timeout")
+  logger.info(s"user: $user http enabled ${http.toString} timeout(seconds): $timeout profile: $profile")
 
   val password = "" // TODO read the password
 
@@ -125,10 +135,11 @@ object BasicShell extends App {
 
   private def runConsole(console: ConsoleReader): Unit = {
 
+    val driverConf = new DriverConf().setQueryProfiling(profile)
     val driver = if (http) {
-      Driver.http.newSession(user, password)
+      Driver.http.newSession(user, password, driverConf)
     } else {
-      Driver.newSession(user, password)
+      Driver.newSession(user, password, driverConf)
     }
 
     console.println()
@@ -157,6 +168,12 @@ object BasicShell extends App {
         } else {
           console.println("SUCCESS")
           result.prettyResult.foreach(l => console.println(l))
+          result match {
+            case SuccessfulSQLResult(_, _, Some(queryProfile)) =>
+              console.println("PROFILE")
+              queryProfile.prettyProfile.foreach(l => console.println(l))
+            case _ =>
+          }
         }
       }
       console.flush
@@ -122,6 +122,9 @@ class ElasticsearchXDRelation(parameters: Map[String, String], sqlContext: SQLCo
     queryExecutor.execute()
   }
 
+  // The options hold both the nodes and the resource (index and type) read by the relation
+  override def nativeIdentity: String = s"${getClass.getName}@${parameters.toSeq.sorted.mkString(",")}"
+
 
   /**
    * Checks the ability to execute a [[LogicalPlan]].
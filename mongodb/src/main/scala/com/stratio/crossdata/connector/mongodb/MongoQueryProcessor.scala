@@ -20,6 +20,7 @@ import java.util.regex.Pattern
 import com.mongodb.{DBObject, QueryBuilder}
 import com.mongodb.casbah.Imports._
 import com.stratio.common.utils.components.logger.impl.SparkLoggerComponent
+import com.stratio.crossdata.connector.RowBatches
 import com.stratio.datasource.mongodb.MongodbConnection
 import com.stratio.datasource.mongodb.MongodbRelation._
 import com.stratio.datasource.mongodb.config.MongodbConfig
@@ -33,9 +34,10 @@ import org.apache.spark.sql.sources.CatalystToCrossdataAdapter.{BaseLogicalPlan,
 import org.apache.spark.sql.sources.{CatalystToCrossdataAdapter, Filter => SourceFilter}
 import org.apache.spark.sql.types.StructType
 
+import scala.util.control.NonFatal
+
 object MongoQueryProcessor {
 
-  val DefaultLimit = 10000
   type ColumnName = String
   type Limit = Option[Int]
 
@@ -153,43 +155,86 @@ class MongoQueryProcessor(logicalPlan: LogicalPlan, config: Config, schemaProvid
 
   import MongoQueryProcessor._
 
-  def execute(): Option[Array[Row]] = {
+  def execute(): Option[Array[Row]] =
+    try {
+      withNativeQuery(Array.empty[Row]) { (plan, limit, mongoFilters, mongoRequiredColumns) =>
+        val resultSet = MongodbConnection.withCollectionDo(config) { collection =>
+          logDebug(s"Executing native query: filters => $mongoFilters projects => $mongoRequiredColumns")
+          // Queries without limit return every document, as their Spark counterpart would
+          val cursor = collection.find(mongoFilters, mongoRequiredColumns)
+          limit.foreach(cursor.limit)
+          // Documents are fetched until the executing thread gets interrupted (e.g: the query gets cancelled)
+          try {
+            val result = cursor.takeWhile(_ => !Thread.currentThread().isInterrupted).toArray[DBObject]
+            if (Thread.currentThread().isInterrupted)
+              throw new InterruptedException("Native query interrupted")
+            result
+          } finally {
+            cursor.close()
+          }
+        }
+        sparkResultFromMongodb(plan.projects, plan.collectionRandomAccesses, schemaProvided.get, resultSet)
+      }
+    } catch {
+      case exc: Exception =>
+        log.warn(s"Exception executing the native query $logicalPlan", exc.getMessage); None
+    }
+
+  /**
+    * Executes the query fetching `fetchSize` documents at a time. As with [[execute]], only the limit of the query caps
+    * its result. The client is kept open until the batches are closed.
+    */
+  def executeInBatches(fetchSize: Int): Option[RowBatches] =
+    try {
+      withNativeQuery(RowBatches(Iterator.empty)) { (plan, limit, mongoFilters, mongoRequiredColumns) =>
+        val (collection, closeClient) = MongodbConnection.openCollection(config)
+        try {
+          logDebug(s"Executing native query in batches: filters => $mongoFilters projects => $mongoRequiredColumns")
+          val cursor = collection.find(mongoFilters, mongoRequiredColumns).batchSize(fetchSize)
+          limit.foreach(cursor.limit)
+          val batches = cursor.grouped(fetchSize) map { documents =>
+            if (Thread.currentThread().isInterrupted)
+              throw new InterruptedException("Native query interrupted")
+            sparkResultFromMongodb(plan.projects, plan.collectionRandomAccesses, schemaProvided.get, documents.toArray).toSeq
+          }
+          RowBatches(batches, () => try cursor.close() finally closeClient())
+        } catch {
+          case NonFatal(exception) =>
+            closeClient()
+            throw exception
+        }
+      }
+    } catch {
+      case exc: Exception =>
+        log.warn(s"Exception executing the native query $logicalPlan", exc.getMessage); None
+    }
 
-    // TODO convert to Spark result using an iterator with batches instead of an array
+  /**
+    * Runs the native query, given its Mongo filters and projection, if the plan can be executed natively.
+    *
+    * @param empty result of the queries whose limit is 0
+    */
+  private[this] def withNativeQuery[T](empty: => T)(run: (SimpleLogicalPlan, Limit, DBObject, DBObject) => T): Option[T] =
     if (schemaProvided.isEmpty) {
       None
     } else {
-      try {
-        validatedNativePlan.map { case MongoPlan(bs: SimpleLogicalPlan, limit) =>
-          if (limit.exists(_ == 0)) {
-            Array.empty[Row]
-          } else {
-            val name2randomAccess = bs.collectionRandomAccesses.map {
-              case (k, v) => s"${k.name}[${v.right}]" -> v
-            }
-            val (mongoFilters, mongoRequiredColumns) = buildNativeQuery(
-              bs.projects.map(_.name), bs.filters,
-              config,
-              name2randomAccess
-            )
-            val resultSet = MongodbConnection.withCollectionDo(config) { collection =>
-              logDebug(s"Executing native query: filters => $mongoFilters projects => $mongoRequiredColumns")
-              val cursor = collection.find(mongoFilters, mongoRequiredColumns)
-              val result = cursor.limit(limit.getOrElse(DefaultLimit)).toArray[DBObject]
-              cursor.close()
-              result
-            }
-            sparkResultFromMongodb(bs.projects, bs.collectionRandomAccesses, schemaProvided.get, resultSet)
+      validatedNativePlan.map { case MongoPlan(bs: SimpleLogicalPlan, limit) =>
+        if (limit.exists(_ == 0)) {
+          empty
+        } else {
+          val name2randomAccess = bs.collectionRandomAccesses.map {
+            case (k, v) => s"${k.name}[${v.right}]" -> v
           }
+          val (mongoFilters, mongoRequiredColumns) = buildNativeQuery(
+            bs.projects.map(_.name), bs.filters,
+            config,
+            name2randomAccess
+          )
+          run(bs, limit, mongoFilters, mongoRequiredColumns)
         }
-      } catch {
-        case exc: Exception =>
-          log.warn(s"Exception executing the native query $logicalPlan", exc.getMessage); None
       }
     }
 
-  }
-
 
   def validatedNativePlan: Option[_] = {// TODO
     lazy val limit: Option[Int] = logicalPlan.collectFirst { case LogicalLimit(Literal(num: Int, _), _) => num }
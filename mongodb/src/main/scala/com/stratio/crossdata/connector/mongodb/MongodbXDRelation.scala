@@ -16,8 +16,9 @@
 package com.stratio.crossdata.connector.mongodb
 
 import com.stratio.common.utils.components.logger.impl.SparkLoggerComponent
-import com.stratio.crossdata.connector.NativeScan
+import com.stratio.crossdata.connector.{NativeBatchScan, RowBatches}
 import com.stratio.datasource.mongodb.MongodbRelation
+import com.stratio.datasource.mongodb.config.MongodbConfig
 import com.stratio.datasource.util.Config
 import org.apache.spark.sql.catalyst.plans.logical.{Filter, LeafNode, Limit, LogicalPlan, Project, UnaryNode}
 import org.apache.spark.sql.types.StructType
@@ -37,7 +38,7 @@ import org.apache.spark.sql.{Row, SQLContext}
 case class MongodbXDRelation(config: Config,
                              schemaProvided: Option[StructType] = None)(
                             @transient sqlContext: SQLContext)
-  extends MongodbRelation(config, schemaProvided)(sqlContext) with NativeScan with SparkLoggerComponent{
+  extends MongodbRelation(config, schemaProvided)(sqlContext) with NativeBatchScan with SparkLoggerComponent{
 
 
   override def buildScan(optimizedLogicalPlan: LogicalPlan): Option[Array[Row]] = {
@@ -46,6 +47,17 @@ case class MongodbXDRelation(config: Config,
     queryExecutor.execute()
   }
 
+  override def buildBatchScan(optimizedLogicalPlan: LogicalPlan, fetchSize: Int): Option[RowBatches] = {
+    logDebug(s"Processing ${optimizedLogicalPlan.toString()} in batches of $fetchSize documents")
+    val queryExecutor = MongoQueryProcessor(optimizedLogicalPlan, config, schemaProvided)
+    queryExecutor.executeInBatches(fetchSize)
+  }
+
+  override def nativeIdentity: String = {
+    val collection = s"${config[String](MongodbConfig.Database)}.${config[String](MongodbConfig.Collection)}"
+    s"${getClass.getName}@${config[Any](MongodbConfig.Host)}/$collection"
+  }
+
   override def isSupported(logicalStep: LogicalPlan, wholeLogicalPlan: LogicalPlan): Boolean = logicalStep match {
     case ln: LeafNode => true // TODO leafNode == LogicalRelation(xdSourceRelation)
     case un: UnaryNode => un match {
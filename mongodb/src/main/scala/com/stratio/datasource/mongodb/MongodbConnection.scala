@@ -39,6 +39,17 @@ object MongodbConnection {
     }
   }
 
+  /**
+   * Opens the collection along with a function closing its client, for results outliving [[withCollectionDo]].
+   */
+  def openCollection(config: Config): (MongoCollection, () => Unit) = {
+    val databaseName: String = config(MongodbConfig.Database)
+    val collectionName: String = config(MongodbConfig.Collection)
+
+    val mClient = openClient(config)
+    (mClient(databaseName)(collectionName), () => mClient.close())
+  }
+
   private def openClient(config: Config): MongoClient =
     MongodbClientFactory.getClient(config.hosts, config.credentials, config.sslOptions, config.clientOptions)
 
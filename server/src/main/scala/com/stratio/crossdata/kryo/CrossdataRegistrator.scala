@@ -16,28 +16,167 @@
 package com.stratio.crossdata.kryo
 
 import com.esotericsoftware.kryo.Kryo
+import org.apache.log4j.Logger
 import org.apache.spark.serializer.KryoRegistrator
 import org.apache.spark.sql.Row
-import org.apache.spark.sql.catalyst.expressions.GenericRowWithSchema
+import org.apache.spark.sql.catalyst.InternalRow
+import org.apache.spark.sql.catalyst.expressions.{GenericInternalRow, GenericMutableRow, GenericRow, GenericRowWithSchema, UnsafeRow}
+import org.apache.spark.sql.catalyst.util.{ArrayBasedMapData, GenericArrayData}
+import org.apache.spark.sql.cassandra.CassandraSQLRow
+import org.apache.spark.sql.crossdata.catalog.XDCatalog.{CrossdataApp, CrossdataIndex, CrossdataTable, IndexIdentifier}
+import org.apache.spark.sql.crossdata.catalog.{IndexIdentifierNormalized, TableIdentifierNormalized}
+import org.apache.spark.sql.crossdata.catalyst.NativeUDF
+import org.apache.spark.sql.crossdata.models._
 import org.apache.spark.sql.types._
+import org.apache.spark.unsafe.types.{CalendarInterval, UTF8String}
+
+import scala.collection.mutable
+import scala.util.{Failure, Try}
+
+/**
+  * Registers the classes of the values Crossdata ships within shuffles, broadcasts and cached blocks so Kryo
+  * writes a small id instead of their names. Registration is complete enough to run with
+  * `spark.kryo.registrationRequired = true` unless external datasources or UDFs add their own classes.
+  */
+class CrossdataRegistrator extends KryoRegistrator {
+
+  import CrossdataRegistrator._
 
-class CrossdataRegistrator extends KryoRegistrator{
   override def registerClasses(kryo: Kryo): Unit = {
-    kryo.register(Nil.getClass)
-    kryo.register(StringType.getClass)
-    kryo.register(DoubleType.getClass)
-    kryo.register(IntegerType.getClass)
-    kryo.register(BooleanType.getClass)
-    kryo.register(LongType.getClass)
-    kryo.register(classOf[ArrayType])
-    kryo.register(classOf[StructType])
-    kryo.register(classOf[StructField])
-    kryo.register(classOf[Metadata])
-    kryo.register(classOf[GenericRowWithSchema])
-    kryo.register(classOf[Array[Object]])
-    kryo.register(classOf[Array[Row]])
-    kryo.register(classOf[scala.collection.immutable.Map$EmptyMap$])
-    kryo.register(classOf[scala.collection.immutable.$colon$colon[_]])
-    kryo.register(classOf[Array[org.apache.spark.sql.types.StructField]])
+    (ScalaClasses ++ JavaClasses ++ DataTypeClasses ++ RowClasses ++ CrossdataClasses) foreach (kryo.register(_))
+    ConnectorClassNames foreach { className =>
+      Try(kryo.register(Class.forName(className))) match {
+        case Failure(_) => logger.debug(s"Connector class $className not found, it won't be registered")
+        case _ =>
+      }
+    }
   }
+
+}
+
+object CrossdataRegistrator {
+
+  lazy val logger = Logger.getLogger(classOf[CrossdataRegistrator])
+
+  // Implementation classes of the Scala collections and wrappers found within rows and models
+  val ScalaClasses: Seq[Class[_]] = Seq(
+    Nil.getClass,
+    classOf[scala.collection.immutable.$colon$colon[_]],
+    classOf[scala.collection.immutable.Map$EmptyMap$],
+    Map(1 -> 1).getClass,
+    Map(1 -> 1, 2 -> 2).getClass,
+    Map(1 -> 1, 2 -> 2, 3 -> 3).getClass,
+    Map(1 -> 1, 2 -> 2, 3 -> 3, 4 -> 4).getClass,
+    classOf[scala.collection.immutable.HashMap[_, _]],
+    scala.collection.immutable.HashMap(1 -> 1).getClass,
+    (1 to 5).map(i => i -> i).toMap.getClass,
+    Set.empty[Int].getClass,
+    Set(1).getClass,
+    Set(1, 2).getClass,
+    Set(1, 2, 3).getClass,
+    Set(1, 2, 3, 4).getClass,
+    classOf[scala.collection.immutable.HashSet[_]],
+    scala.collection.immutable.HashSet(1).getClass,
+    (1 to 5).toSet.getClass,
+    classOf[scala.collection.immutable.Vector[_]],
+    classOf[mutable.WrappedArray.ofRef[_]],
+    classOf[mutable.WrappedArray.ofInt],
+    classOf[mutable.WrappedArray.ofLong],
+    classOf[mutable.WrappedArray.ofDouble],
+    classOf[mutable.ArrayBuffer[_]],
+    classOf[mutable.ListBuffer[_]],
+    classOf[Some[_]],
+    None.getClass,
+    classOf[Tuple2[_, _]],
+    classOf[Tuple3[_, _, _]],
+    classOf[scala.math.BigDecimal]
+  )
+
+  val JavaClasses: Seq[Class[_]] = Seq(
+    classOf[java.sql.Date],
+    classOf[java.sql.Timestamp],
+    classOf[java.math.BigDecimal],
+    classOf[java.math.BigInteger],
+    classOf[java.math.MathContext],
+    classOf[java.math.RoundingMode],
+    classOf[Array[Object]],
+    classOf[Array[String]],
+    classOf[Array[Int]],
+    classOf[Array[Double]],
+    classOf[Array[Float]],
+    classOf[Array[Boolean]],
+    classOf[Array[Array[Byte]]]
+  )
+
+  val DataTypeClasses: Seq[Class[_]] = Seq(
+    NullType.getClass,
+    StringType.getClass,
+    BinaryType.getClass,
+    BooleanType.getClass,
+    ByteType.getClass,
+    ShortType.getClass,
+    IntegerType.getClass,
+    LongType.getClass,
+    FloatType.getClass,
+    DoubleType.getClass,
+    DateType.getClass,
+    TimestampType.getClass,
+    CalendarIntervalType.getClass,
+    classOf[DecimalType],
+    classOf[ArrayType],
+    classOf[MapType],
+    classOf[StructType],
+    classOf[StructField],
+    classOf[Array[StructField]],
+    classOf[Metadata],
+    classOf[Decimal]
+  )
+
+  // External rows and the Catalyst data classes they are converted from
+  val RowClasses: Seq[Class[_]] = Seq(
+    classOf[GenericRow],
+    classOf[GenericRowWithSchema],
+    classOf[GenericInternalRow],
+    classOf[GenericMutableRow],
+    classOf[UnsafeRow],
+    classOf[Array[Row]],
+    classOf[Array[InternalRow]],
+    classOf[Array[UnsafeRow]],
+    classOf[GenericArrayData],
+    classOf[ArrayBasedMapData],
+    classOf[UTF8String],
+    classOf[Array[UTF8String]],
+    classOf[CalendarInterval],
+    classOf[CassandraSQLRow]
+  )
+
+  val CrossdataClasses: Seq[Class[_]] = Seq(
+    classOf[NativeUDF],
+    classOf[TableModel],
+    classOf[ViewModel],
+    classOf[AppModel],
+    classOf[IndexModel],
+    classOf[EphemeralTableModel],
+    classOf[EphemeralOptionsModel],
+    classOf[EphemeralQueryModel],
+    classOf[EphemeralStatusModel],
+    classOf[KafkaOptionsModel],
+    classOf[ConnectionHostModel],
+    classOf[ConnectionModel],
+    classOf[TopicModel],
+    EphemeralExecutionStatus.values.head.getClass,
+    EphemeralOutputFormat.values.head.getClass,
+    classOf[CrossdataTable],
+    classOf[CrossdataIndex],
+    classOf[CrossdataApp],
+    classOf[IndexIdentifier],
+    classOf[TableIdentifierNormalized],
+    classOf[IndexIdentifierNormalized]
+  )
+
+  // Classes which are not public, MongoDB rows are plain GenericRows
+  val ConnectorClassNames: Seq[String] = Seq(
+    "org.elasticsearch.spark.sql.ScalaEsRow"
+  )
+
 }
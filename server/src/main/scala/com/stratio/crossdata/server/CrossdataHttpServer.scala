@@ -15,39 +15,50 @@
  */
 package com.stratio.crossdata.server
 
-import java.io.File
 import java.util.UUID
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
 
 import akka.actor.{ActorRef, ActorSystem}
 import akka.pattern.ask
 import akka.cluster.pubsub.DistributedPubSub
 import akka.cluster.pubsub.DistributedPubSubMediator.{Publish, SendToAll}
 import akka.http.scaladsl.model._
-import akka.http.scaladsl.model.Multipart.BodyPart
+import akka.http.scaladsl.model.headers.Accept
 import akka.http.scaladsl.server.Directive
 import akka.http.scaladsl.server.Directives._
-import akka.stream.ActorMaterializer
-import akka.stream.scaladsl.FileIO
-import akka.util.Timeout
+import akka.stream.{ActorMaterializer, OverflowStrategy}
+import akka.stream.scaladsl.{Sink, Source}
+import akka.util.{ByteString, Timeout}
 import com.stratio.crossdata.common.security.Session
+import com.stratio.crossdata.common.serializers.{ColumnarRowsCodec, ColumnarSQLResultSerializer, StreamedSQLResultSerializer}
 import com.stratio.crossdata.common.util.akka.keepalive.LiveMan.HeartBeat
 import com.stratio.crossdata.common._
-import com.stratio.crossdata.server.actors.ResourceManagerActor
+import com.stratio.crossdata.common.load.ServerLoad
+import com.stratio.crossdata.common.result.{ColumnarRowBatch, ErrorSQLResult}
+import com.stratio.crossdata.server.actors.{LoadMonitorActor, ResourceManagerActor, StreamedResultPublisher}
 import com.stratio.crossdata.server.config.ServerConfig
-import com.stratio.crossdata.util.HdfsUtils
+import com.stratio.crossdata.server.execution.JobRegistry
+import com.stratio.crossdata.server.jars.{JarStore, StoredJar}
 import com.typesafe.config.{Config, ConfigException}
 import org.apache.log4j.Logger
 import org.apache.spark.sql.crossdata.XDContext
 import org.apache.spark.sql.crossdata.serializers.CrossdataSerializer
+import org.apache.spark.sql.types.StructType
 import org.json4s.jackson
 
 import scala.concurrent.Future
 import scala.concurrent.duration._
-import scala.util.{Success, Try}
+import scala.util.{Failure, Success, Try}
 
 
-class CrossdataHttpServer(config: Config, serverActor: ActorRef, implicit val system: ActorSystem) extends CrossdataSerializer {
+class CrossdataHttpServer(
+                           config: Config,
+                           serverActor: ActorRef,
+                           loadMonitor: ActorRef,
+                           jobRegistry: JobRegistry,
+                           implicit val system: ActorSystem
+                         ) extends CrossdataSerializer {
 
   import de.heikoseeberger.akkahttpjson4s.Json4sSupport._
   implicit val serialization = jackson.Serialization
@@ -67,45 +78,42 @@ class CrossdataHttpServer(config: Config, serverActor: ActorRef, implicit val sy
       ServerConfig.DefaultHTTPRequestExecutionTimeout
   } get
 
+  private val streamedResultChunking: ResultChunking = ResultChunking(
+    Try(config.getInt(ServerConfig.Http.StreamingChunkSize)).getOrElse(ServerConfig.DefaultHTTPStreamingChunkSize),
+    Try(config.getInt(ServerConfig.Http.StreamingChunkCredits)).getOrElse(ServerConfig.DefaultHTTPStreamingChunkCredits)
+  )
+
+  private lazy val jarStore = JarStore(XDContext.xdConfig.getConfig("hdfs"))
+
+  private lazy val blockingIODispatcher = system.dispatchers.lookup("akka.stream.default-blocking-io-dispatcher")
+
   type SessionDirective[Session] = Directive[Tuple1[Session]]
 
   lazy val route =
     path("upload" / JavaUUID) { sessionUUID =>
       entity(as[Multipart.FormData]) { formData =>
-        // collect all parts of the multipart as it arrives into a map
-        var path = ""
-        val allPartsF: Future[Map[String, Any]] = formData.parts.mapAsync[(String, Any)](1) {
-
-          case part: BodyPart if part.name == "fileChunk" =>
-            // stream into a file as the chunks of it arrives and return a future file to where it got stored
-            val file = new java.io.File(s"/tmp/${part.filename.getOrElse("uploadFile")}")
-            path = file.getAbsolutePath
+        // stream the file into the jar store as its chunks arrive, there is no local copy
+        val storedJarF: Future[Option[StoredJar]] = formData.parts.filter(_.name == "fileChunk").take(1).mapAsync(1) {
+          part =>
             logger.info("Uploading file...")
-            // TODO map is not used
-            part.entity.dataBytes.runWith(FileIO.toFile(file)).map(_ => part.name -> file)
-
-        }.runFold(Map.empty[String, Any])((map, tuple) => map + tuple)
+            jarStore.store(part.filename.getOrElse("uploadFile"), part.entity.dataBytes)(materializer, blockingIODispatcher)
+        }.runWith(Sink.headOption)
 
-
-        // when processing have finished create a response for the user
-        onSuccess(allPartsF) { allParts =>
-
-          logger.info("Recieved file")
-          complete {
+        onComplete(storedJarF) {
+          case Success(Some(jar)) =>
+            logger.info(s"Received file ${jar.path}")
             val hdfsConfig = XDContext.xdConfig.getConfig("hdfs")
-            val hdfsPath = writeJarToHdfs(hdfsConfig, path)
             val session = Session(sessionUUID, null)
             val user = "fileupload"
-            allParts.values.toSeq.foreach{
-              case file: File =>
-                file.delete
-                logger.info("Tmp file deleted")
-              case _ => logger.error("Problem deleting the temporary file.")
-            }
             //Send a broadcast message to all servers
-            mediator ! Publish(AddJarTopic, CommandEnvelope(AddJARCommand(hdfsPath, hdfsConfig = Option(hdfsConfig)), session, user))
-            hdfsPath
-          }
+            val addJar = AddJARCommand(jar.path, hdfsConfig = Option(hdfsConfig), digest = Option(jar.digest))
+            mediator ! Publish(AddJarTopic, CommandEnvelope(addJar, session, user))
+            complete(jar.path)
+          case Success(None) =>
+            complete(StatusCodes.BadRequest, "The fileChunk part is missing")
+          case Failure(cause) =>
+            logger.error("Problem uploading the file", cause)
+            complete(StatusCodes.ServerError, s"Problem uploading the file: ${cause.getMessage}")
         }
       }
 
@@ -150,6 +158,82 @@ class CrossdataHttpServer(config: Config, serverActor: ActorRef, implicit val sy
         }*/
       }
 
+    } ~ path("query" / JavaUUID / "stream") { requestId =>
+
+      post {
+        (entity(as[CommandEnvelope]) & optionalHeaderValueByType[Accept]()) {
+
+          case (rq @ CommandEnvelope(sqlCommand: SQLCommand, _, _), accept) =>
+            val columnar = accept.exists(acceptsColumnar)
+            val chunkedCommand = sqlCommand.copy(
+              resultChunking = sqlCommand.resultChunking orElse Some(streamedResultChunking),
+              columnarResults = columnar
+            )
+            val replies = Source.actorPublisher[ServerReply](
+              StreamedResultPublisher.props(serverActor, rq.copy(cmd = chunkedCommand))
+            )
+            complete {
+              if (columnar) HttpEntity.Chunked.fromData(ColumnarContentType, replies.statefulMapConcat(toColumnarFrames))
+              else HttpEntity.Chunked.fromData(NDJsonContentType, replies.statefulMapConcat(toNDJsonLines))
+            }
+
+          case (rq, _) =>
+            complete(StatusCodes.BadRequest, s"Only SQL commands can be streamed. Received: ${rq.cmd}")
+        }
+      }
+
+    } ~ path("batch" / JavaUUID) { requestId =>
+
+      post {
+        entity(as[CommandEnvelope]) {
+
+          case rq @ CommandEnvelope(batch: SQLBatchCommand, _, _) if !batch.streamResults =>
+            implicit val _ = Timeout(requestExecutionTimeout)
+            onComplete(serverActor ? rq) {
+              case Success(reply: ServerReply) => complete(reply)
+              case other => complete(StatusCodes.ServerError, s"Internal XD server error: $other")
+            }
+
+          case rq =>
+            complete(StatusCodes.BadRequest, s"Only non-streamed SQL batches can be run here. Received: ${rq.cmd}")
+        }
+      }
+
+    } ~ path("batch" / JavaUUID / "stream") { requestId =>
+
+      post { // A NDJSON line per statement result followed by the batch reply
+        entity(as[CommandEnvelope]) {
+
+          case rq @ CommandEnvelope(batch: SQLBatchCommand, _, _) =>
+            val streamedBatch = rq.copy(cmd = batch.copy(streamResults = true))
+            val finished = new AtomicBoolean(false)
+            val replies = Source.actorRef[ServerReply](batch.statements.size + 1, OverflowStrategy.fail)
+              .mapMaterializedValue(replyTo => serverActor.tell(streamedBatch, replyTo))
+              .mapConcat {
+                case statementReply: SQLBatchStatementReply => Some(statementReply) :: Nil
+                case lastReply =>
+                  finished.set(true)
+                  Some(lastReply) :: None :: Nil
+              }
+              .takeWhile(_.isDefined)
+              .watchTermination() { (_, termination) =>
+                // The batch is cancelled if the client goes away before its last reply, as streamed results are
+                termination onComplete { _ =>
+                  if (!finished.get) serverActor ! rq.copy(cmd = CancelQueryExecution(batch.requestId))
+                }
+              }
+            complete {
+              HttpEntity.Chunked.fromData(
+                NDJsonContentType,
+                replies map { reply => ByteString(s"${serialization.write(reply.get)}\n") }
+              )
+            }
+
+          case rq =>
+            complete(StatusCodes.BadRequest, s"Only SQL batches can be streamed. Received: ${rq.cmd}")
+        }
+      }
+
     } ~ path("sessions") {
 
       post {  //Session life proof is not a PUT to /session/idSession for security reasons.
@@ -159,26 +243,109 @@ class CrossdataHttpServer(config: Config, serverActor: ActorRef, implicit val sy
         }
       }
 
+    } ~ path("load") {
+
+      get { // Load of this server, it can be polled by external load balancers
+        implicit val _ = Timeout(LoadRequestTimeout)
+        onComplete((loadMonitor ? LoadMonitorActor.GetLocalLoad).mapTo[ServerLoad]) {
+          case Success(load) => complete(load)
+          case other => complete(StatusCodes.ServiceUnavailable, s"Load not available: $other")
+        }
+      }
+
+    } ~ path("load" / "cluster") {
+
+      get { // Latest load reported by each server
+        implicit val _ = Timeout(LoadRequestTimeout)
+        onComplete((loadMonitor ? ServerLoadsCommand()).mapTo[ServerLoadsReply]) {
+          case Success(ServerLoadsReply(_, loads)) => complete(loads)
+          case other => complete(StatusCodes.ServiceUnavailable, s"Loads not available: $other")
+        }
+      }
+
+    } ~ path("jobs") {
+
+      get { // Jobs run by the servers sharing the job registry
+        complete(jobRegistry.jobs.sortBy(_.registeredAt))
+      }
+
     } ~ complete("Welcome to Crossdata HTTP Server")
 
+  private val LoadRequestTimeout = 5 seconds
+
   //TODO: Remove this debugging tool when a minimal stable API has been reached
   /*val getRqEnt = extract[HttpRequest] { rqCtx =>
     rqCtx.request
   }*/
 
-  private def writeJarToHdfs(hdfsConfig: Config, jar: String): String = {
-    val user = hdfsConfig.getString("user")
-    val hdfsMaster = hdfsConfig.getString("namenode")
-    val destPath = s"/user/$user/externalJars/"
+  private val NDJsonContentType = ContentType(MediaType.applicationWithFixedCharset("x-ndjson", HttpCharsets.`UTF-8`))
+
+  // Translates the replies of a chunked query into NDJSON lines, the schema line is sent just once.
+  private def toNDJsonLines: () => ServerReply => List[ByteString] = () => {
 
-    val hdfsUtil = HdfsUtils(hdfsConfig)
+    import StreamedSQLResultSerializer._
+
+    // Only the first chunk carries the schema
+    var resultSchema: Option[StructType] = None
+
+    def withSchema(schema: Option[StructType])(lines: StructType => Seq[String]): List[ByteString] = {
+      val header = if (resultSchema.isDefined) Nil else schema.map(schemaLine).toList
+      resultSchema = resultSchema orElse schema
+      (header ++ lines(resultSchema.get)).map(line => ByteString(s"$line\n")).toList
+    }
+
+    {
+      case SQLResultChunk(_, _, schema, batch, _) =>
+        withSchema(schema)(schema => batch.rows(schema).map(rowLine(_, schema)))
+      case SQLResultEnd(_, schema, numberOfRows, profile) =>
+        withSchema(Some(schema))(_ => endLine(numberOfRows, profile) :: Nil)
+      case SQLReply(_, ErrorSQLResult(message, _)) =>
+        ByteString(s"${errorLine(message)}\n") :: Nil
+      case QueryCancelledReply(_) =>
+        ByteString(s"${errorLine("Query cancelled")}\n") :: Nil
+      case other =>
+        ByteString(s"${errorLine(s"Unexpected reply: $other")}\n") :: Nil
+    }
+  }
+
+  private val ColumnarContentType = ContentType(
+    MediaType.applicationBinary(ColumnarSQLResultSerializer.MediaSubType, MediaType.NotCompressible)
+  )
+
+  // Only explicit requests get the binary format, wildcards keep on getting NDJSON
+  private def acceptsColumnar(accept: Accept): Boolean = accept.mediaRanges exists {
+    case MediaRange.One(mediaType, qValue) => mediaType == ColumnarContentType.mediaType && qValue > 0
+    case _ => false
+  }
+
+  // Translates the replies of a chunked query into binary frames, the schema frame is sent just once.
+  private def toColumnarFrames: () => ServerReply => List[ByteString] = () => {
+
+    import ColumnarSQLResultSerializer._
+
+    // Only the first chunk carries the schema
+    var resultSchema: Option[StructType] = None
+
+    def withSchema(schema: Option[StructType])(frames: StructType => Seq[Array[Byte]]): List[ByteString] = {
+      val header = if (resultSchema.isDefined) Nil else schema.map(schemaFrame).toList
+      resultSchema = resultSchema orElse schema
+      (header ++ frames(resultSchema.get)).map(ByteString(_)).toList
+    }
 
-    //send to HDFS if not exists
-    val jarName = new File(jar).getName
-    if (!hdfsUtil.fileExist(s"$destPath/$jarName")) {
-      hdfsUtil.write(jar, destPath)
+    {
+      case SQLResultChunk(_, _, schema, ColumnarRowBatch(_, encoded), _) =>
+        withSchema(schema)(_ => batchFrame(encoded) :: Nil)
+      case SQLResultChunk(_, _, schema, batch, _) =>
+        withSchema(schema)(schema => batchFrame(ColumnarRowsCodec.encode(schema, batch.rows(schema))) :: Nil)
+      case SQLResultEnd(_, schema, numberOfRows, profile) =>
+        withSchema(Some(schema))(_ => endFrame(numberOfRows, profile) :: Nil)
+      case SQLReply(_, ErrorSQLResult(message, _)) =>
+        ByteString(errorFrame(message)) :: Nil
+      case QueryCancelledReply(_) =>
+        ByteString(errorFrame("Query cancelled")) :: Nil
+      case other =>
+        ByteString(errorFrame(s"Unexpected reply: $other")) :: Nil
     }
-    s"$hdfsMaster/$destPath/$jarName"
   }
 
 }
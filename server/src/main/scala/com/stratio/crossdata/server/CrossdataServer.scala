@@ -28,13 +28,17 @@ import akka.routing.{DefaultResizer, RoundRobinPool}
 import akka.stream.{ActorMaterializer, TLSClientAuth}
 import com.stratio.crossdata.common.security.KeyStoreUtils
 import com.stratio.crossdata.common.util.akka.keepalive.KeepAliveMaster
-import com.stratio.crossdata.server.actors.{ResourceManagerActor, ServerActor}
+import com.stratio.crossdata.server.actors.{JobRegistryCleanerActor, LoadMonitorActor, ResourceManagerActor, ServerActor}
+import com.stratio.crossdata.server.cache._
 import com.stratio.crossdata.server.config.ServerConfig
 import com.stratio.crossdata.server.discovery.{ServiceDiscoveryConfigHelper => SDCH, ServiceDiscoveryHelper => SDH}
+import com.stratio.crossdata.server.execution._
+import com.stratio.crossdata.server.results.SpillableResult
 import com.typesafe.config.{Config, ConfigFactory}
 import org.apache.log4j.Logger
 import org.apache.spark.sql.crossdata
-import org.apache.spark.sql.crossdata.session.{BasicSessionProvider, HazelcastSessionProvider}
+import org.apache.spark.sql.crossdata.catalog.CatalogChain
+import org.apache.spark.sql.crossdata.session.{BasicSessionProvider, HazelcastSessionProvider, XDSessionProvider}
 import org.apache.spark.{SparkConf, SparkContext}
 
 import scala.collection.JavaConversions._
@@ -48,6 +52,8 @@ class CrossdataServer(progrConfig: Option[Config] = None) extends ServiceDiscove
 
   private var system: Option[ActorSystem] = None
   private var bindingFuture: Option[Future[ServerBinding]] = None
+  private var jobExecutor: Option[FairJobExecutor] = None
+  private var resultCache: Option[QueryResultCache] = None
 
   override protected lazy val serverConfig = progrConfig map (_.withFallback(config)) getOrElse (config)
 
@@ -112,6 +118,9 @@ class CrossdataServer(progrConfig: Option[Config] = None) extends ServiceDiscove
 
       val xdCluster = Cluster(actorSystem)
 
+      // Results spilled by a previous run of the server can no longer be fetched
+      SpillableResult.deleteSpilled(resultSpillSettings.forServer(xdCluster.selfAddress).directory)
+
       sdHelper foreach { sd =>
         // Once the Cluster has been started and the cluster leadership is gotten,
         // this sever will update the list of cluster seeds and provider members periodically
@@ -123,13 +132,28 @@ class CrossdataServer(progrConfig: Option[Config] = None) extends ServiceDiscove
         }
       }
 
+      // Shared by all the server actors so the bounds and fairness apply to the whole server
+      val executor = new FairJobExecutor(
+        jobExecutorPoolSize, jobExecutorMaxQueuedJobs, maxQueuedJobsPerSession = jobExecutorMaxQueuedJobsPerSession
+      )
+      jobExecutor = Some(executor)
+      val admissionController = new AdmissionController(admissionLimits, schedulerPoolSettings)
+      val jobRegistry = newJobRegistry(sessionProvider)
+      actorSystem.actorOf(JobRegistryCleanerActor.props(xdCluster, jobRegistry), JobRegistryCleanerActor.Name)
+
+      resultCache = if (isResultCacheEnabled) Some(newResultCache(sessionProvider)) else None
+
       val resizer = DefaultResizer(lowerBound = minServerActorInstances, upperBound = maxServerActorInstances)
       val serverActor = actorSystem.actorOf(
         RoundRobinPool(minServerActorInstances, Some(resizer)).props(
           Props(
             classOf[ServerActor],
             xdCluster,
-            sessionProvider)),
+            sessionProvider,
+            executor,
+            admissionController,
+            jobRegistry,
+            resultCache)),
         actorName)
 
       val clientMonitor = actorSystem.actorOf(KeepAliveMaster.props(serverActor), "client-monitor")
@@ -139,9 +163,22 @@ class CrossdataServer(progrConfig: Option[Config] = None) extends ServiceDiscove
       ClusterClientReceptionist(actorSystem).registerService(serverActor)
       ClusterClientReceptionist(actorSystem).registerService(resourceManagerActor)
 
+      // Drivers ask any server for the cluster loads and then send their queries to the least loaded one
+      val entryPoint = actorSystem.actorOf(
+        LoadMonitorActor.entryPointProps(serverActor), LoadMonitorActor.entryPointName(xdCluster, actorName)
+      )
+      val loadMonitor = actorSystem.actorOf(
+        LoadMonitorActor.props(
+          xdCluster, executor, sparkContext, entryPoint.path.toStringWithoutAddress, loadPublishInterval
+        ),
+        LoadMonitorActor.Name
+      )
+      ClusterClientReceptionist(actorSystem).registerService(entryPoint)
+      ClusterClientReceptionist(actorSystem).registerService(loadMonitor)
+
       implicit val httpSystem = actorSystem
       implicit val materializer = ActorMaterializer()
-      val httpServerActor = new CrossdataHttpServer(finalConfig, serverActor, actorSystem)
+      val httpServerActor = new CrossdataHttpServer(finalConfig, serverActor, loadMonitor, jobRegistry, actorSystem)
 
       bindingFuture = Some {
 
@@ -167,6 +204,8 @@ class CrossdataServer(progrConfig: Option[Config] = None) extends ServiceDiscove
     */
   def stop(): Unit = {
 
+    jobExecutor.foreach(_.shutdown())
+    resultCache.foreach(cache => CatalogChain.removeChangeListener(cache.versions))
     sessionProviderOpt.foreach(_.close())
     sessionProviderOpt.foreach(_.sc.stop())
 
@@ -180,6 +219,33 @@ class CrossdataServer(progrConfig: Option[Config] = None) extends ServiceDiscove
     logger.info("Crossdata Server stopped")
   }
 
+  /**
+    * Results are shared by all the servers when the Hazelcast session provider is enabled.
+    */
+  private def newResultCache(sessionProvider: XDSessionProvider): QueryResultCache = {
+    val (store, versions) = sessionProvider match {
+      case hzProvider: HazelcastSessionProvider =>
+        val hInstance = hzProvider.hazelcastInstance
+        (
+          new HazelcastResultStore(hInstance, resultCacheMaxEntries, resultCacheTTL),
+          new RelationVersions(hInstance.getMap[String, String](HazelcastResultStore.VersionsMapId))
+        )
+      case _ =>
+        (new LocalResultStore(resultCacheMaxEntries, resultCacheTTL), new RelationVersions())
+    }
+    CatalogChain.addChangeListener(versions)
+    logger.info(s"Query result cache enabled: ${store.getClass.getSimpleName}, up to $resultCacheMaxEntries results")
+    new QueryResultCache(store, versions, resultCacheMaxRows)
+  }
+
+  /**
+    * Jobs are known by all the servers when the Hazelcast session provider is enabled.
+    */
+  private def newJobRegistry(sessionProvider: XDSessionProvider): JobRegistry = sessionProvider match {
+    case hzProvider: HazelcastSessionProvider => new HazelcastJobRegistry(hzProvider.hazelcastInstance)
+    case _ => new LocalJobRegistry
+  }
+
   private def getTlsContext: HttpsConnectionContext = {
     val sslContext: SSLContext = SSLContext.getInstance("TLS")
 
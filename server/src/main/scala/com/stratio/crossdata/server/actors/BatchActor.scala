@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.actors
+
+import java.util.UUID
+
+import akka.actor.{Actor, ActorRef, Props}
+import com.stratio.crossdata.common._
+import com.stratio.crossdata.common.result.{ErrorSQLResult, SQLResult}
+import com.stratio.crossdata.common.security.Session
+import com.stratio.crossdata.server.actors.JobActor.Commands.CancelJob
+import com.stratio.crossdata.server.actors.JobActor.Events.JobCompleted
+import org.apache.log4j.Logger
+
+object BatchActor {
+
+  def props(batch: SQLBatchCommand, session: Session, user: String, requester: ActorRef): Props =
+    Props(new BatchActor(batch, session, user, requester))
+
+}
+
+/**
+  * Runs the statements of a [[SQLBatchCommand]] one after another. Each statement is sent to the parent
+  * [[ServerActor]] as a regular [[SQLCommand]], so it goes through admission control, the result cache
+  * and the job registry just like a standalone query does, without any round trip to the client.
+  *
+  * Once finished, it sends a [[SQLBatchReply]] to the requester and a [[JobCompleted]] to its parent.
+  *
+  * @param requester Actor waiting for the [[SQLBatchStatementReply]]s, if streamed, and the [[SQLBatchReply]].
+  */
+class BatchActor(batch: SQLBatchCommand, session: Session, user: String, requester: ActorRef) extends Actor {
+
+  lazy val logger = Logger.getLogger(classOf[BatchActor])
+
+  private val statements = batch.statements.toIndexedSeq
+
+  override def preStart(): Unit = {
+    super.preStart()
+    context.become(running(0, submit(0), Vector.empty))
+  }
+
+  override def receive: Receive = PartialFunction.empty
+
+  /**
+    * @param index Position of the statement being run.
+    * @param current Statement being run.
+    * @param results Results of the statements already run.
+    */
+  private def running(index: Int, current: SQLCommand, results: Vector[SQLResult]): Receive = {
+
+    case SQLReply(current.requestId, result) =>
+      if (batch.streamResults) requester ! SQLBatchStatementReply(batch.requestId, index, result)
+      val newResults = results :+ result
+      val next = index + 1
+      if (next == statements.size || (result.hasError && batch.stopOnError)) {
+        if (result.hasError) logger.info(s"Batch ${batch.requestId} stopped at statement $index: ${statements(index)}")
+        finish(newResults)
+      } else context.become(running(next, submit(next), newResults))
+
+    case QueryCancelledReply(current.requestId) =>
+      requester ! QueryCancelledReply(batch.requestId)
+      context.parent ! JobCompleted
+      context.become(finished)
+
+    case CancelJob | _: CancelQueryExecution =>
+      logger.debug(s"Cancelling batch ${batch.requestId} at statement $index")
+      context.parent ! CommandEnvelope(CancelQueryExecution(current.queryId), Session(session.id, None), user)
+
+    case reply: ServerReply if reply.requestId == current.requestId => // E.g: A statement submitting a chunked result
+      self ! SQLReply(current.requestId, ErrorSQLResult(s"Unexpected reply within a batch: $reply"))
+  }
+
+  private def finished: Receive = {
+    case _ =>
+  }
+
+  private def submit(index: Int): SQLCommand = {
+    val statement = SQLCommand(statements(index), flattenResults = batch.flattenResults, timeout = batch.timeout)
+    context.parent ! CommandEnvelope(statement, Session(session.id, None), user)
+    statement
+  }
+
+  private def finish(results: Vector[SQLResult]): Unit = {
+    requester ! SQLBatchReply(batch.requestId, if (batch.streamResults) Seq.empty else results, results.size)
+    context.parent ! JobCompleted
+    context.become(finished)
+  }
+
+}
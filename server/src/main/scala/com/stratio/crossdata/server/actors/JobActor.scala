@@ -15,21 +15,32 @@
  */
 package com.stratio.crossdata.server.actors
 
-import java.util.concurrent.{CancellationException, Executor}
+import java.io.Closeable
+import java.util.UUID
+import java.util.concurrent.{CancellationException, Executor, RejectedExecutionException, Semaphore, TimeUnit, TimeoutException}
 
 import akka.actor.{Actor, ActorRef, Props}
 import com.stratio.common.utils.concurrent.Cancellable
-import com.stratio.crossdata.common.result.{ErrorSQLResult, SuccessfulSQLResult}
-import com.stratio.crossdata.common.{QueryCancelledReply, SQLCommand, SQLReply}
+import com.stratio.crossdata.common.result._
+import com.stratio.crossdata.common._
+import com.stratio.crossdata.common.serializers.ColumnarRowsCodec
+import com.stratio.crossdata.common.metrics.XDMetrics
+import com.stratio.crossdata.connector.NativeScan
 import com.stratio.crossdata.server.actors.JobActor.Commands.{CancelJob, GetJobStatus, StartJob}
 import com.stratio.crossdata.server.actors.JobActor.Events.{JobCompleted, JobFailed}
-import com.stratio.crossdata.server.actors.JobActor.{ProlificExecutor, Task}
+import com.stratio.crossdata.server.actors.JobActor.{ChunkCredits, Task}
+import com.stratio.crossdata.server.cache.{CachedResult, QueryResultCache}
+import com.stratio.crossdata.server.execution.AdmissionController
+import com.stratio.crossdata.server.results.{SpillSettings, SpillableResult}
 import org.apache.log4j.Logger
+import org.apache.spark.sql.{DataFrame, Row}
+import org.apache.spark.sql.crossdata.execution.{QueryProfiler, SchedulerPools}
 import org.apache.spark.sql.crossdata.{XDContext, XDDataFrame, XDSession}
+import org.apache.spark.sql.types.StructType
 
 import scala.concurrent.duration.FiniteDuration
 import scala.concurrent.{ExecutionContext, ExecutionException}
-import scala.util.{Failure, Success}
+import scala.util.{Failure, Success, Try}
 
 
 object JobActor {
@@ -66,13 +77,15 @@ object JobActor {
 
   case class Task(command: SQLCommand, requester: ActorRef, timeout: Option[FiniteDuration])
 
+  private case class StagesProgress(completedStages: Int, totalStages: Int, completedTasks: Int, totalTasks: Int)
+
 
   /**
     * The [[JobActor]] state is directly given by the running task which can be: None (Idle st) or a Running, Completed,
     * Cancelled or Failed task.
     * @param runningTask [[Cancellable]] wrapping a [[scala.concurrent.Future]] which acts as a Spark driver.
     */
-  case class State(runningTask: Option[Cancellable[SQLReply]]) {
+  case class State(runningTask: Option[Cancellable[ServerReply]]) {
     import JobStatus._
     def getStatus: JobStatus = runningTask map { task =>
       task.future.value map {
@@ -83,19 +96,75 @@ object JobActor {
     } getOrElse Idle
   }
 
-  def props(xdSession: XDSession, command: SQLCommand, requester: ActorRef, timeout: Option[FiniteDuration]): Props =
-    Props(new JobActor(xdSession, Task(command, requester, timeout)))
+  /**
+    * @param executor Executor running the query, it might reject it if the server is saturated.
+    * @param sessionId Session the query belongs to.
+    * @param resultCache Cache serving and keeping the results of read-only queries, if enabled.
+    * @param spillSettings How the results of asynchronous queries are kept.
+    * @param chunkCreditTimeout Time a chunked result waits for its requester to grant credits before failing.
+    * @param admission Permission to run the query, it is released once the job finishes.
+    */
+  def props(
+             xdSession: XDSession,
+             command: SQLCommand,
+             requester: ActorRef,
+             timeout: Option[FiniteDuration],
+             executor: Executor,
+             sessionId: UUID,
+             resultCache: Option[QueryResultCache],
+             spillSettings: SpillSettings,
+             chunkCreditTimeout: FiniteDuration,
+             admission: Option[AdmissionController#Admission] = None
+           ): Props =
+    Props(
+      new JobActor(
+        xdSession, Task(command, requester, timeout), executor, sessionId, resultCache, spillSettings, chunkCreditTimeout,
+        admission
+      )
+    )
 
   /**
     * Executor class which runs each command in a brand new thread each time
     */
   class ProlificExecutor extends Executor { override def execute(command: Runnable): Unit = new Thread(command) start }
 
+  /**
+    * Chunks the requester allows the job to send. The thread producing a chunked result blocks
+    * until there are credits available so a slow client doesn't make the server buffer the whole result.
+    * Requesters which stop granting credits, e.g: crashed clients, make the transmission fail after `timeout`
+    * so they don't hold a worker forever.
+    */
+  private[actors] class ChunkCredits(initialCredits: Int, timeout: FiniteDuration) {
+
+    private val available = new Semaphore(initialCredits)
+    @volatile private var cancelled = false
+
+    def grant(credits: Int): Unit = available.release(credits)
+
+    def acquire(): Unit = {
+      if (!available.tryAcquire(timeout.toMillis, TimeUnit.MILLISECONDS))
+        throw new TimeoutException(s"No chunk credits granted by the requester within $timeout")
+      if (cancelled) throw new CancellationException("Chunked result transmission cancelled")
+    }
+
+    def cancel(): Unit = {
+      cancelled = true
+      available.release() // Wakes up the producer if it is waiting for credits
+    }
+
+  }
+
 }
 
 class JobActor(
                 val xdContext: XDContext,
-                val task: Task
+                val task: Task,
+                val executor: Executor,
+                val sessionId: UUID,
+                val resultCache: Option[QueryResultCache],
+                val spillSettings: SpillSettings,
+                val chunkCreditTimeout: FiniteDuration,
+                val admission: Option[AdmissionController#Admission] = None
               ) extends Actor {
 
 
@@ -106,8 +175,40 @@ class JobActor(
 
   lazy val logger = Logger.getLogger(classOf[ServerActor])
 
+  // Asynchronous queries keep their whole result so it can be fetched by pages
+  private val chunkCredits: Option[ChunkCredits] = command.resultChunking filterNot (_ => command.asynchronous) map {
+    chunking => new ChunkCredits(chunking.initialCredits, chunkCreditTimeout)
+  }
+
+  // Spark jobs launched by this query are grouped so they can be cancelled along with it
+  private val jobGroupId: String = command.queryId.toString
+
+  @volatile private var cancelled = false
+
+  // Whether the executor has already started running the query
+  @volatile private var started = false
+
+  // Rows of the result produced so far, it is only updated by the thread running the query
+  @volatile private var producedRows = 0L
+
+  // Profile of the query, it is only recorded when requested by its command
+  private val profiler: Option[QueryProfiler] = if (command.profile) Some(new QueryProfiler) else None
+
+  // Result of an asynchronous query, it is released along with the job
+  private var retained: Option[SpillableResult] = None
+  private var released = false
+
   override def receive: Receive = receive(State(None))
 
+  override def postStop(): Unit = {
+    synchronized {
+      released = true
+      retained.foreach(_.release())
+    }
+    admission.foreach(_.release()) // The task might have never been launched
+    super.postStop()
+  }
+
 
   private def receive(st: State): Receive = {
 
@@ -118,60 +219,295 @@ class JobActor(
 
       import context.dispatcher
 
-      val runningTask = launchTask
-      runningTask.future onComplete {
-        case Success(queryRes) =>
-          requester ! queryRes
-          self ! JobCompleted
-        case Failure(_: CancellationException) => // Job cancellation
-          requester ! QueryCancelledReply(command.requestId)
+      Try(launchTask) match {
+
+        case Success(runningTask) =>
+          if (command.asynchronous) requester ! QuerySubmittedReply(command.requestId, command.queryId)
+
+          val latency = XDMetrics.queryLatency.time()
+          XDMetrics.activeJobs.inc()
+
+          runningTask.future onComplete { result =>
+            admission.foreach(_.release())
+            latency.stop()
+            XDMetrics.activeJobs.dec()
+            result match {
+              case Success(queryRes) =>
+                if (!command.asynchronous) requester ! queryRes
+                self ! JobCompleted
+              case Failure(_: CancellationException) => // Job cancellation
+                XDMetrics.cancelledQueries.inc()
+                if (!command.asynchronous) requester ! QueryCancelledReply(command.requestId)
+                self ! JobCompleted
+              case Failure(e: ExecutionException) => // Spark exception
+                XDMetrics.failedQueries.inc()
+                self ! JobFailed(e.getCause)
+              case Failure(reason) => // Job failure
+                XDMetrics.failedQueries.inc()
+                self ! JobFailed(reason)
+            }
+          }
+
+          val isRunning = runningTask.future.value.isEmpty
+
+          timeout.filter(_ => isRunning).foreach {
+            context.system.scheduler.scheduleOnce(_, self, CancelJob)
+          }
+
+          context.become(receive(st.copy(runningTask = Some(runningTask))))
+
+        case Failure(rejection: RejectedExecutionException) => // Saturated server
+          logger.warn(s"Query ${command.queryId} rejected: ${rejection.getMessage}")
+          admission.foreach(_.release())
+          requester ! SQLReply(command.requestId, RejectedSQLResult(rejection.getMessage))
           self ! JobCompleted
-        case Failure(e: ExecutionException) => self ! JobFailed(e.getCause) // Spark exception
-        case Failure(reason) => self ! JobFailed(reason) // Job failure
-      }
-
-
-      val isRunning = runningTask.future.value.isEmpty
 
-      timeout.filter(_ => isRunning).foreach {
-        context.system.scheduler.scheduleOnce(_, self, CancelJob)
+        case Failure(reason) =>
+          admission.foreach(_.release())
+          self ! JobFailed(reason)
       }
 
-      context.become(receive(st.copy(runningTask = Some(runningTask))))
-
     case CancelJob =>
-      st.runningTask.foreach{ tsk =>
-        logger.debug(s"Cancelling ${self.path}'s task ")
-        tsk.cancel()
-      }
+      cancelTask(st)
+
+    case cancellation: CancelQueryExecution =>
+      cancelTask(st)
+      // Synchronous requesters are notified once the task has been actually cancelled
+      if (command.asynchronous) sender ! QueryCancelledReply(cancellation.requestId)
+
+    case SQLResultChunkAck(_, credits) =>
+      chunkCredits.foreach(_.grant(credits))
 
     case GetJobStatus =>
       sender ! st.getStatus
 
+    case statusRequest: GetQueryStatus =>
+      sender ! QueryStatusReply(statusRequest.requestId, command.queryId, queryStatus(st))
+
+    case fetchRequest @ FetchQueryResult(_, offset, maxRows) =>
+      sender ! QueryResultPageReply(fetchRequest.requestId, command.queryId, resultPage(st, offset, maxRows))
+
     // Events
 
     case event @ JobFailed(e) if sender == self =>
       logger.debug(s"Task failed at ${self.path}")
       context.parent ! event
-      requester ! SQLReply(command.requestId, ErrorSQLResult(e.getMessage, Some(new Exception(e.getMessage))))
-      throw e //Let It Crash: It'll be managed by its supervisor
+      if (!command.asynchronous) {
+        requester ! SQLReply(command.requestId, ErrorSQLResult(e.getMessage, Some(new Exception(e.getMessage))))
+        throw e //Let It Crash: It'll be managed by its supervisor
+      } // Asynchronous jobs keep the failure so it can be polled by its requester
     case JobCompleted if sender == self =>
       logger.debug(s"Completed or cancelled ${self.path} task")
       context.parent ! JobCompleted
   }
 
-  private def launchTask: Cancellable[SQLReply] = {
+  private def launchTask: Cancellable[ServerReply] = {
 
-    implicit val _: ExecutionContext = ExecutionContext.fromExecutor(new ProlificExecutor)
+    implicit val _: ExecutionContext = ExecutionContext.fromExecutor(executor)
 
     Cancellable {
-      val df = xdContext.sql(command.sql)
-      val rows = if (command.flattenResults)
-        df.asInstanceOf[XDDataFrame].flattenedCollect() //TODO: Replace this cast by an implicit conversion
-      else df.collect()
+      val sparkContext = xdContext.sparkContext
+      // Job group properties are thread local and worker threads are reused, hence the group is always cleared
+      sparkContext.setJobGroup(jobGroupId, s"Crossdata query ${command.queryId}: ${command.sql}", interruptOnCancel = true)
+      try withSchedulerPool { profiling {
+        if (cancelled) throw new CancellationException(s"Query ${command.queryId} cancelled before being started")
+        started = true
+        val cached = for {
+          cache <- resultCache
+          key <- cache.key(xdContext, sessionId, command)
+        } yield (cache, key, cache.get(key))
+
+        cached match {
+          case Some((_, key, Some(CachedResult(schema, rows)))) =>
+            logger.debug(s"Serving query ${command.queryId} from the result cache ($key)")
+            profiler.foreach(_.executedBy(QueryProfile.Executions.Cache))
+            replyRows(schema, counting(rows.iterator))
+          case _ =>
+            val df = command.parameters map {
+              xdContext.prepare(command.sql).execute(_: _*)
+            } getOrElse xdContext.sql(command.sql)
+            val queryRows = resultRows(df)
+            val rows = cached.fold(queryRows) { case (cache, key, _) =>
+              cache.caching(key, df.schema, queryRows)
+            }
+            val reply = try replyRows(df.schema, counting(rows)) finally closeRows(queryRows)
+            resultCache.foreach(_.invalidateWritten(xdContext, command.sql))
+            reply
+        }
+      }} finally {
+        sparkContext.clearJobGroup()
+      }
+    }
+  }
+
+  private def cancelTask(st: State): Unit =
+    st.runningTask.foreach{ tsk =>
+      logger.debug(s"Cancelling ${self.path}'s task ")
+      cancelled = true
+      chunkCredits.foreach(_.cancel())
+      xdContext.sparkContext.cancelJobGroup(jobGroupId)
+      tsk.cancel()
+    }
+
+  // Runs `f` within the FAIR scheduler pool assigned to the query, if any
+  private def withSchedulerPool[T](f: => T): T =
+    admission.flatMap(_.schedulerPool) map { pool =>
+      SchedulerPools.withPool(xdContext.sparkContext, pool.name, pool.weight, pool.minShare)(f)
+    } getOrElse f
 
-      SQLReply(command.requestId, SuccessfulSQLResult(rows, df.schema))
+  // Runs `f` recording the profile of the query, if requested
+  private def profiling[T](f: => T): T = profiler.fold(f)(QueryProfiler.profiling(_)(f))
+
+  /**
+    * Profile of the query once its result has been produced. The size of the result is the one of the columnar
+    * encoding used by the server to send rows: measured when rows are sent encoded, computed without encoding them
+    * otherwise.
+    */
+  private def resultProfile(numberOfRows: Long): Option[QueryProfile] = profiler map { queryProfiler =>
+    queryProfiler.addRows(numberOfRows)
+    queryProfiler.profile
+  }
+
+  private def profileEncodedSize(schema: StructType, rows: Array[Row]): Unit =
+    profiler.foreach(_.addBytes(ColumnarRowsCodec.encodedSize(schema, rows)))
+
+  private def maxResultRows: Option[Long] = admission.flatMap(_.maxResultRows)
+
+  private def counting(rows: Iterator[Row]): Iterator[Row] = rows map { row =>
+    producedRows += 1
+    maxResultRows.filter(producedRows > _) foreach { max =>
+      throw new IllegalStateException(s"Query ${command.queryId} exceeded the limit of $max result rows")
     }
+    row
+  }
+
+  private def retain(result: SpillableResult): Unit = synchronized {
+    if (released) result.release() else retained = Some(result)
+  }
+
+  // Result replied by a synchronous job once it has been successfully completed
+  private def repliedResult(st: State): Option[SQLResult] =
+    st.runningTask.flatMap(_.future.value) collect { case Success(SQLReply(_, result)) => result }
+
+  private def queryStatus(st: State): QueryStatus = {
+
+    val StagesProgress(completedStages, totalStages, completedTasks, totalTasks) = stagesProgress
+
+    def withState(state: QueryState.State, error: Option[String] = None): QueryStatus =
+      QueryStatus(state, completedStages, totalStages, producedRows, error, completedTasks, totalTasks)
+
+    st.getStatus match {
+      case Idle => withState(QueryState.Pending)
+      case Running => withState(if (started) QueryState.Running else QueryState.Pending)
+      case Cancelled => withState(QueryState.Cancelled)
+      case Failed(reason: ExecutionException) if reason.getCause != null =>
+        withState(QueryState.Failed, Some(reason.getCause.getMessage))
+      case Failed(reason) => withState(QueryState.Failed, Some(reason.getMessage))
+      case Completed => repliedResult(st) match {
+        case Some(ErrorSQLResult(message, _)) => withState(QueryState.Failed, Some(message))
+        case _ => withState(QueryState.Completed)
+      }
+    }
+  }
+
+  /**
+    * Stages and tasks submitted by the Spark jobs of this query and how many of them have already finished. They are
+    * tracked by the Spark status listener, whose jobs are found by the job group of the query.
+    */
+  private def stagesProgress: StagesProgress = {
+    val statusTracker = xdContext.sparkContext.statusTracker
+    val stageIds = statusTracker.getJobIdsForGroup(jobGroupId).toSeq flatMap statusTracker.getJobInfo flatMap (_.stageIds)
+    // Skipped stages are never submitted, hence their info isn't available
+    val stages = stageIds flatMap (stageId => statusTracker.getStageInfo(stageId))
+    StagesProgress(
+      stages count (stage => stage.numTasks > 0 && stage.numCompletedTasks == stage.numTasks),
+      stageIds.length,
+      stages.map(_.numCompletedTasks).sum,
+      stages.map(_.numTasks).sum
+    )
+  }
+
+  private def resultPage(st: State, offset: Long, maxRows: Int): ResultPage =
+    (synchronized(retained), repliedResult(st)) match {
+      case (Some(result), _) =>
+        ResultPage(SuccessfulSQLResult(result.rows(offset, maxRows), result.schema), offset, result.numberOfRows)
+      case (None, Some(SuccessfulSQLResult(rows, schema, _))) =>
+        val from = math.min(offset, rows.length).toInt
+        val until = math.min(offset + maxRows, rows.length).toInt
+        ResultPage(SuccessfulSQLResult(rows.slice(from, until), schema), offset, rows.length)
+      case (None, Some(error)) =>
+        ResultPage(error, offset, 0)
+      case _ =>
+        val state = queryStatus(st).state
+        ResultPage(ErrorSQLResult(s"The result of query ${command.queryId} is not available, its state is $state"), offset, 0)
+    }
+
+  /**
+    * Non-flattened chunked and asynchronous results are pulled one partition, or one native batch of the chunk size,
+    * at a time so they are never completely held by the server.
+    */
+  private def resultRows(df: DataFrame): Iterator[Row] = {
+    // One row beyond the admission limit is enough to tell the query exceeds it, see `counting`
+    val admissionLimit = maxResultRows.filter(_ < Int.MaxValue).map(_.toInt + 1)
+    val limited = (admissionLimit ++ command.maxRows).reduceOption(_ min _).fold(df)(df.limit)
+    val xdDataFrame = limited.asInstanceOf[XDDataFrame] //TODO: Replace this cast by an implicit conversion
+    if (command.flattenResults) xdDataFrame.flattenedCollect().iterator
+    else if (chunkCredits.isDefined || command.asynchronous)
+      xdDataFrame.localIterator(command.resultChunking.map(_.chunkSize).getOrElse(NativeScan.DefaultFetchSize))
+    else xdDataFrame.collect().iterator
+  }
+
+  // Native rows fetched in batches keep their datasource resources until they are exhausted or closed
+  private def closeRows(rows: Iterator[Row]): Unit = rows match {
+    case closeable: Closeable => closeable.close()
+    case _ =>
+  }
+
+  private def replyRows(schema: StructType, rows: Iterator[Row]): ServerReply =
+    (command.resultChunking, chunkCredits) match {
+      case (Some(ResultChunking(chunkSize, _)), Some(credits)) =>
+        sendResultChunks(schema, rows, chunkSize, credits)
+      case _ if command.asynchronous =>
+        val result = SpillableResult(schema, rows, spillSettings)
+        logger.debug(s"Result of ${command.queryId} kept: ${result.numberOfRows} rows, spilled=${result.isSpilled}")
+        retain(result)
+        SQLResultEnd(command.requestId, schema, result.numberOfRows)
+      case _ =>
+        val resultSet = rows.toArray
+        profileEncodedSize(schema, resultSet)
+        SQLReply(command.requestId, SuccessfulSQLResult(resultSet, schema, resultProfile(resultSet.length)))
+    }
+
+  /**
+    * Sends the result to the requester, `chunkSize` rows at a time, as long as it grants credits to do so.
+    */
+  private def sendResultChunks(schema: StructType, rows: Iterator[Row], chunkSize: Int, credits: ChunkCredits): SQLResultEnd = {
+
+    var numberOfRows = 0L
+
+    rows.grouped(chunkSize).zipWithIndex foreach { case (chunk, chunkIndex) =>
+      try credits.acquire() catch {
+        case timeout: TimeoutException =>
+          // Spark jobs still computing partitions of the result are useless once its requester has gone away
+          xdContext.sparkContext.cancelJobGroup(jobGroupId)
+          throw timeout
+      }
+      val batch = profiler.fold(RowBatch(schema, chunk.toArray, command.columnarResults)) { queryProfiler =>
+        queryProfiler.timed(QueryProfile.Phases.Serialization)(RowBatch(schema, chunk.toArray, command.columnarResults)) match {
+          case columnar @ ColumnarRowBatch(_, bytes) =>
+            queryProfiler.addBytes(bytes.length)
+            columnar
+          case plain =>
+            profileEncodedSize(schema, plain.rows(schema))
+            plain
+        }
+      }
+      val chunkSchema = if (chunkIndex == 0) Some(schema) else None // The requester keeps the one of the first chunk
+      requester ! SQLResultChunk(command.requestId, chunkIndex, chunkSchema, batch, self)
+      numberOfRows += chunk.size
+    }
+
+    SQLResultEnd(command.requestId, schema, numberOfRows, resultProfile(numberOfRows))
   }
 
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.actors
+
+import akka.actor.{Actor, Props}
+import akka.cluster.Cluster
+import akka.cluster.ClusterEvent.MemberRemoved
+import com.stratio.crossdata.server.execution.JobRegistry
+import org.apache.log4j.Logger
+
+object JobRegistryCleanerActor {
+
+  val Name: String = "job-registry-cleaner"
+
+  def props(cluster: Cluster, jobRegistry: JobRegistry): Props = Props(new JobRegistryCleanerActor(cluster, jobRegistry))
+
+}
+
+/**
+  * Forgets the jobs of the servers leaving the cluster. There is a single one per server, instead of one per
+  * server actor, so the registry is only scanned once by each server.
+  */
+class JobRegistryCleanerActor(cluster: Cluster, jobRegistry: JobRegistry) extends Actor {
+
+  lazy val logger = Logger.getLogger(classOf[JobRegistryCleanerActor])
+
+  override def preStart(): Unit = {
+    super.preStart()
+    cluster.subscribe(self, classOf[MemberRemoved])
+  }
+
+  override def postStop(): Unit = {
+    cluster.unsubscribe(self)
+    super.postStop()
+  }
+
+  override def receive: Receive = {
+    case MemberRemoved(member, _) =>
+      logger.debug(s"Forgetting the jobs of ${member.address}")
+      jobRegistry.unregisterServer(member.address.toString)
+  }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.actors
+
+import java.lang.management.ManagementFactory
+
+import akka.actor.{Actor, ActorRef, Cancellable, Props}
+import akka.cluster.Cluster
+import akka.cluster.pubsub.DistributedPubSub
+import akka.cluster.pubsub.DistributedPubSubMediator.{Publish, Subscribe, SubscribeAck}
+import com.stratio.crossdata.common.{ServerLoadsCommand, ServerLoadsReply}
+import com.stratio.crossdata.common.load.ServerLoad
+import com.stratio.crossdata.server.execution.FairJobExecutor
+import org.apache.log4j.Logger
+import org.apache.spark.SparkContext
+
+import scala.concurrent.duration.FiniteDuration
+
+object LoadMonitorActor {
+
+  val LoadTopic: String = "serverLoads"
+
+  val Name: String = "load-monitor"
+
+  def props(
+             cluster: Cluster,
+             jobExecutor: FairJobExecutor,
+             sparkContext: SparkContext,
+             entryPath: String,
+             publishInterval: FiniteDuration
+           ): Props =
+    Props(new LoadMonitorActor(cluster, jobExecutor, sparkContext, entryPath, publishInterval))
+
+  /**
+    * Name of the actor forwarding commands to a single server, it is unique within the cluster.
+    */
+  def entryPointName(cluster: Cluster, serverActorName: String): String = {
+    val address = cluster.selfAddress
+    val serverId = Seq(address.host, address.port).flatten.mkString("-").replaceAll("[^A-Za-z0-9-]", "-")
+    s"$serverActorName-$serverId"
+  }
+
+  def entryPointProps(serverActor: ActorRef): Props = Props(new EntryPoint(serverActor))
+
+  // Messages
+  case object GetLocalLoad
+
+  private case object Tick
+
+  private class EntryPoint(serverActor: ActorRef) extends Actor {
+    override def receive: Receive = {
+      case message => serverActor forward message
+    }
+  }
+
+}
+
+/**
+  * Samples the load of this server, publishes it over the cluster and keeps the latest load reported by the rest of
+  * servers. Loads not renewed within three publishing periods are discarded as their servers might be gone.
+  */
+class LoadMonitorActor(
+                        cluster: Cluster,
+                        jobExecutor: FairJobExecutor,
+                        sparkContext: SparkContext,
+                        entryPath: String,
+                        publishInterval: FiniteDuration
+                      ) extends Actor {
+
+  import LoadMonitorActor._
+
+  lazy val logger = Logger.getLogger(classOf[LoadMonitorActor])
+
+  lazy val mediator = DistributedPubSub(context.system).mediator
+
+  private val serverId = cluster.selfAddress.toString
+
+  private val maxAgeMillis = 3 * publishInterval.toMillis
+
+  private var ticks: Option[Cancellable] = None
+
+  override def preStart(): Unit = {
+    super.preStart()
+    mediator ! Subscribe(LoadTopic, self)
+    import context.dispatcher
+    ticks = Some(context.system.scheduler.schedule(publishInterval, publishInterval, self, Tick))
+  }
+
+  override def postStop(): Unit = {
+    ticks.foreach(_.cancel())
+    super.postStop()
+  }
+
+  override def receive: Receive = monitoring(Map(serverId -> localLoad))
+
+  private def monitoring(loadsByServer: Map[String, ServerLoad]): Receive = {
+
+    case SubscribeAck(Subscribe(LoadTopic, None, _)) =>
+      logger.debug(s"Publishing the load of $serverId every $publishInterval")
+
+    case Tick =>
+      val now = System.currentTimeMillis()
+      mediator ! Publish(LoadTopic, localLoad)
+      context.become(monitoring(loadsByServer filterNot { case (_, load) => load.isStale(now, maxAgeMillis) }))
+
+    case load: ServerLoad =>
+      context.become(monitoring(loadsByServer + (load.serverId -> load)))
+
+    case GetLocalLoad =>
+      sender ! localLoad
+
+    case command: ServerLoadsCommand =>
+      val now = System.currentTimeMillis()
+      val loads = (loadsByServer + (serverId -> localLoad)).values.filterNot(_.isStale(now, maxAgeMillis))
+      sender ! ServerLoadsReply(command.requestId, loads.toSeq)
+  }
+
+  private def localLoad: ServerLoad = {
+    val jobs = jobExecutor.stats
+    val heap = ManagementFactory.getMemoryMXBean.getHeapMemoryUsage
+    ServerLoad(
+      serverId,
+      entryPath,
+      jobs.runningJobs,
+      jobs.queuedJobs,
+      heap.getUsed,
+      heap.getMax,
+      sparkContext.statusTracker.getActiveStageIds().length,
+      System.currentTimeMillis()
+    )
+  }
+
+}
@@ -37,7 +37,10 @@ object ResourceManagerActor {
   def props(cluster: Cluster, sessionProvider: XDSessionProvider): Props =
     Props(new ResourceManagerActor(cluster, sessionProvider))
 
-  case class State(jobsById: Map[JobId, ActorRef])
+  /**
+    * @param jarDigests Digests of the jars already added to this server, uploading them again doesn't download them.
+    */
+  case class State(jobsById: Map[JobId, ActorRef], jarDigests: Set[String] = Set.empty)
 
 }
 
@@ -79,10 +82,14 @@ class ResourceManagerActor(cluster: Cluster, sessionProvider: XDSessionProvider)
       logger.debug(s"Add JAR received ${addJarCommand.requestId}: ${addJarCommand.path}. Actor ${self.path.toStringWithoutAddress}")
       logger.debug(s"Session identifier $session")
       //TODO  Maybe include job controller if it is necessary as in sql command
-      if (addJarCommand.path.toLowerCase.startsWith("hdfs://")) {
+      if (addJarCommand.digest.exists(st.jarDigests)) {
+        logger.info(s"${addJarCommand.path} has already been added to this server, it won't be downloaded again")
+        sender ! SQLReply(addJarCommand.requestId, SuccessfulSQLResult(Array.empty, new StructType()))
+      } else if (addJarCommand.path.toLowerCase.startsWith("hdfs://")) {
         sessionProvider.session(id) match {
           case Success(xdSession) =>
             xdSession.addJar(addJarCommand.path)
+            context.become(ready(st.copy(jarDigests = st.jarDigests ++ addJarCommand.digest)))
           case Failure(error) =>
             logger.warn(s"Received message with an unknown sessionId $id", error)
             sender ! ErrorSQLResult(s"Unable to recover the session ${session.id}. Cause: ${error.getMessage}")
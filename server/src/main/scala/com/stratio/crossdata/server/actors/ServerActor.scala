@@ -22,14 +22,18 @@ import akka.actor._
 import akka.cluster.Cluster
 import akka.cluster.pubsub.DistributedPubSub
 import akka.cluster.pubsub.DistributedPubSubMediator.{Publish, Subscribe, SubscribeAck}
-import com.stratio.crossdata.common.result.{ErrorSQLResult, SuccessfulSQLResult}
+import com.stratio.crossdata.common.metrics.XDMetrics
+import com.stratio.crossdata.common.result.{ErrorSQLResult, RejectedSQLResult, SuccessfulSQLResult}
 import com.stratio.crossdata.common.security.Session
 import com.stratio.crossdata.common.util.akka.keepalive.KeepAliveMaster.{DoCheck, HeartbeatLost}
 import com.stratio.crossdata.common.{CommandEnvelope, SQLCommand, _}
 import com.stratio.crossdata.server.actors.JobActor.Commands.{CancelJob, StartJob}
 import com.stratio.crossdata.server.actors.JobActor.Events.{JobCompleted, JobFailed}
+import com.stratio.crossdata.server.cache.QueryResultCache
 import com.stratio.crossdata.server.config.ServerConfig
+import com.stratio.crossdata.server.execution.{AdmissionController, FairJobExecutor, JobRegistry, RegisteredJob}
 import org.apache.log4j.Logger
+import org.apache.spark.sql.crossdata.execution.SchedulerPools
 import org.apache.spark.sql.crossdata.session.{HazelcastSessionProvider, XDSessionProvider}
 import org.apache.spark.sql.types.StructType
 
@@ -41,8 +45,15 @@ import scala.util.{Failure, Success}
 object ServerActor {
   val ManagementTopic: String = "jobsManagement"
 
-  def props(cluster: Cluster, sessionProvider: XDSessionProvider): Props =
-    Props(new ServerActor(cluster, sessionProvider))
+  def props(
+             cluster: Cluster,
+             sessionProvider: XDSessionProvider,
+             jobExecutor: FairJobExecutor,
+             admissionController: AdmissionController,
+             jobRegistry: JobRegistry,
+             resultCache: Option[QueryResultCache]
+           ): Props =
+    Props(new ServerActor(cluster, sessionProvider, jobExecutor, admissionController, jobRegistry, resultCache))
 
   case class JobId(sessionId: UUID, queryId: UUID)
 
@@ -56,13 +67,33 @@ object ServerActor {
 
   }
 
-  private case class State(jobsById: Map[JobId, ActorRef])
+  /**
+    * @param jobsById Running and recently completed jobs.
+    * @param asynchronousJobs Jobs whose result is kept until it expires, see [[ServerConfig.asynchronousJobTTL]].
+    */
+  private case class State(jobsById: Map[JobId, ActorRef], asynchronousJobs: Set[ActorRef] = Set.empty)
+
+  // Query targeted by a control command
+  private object TargetQuery {
+    def unapply(command: Command): Option[UUID] = command match {
+      case CancelQueryExecution(queryId) => Some(queryId)
+      case GetQueryStatus(queryId) => Some(queryId)
+      case FetchQueryResult(queryId, _, _) => Some(queryId)
+      case _ => None
+    }
+  }
 
 }
 
 // TODO it should only accept messages from known sessions
-class ServerActor(cluster: Cluster, sessionProvider: XDSessionProvider)
-  extends Actor with ServerConfig {
+class ServerActor(
+                   cluster: Cluster,
+                   sessionProvider: XDSessionProvider,
+                   jobExecutor: FairJobExecutor,
+                   admissionController: AdmissionController,
+                   jobRegistry: JobRegistry,
+                   resultCache: Option[QueryResultCache]
+                 ) extends Actor with ServerConfig {
 
   import ServerActor.ManagementMessages._
   import ServerActor._
@@ -105,15 +136,46 @@ class ServerActor(cluster: Cluster, sessionProvider: XDSessionProvider)
     */
 
   private def executeAccepted(cmd: CommandEnvelope, requester: ActorRef)(st: State): Unit = cmd match {
-    case CommandEnvelope(sqlCommand@SQLCommand(query, queryId, withColnames, timeout), session@Session(id, _), _) =>
-      logger.debug(s"Query received $queryId: $query. Actor ${self.path.toStringWithoutAddress}")
+    case CommandEnvelope(sqlCommand: SQLCommand, session@Session(id, _), user) =>
+      logger.debug(s"Query received ${sqlCommand.queryId}: ${sqlCommand.sql}. Actor ${self.path.toStringWithoutAddress}")
       logger.debug(s"Session identifier $session")
-      sessionProvider.session(id) match {
-        case Success(xdSession) =>
-          val jobActor = context.actorOf(JobActor.props(xdSession, sqlCommand, sender(), timeout))
+      sessionProvider.session(id) map { xdSession =>
+        xdSession -> admissionController.admit(user, id)
+      } match {
+        case Success((_, Left(reason))) =>
+          sender ! SQLReply(sqlCommand.requestId, RejectedSQLResult(reason))
+
+        case Success((xdSession, Right(admission))) =>
+          val jobActor = context.actorOf(
+            JobActor.props(
+              xdSession,
+              sqlCommand,
+              sender(),
+              sqlCommand.timeout,
+              jobExecutor.executorFor(id),
+              id,
+              resultCache,
+              resultSpillSettings.forServer(cluster.selfAddress),
+              chunkCreditTimeout,
+              Some(admission)
+            )
+          )
           jobActor ! StartJob
+          jobRegistry.register(
+            RegisteredJob(
+              JobId(id, sqlCommand.queryId),
+              user,
+              jobActor.path.toStringWithAddress(cluster.selfAddress),
+              cluster.selfAddress.toString,
+              sqlCommand.asynchronous,
+              System.currentTimeMillis()
+            )
+          )
           context.become(
-            ready(st.copy(jobsById = st.jobsById + (JobId(id, sqlCommand.queryId) -> jobActor)))
+            ready(st.copy(
+              jobsById = st.jobsById + (JobId(id, sqlCommand.queryId) -> jobActor),
+              asynchronousJobs = if (sqlCommand.asynchronous) st.asynchronousJobs + jobActor else st.asynchronousJobs
+            ))
           )
 
         case Failure(error) =>
@@ -125,14 +187,41 @@ class ServerActor(cluster: Cluster, sessionProvider: XDSessionProvider)
       }
 
 
+    case CommandEnvelope(batch: SQLBatchCommand, session@Session(id, _), user) =>
+      logger.debug(s"Batch received ${batch.requestId}: ${batch.statements.size} statements")
+      sessionProvider.session(id) match {
+        case Success(_) =>
+          // Statements are sent back to this actor, so each one is run like any other query
+          val batchActor = context.actorOf(BatchActor.props(batch, session, user, sender()))
+          // Registered as any other job so it can be cancelled through any server
+          jobRegistry.register(
+            RegisteredJob(
+              JobId(id, batch.requestId),
+              user,
+              batchActor.path.toStringWithAddress(cluster.selfAddress),
+              cluster.selfAddress.toString,
+              asynchronous = false,
+              System.currentTimeMillis()
+            )
+          )
+          context.become(ready(st.copy(jobsById = st.jobsById + (JobId(id, batch.requestId) -> batchActor))))
+
+        case Failure(error) =>
+          logger.warn(s"Received message with an unknown sessionId $id", error)
+          sender ! SQLReply(
+            batch.requestId,
+            ErrorSQLResult(s"Unable to recover the session ${session.id}. Cause: ${error.getMessage}")
+          )
+      }
+
     case CommandEnvelope(addAppCommand@AddAppCommand(path, alias, clss, _), session@Session(id, requesterOpt), _) =>
       if ( sessionProvider.session(id).map(_.addApp(path, clss, alias)).getOrElse(None).isDefined)// TODO improve addJar sessionManagement
         sender ! SQLReply(addAppCommand.requestId, SuccessfulSQLResult(Array.empty, new StructType()))
       else
         sender ! SQLReply(addAppCommand.requestId, ErrorSQLResult("App can't be stored in the catalog"))
 
-    case CommandEnvelope(cc@CancelQueryExecution(queryId), session@Session(id, _), _) =>
-      st.jobsById(JobId(id, queryId)) ! CancelJob
+    case CommandEnvelope(cc@TargetQuery(queryId), session@Session(id, _), _) =>
+      st.jobsById(JobId(id, queryId)).tell(cc, requester)
   }
 
 
@@ -145,7 +234,7 @@ class ServerActor(cluster: Cluster, sessionProvider: XDSessionProvider)
     case DelegateCommand(cmd, broadcaster) if broadcaster != self =>
       cmd match {
         // Inner pattern matching for future delegated command validations
-        case sc@CommandEnvelope(CancelQueryExecution(queryId), Session(sid, requesterOpt), _) =>
+        case sc@CommandEnvelope(TargetQuery(queryId), Session(sid, requesterOpt), _) =>
           val requester = actualRequester(requesterOpt)
           st.jobsById.get(JobId(sid, queryId)) foreach (_ => executeAccepted(sc, requester)(st))
         /* If it doesn't validate it won't be re-broadcast since the source server already distributed it to all
@@ -159,6 +248,9 @@ class ServerActor(cluster: Cluster, sessionProvider: XDSessionProvider)
     case sc@CommandEnvelope(_: SQLCommand, session, _) =>
       executeAccepted(sc, actualRequester(session.clientRef))(st)
 
+    case sc@CommandEnvelope(_: SQLBatchCommand, session, _) =>
+      executeAccepted(sc, actualRequester(session.clientRef))(st)
+
     /*case sc@CommandEnvelope(_: AddJARCommand, _, _) => //TODO Adapt Requester
       executeAccepted(sc)(st)
 
@@ -166,15 +258,26 @@ class ServerActor(cluster: Cluster, sessionProvider: XDSessionProvider)
       executeAccepted(sc)(st)*/
 
 
-    case sc@CommandEnvelope(cc: ControlCommand, session@Session(id, requesterOpt), _) =>
-        val requester = actualRequester(requesterOpt)
-      st.jobsById.get(JobId(id, cc.requestId)) map { _ =>
+    case sc@CommandEnvelope(cc@TargetQuery(queryId), session@Session(id, requesterOpt), _) =>
+      val requester = actualRequester(requesterOpt)
+      val jobId = JobId(id, queryId)
+      if (st.jobsById contains jobId) {
         executeAccepted(sc, requester)(st) // Command validated to be executed by this server.
-      } getOrElse {
-        // If it can't run here it should be executed somewhere else
-        mediator ! Publish(ManagementTopic, DelegateCommand(sc.copy(session = Session(id, Some(requester))), self))
+      } else jobRegistry.lookup(jobId) match {
+        case Some(job) => // Sent straight to the actor running the job, wherever it is
+          context.actorSelection(job.jobActorPath).tell(cc, requester)
+        case None if jobRegistry.isClusterWide =>
+          requester ! SQLReply(cc.requestId, ErrorSQLResult(s"Unknown query $queryId"))
+        case None =>
+          // The job might be run by a server this one doesn't know the jobs of
+          mediator ! Publish(ManagementTopic, DelegateCommand(sc.copy(session = Session(id, Some(requester))), self))
       }
 
+    case sc@CommandEnvelope(_: ControlCommand, Session(id, requesterOpt), _) =>
+      // If it can't run here it should be executed somewhere else
+      val requester = actualRequester(requesterOpt)
+      mediator ! Publish(ManagementTopic, DelegateCommand(sc.copy(session = Session(id, Some(requester))), self))
+
     case sc@CommandEnvelope(_: ClusterStateCommand, session, _) => {
       val members = if (sessionProvider.isInstanceOf[HazelcastSessionProvider]) {
         sessionProvider.asInstanceOf[HazelcastSessionProvider].getClusterState.getMembers map { m =>
@@ -191,6 +294,7 @@ class ServerActor(cluster: Cluster, sessionProvider: XDSessionProvider)
       val open = sessionProvider.newSession(session.id, userId) match {
         case Success(_) =>
           logger.info(s"new session with sessionID=${session.id} has been created")
+          XDMetrics.activeSessions.inc()
           true
         case Failure(error) =>
           logger.error(s"failure while creating the session with sessionID=${session.id}")
@@ -213,13 +317,16 @@ class ServerActor(cluster: Cluster, sessionProvider: XDSessionProvider)
 
     case JobFailed(e) =>
       logger.error(e.getMessage, e)
-      sentenceToDeath(sender())
+      forgetFinished(sender())(st)
+      sentenceToDeath(sender())(st)
 
     case JobCompleted =>
-      sentenceToDeath(sender())
+      forgetFinished(sender())(st)
+      sentenceToDeath(sender())(st)
 
     case FinishJob(who) =>
-      context.become(ready(st.copy(jobsById = st.jobsById.filterNot(_._2 == who))))
+      st.jobsById collect { case (jobId, `who`) => jobId } foreach jobRegistry.unregister
+      context.become(ready(st.copy(jobsById = st.jobsById.filterNot(_._2 == who), asynchronousJobs = st.asynchronousJobs - who)))
       context.children.find(_ == who).foreach(gracefullyKill)
   }
 
@@ -240,19 +347,34 @@ class ServerActor(cluster: Cluster, sessionProvider: XDSessionProvider)
 
   private def closeSessionTerminatingJobs(sessionId: UUID)(st: State): Unit = {
     val newjobsmap = st.jobsById filter {
-      case (JobId(`sessionId`, _), job) =>
+      case (jobId @ JobId(`sessionId`, _), job) =>
         gracefullyKill(job) // WARNING! Side-effect within filter function
+        jobRegistry.unregister(jobId)
         false
       case _ => true
     }
-    context.become(ready(st.copy(jobsById = newjobsmap)))
-    sessionProvider.closeSession(sessionId)
+    context.become(ready(st.copy(jobsById = newjobsmap, asynchronousJobs = st.asynchronousJobs filter newjobsmap.values.toSet)))
+    // Jobs of the session have just been cancelled, so its scheduler pool is no longer needed
+    admissionController.sessionPool(sessionId) foreach (SchedulerPools.removePool(sessionProvider.sc, _))
+    // Sessions might be closed twice: by their drivers and once their heartbeats are lost
+    if (sessionProvider.closeSession(sessionId).isSuccess) XDMetrics.activeSessions.dec()
   }
 
-  private def sentenceToDeath(victim: ActorRef): Unit = completedJobTTL match {
-    case finite: FiniteDuration =>
-      context.system.scheduler.scheduleOnce(finite, self, FinishJob(victim))(context.dispatcher)
-    case _ => // Reprieve by infinite limit
+  /**
+    * Finished synchronous jobs are unregistered right away as no control command targets them anymore, whereas
+    * asynchronous ones stay registered until they expire so their results can be fetched from any server.
+    */
+  private def forgetFinished(job: ActorRef)(st: State): Unit =
+    if (!st.asynchronousJobs.contains(job))
+      st.jobsById collect { case (jobId, `job`) => jobId } foreach jobRegistry.unregister
+
+  private def sentenceToDeath(victim: ActorRef)(st: State): Unit = {
+    val ttl = if (st.asynchronousJobs contains victim) asynchronousJobTTL else completedJobTTL
+    ttl match {
+      case finite: FiniteDuration =>
+        context.system.scheduler.scheduleOnce(finite, self, FinishJob(victim))(context.dispatcher)
+      case _ => // Reprieve by infinite limit
+    }
   }
 
   def gracefullyKill(victim: ActorRef): Unit = {
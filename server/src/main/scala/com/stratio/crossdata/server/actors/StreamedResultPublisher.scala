@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.actors
+
+import akka.actor.{ActorRef, Props}
+import akka.stream.actor.ActorPublisher
+import akka.stream.actor.ActorPublisherMessage.{Cancel, Request}
+import com.stratio.crossdata.common._
+import com.stratio.crossdata.server.actors.JobActor.Commands.CancelJob
+import org.apache.log4j.Logger
+
+import scala.collection.immutable.Queue
+
+object StreamedResultPublisher {
+
+  def props(serverActor: ActorRef, sqlEnvelope: CommandEnvelope): Props =
+    Props(new StreamedResultPublisher(serverActor, sqlEnvelope))
+
+}
+
+/**
+  * Reactive Streams publisher of the replies to a chunked [[SQLCommand]]: A sequence of [[SQLResultChunk]]s finished
+  * by either a [[SQLResultEnd]] or any other [[ServerReply]] (e.g: errors or cancellations).
+  *
+  * Chunks are only acknowledged once they have been pushed downstream so the job producing them
+  * is slowed down by its consumer (e.g: a TCP connection).
+  *
+  * @param serverActor Actor (or router) accepting [[CommandEnvelope]]s.
+  * @param sqlEnvelope Envelope containing a [[SQLCommand]] with [[ResultChunking]].
+  */
+class StreamedResultPublisher(serverActor: ActorRef, sqlEnvelope: CommandEnvelope) extends ActorPublisher[ServerReply] {
+
+  lazy val logger = Logger.getLogger(classOf[StreamedResultPublisher])
+
+  private val sqlCommand = sqlEnvelope.cmd.asInstanceOf[SQLCommand]
+
+  require(sqlCommand.resultChunking.isDefined, "Only chunked results can be streamed")
+
+  override def preStart(): Unit = {
+    super.preStart()
+    serverActor ! sqlEnvelope
+  }
+
+  override def receive: Receive = streaming(Queue.empty, None)
+
+  /**
+    * @param pending Replies waiting for downstream demand.
+    * @param producer Job producing the result (known since the first chunk is received).
+    */
+  private def streaming(pending: Queue[ServerReply], producer: Option[ActorRef]): Receive = {
+
+    case chunk: SQLResultChunk =>
+      deliver(pending enqueue chunk, Some(chunk.producer))
+
+    case reply: ServerReply =>
+      deliver(pending enqueue reply, producer)
+
+    case Request(_) =>
+      deliver(pending, producer)
+
+    case Cancel =>
+      logger.debug(s"Streamed result consumer for query ${sqlCommand.queryId} has cancelled the stream")
+      producer map (_ ! CancelJob) getOrElse {
+        serverActor ! sqlEnvelope.copy(cmd = CancelQueryExecution(sqlCommand.queryId))
+      }
+      context.stop(self)
+  }
+
+  private def deliver(pending: Queue[ServerReply], producer: Option[ActorRef]): Unit = {
+
+    val (toSend, remaining) = pending.splitAt(math.min(totalDemand, Int.MaxValue).toInt)
+
+    toSend foreach { reply =>
+      onNext(reply)
+      reply match {
+        case SQLResultChunk(requestId, _, _, _, chunkProducer) => chunkProducer ! SQLResultChunkAck(requestId, 1)
+        case _ =>
+      }
+    }
+
+    val finished = toSend exists {
+      case _: SQLResultChunk => false
+      case _ => true
+    }
+
+    if (finished) onCompleteThenStop()
+    else context.become(streaming(remaining, producer))
+  }
+
+}
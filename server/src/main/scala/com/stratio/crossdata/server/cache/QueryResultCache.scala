@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.cache
+
+import java.security.MessageDigest
+import java.util.UUID
+import java.util.concurrent.{ConcurrentHashMap, ConcurrentMap}
+
+import com.stratio.crossdata.common.SQLCommand
+import org.apache.log4j.Logger
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.crossdata.catalog.{CatalogChangeListener, TableIdentifierNormalized}
+import org.apache.spark.sql.crossdata.{QueryReferences, XDContext}
+import org.apache.spark.sql.types.StructType
+
+import scala.collection.mutable
+
+/**
+  * Version tokens of the relations known by Crossdata. A relation gets a new token each time it is modified through
+  * a [[org.apache.spark.sql.crossdata.catalog.CatalogChain]], so cache keys built upon the previous token are no
+  * longer reachable. Tokens are kept by table name, regardless of its database, so a change never goes unnoticed.
+  *
+  * @param tokens Map holding the tokens, a Hazelcast map shares them with the rest of the servers.
+  */
+class RelationVersions(tokens: ConcurrentMap[String, String] = new ConcurrentHashMap[String, String]())
+  extends CatalogChangeListener {
+
+  import RelationVersions._
+
+  def version(relation: TableIdentifierNormalized): String = tokenOf(relation.table)
+
+  /**
+    * Token changed whenever all the relations are dropped at once.
+    */
+  def epoch: String = tokenOf(EpochKey)
+
+  override def relationChanged(relation: TableIdentifierNormalized): Unit = renew(relation.table)
+
+  override def allRelationsChanged(): Unit = renew(EpochKey)
+
+  private def tokenOf(key: String): String = Option(tokens.get(key)) getOrElse {
+    tokens.putIfAbsent(key, newToken)
+    tokens.get(key)
+  }
+
+  private def renew(key: String): Unit = tokens.put(key, newToken)
+
+  private def newToken: String = UUID.randomUUID().toString
+
+}
+
+object RelationVersions {
+  private val EpochKey = "*"
+}
+
+/**
+  * Results of read-only queries, keyed by their normalized SQL text, the session settings and the versions of the
+  * relations they read. Results having more than `maxRows` rows are not cached.
+  */
+class QueryResultCache(store: ResultStore, val versions: RelationVersions, maxRows: Int) {
+
+  lazy val logger = Logger.getLogger(classOf[QueryResultCache])
+
+  /**
+    * @return The key the result of `command` is cached under or None if it cannot be cached.
+    */
+  def key(xdContext: XDContext, sessionId: UUID, command: SQLCommand): Option[String] =
+    QueryReferences(xdContext, command.sql) map { references =>
+
+      val settings = xdContext.getAllConfs.toSeq.sorted map { case (k, v) => s"$k=$v" }
+      val parameters = command.parameters.toSeq.flatten map { parameter =>
+        Option(parameter).map(value => s"${value.getClass.getName}:$value").getOrElse("null")
+      }
+      // Temporary relations are only visible within their session
+      val scope = if (references.temporary) sessionId.toString else ""
+      val relationVersions = references.relations.toSeq.sortBy(_.unquotedString) map { relation =>
+        s"${relation.unquotedString}@${versions.version(relation)}"
+      }
+
+      digest(
+        Seq(
+          QueryResultCache.normalizeSql(command.sql),
+          command.flattenResults.toString,
+          command.maxRows.fold("")(_.toString),
+          scope,
+          versions.epoch
+        ) ++
+          settings ++ parameters ++ relationVersions
+      )
+    }
+
+  def get(key: String): Option[CachedResult] = store.get(key)
+
+  /**
+    * @return An iterator over `rows` which caches them once they have all been consumed.
+    */
+  def caching(key: String, schema: StructType, rows: Iterator[Row]): Iterator[Row] = new Iterator[Row] {
+
+    private val captured = mutable.ArrayBuffer.empty[Row]
+    private var tooLarge = false
+    private var stored = false
+
+    override def hasNext: Boolean = {
+      val more = rows.hasNext
+      if (!more && !tooLarge && !stored) {
+        stored = true
+        store.put(key, CachedResult(schema, captured.toArray))
+        captured.clear()
+      }
+      more
+    }
+
+    override def next(): Row = {
+      val row = rows.next()
+      if (!tooLarge) {
+        if (captured.size < maxRows) captured += row
+        else {
+          logger.debug(s"Result of $key is larger than $maxRows rows, it won't be cached")
+          tooLarge = true
+          captured.clear()
+        }
+      }
+      row
+    }
+
+  }
+
+  /**
+    * Renews the versions of the relations modified by `sql`, if any.
+    */
+  def invalidateWritten(xdContext: XDContext, sql: String): Unit =
+    QueryReferences.written(xdContext, sql) foreach versions.relationChanged
+
+  def clear(): Unit = store.clear()
+
+  private def digest(parts: Seq[String]): String = {
+    val md = MessageDigest.getInstance("SHA-256")
+    parts foreach { part =>
+      md.update(part.getBytes("UTF-8"))
+      md.update(0: Byte)
+    }
+    md.digest().map("%02x" format _).mkString
+  }
+
+}
+
+object QueryResultCache {
+
+  /**
+    * Trims the statement and collapses whitespace runs out of quoted literals and identifiers.
+    */
+  def normalizeSql(sql: String): String = {
+    val normalized = new StringBuilder
+    var quote: Option[Char] = None
+    var pendingSpace = false
+
+    sql.trim foreach { c =>
+      quote match {
+        case Some(q) =>
+          normalized += c
+          if (c == q) quote = None
+        case None if c.isWhitespace =>
+          pendingSpace = true
+        case None =>
+          if (pendingSpace) normalized += ' '
+          pendingSpace = false
+          normalized += c
+          if (c == '\'' || c == '"' || c == '`') quote = Some(c)
+      }
+    }
+
+    normalized.toString
+  }
+
+}
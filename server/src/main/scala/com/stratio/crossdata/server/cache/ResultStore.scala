@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.cache
+
+import java.util.concurrent.TimeUnit
+import java.util.{LinkedHashMap => JLinkedHashMap, Map => JMap}
+
+import com.hazelcast.config.{EvictionPolicy, MapConfig, MaxSizeConfig}
+import com.hazelcast.core.{HazelcastInstance, IMap}
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.types.StructType
+
+import scala.concurrent.duration.FiniteDuration
+
+/**
+  * Result of a query kept by a [[ResultStore]].
+  */
+case class CachedResult(schema: StructType, rows: Array[Row])
+
+/**
+  * Keeps up to `maxEntries` results, each of them during `ttl`.
+  */
+trait ResultStore {
+
+  def maxEntries: Int
+
+  def ttl: FiniteDuration
+
+  def get(key: String): Option[CachedResult]
+
+  def put(key: String, result: CachedResult): Unit
+
+  def clear(): Unit
+
+}
+
+/**
+  * [[ResultStore]] local to this server, evicting the least recently used results.
+  */
+class LocalResultStore(val maxEntries: Int, val ttl: FiniteDuration) extends ResultStore {
+
+  private case class Entry(result: CachedResult, expiresAt: Long)
+
+  private val entries = new JLinkedHashMap[String, Entry](16, 0.75f, true) {
+    override def removeEldestEntry(eldest: JMap.Entry[String, Entry]): Boolean = size() > maxEntries
+  }
+
+  override def get(key: String): Option[CachedResult] = entries.synchronized {
+    Option(entries.get(key)) flatMap { entry =>
+      if (entry.expiresAt > System.currentTimeMillis()) Some(entry.result)
+      else {
+        entries.remove(key)
+        None
+      }
+    }
+  }
+
+  override def put(key: String, result: CachedResult): Unit = entries.synchronized {
+    entries.put(key, Entry(result, System.currentTimeMillis() + ttl.toMillis))
+  }
+
+  override def clear(): Unit = entries.synchronized(entries.clear())
+
+}
+
+/**
+  * [[ResultStore]] shared by all the servers within the Hazelcast cluster.
+  */
+class HazelcastResultStore(
+                            hazelcastInstance: HazelcastInstance,
+                            val maxEntries: Int,
+                            val ttl: FiniteDuration,
+                            mapName: String = HazelcastResultStore.ResultsMapId
+                          ) extends ResultStore {
+
+  private val results: IMap[String, CachedResult] = {
+    hazelcastInstance.getConfig.addMapConfig {
+      new MapConfig(mapName)
+        .setEvictionPolicy(EvictionPolicy.LRU)
+        .setMaxSizeConfig(new MaxSizeConfig(maxEntries, MaxSizeConfig.MaxSizePolicy.PER_NODE))
+    }
+    hazelcastInstance.getMap[String, CachedResult](mapName)
+  }
+
+  override def get(key: String): Option[CachedResult] = Option(results.get(key))
+
+  override def put(key: String, result: CachedResult): Unit =
+    results.set(key, result, ttl.toMillis, TimeUnit.MILLISECONDS)
+
+  override def clear(): Unit = results.clear()
+
+}
+
+object HazelcastResultStore {
+  val ResultsMapId = "resultcachemap"
+  val VersionsMapId = "resultcacheversionsmap"
+}
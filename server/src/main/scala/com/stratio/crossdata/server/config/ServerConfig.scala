@@ -19,6 +19,9 @@ import java.io.File
 import java.util.concurrent.TimeUnit
 
 import com.typesafe.config.{Config, ConfigFactory, ConfigValueFactory}
+import com.stratio.crossdata.server.execution.AdmissionController
+import com.stratio.crossdata.server.execution.AdmissionController.PoolAssignment
+import com.stratio.crossdata.server.results.SpillSettings
 import org.apache.log4j.Logger
 import org.apache.spark.sql.crossdata.config.CoreConfig
 
@@ -48,6 +51,35 @@ object ServerConfig {
 
   // Job management settings
   val FinishedJobTTL = "config.jobs.finished.ttl_ms"
+  val JobExecutorPoolSize = "config.jobs.executor.pool-size"
+  val JobExecutorMaxQueuedJobs = "config.jobs.executor.max-queued"
+
+  // Admission control settings
+  val AdmissionMaxQueuedPerSession = "config.jobs.admission.max-queued-per-session"
+  val AdmissionMaxConcurrentPerUser = "config.jobs.admission.max-concurrent-per-user"
+  val AdmissionMaxConcurrentPerSession = "config.jobs.admission.max-concurrent-per-session"
+  val AdmissionMaxResultRows = "config.jobs.admission.max-result-rows"
+  val SchedulerPools = "config.jobs.scheduler.pools"
+  val SchedulerPoolDefaultWeight = "config.jobs.scheduler.default-weight"
+  val SchedulerPoolMinShare = "config.jobs.scheduler.min-share"
+  val SchedulerPoolWeights = "config.jobs.scheduler.weights"
+
+  // Load reporting settings
+  val LoadPublishInterval = "config.load.publish-interval"
+
+  // Query result cache settings
+  val ResultCacheEnabled = "config.results.cache.enabled"
+  val ResultCacheMaxEntries = "config.results.cache.max-entries"
+  val ResultCacheTTL = "config.results.cache.ttl"
+  val ResultCacheMaxRows = "config.results.cache.max-rows"
+
+  // Kept results settings
+  val ResultSpillMemoryThreshold = "config.results.spill.memory-threshold"
+  val ResultSpillBatchRows = "config.results.spill.batch-rows"
+  val ResultSpillDirectory = "config.results.spill.directory"
+
+  // Chunked results settings
+  val ResultChunkCreditTimeout = "config.results.chunking.credit-timeout"
 
   // Host
   val Host = "akka.remote.netty.tcp.hostname"
@@ -65,6 +97,10 @@ object ServerConfig {
 
     val RequestExecutionTimeout = "akka-http.request-execution-timeout"
 
+    // Streamed results (NDJSON) settings
+    val StreamingChunkSize = "akka-http.streaming.chunk-size"
+    val StreamingChunkCredits = "akka-http.streaming.chunk-credits"
+
     //TLS akka-http client authentication
     object TLS {
       val TlsEnable = "akka-http.ssl.enable"
@@ -78,6 +114,18 @@ object ServerConfig {
 
 
   val DefaultHTTPRequestExecutionTimeout = 4 hour
+  val DefaultHTTPStreamingChunkSize = 1000
+  val DefaultHTTPStreamingChunkCredits = 2
+  val DefaultJobExecutorPoolSize = 16
+  val DefaultJobExecutorMaxQueuedJobs = 256
+  val DefaultAsynchronousJobTTL = 1 hour
+  val DefaultLoadPublishInterval = 2 seconds
+  val DefaultResultCacheMaxEntries = 1000
+  val DefaultResultCacheTTL = 5 minutes
+  val DefaultResultCacheMaxRows = 10000
+  val DefaultResultSpillMemoryThreshold = 64L * 1024 * 1024
+  val DefaultResultSpillBatchRows = 1000
+  val DefaultResultChunkCreditTimeout = 5 minutes
 }
 
 trait ServerConfig extends NumberActorConfig {
@@ -94,6 +142,77 @@ trait ServerConfig extends NumberActorConfig {
 
   lazy val completedJobTTL: Duration = extractDurationField(ServerConfig.FinishedJobTTL)
 
+  /**
+    * Time asynchronous jobs keep their results, it is bounded even if the rest of completed jobs are never removed.
+    */
+  lazy val asynchronousJobTTL: FiniteDuration = completedJobTTL match {
+    case finite: FiniteDuration => finite
+    case _ => ServerConfig.DefaultAsynchronousJobTTL
+  }
+
+  lazy val jobExecutorPoolSize: Int =
+    Try(config.getInt(ServerConfig.JobExecutorPoolSize)).getOrElse(ServerConfig.DefaultJobExecutorPoolSize)
+  lazy val jobExecutorMaxQueuedJobs: Int =
+    Try(config.getInt(ServerConfig.JobExecutorMaxQueuedJobs)).getOrElse(ServerConfig.DefaultJobExecutorMaxQueuedJobs)
+
+  lazy val jobExecutorMaxQueuedJobsPerSession: Option[Int] =
+    Try(config.getInt(ServerConfig.AdmissionMaxQueuedPerSession)).toOption.filter(_ > 0)
+
+  lazy val admissionLimits: AdmissionController.Limits = AdmissionController.Limits(
+    Try(config.getInt(ServerConfig.AdmissionMaxConcurrentPerUser)).toOption.filter(_ > 0),
+    Try(config.getInt(ServerConfig.AdmissionMaxConcurrentPerSession)).toOption.filter(_ > 0),
+    Try(config.getLong(ServerConfig.AdmissionMaxResultRows)).toOption.filter(_ > 0)
+  )
+
+  lazy val schedulerPoolSettings: AdmissionController.PoolSettings = {
+    val assignment = Try(config.getString(ServerConfig.SchedulerPools).toLowerCase).getOrElse("none") match {
+      case "user" => PoolAssignment.ByUser
+      case "session" => PoolAssignment.BySession
+      case "none" => PoolAssignment.Disabled
+      case other =>
+        logger.warn(s"Unknown scheduler pools assignment '$other', pools won't be used")
+        PoolAssignment.Disabled
+    }
+    val weights = Try(config.getConfig(ServerConfig.SchedulerPoolWeights)).toOption map { weightsConfig =>
+      weightsConfig.root.keySet.toSeq.map(user => user -> weightsConfig.getInt(user)).toMap
+    } getOrElse Map.empty[String, Int]
+
+    AdmissionController.PoolSettings(
+      assignment,
+      Try(config.getInt(ServerConfig.SchedulerPoolDefaultWeight)).getOrElse(1),
+      Try(config.getInt(ServerConfig.SchedulerPoolMinShare)).getOrElse(0),
+      weights
+    )
+  }
+
+  lazy val loadPublishInterval: FiniteDuration = Try(
+    config.getDuration(ServerConfig.LoadPublishInterval, TimeUnit.MILLISECONDS)
+  ) map (FiniteDuration(_, TimeUnit.MILLISECONDS)) getOrElse ServerConfig.DefaultLoadPublishInterval
+
+  lazy val isResultCacheEnabled: Boolean =
+    Try(config.getBoolean(ServerConfig.ResultCacheEnabled)).getOrElse(false)
+  lazy val resultCacheMaxEntries: Int =
+    Try(config.getInt(ServerConfig.ResultCacheMaxEntries)).getOrElse(ServerConfig.DefaultResultCacheMaxEntries)
+  lazy val resultCacheTTL: FiniteDuration = Try(
+    config.getDuration(ServerConfig.ResultCacheTTL, TimeUnit.MILLISECONDS)
+  ) map (FiniteDuration(_, TimeUnit.MILLISECONDS)) getOrElse ServerConfig.DefaultResultCacheTTL
+  lazy val resultCacheMaxRows: Int =
+    Try(config.getInt(ServerConfig.ResultCacheMaxRows)).getOrElse(ServerConfig.DefaultResultCacheMaxRows)
+
+  lazy val resultSpillSettings: SpillSettings = SpillSettings(
+    Try(config.getBytes(ServerConfig.ResultSpillMemoryThreshold).longValue).getOrElse(
+      ServerConfig.DefaultResultSpillMemoryThreshold
+    ),
+    Try(config.getInt(ServerConfig.ResultSpillBatchRows)).getOrElse(ServerConfig.DefaultResultSpillBatchRows),
+    Try(config.getString(ServerConfig.ResultSpillDirectory)).toOption.filter(_.nonEmpty) map (new File(_)) getOrElse {
+      new File(System.getProperty("java.io.tmpdir"), "crossdata-results")
+    }
+  )
+
+  lazy val chunkCreditTimeout: FiniteDuration = Try(
+    config.getDuration(ServerConfig.ResultChunkCreditTimeout, TimeUnit.MILLISECONDS)
+  ) map (FiniteDuration(_, TimeUnit.MILLISECONDS)) getOrElse ServerConfig.DefaultResultChunkCreditTimeout
+
   lazy val expectedClientHeartbeatPeriod: FiniteDuration =
     extractDurationField(ServerConfig.ClientExpectedHeartbeatPeriod) match {
       case d: FiniteDuration =>
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.execution
+
+import java.util.UUID
+import java.util.concurrent.atomic.AtomicBoolean
+
+import com.stratio.crossdata.server.execution.AdmissionController._
+import org.apache.log4j.Logger
+
+import scala.collection.mutable
+
+object AdmissionController {
+
+  /**
+    * Limits applied to each user and session, None stands for no limit.
+    *
+    * @param maxConcurrentPerUser Queries of a user being run or waiting for a worker.
+    * @param maxConcurrentPerSession Queries of a session being run or waiting for a worker.
+    * @param maxResultRows Rows a query can produce before it is aborted.
+    */
+  case class Limits(
+                     maxConcurrentPerUser: Option[Int] = None,
+                     maxConcurrentPerSession: Option[Int] = None,
+                     maxResultRows: Option[Long] = None
+                   )
+
+  object PoolAssignment extends Enumeration {
+    type PoolAssignment = Value
+    val Disabled, ByUser, BySession = Value
+  }
+
+  /**
+    * How queries are mapped to Spark FAIR scheduler pools, they require `spark.scheduler.mode = FAIR`.
+    *
+    * @param assignment Whether queries get a pool per user, per session or none at all.
+    * @param weights Weight of the pools by user, pools of the sessions of a user get its weight too.
+    */
+  case class PoolSettings(
+                           assignment: PoolAssignment.PoolAssignment = PoolAssignment.Disabled,
+                           defaultWeight: Int = 1,
+                           minShare: Int = 0,
+                           weights: Map[String, Int] = Map.empty
+                         )
+
+  case class SchedulerPool(name: String, weight: Int, minShare: Int)
+
+  /**
+    * @param concurrentByUser Admitted and not yet finished queries by user.
+    * @param concurrentBySession Admitted and not yet finished queries by session.
+    * @param rejectedQueries Queries rejected since the controller was created.
+    */
+  case class Stats(concurrentByUser: Map[String, Int], concurrentBySession: Map[UUID, Int], rejectedQueries: Long)
+
+}
+
+/**
+  * Decides whether the queries of each user and session can be run before any job is created for them and
+  * keeps track of them until they finish. It is shared by all the server actors so limits apply to the whole server.
+  */
+class AdmissionController(val limits: Limits, val poolSettings: PoolSettings = PoolSettings()) {
+
+  lazy val logger = Logger.getLogger(classOf[AdmissionController])
+
+  /**
+    * Permission to run a query, it must be released once the query finishes.
+    */
+  class Admission private[AdmissionController](val user: String, val sessionId: UUID) {
+
+    private val released = new AtomicBoolean(false)
+
+    def schedulerPool: Option[SchedulerPool] = poolFor(user, sessionId)
+
+    def maxResultRows: Option[Long] = limits.maxResultRows
+
+    def release(): Unit = if (released.compareAndSet(false, true)) AdmissionController.this.release(user, sessionId)
+
+  }
+
+  // Guarded by `this`
+  private val concurrentByUser = mutable.Map.empty[String, Int]
+  private val concurrentBySession = mutable.Map.empty[UUID, Int]
+  private var rejectedQueries = 0L
+
+  /**
+    * @return The admission of a new query of `user` within `sessionId` or the reason why it has been rejected.
+    */
+  def admit(user: String, sessionId: UUID): Either[String, Admission] = synchronized {
+
+    val userQueries = concurrentByUser.getOrElse(user, 0)
+    val sessionQueries = concurrentBySession.getOrElse(sessionId, 0)
+
+    val rejection = limits.maxConcurrentPerUser.filter(userQueries >= _).map { max =>
+      s"User $user has reached its limit of $max concurrent queries. Please, try again later"
+    } orElse limits.maxConcurrentPerSession.filter(sessionQueries >= _).map { max =>
+      s"Session $sessionId has reached its limit of $max concurrent queries. Please, try again later"
+    }
+
+    rejection map { reason =>
+      rejectedQueries += 1
+      logger.info(s"Query rejected: $reason")
+      Left(reason)
+    } getOrElse {
+      concurrentByUser(user) = userQueries + 1
+      concurrentBySession(sessionId) = sessionQueries + 1
+      Right(new Admission(user, sessionId))
+    }
+  }
+
+  def stats: Stats = synchronized {
+    Stats(concurrentByUser.toMap, concurrentBySession.toMap, rejectedQueries)
+  }
+
+  /**
+    * @return The scheduler pool of the queries of `sessionId` if it is only used by them, so it can be removed once
+    *         the session is closed.
+    */
+  def sessionPool(sessionId: UUID): Option[String] =
+    if (poolSettings.assignment == PoolAssignment.BySession) Some(sessionPoolName(sessionId)) else None
+
+  private def release(user: String, sessionId: UUID): Unit = synchronized {
+    decrement(concurrentByUser, user)
+    decrement(concurrentBySession, sessionId)
+  }
+
+  private def decrement[K](counters: mutable.Map[K, Int], key: K): Unit =
+    counters.get(key) foreach { count =>
+      if (count > 1) counters(key) = count - 1 else counters -= key
+    }
+
+  private def sessionPoolName(sessionId: UUID): String = s"session-$sessionId"
+
+  private def poolFor(user: String, sessionId: UUID): Option[SchedulerPool] = {
+    import PoolAssignment._
+    val weight = poolSettings.weights.getOrElse(user, poolSettings.defaultWeight)
+    poolSettings.assignment match {
+      case ByUser => Some(SchedulerPool(s"user-$user", weight, poolSettings.minShare))
+      case BySession => Some(SchedulerPool(sessionPoolName(sessionId), weight, poolSettings.minShare))
+      case Disabled => None
+    }
+  }
+
+}
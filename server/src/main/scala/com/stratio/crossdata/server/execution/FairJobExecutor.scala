@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.execution
+
+import java.util.UUID
+import java.util.concurrent.locks.ReentrantLock
+import java.util.concurrent.{Executor, RejectedExecutionException}
+
+import com.stratio.crossdata.server.execution.FairJobExecutor.Stats
+import org.apache.log4j.Logger
+
+import scala.collection.mutable
+import scala.concurrent.duration._
+import scala.util.control.NonFatal
+
+object FairJobExecutor {
+
+  /**
+    * Snapshot of the executor state.
+    *
+    * @param poolSize Number of worker threads.
+    * @param runningJobs Jobs being run by a worker.
+    * @param queuedJobs Jobs waiting for a worker.
+    * @param queuedJobsBySession Waiting jobs grouped by the session which submitted them.
+    * @param rejectedJobs Jobs rejected since the executor was started.
+    * @param lastWaitTime Time the last started job spent in its queue.
+    * @param meanWaitTime Average time started jobs have spent in their queues.
+    * @param maxWaitTime Longest time a started job has spent in its queue.
+    */
+  case class Stats(
+                    poolSize: Int,
+                    runningJobs: Int,
+                    queuedJobs: Int,
+                    queuedJobsBySession: Map[UUID, Int],
+                    rejectedJobs: Long,
+                    lastWaitTime: FiniteDuration,
+                    meanWaitTime: FiniteDuration,
+                    maxWaitTime: FiniteDuration
+                  )
+
+}
+
+/**
+  * Bounded pool of worker threads running the jobs submitted by several sessions.
+  *
+  * Each session has its own queue and workers take jobs from those queues in a round-robin fashion so
+  * a session submitting lots of jobs cannot starve the rest: It just gets one turn per round.
+  * Jobs are rejected with a [[RejectedExecutionException]] when more than `maxQueuedJobs` are waiting for a worker
+  * or when their session already has `maxQueuedJobsPerSession` jobs waiting.
+  *
+  * @param poolSize Maximum number of jobs being run at the same time.
+  * @param maxQueuedJobs Maximum number of jobs waiting for a worker.
+  * @param maxQueuedJobsPerSession Maximum number of jobs of a single session waiting for a worker, if any.
+  */
+class FairJobExecutor(
+                       val poolSize: Int,
+                       val maxQueuedJobs: Int,
+                       threadNamePrefix: String = "crossdata-job",
+                       val maxQueuedJobsPerSession: Option[Int] = None) {
+
+  require(poolSize > 0, "The job executor needs at least one worker")
+  require(maxQueuedJobs >= 0, "The maximum number of queued jobs cannot be negative")
+  require(maxQueuedJobsPerSession.forall(_ >= 0), "The maximum number of queued jobs per session cannot be negative")
+
+  lazy val logger = Logger.getLogger(classOf[FairJobExecutor])
+
+  private case class QueuedJob(job: Runnable, enqueuedAt: Long)
+
+  // All the state below is guarded by `lock`
+  private val lock = new ReentrantLock()
+  private val jobAvailable = lock.newCondition()
+
+  private val queues = mutable.Map.empty[UUID, mutable.Queue[QueuedJob]]
+  private val turns = mutable.Queue.empty[UUID] // Sessions having queued jobs, in round-robin order
+  private var queuedJobs = 0
+  private var runningJobs = 0
+  private var shuttingDown = false
+
+  private var rejectedJobs = 0L
+  private var startedJobs = 0L
+  private var totalWaitNanos = 0L
+  private var maxWaitNanos = 0L
+  private var lastWaitNanos = 0L
+
+  private val workers = (1 to poolSize) map { n =>
+    val worker = new Thread(new Worker, s"$threadNamePrefix-$n")
+    worker.setDaemon(true)
+    worker.start()
+    worker
+  }
+
+  /**
+    * @return An [[Executor]] submitting its jobs on behalf of `sessionId`.
+    */
+  def executorFor(sessionId: UUID): Executor = new Executor {
+    override def execute(job: Runnable): Unit = submit(sessionId, job)
+  }
+
+  def submit(sessionId: UUID, job: Runnable): Unit = withLock {
+
+    if (shuttingDown)
+      throw new RejectedExecutionException("The job executor has been shut down")
+
+    val idleWorkers = poolSize - runningJobs
+    if (queuedJobs - idleWorkers >= maxQueuedJobs) {
+      rejectedJobs += 1
+      throw new RejectedExecutionException(
+        s"The server is saturated: $runningJobs running and $queuedJobs queued jobs. Please, try again later"
+      )
+    }
+
+    val sessionQueued = queues.get(sessionId).map(_.size).getOrElse(0)
+    if (maxQueuedJobsPerSession.exists(sessionQueued - idleWorkers >= _)) {
+      rejectedJobs += 1
+      throw new RejectedExecutionException(
+        s"Session $sessionId already has $sessionQueued queued jobs. Please, try again later"
+      )
+    }
+
+    val queue = queues.getOrElseUpdate(sessionId, {
+      turns enqueue sessionId
+      mutable.Queue.empty
+    })
+    queue enqueue QueuedJob(job, System.nanoTime())
+    queuedJobs += 1
+
+    if (queuedJobs > idleWorkers)
+      logger.debug(s"All the job workers are busy, job queued for session $sessionId (${queue.size} in its queue)")
+
+    jobAvailable.signal()
+  }
+
+  def stats: Stats = withLock {
+    Stats(
+      poolSize,
+      runningJobs,
+      queuedJobs,
+      queues.map { case (sessionId, queue) => sessionId -> queue.size }.toMap,
+      rejectedJobs,
+      lastWaitNanos.nanos,
+      (if (startedJobs == 0) 0L else totalWaitNanos / startedJobs).nanos,
+      maxWaitNanos.nanos
+    )
+  }
+
+  /**
+    * Stops accepting new jobs. Already queued jobs are still run.
+    */
+  def shutdown(): Unit = withLock {
+    shuttingDown = true
+    jobAvailable.signalAll()
+  }
+
+  def awaitTermination(timeout: FiniteDuration): Boolean = {
+    val deadline = timeout.fromNow
+    workers foreach (_.join(deadline.timeLeft.toMillis max 1))
+    workers.forall(!_.isAlive)
+  }
+
+  // Blocks until there is a job to run, returns None once the executor has been shut down and drained
+  private def take(): Option[Runnable] = withLock {
+
+    while (queuedJobs == 0 && !shuttingDown) jobAvailable.await()
+
+    if (queuedJobs == 0) None
+    else {
+      val sessionId = turns.dequeue()
+      val queue = queues(sessionId)
+      val QueuedJob(job, enqueuedAt) = queue.dequeue()
+
+      if (queue.isEmpty) queues -= sessionId
+      else turns enqueue sessionId
+
+      queuedJobs -= 1
+      runningJobs += 1
+
+      val waitNanos = System.nanoTime() - enqueuedAt
+      startedJobs += 1
+      totalWaitNanos += waitNanos
+      lastWaitNanos = waitNanos
+      maxWaitNanos = maxWaitNanos max waitNanos
+
+      Some(job)
+    }
+  }
+
+  private class Worker extends Runnable {
+
+    override def run(): Unit = {
+      var job = nextJob()
+      while (job.isDefined) {
+        try {
+          job.foreach(_.run())
+        } catch {
+          case NonFatal(error) => logger.error("Unexpected error running a job", error)
+        } finally {
+          withLock(runningJobs -= 1)
+        }
+        job = nextJob()
+      }
+    }
+
+    private def nextJob(): Option[Runnable] = {
+      Thread.interrupted() // Cancelled jobs may leave the worker interrupted
+      take()
+    }
+
+  }
+
+  private def withLock[T](f: => T): T = {
+    lock.lock()
+    try f finally lock.unlock()
+  }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.execution
+
+import java.util.concurrent.ConcurrentHashMap
+
+import com.hazelcast.core.{HazelcastInstance, IMap}
+import com.stratio.crossdata.server.actors.ServerActor.JobId
+
+import scala.collection.JavaConversions._
+
+/**
+  * Job known by a [[JobRegistry]].
+  *
+  * @param jobId Session and query of the job.
+  * @param user User who launched the query.
+  * @param jobActorPath Full path, address included, of the actor running the job so any server can reach it.
+  * @param server Address of the server running the job.
+  * @param asynchronous Whether the query was submitted asynchronously.
+  * @param registeredAt Time, in milliseconds, when the job was created.
+  */
+case class RegisteredJob(
+                          jobId: JobId,
+                          user: String,
+                          jobActorPath: String,
+                          server: String,
+                          asynchronous: Boolean,
+                          registeredAt: Long
+                        )
+
+/**
+  * Jobs being run, or recently completed, by the servers so control commands can be sent straight to
+  * the actor running their target query.
+  */
+trait JobRegistry {
+
+  /**
+    * Whether the registry knows the jobs of every server, a job missing from a cluster-wide registry doesn't exist.
+    */
+  def isClusterWide: Boolean
+
+  def register(job: RegisteredJob): Unit
+
+  def unregister(jobId: JobId): Unit
+
+  /**
+    * Forgets the jobs of a server which has left the cluster.
+    */
+  def unregisterServer(server: String): Unit
+
+  def lookup(jobId: JobId): Option[RegisteredJob]
+
+  def jobs: Seq[RegisteredJob]
+
+}
+
+/**
+  * [[JobRegistry]] shared by the server actors of this server.
+  */
+class LocalJobRegistry extends JobRegistry {
+
+  private val registered = new ConcurrentHashMap[JobId, RegisteredJob]()
+
+  override def isClusterWide: Boolean = false
+
+  override def register(job: RegisteredJob): Unit = registered.put(job.jobId, job)
+
+  override def unregister(jobId: JobId): Unit = registered.remove(jobId)
+
+  override def unregisterServer(server: String): Unit =
+    registered.values.filter(_.server == server).foreach(job => registered.remove(job.jobId))
+
+  override def lookup(jobId: JobId): Option[RegisteredJob] = Option(registered.get(jobId))
+
+  override def jobs: Seq[RegisteredJob] = registered.values.toSeq
+
+}
+
+/**
+  * [[JobRegistry]] shared by all the servers within the Hazelcast cluster.
+  */
+class HazelcastJobRegistry(
+                            hazelcastInstance: HazelcastInstance,
+                            mapName: String = HazelcastJobRegistry.JobsMapId
+                          ) extends JobRegistry {
+
+  private val registered: IMap[JobId, RegisteredJob] = hazelcastInstance.getMap[JobId, RegisteredJob](mapName)
+
+  override def isClusterWide: Boolean = true
+
+  override def register(job: RegisteredJob): Unit = registered.set(job.jobId, job)
+
+  override def unregister(jobId: JobId): Unit = registered.delete(jobId)
+
+  override def unregisterServer(server: String): Unit =
+    registered.values.filter(_.server == server).foreach(job => registered.delete(job.jobId))
+
+  override def lookup(jobId: JobId): Option[RegisteredJob] = Option(registered.get(jobId))
+
+  override def jobs: Seq[RegisteredJob] = registered.values.toSeq
+
+}
+
+object HazelcastJobRegistry {
+  val JobsMapId = "jobregistrymap"
+}
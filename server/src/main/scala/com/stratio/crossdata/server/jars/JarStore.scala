@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.jars
+
+import java.io.File
+import java.security.MessageDigest
+import java.util.UUID
+
+import akka.stream.Materializer
+import akka.stream.scaladsl.{Source, StreamConverters}
+import akka.util.ByteString
+import com.stratio.crossdata.util.HdfsUtils
+import com.typesafe.config.Config
+import org.apache.hadoop.fs.{FileStatus, FileSystem, Path}
+import org.apache.log4j.Logger
+
+import scala.concurrent.{ExecutionContext, Future}
+import scala.util.{Failure, Try}
+
+/**
+  * @param path Fully qualified path of the jar, e.g. hdfs://namenode:9000/user/stratio/externalJars/<digest>/my.jar
+  * @param digest SHA-256 of the jar contents.
+  * @param deduplicated Whether an identical jar had already been stored.
+  */
+case class StoredJar(path: String, digest: String, deduplicated: Boolean = false)
+
+/**
+  * Content addressed store of the jars uploaded to the servers. Jars are kept at `<directory>/<digest>/<name>` so
+  * identical contents are stored just once, whatever their names are, and different contents never collide.
+  *
+  * @param fs File system holding the jars, HDFS within a cluster and the local one in tests.
+  * @param directory Root directory of the store.
+  */
+class JarStore(fs: FileSystem, directory: Path) {
+
+  import JarStore._
+
+  lazy val logger = Logger.getLogger(classOf[JarStore])
+
+  /**
+    * Streams `bytes` into the store while hashing them. They are written to a pending file which becomes the stored
+    * jar once the upload completes, or it is removed if another jar with the same contents was already there.
+    *
+    * @param ec Context running the blocking file system operations.
+    */
+  def store(name: String, bytes: Source[ByteString, _])(
+    implicit materializer: Materializer, ec: ExecutionContext): Future[StoredJar] = {
+
+    val pending = new Path(new Path(directory, PendingDirectory), UUID.randomUUID().toString)
+    val md = MessageDigest.getInstance(DigestAlgorithm)
+
+    val written = bytes.map { chunk =>
+      chunk.asByteBuffers foreach (md.update(_))
+      chunk
+    } runWith StreamConverters.fromOutputStream(() => fs.create(pending))
+
+    written map { ioResult =>
+      ioResult.status.get
+      commit(pending, new File(name).getName, md.digest().map("%02x" format _).mkString)
+    } andThen {
+      case Failure(cause) =>
+        logger.warn(s"Upload of $name failed", cause)
+        Try(fs.delete(pending, false))
+    }
+  }
+
+  def lookup(digest: String): Option[StoredJar] =
+    Try(fs.listStatus(new Path(directory, digest))).toOption.flatMap(_.find(isJar)) map { status =>
+      StoredJar(status.getPath.toString, digest, deduplicated = true)
+    }
+
+  // Checksum files written by some file systems are skipped
+  private def isJar(status: FileStatus): Boolean = status.isFile && !status.getPath.getName.startsWith(".")
+
+  private def commit(pending: Path, name: String, digest: String): StoredJar = {
+    def discardPending(jar: StoredJar): StoredJar = {
+      fs.delete(pending, false)
+      logger.info(s"$name has the same contents as ${jar.path}, the upload has been discarded")
+      jar
+    }
+
+    lookup(digest) map discardPending getOrElse {
+      val target = new Path(new Path(directory, digest), name)
+      fs.mkdirs(target.getParent)
+      if (fs.rename(pending, target)) {
+        StoredJar(fs.makeQualified(target).toString, digest)
+      } else { // A concurrent upload of the same contents won the race
+        lookup(digest) map discardPending getOrElse sys.error(s"Unable to store $name at $target")
+      }
+    }
+  }
+
+}
+
+object JarStore {
+
+  val DigestAlgorithm = "SHA-256"
+
+  private val PendingDirectory = "_pending"
+
+  /**
+    * Store within the `externalJars` directory of the HDFS user, the one jars were copied into before.
+    */
+  def apply(hdfsConfig: Config): JarStore = {
+    val hdfs = HdfsUtils(hdfsConfig)
+    new JarStore(hdfs.dfs, new Path(s"/user/${hdfs.userName}/externalJars"))
+  }
+
+}
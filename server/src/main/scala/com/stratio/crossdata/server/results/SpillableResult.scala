@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.results
+
+import java.io.{BufferedOutputStream, File, FileOutputStream}
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+import java.util.concurrent.atomic.AtomicLong
+
+import akka.actor.Address
+import com.stratio.crossdata.common.serializers.ColumnarRowsCodec
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.types.StructType
+
+import scala.annotation.tailrec
+import scala.collection.mutable
+import scala.util.Try
+
+/**
+  * @param memoryThreshold Bytes of encoded rows all the results of the server keep on heap, the rest are spilled
+  *                        to `directory`.
+  * @param batchRows Rows encoded together, batches are the unit of both spilling and reading.
+  * @param directory Local directory the spilled results are written to.
+  */
+case class SpillSettings(memoryThreshold: Long, batchRows: Int, directory: File) {
+  require(memoryThreshold >= 0 && batchRows > 0, "The memory threshold cannot be negative and batches must have rows")
+
+  /**
+    * Settings of the server with the given cluster address. Every server spills to its own subdirectory, so servers
+    * sharing a host (and the directory) never delete the results of each other.
+    */
+  def forServer(address: Address): SpillSettings = {
+    val serverName = s"server-${address.host.getOrElse("local")}-${address.port.getOrElse(0)}"
+    copy(directory = new File(directory, serverName.replaceAll("[^A-Za-z0-9.-]", "_")))
+  }
+}
+
+/**
+  * Result kept by the server, encoded by [[ColumnarRowsCodec]] in batches of rows. Batches are kept on heap until
+  * the results of the server take up the memory threshold, the following ones are appended to a local file which is
+  * read back by memory-mapping the requested batches. The file is deleted, and the heap taken up by the result
+  * given back to the rest, once the result is released.
+  */
+class SpillableResult private(
+                               val schema: StructType,
+                               batches: IndexedSeq[SpillableResult.Batch],
+                               spillFile: Option[SpillableResult.SpillFile],
+                               bytesInMemory: Long
+                             ) {
+
+  import SpillableResult._
+
+  val numberOfRows: Long = batches.lastOption.map(batch => batch.firstRow + batch.numberOfRows).getOrElse(0L)
+
+  private val firstRows: Array[Long] = batches.map(_.firstRow).toArray
+
+  private var released = false
+
+  def isSpilled: Boolean = spillFile.isDefined
+
+  /**
+    * @return Up to `maxRows` rows starting at the `offset`-th one, just the batches holding them are decoded.
+    */
+  def rows(offset: Long, maxRows: Int): Array[Row] = {
+    val until = math.min(offset + maxRows, numberOfRows)
+    if (offset >= until) Array.empty
+    else (batchAt(offset) to batchAt(until - 1)).toArray flatMap { idx =>
+      val batch = batches(idx)
+      val from = math.max(offset - batch.firstRow, 0).toInt
+      val to = math.min(until - batch.firstRow, batch.numberOfRows).toInt
+      decode(batch).slice(from, to)
+    }
+  }
+
+  def iterator: Iterator[Row] = batches.iterator flatMap decode
+
+  /**
+    * Deletes the spilled rows, if any. The result cannot be read afterwards.
+    */
+  def release(): Unit = synchronized {
+    if (!released) {
+      released = true
+      spillFile.foreach(_.delete())
+      releaseMemory(bytesInMemory)
+    }
+  }
+
+  private def batchAt(row: Long): Int = {
+    val idx = java.util.Arrays.binarySearch(firstRows, row)
+    if (idx >= 0) idx else -idx - 2
+  }
+
+  private def decode(batch: Batch): Array[Row] = {
+    val encoded = batch.content match {
+      case InMemory(bytes) => bytes
+      case Spilled(position, length) => spillFile.get.read(position, length)
+    }
+    ColumnarRowsCodec.decode(schema, encoded)
+  }
+
+}
+
+object SpillableResult {
+
+  private val FilePrefix = "crossdata-result-"
+  private val FileSuffix = ".bin"
+
+  // Encoded bytes kept on heap by all the results of the server, they share the memory threshold
+  private val heldInMemory = new AtomicLong()
+
+  @tailrec
+  private def reserveMemory(bytes: Long, threshold: Long): Boolean = {
+    val held = heldInMemory.get()
+    if (held + bytes > threshold) false
+    else heldInMemory.compareAndSet(held, held + bytes) || reserveMemory(bytes, threshold)
+  }
+
+  private def releaseMemory(bytes: Long): Unit = if (bytes > 0) heldInMemory.addAndGet(-bytes)
+
+  /**
+    * Deletes the results spilled to `directory` by previous runs of the server, which couldn't release them. The
+    * directory must belong to this server alone (see [[SpillSettings.forServer]]).
+    */
+  def deleteSpilled(directory: File): Unit =
+    Option(directory.listFiles()).toSeq.flatten filter { file =>
+      file.getName.startsWith(FilePrefix) && file.getName.endsWith(FileSuffix)
+    } foreach (_.delete())
+
+  private[results] sealed trait BatchContent
+  private[results] case class InMemory(encoded: Array[Byte]) extends BatchContent
+  private[results] case class Spilled(position: Long, length: Int) extends BatchContent
+
+  private[results] case class Batch(firstRow: Long, numberOfRows: Int, content: BatchContent)
+
+  private[results] class SpillFile(file: File) {
+
+    private val output = new BufferedOutputStream(new FileOutputStream(file))
+    private var size = 0L
+    private var channel: Option[FileChannel] = None
+
+    /**
+      * @return Position of `bytes` within the file.
+      */
+    def append(bytes: Array[Byte]): Long = {
+      val position = size
+      output.write(bytes)
+      size += bytes.length
+      position
+    }
+
+    def seal(): Unit = output.close()
+
+    def read(position: Long, length: Int): Array[Byte] = synchronized {
+      val readChannel = channel getOrElse {
+        if (!file.exists()) throw new IllegalStateException(s"Spilled result $file has already been released")
+        val opened = FileChannel.open(file.toPath, StandardOpenOption.READ)
+        channel = Some(opened)
+        opened
+      }
+      val bytes = new Array[Byte](length)
+      readChannel.map(FileChannel.MapMode.READ_ONLY, position, length).get(bytes)
+      bytes
+    }
+
+    def delete(): Unit = synchronized {
+      Try(output.close())
+      channel.foreach(opened => Try(opened.close()))
+      channel = None
+      file.delete()
+    }
+
+  }
+
+  /**
+    * Consumes `rows`, keeping them as a [[SpillableResult]]. Partially spilled rows are deleted if it fails.
+    */
+  def apply(schema: StructType, rows: Iterator[Row], settings: SpillSettings): SpillableResult = {
+
+    val batches = mutable.ArrayBuffer.empty[Batch]
+    var spillFile: Option[SpillFile] = None
+    var bytesInMemory = 0L
+    var firstRow = 0L
+
+    def spillTo: SpillFile = spillFile getOrElse {
+      settings.directory.mkdirs()
+      val file = File.createTempFile(FilePrefix, FileSuffix, settings.directory)
+      val created = new SpillFile(file)
+      spillFile = Some(created)
+      created
+    }
+
+    try {
+      rows.grouped(settings.batchRows) foreach { group =>
+        val encoded = ColumnarRowsCodec.encode(schema, group.toArray)
+        val content = if (spillFile.isEmpty && reserveMemory(encoded.length, settings.memoryThreshold)) {
+          bytesInMemory += encoded.length
+          InMemory(encoded)
+        } else {
+          Spilled(spillTo.append(encoded), encoded.length)
+        }
+        batches += Batch(firstRow, group.size, content)
+        firstRow += group.size
+      }
+      spillFile.foreach(_.seal())
+    } catch {
+      case failure: Throwable =>
+        spillFile.foreach(_.delete())
+        releaseMemory(bytesInMemory)
+        throw failure
+    }
+
+    new SpillableResult(schema, batches.toIndexedSeq, spillFile, bytesInMemory)
+  }
+
+}
@@ -16,7 +16,7 @@
 package org.apache.spark.sql.crossdata.session
 
 import com.hazelcast.config.{XmlConfigBuilder, Config => HzConfig}
-import com.hazelcast.core.Hazelcast
+import com.hazelcast.core.{Hazelcast, HazelcastInstance}
 import com.stratio.crossdata.util.CacheInvalidator
 import com.typesafe.config.{Config, ConfigFactory}
 import org.apache.log4j.Logger
@@ -89,6 +89,8 @@ class HazelcastSessionProvider(sc: SparkContext,
 
   def getClusterState = hInstance.getCluster
 
+  def hazelcastInstance: HazelcastInstance = hInstance
+
   override def newSession(sessionID: SessionID, userId: String): Try[XDSession] =
     Try {
       val tempCatalogs = sessionIDToTempCatalogs.newResource(sessionID)
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.kryo
+
+import java.sql.{Date, Timestamp}
+
+import com.stratio.crossdata.test.BaseXDTest
+import org.apache.spark.SparkConf
+import org.apache.spark.serializer.{KryoSerializer, SerializerInstance}
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.catalyst.expressions.{GenericInternalRow, GenericRowWithSchema}
+import org.apache.spark.sql.catalyst.util.{ArrayBasedMapData, GenericArrayData}
+import org.apache.spark.sql.crossdata.models.{EphemeralQueryModel, TableModel}
+import org.apache.spark.sql.types._
+import org.apache.spark.unsafe.types.UTF8String
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+import scala.reflect.ClassTag
+
+@RunWith(classOf[JUnitRunner])
+class CrossdataRegistratorSpec extends BaseXDTest {
+
+  import CrossdataRegistratorSpec._
+
+  lazy val serializer: SerializerInstance = kryoSerializer(registrationRequired = true)
+
+  def roundTrip[T: ClassTag](value: T): T = serializer.deserialize[T](serializer.serialize(value))
+
+  "CrossdataRegistrator" should "allow serializing rows with nested values when registration is required" in {
+    val deserialized = roundTrip(rows)
+    deserialized.toSeq shouldBe rows.toSeq
+    deserialized.head.schema shouldBe Schema
+  }
+
+  it should "allow serializing Catalyst rows when registration is required" in {
+    val internalRow = new GenericInternalRow(Array[Any](
+      UTF8String.fromString("crossdata"),
+      1L,
+      new GenericArrayData(Array[Any](1, 2, 3)),
+      ArrayBasedMapData(Map(UTF8String.fromString("k") -> 1))
+    ))
+
+    val deserialized = roundTrip(internalRow)
+    deserialized.getUTF8String(0) shouldBe UTF8String.fromString("crossdata")
+    deserialized.getLong(1) shouldBe 1L
+    deserialized.getArray(2).toIntArray() shouldBe Array(1, 2, 3)
+    deserialized.getMap(3).numElements() shouldBe 1
+  }
+
+  it should "allow serializing Crossdata models when registration is required" in {
+    val table = TableModel("id", "t", Schema.json, "org.apache.spark.sql.json", Some("db"), Seq("id"), Map("path" -> "/t"))
+    val query = EphemeralQueryModel("t", "SELECT * FROM t", "q")
+
+    roundTrip(table) shouldBe table
+    roundTrip(query) shouldBe query
+  }
+
+}
+
+object CrossdataRegistratorSpec {
+
+  val Schema = StructType(Seq(
+    StructField("id", LongType, false),
+    StructField("name", StringType, true),
+    StructField("price", DecimalType(10, 2), true),
+    StructField("created", DateType, true),
+    StructField("updated", TimestampType, true),
+    StructField("tags", ArrayType(StringType), true),
+    StructField("attributes", MapType(StringType, IntegerType), true),
+    StructField("address", StructType(Seq(StructField("city", StringType), StructField("zip", IntegerType))), true)
+  ))
+
+  // Representative result rows: scalar columns plus nested arrays, maps and structs
+  def rows: Array[Row] = Array.tabulate(16) { i =>
+    new GenericRowWithSchema(Array[Any](
+      i.toLong,
+      s"product-$i",
+      BigDecimal(i) / 4,
+      new Date(1460000000000L),
+      new Timestamp(1460000000000L + i),
+      Seq.tabulate(i % 4)(n => s"tag-$n"),
+      (0 until i % 6).map(n => s"k$n" -> n).toMap,
+      Row(s"city-${i % 3}", 28000 + i)
+    ), Schema)
+  }
+
+  def kryoSerializer(registrationRequired: Boolean, registrator: Boolean = true): SerializerInstance = {
+    val conf = new SparkConf(false).set("spark.kryo.registrationRequired", registrationRequired.toString)
+    if (registrator) conf.set("spark.kryo.registrator", classOf[CrossdataRegistrator].getName)
+    new KryoSerializer(conf).newInstance()
+  }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.actors
+
+import java.io.File
+import java.util.UUID
+
+import akka.actor.ActorSystem
+import akka.testkit.TestProbe
+import com.stratio.crossdata.common.result.ErrorSQLResult
+import com.stratio.crossdata.common.{ResultChunking, SQLCommand, SQLReply, SQLResultChunk, SQLResultChunkAck, SQLResultEnd}
+import com.stratio.crossdata.server.actors.JobActor.Commands.StartJob
+import com.stratio.crossdata.server.actors.JobActor.ProlificExecutor
+import com.stratio.crossdata.server.results.SpillSettings
+import com.typesafe.config.ConfigFactory
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.crossdata.XDSession
+import org.apache.spark.sql.crossdata.session.HazelcastSessionProvider
+import org.apache.spark.sql.crossdata.test.SharedXDContextTest
+import org.apache.spark.sql.types.{IntegerType, StructField, StructType}
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+import scala.concurrent.duration._
+
+@RunWith(classOf[JUnitRunner])
+class JobActorSpec extends SharedXDContextTest {
+
+  implicit lazy val system = ActorSystem("JobActorSpec")
+
+  lazy val sessionProvider = new HazelcastSessionProvider(xdContext.sc, ConfigFactory.empty())
+
+  lazy val session: XDSession = {
+    val session = sessionProvider.newSession(UUID.randomUUID(), "chunks").get
+    val schema = StructType(Seq(StructField("id", IntegerType)))
+    session.createDataFrame(session.sparkContext.parallelize((1 to 5) map (Row(_))), schema).registerTempTable("chunked")
+    session
+  }
+
+  val SpillDirectory = new File(System.getProperty("java.io.tmpdir"), "job-actor-spec")
+
+  override protected def afterAll(): Unit = {
+    system.terminate()
+    sessionProvider.close()
+    super.afterAll()
+  }
+
+  def startJob(command: SQLCommand, requester: TestProbe, chunkCreditTimeout: FiniteDuration): Unit = {
+    val job = system.actorOf(JobActor.props(
+      session, command, requester.ref, None, new ProlificExecutor, UUID.randomUUID(), None,
+      SpillSettings(0, 100, SpillDirectory), chunkCreditTimeout
+    ))
+    job ! StartJob
+  }
+
+  "A JobActor" should "only send the chunks of a result its requester has granted credits for" in {
+    val requester = TestProbe()
+    val command = SQLCommand("SELECT id FROM chunked", resultChunking = Some(ResultChunking(chunkSize = 2, initialCredits = 1)))
+
+    startJob(command, requester, 1 minute)
+
+    val firstChunk = requester.expectMsgType[SQLResultChunk](30 seconds)
+    firstChunk.chunkIndex shouldBe 0
+    firstChunk.schema shouldBe defined
+    requester.expectNoMsg(500 milliseconds)
+
+    firstChunk.producer.tell(SQLResultChunkAck(command.requestId, 2), requester.ref)
+    val secondChunk = requester.expectMsgType[SQLResultChunk]
+    secondChunk.chunkIndex shouldBe 1
+    secondChunk.schema shouldBe None // Only the first chunk carries the schema
+    requester.expectMsgType[SQLResultChunk].chunkIndex shouldBe 2
+    requester.expectMsgType[SQLResultEnd].numberOfRows shouldBe 5
+  }
+
+  it should "fail the transmission of a chunked result when its requester stops granting credits" in {
+    val requester = TestProbe()
+    val command = SQLCommand("SELECT id FROM chunked", resultChunking = Some(ResultChunking(chunkSize = 2, initialCredits = 1)))
+
+    startJob(command, requester, 1 second)
+
+    requester.expectMsgType[SQLResultChunk](30 seconds).chunkIndex shouldBe 0
+    requester.expectMsgPF(10 seconds) {
+      case SQLReply(command.requestId, ErrorSQLResult(message, _)) => message should include ("No chunk credits")
+    }
+  }
+
+}
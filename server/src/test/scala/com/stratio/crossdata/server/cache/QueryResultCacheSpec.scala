@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.cache
+
+import com.stratio.crossdata.test.BaseXDTest
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.crossdata.catalog.TableIdentifierNormalized
+import org.apache.spark.sql.types.{IntegerType, StructField, StructType}
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+import scala.concurrent.duration._
+
+@RunWith(classOf[JUnitRunner])
+class QueryResultCacheSpec extends BaseXDTest {
+
+  val schema = StructType(StructField("id", IntegerType, false) :: Nil)
+  val rows: Seq[Row] = (1 to 5) map (Row(_))
+
+  "A LocalResultStore" should "evict the least recently used result once it is full" in {
+    val store = new LocalResultStore(2, 1 minute)
+    store.put("a", CachedResult(schema, rows.toArray))
+    store.put("b", CachedResult(schema, rows.toArray))
+    store.get("a") shouldBe defined
+    store.put("c", CachedResult(schema, rows.toArray))
+
+    store.get("b") shouldBe None
+    store.get("a") shouldBe defined
+    store.get("c") shouldBe defined
+  }
+
+  it should "forget expired results" in {
+    val store = new LocalResultStore(2, 10 millis)
+    store.put("a", CachedResult(schema, rows.toArray))
+    Thread.sleep(50)
+    store.get("a") shouldBe None
+  }
+
+  "A QueryResultCache" should "store the rows of an iterator once it has been consumed" in {
+    val store = new LocalResultStore(10, 1 minute)
+    val cache = new QueryResultCache(store, new RelationVersions(), 10)
+
+    val iterator = cache.caching("key", schema, rows.iterator)
+    iterator.next()
+    store.get("key") shouldBe None
+
+    iterator.toList
+    store.get("key").map(_.rows.toSeq) shouldBe Some(rows)
+  }
+
+  it should "not store results having more rows than its limit" in {
+    val store = new LocalResultStore(10, 1 minute)
+    val cache = new QueryResultCache(store, new RelationVersions(), 3)
+
+    cache.caching("key", schema, rows.iterator).toList shouldBe rows
+    store.get("key") shouldBe None
+  }
+
+  it should "only collapse whitespaces out of quoted literals" in {
+    QueryResultCache.normalizeSql("  SELECT *\n\tFROM  t WHERE s = 'a  b' ") shouldBe "SELECT * FROM t WHERE s = 'a  b'"
+  }
+
+  "RelationVersions" should "renew the version of a relation when it changes" in {
+    val versions = new RelationVersions()
+    val table = new TableIdentifierNormalized("t", Some("db"))
+    val (version, epoch) = (versions.version(table), versions.epoch)
+
+    versions.version(table) shouldBe version
+    versions.relationChanged(new TableIdentifierNormalized("t", None))
+    versions.version(table) should not be version
+
+    versions.allRelationsChanged()
+    versions.epoch should not be epoch
+  }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.execution
+
+import java.util.UUID
+
+import com.stratio.crossdata.server.execution.AdmissionController.{Limits, PoolAssignment, PoolSettings, SchedulerPool}
+import com.stratio.crossdata.test.BaseXDTest
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class AdmissionControllerSpec extends BaseXDTest {
+
+  "An AdmissionController" should "reject the queries of a user over its concurrency limit" in {
+    val controller = new AdmissionController(Limits(maxConcurrentPerUser = Some(2)))
+
+    val admissions = (1 to 2) map (_ => controller.admit("alice", UUID.randomUUID()))
+    admissions.forall(_.isRight) shouldBe true
+
+    controller.admit("alice", UUID.randomUUID()).isLeft shouldBe true
+    controller.admit("bob", UUID.randomUUID()).isRight shouldBe true
+    controller.stats.rejectedQueries shouldBe 1
+
+    admissions.head.right.get.release()
+    controller.admit("alice", UUID.randomUUID()).isRight shouldBe true
+  }
+
+  it should "reject the queries of a session over its concurrency limit" in {
+    val controller = new AdmissionController(Limits(maxConcurrentPerSession = Some(1)))
+    val sessionId = UUID.randomUUID()
+
+    controller.admit("alice", sessionId).isRight shouldBe true
+    controller.admit("alice", sessionId).isLeft shouldBe true
+    controller.admit("alice", UUID.randomUUID()).isRight shouldBe true
+  }
+
+  it should "only count once admissions released several times" in {
+    val controller = new AdmissionController(Limits())
+    val sessionId = UUID.randomUUID()
+
+    val first = controller.admit("alice", sessionId).right.get
+    controller.admit("alice", sessionId)
+    first.release()
+    first.release()
+
+    controller.stats.concurrentByUser shouldBe Map("alice" -> 1)
+    controller.stats.concurrentBySession shouldBe Map(sessionId -> 1)
+  }
+
+  it should "assign scheduler pools weighted by user" in {
+    val settings = PoolSettings(PoolAssignment.ByUser, defaultWeight = 1, minShare = 2, weights = Map("etl" -> 4))
+    val controller = new AdmissionController(Limits(), settings)
+
+    controller.admit("etl", UUID.randomUUID()).right.get.schedulerPool shouldBe Some(SchedulerPool("user-etl", 4, 2))
+    controller.admit("bob", UUID.randomUUID()).right.get.schedulerPool shouldBe Some(SchedulerPool("user-bob", 1, 2))
+    new AdmissionController(Limits()).admit("bob", UUID.randomUUID()).right.get.schedulerPool shouldBe None
+  }
+
+  it should "only tell the pools owned by sessions so they can be removed once closed" in {
+    val sessionId = UUID.randomUUID()
+    val controller = new AdmissionController(Limits(), PoolSettings(PoolAssignment.BySession))
+
+    controller.admit("bob", sessionId).right.get.schedulerPool.map(_.name) shouldBe controller.sessionPool(sessionId)
+    new AdmissionController(Limits(), PoolSettings(PoolAssignment.ByUser)).sessionPool(sessionId) shouldBe None
+  }
+
+}
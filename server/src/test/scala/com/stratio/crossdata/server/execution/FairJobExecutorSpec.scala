@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.execution
+
+import java.util.UUID
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.{ConcurrentLinkedQueue, CountDownLatch, RejectedExecutionException, TimeUnit}
+
+import com.stratio.crossdata.test.BaseXDTest
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+import scala.collection.JavaConversions._
+import scala.concurrent.duration._
+
+@RunWith(classOf[JUnitRunner])
+class FairJobExecutorSpec extends BaseXDTest {
+
+  def job(f: => Unit): Runnable = new Runnable {
+    override def run(): Unit = f
+  }
+
+  "A FairJobExecutor" should "run every submitted job" in {
+    val executor = new FairJobExecutor(2, 100)
+    val done = new CountDownLatch(10)
+    (1 to 10) foreach (_ => executor.submit(UUID.randomUUID(), job(done.countDown())))
+    done.await(5, TimeUnit.SECONDS) shouldBe true
+    executor.shutdown()
+  }
+
+  it should "never run more jobs than its pool size at the same time" in {
+    val executor = new FairJobExecutor(2, 100)
+    val running = new AtomicInteger(0)
+    val observed = new ConcurrentLinkedQueue[Int]()
+    val done = new CountDownLatch(20)
+    val sessionId = UUID.randomUUID()
+
+    (1 to 20) foreach { _ =>
+      executor.submit(sessionId, job {
+        observed.add(running.incrementAndGet())
+        Thread.sleep(5)
+        running.decrementAndGet()
+        done.countDown()
+      })
+    }
+
+    done.await(5, TimeUnit.SECONDS) shouldBe true
+    observed.max should be <= 2
+    executor.shutdown()
+  }
+
+  it should "take turns between sessions so a chatty one does not starve the rest" in {
+    val executor = new FairJobExecutor(1, 100)
+    val blocker = new CountDownLatch(1)
+    val order = new ConcurrentLinkedQueue[String]()
+    val done = new CountDownLatch(5)
+    val (chatty, quiet) = (UUID.randomUUID(), UUID.randomUUID())
+
+    executor.submit(chatty, job(blocker.await()))
+    eventually(executor.stats.runningJobs shouldBe 1)
+    (1 to 4) foreach (n => executor.submit(chatty, job { order.add(s"chatty-$n"); done.countDown() }))
+    executor.submit(quiet, job { order.add("quiet"); done.countDown() })
+
+    executor.stats.queuedJobsBySession shouldBe Map(chatty -> 4, quiet -> 1)
+
+    blocker.countDown()
+    done.await(5, TimeUnit.SECONDS) shouldBe true
+    order.toList.take(2) shouldBe List("quiet", "chatty-1")
+    executor.shutdown()
+  }
+
+  it should "reject jobs once its queues are full" in {
+    val executor = new FairJobExecutor(1, 1)
+    val blocker = new CountDownLatch(1)
+    val sessionId = UUID.randomUUID()
+
+    executor.submit(sessionId, job(blocker.await()))
+    executor.submit(sessionId, job(()))
+    eventually(executor.stats.runningJobs shouldBe 1)
+
+    a [RejectedExecutionException] should be thrownBy executor.submit(sessionId, job(()))
+    executor.stats.rejectedJobs shouldBe 1
+
+    blocker.countDown()
+    executor.shutdown()
+    executor.awaitTermination(5 seconds) shouldBe true
+    executor.stats.queuedJobs shouldBe 0
+  }
+
+  it should "reject the jobs of a session once its own queue is full" in {
+    val executor = new FairJobExecutor(1, 100, maxQueuedJobsPerSession = Some(1))
+    val blocker = new CountDownLatch(1)
+    val (chatty, quiet) = (UUID.randomUUID(), UUID.randomUUID())
+
+    executor.submit(chatty, job(blocker.await()))
+    eventually(executor.stats.runningJobs shouldBe 1)
+    executor.submit(chatty, job(()))
+
+    a [RejectedExecutionException] should be thrownBy executor.submit(chatty, job(()))
+    executor.submit(quiet, job(()))
+    executor.stats.queuedJobsBySession shouldBe Map(chatty -> 1, quiet -> 1)
+
+    blocker.countDown()
+    executor.shutdown()
+    executor.awaitTermination(5 seconds) shouldBe true
+  }
+
+  it should "not accept jobs after having been shut down" in {
+    val executor = new FairJobExecutor(1, 1)
+    executor.shutdown()
+    a [RejectedExecutionException] should be thrownBy executor.submit(UUID.randomUUID(), job(()))
+  }
+
+  private def eventually(assertion: => Unit): Unit = {
+    val deadline = 5.seconds.fromNow
+    def attempt(): Unit =
+      try assertion catch {
+        case _: Throwable if deadline.hasTimeLeft() =>
+          Thread.sleep(10)
+          attempt()
+      }
+    attempt()
+  }
+
+}
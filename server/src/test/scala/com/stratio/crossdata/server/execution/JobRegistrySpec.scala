@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.execution
+
+import java.util.UUID
+
+import com.stratio.crossdata.server.actors.ServerActor.JobId
+import com.stratio.crossdata.test.BaseXDTest
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class JobRegistrySpec extends BaseXDTest {
+
+  def job(server: String): RegisteredJob = {
+    val jobId = JobId(UUID.randomUUID(), UUID.randomUUID())
+    RegisteredJob(jobId, "alice", s"$server/user/crossdata-server/$$a", server, asynchronous = false, 0L)
+  }
+
+  "A LocalJobRegistry" should "find the registered jobs until they are unregistered" in {
+    val registry = new LocalJobRegistry
+    val registered = job("akka.tcp://CrossdataServerCluster@10.0.0.1:13420")
+
+    registry.register(registered)
+    registry.lookup(registered.jobId) shouldBe Some(registered)
+    registry.jobs shouldBe Seq(registered)
+
+    registry.unregister(registered.jobId)
+    registry.lookup(registered.jobId) shouldBe None
+  }
+
+  it should "forget the jobs of a server which has left the cluster" in {
+    val registry = new LocalJobRegistry
+    val (gone, alive) = ("akka.tcp://CrossdataServerCluster@10.0.0.1:13420", "akka.tcp://CrossdataServerCluster@10.0.0.2:13420")
+    val remaining = job(alive)
+    Seq(job(gone), job(gone), remaining) foreach registry.register
+
+    registry.unregisterServer(gone)
+    registry.jobs shouldBe Seq(remaining)
+  }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.jars
+
+import java.nio.file.Files
+
+import akka.actor.ActorSystem
+import akka.stream.ActorMaterializer
+import akka.stream.scaladsl.Source
+import akka.util.ByteString
+import com.stratio.crossdata.test.BaseXDTest
+import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.fs.{FileSystem, Path}
+import org.junit.runner.RunWith
+import org.scalatest.BeforeAndAfterAll
+import org.scalatest.junit.JUnitRunner
+
+import scala.concurrent.duration._
+import scala.concurrent.Await
+
+@RunWith(classOf[JUnitRunner])
+class JarStoreSpec extends BaseXDTest with BeforeAndAfterAll {
+
+  implicit val system = ActorSystem("JarStoreSpec")
+  implicit val materializer = ActorMaterializer()
+  implicit val executionContext = system.dispatcher
+
+  val directory = Files.createTempDirectory("jar-store-spec").toFile
+  val store = new JarStore(FileSystem.getLocal(new Configuration()), new Path(directory.toURI))
+
+  def upload(name: String, contents: String): StoredJar = {
+    val chunks = Source(contents.grouped(3).map(ByteString(_)).toList)
+    Await.result(store.store(name, chunks), 10 seconds)
+  }
+
+  def storedFiles: Seq[String] = directory.listFiles().filter(_.getName != "_pending").flatMap(_.list())
+
+  "A JarStore" should "store the uploaded jars by their contents digest" in {
+    val jar = upload("first.jar", "first jar contents")
+
+    jar.deduplicated shouldBe false
+    jar.path should endWith(s"${jar.digest}/first.jar")
+    store.lookup(jar.digest).map(_.path) shouldBe Some(jar.path)
+  }
+
+  it should "keep a single copy of identical jars, whatever their names are" in {
+    val original = upload("dedup.jar", "identical contents")
+    val renamed = upload("renamed.jar", "identical contents")
+
+    renamed.deduplicated shouldBe true
+    renamed.path shouldBe original.path
+    storedFiles.count(_ == "renamed.jar") shouldBe 0
+  }
+
+  it should "keep jars with the same name but different contents apart" in {
+    val v1 = upload("lib.jar", "version 1")
+    val v2 = upload("lib.jar", "version 2")
+
+    v1.digest should not be v2.digest
+    v1.path should not be v2.path
+  }
+
+  it should "discard the pending file of a failed upload" in {
+    val failing = Source(List(ByteString("partial"))) ++ Source.failed(new RuntimeException("Connection lost"))
+
+    an[Exception] should be thrownBy Await.result(store.store("broken.jar", failing), 10 seconds)
+    Option(new java.io.File(directory, "_pending").list()).map(_.toSeq).getOrElse(Nil) shouldBe empty
+    storedFiles should not contain "broken.jar"
+  }
+
+  override protected def afterAll(): Unit = {
+    system.terminate()
+    super.afterAll()
+  }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.results
+
+import java.nio.file.Files
+
+import akka.actor.Address
+import com.stratio.crossdata.common.serializers.ColumnarRowsCodec
+import com.stratio.crossdata.test.BaseXDTest
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.types.{IntegerType, StringType, StructField, StructType}
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class SpillableResultSpec extends BaseXDTest {
+
+  val schema = StructType(StructField("id", IntegerType) :: StructField("name", StringType) :: Nil)
+  val rows: Seq[Row] = (0 until 25) map (i => Row(i, if (i % 3 == 0) null else s"name_$i"))
+
+  val directory = Files.createTempDirectory("spillable-result-spec").toFile
+
+  def spilledFiles: Seq[String] = Option(directory.list()).map(_.toSeq).getOrElse(Nil)
+
+  "A SpillableResult" should "keep its rows on heap while they are under the memory threshold" in {
+    val result = SpillableResult(schema, rows.iterator, SpillSettings(Long.MaxValue, 10, directory))
+
+    result.isSpilled shouldBe false
+    result.numberOfRows shouldBe rows.size
+    result.iterator.toList shouldBe rows
+
+    result.release()
+  }
+
+  it should "share the memory threshold with the rest of results until they are released" in {
+    val settings = SpillSettings(ColumnarRowsCodec.encode(schema, rows.toArray).length, rows.size, directory)
+
+    val first = SpillableResult(schema, rows.iterator, settings)
+    val second = SpillableResult(schema, rows.iterator, settings)
+    first.isSpilled shouldBe false
+    second.isSpilled shouldBe true
+
+    first.release()
+    second.release()
+    val third = SpillableResult(schema, rows.iterator, settings)
+    third.isSpilled shouldBe false
+    third.release()
+  }
+
+  it should "spill the batches exceeding the memory threshold to a local file" in {
+    val result = SpillableResult(schema, rows.iterator, SpillSettings(0, 10, directory))
+
+    result.isSpilled shouldBe true
+    spilledFiles should have size 1
+    result.iterator.toList shouldBe rows
+
+    result.release()
+    spilledFiles shouldBe empty
+  }
+
+  it should "read pages spanning several batches" in {
+    val result = SpillableResult(schema, rows.iterator, SpillSettings(100, 10, directory))
+
+    result.rows(0, 5).toSeq shouldBe rows.slice(0, 5)
+    result.rows(8, 15).toSeq shouldBe rows.slice(8, 23)
+    result.rows(20, 100).toSeq shouldBe rows.slice(20, 25)
+    result.rows(25, 10) shouldBe empty
+
+    result.release()
+  }
+
+  it should "only delete the spilled results of its own server" in {
+    val settings = SpillSettings(0, 10, directory)
+    val firstServer = settings.forServer(Address("akka.tcp", "CrossdataServerCluster", "localhost", 13420))
+    val secondServer = settings.forServer(Address("akka.tcp", "CrossdataServerCluster", "localhost", 13421))
+    firstServer.directory should not be secondServer.directory
+
+    val result = SpillableResult(schema, rows.iterator, firstServer)
+    SpillableResult.deleteSpilled(secondServer.directory)
+    result.iterator.toList shouldBe rows
+
+    SpillableResult.deleteSpilled(firstServer.directory)
+    firstServer.directory.list() shouldBe empty
+  }
+
+}
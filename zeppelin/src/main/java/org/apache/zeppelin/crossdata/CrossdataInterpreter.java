@@ -16,6 +16,8 @@
 package org.apache.zeppelin.crossdata;
 
 import com.stratio.crossdata.common.result.ErrorSQLResult;
+import com.stratio.crossdata.common.result.QueryStatus;
+import com.stratio.crossdata.common.result.SQLResponse;
 import com.stratio.crossdata.common.result.SQLResult;
 import com.stratio.crossdata.common.result.SuccessfulSQLResult;
 import com.stratio.crossdata.driver.JavaDriver;
@@ -27,13 +29,16 @@ import org.apache.zeppelin.interpreter.InterpreterContext;
 import org.apache.zeppelin.interpreter.InterpreterResult;
 import org.apache.zeppelin.scheduler.Scheduler;
 import org.apache.zeppelin.scheduler.SchedulerFactory;
+import scala.concurrent.Await;
 import scala.concurrent.duration.Duration;
 import scala.concurrent.duration.Duration$;
 import scala.concurrent.duration.FiniteDuration;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 public class CrossdataInterpreter extends Interpreter {
@@ -43,6 +48,10 @@ public class CrossdataInterpreter extends Interpreter {
     private static final String CROSSDATA_SEEDS_PROPERTY = "crossdata.seeds";
     private static final String CROSSDATA_DEFAULT_LIMIT = "crossdata.defaultLimit";
     private static final String CROSSDATA_TIMEOUT_SEC = "crossdata.timeoutSeconds";
+    private static final FiniteDuration PROGRESS_TIMEOUT = new FiniteDuration(5, TimeUnit.SECONDS);
+
+    // Queries being run by paragraph id, so their progress can be reported and they can be cancelled
+    private final Map<String, SQLResponse> runningQueries = new ConcurrentHashMap<>();
 
 
     public CrossdataInterpreter(Properties property) {
@@ -69,7 +78,17 @@ public class CrossdataInterpreter extends Interpreter {
 
         Duration timeout = (secondsTimeout <= 0) ? Duration$.MODULE$.Inf() : new FiniteDuration(secondsTimeout, TimeUnit.SECONDS);
 
-        SQLResult sqlResult = driver.sql(sql, timeout);
+        // One row beyond the limit tells whether the result has been truncated
+        int defaultLimit = Integer.parseInt(getProperty(CROSSDATA_DEFAULT_LIMIT));
+        SQLResponse response = driver.sqlAsync(sql, defaultLimit + 1);
+
+        SQLResult sqlResult;
+        runningQueries.put(context.getParagraphId(), response);
+        try {
+            sqlResult = response.waitForResult(timeout);
+        } finally {
+            runningQueries.remove(context.getParagraphId());
+        }
 
         if (sqlResult.hasError() && ErrorSQLResult.class.isInstance(sqlResult)) {
             return new InterpreterResult(InterpreterResult.Code.ERROR, ErrorSQLResult.class.cast(sqlResult).message());
@@ -133,7 +152,6 @@ public class CrossdataInterpreter extends Interpreter {
         }
 
         if (resultSet.length > defaultLimit) {
-            // TODO use default limit -> Improve driver API
             msg.append(System.lineSeparator()).append("<font color=red>Results are limited by ").append(defaultLimit).append(".</font>");
         }
 
@@ -145,7 +163,10 @@ public class CrossdataInterpreter extends Interpreter {
 
     @Override
     public void cancel(InterpreterContext context) {
-        // TODO do nothing
+        SQLResponse response = runningQueries.get(context.getParagraphId());
+        if (response != null) {
+            response.cancelCommand();
+        }
     }
 
     @Override
@@ -155,7 +176,16 @@ public class CrossdataInterpreter extends Interpreter {
 
     @Override
     public int getProgress(InterpreterContext context) {
-        return 0;
+        SQLResponse response = runningQueries.get(context.getParagraphId());
+        if (response == null) {
+            return 0;
+        }
+        try {
+            QueryStatus status = Await.result(response.status(), PROGRESS_TIMEOUT);
+            return (int) (status.progress() * 100);
+        } catch (Exception e) {
+            return 0;
+        }
     }
 
 